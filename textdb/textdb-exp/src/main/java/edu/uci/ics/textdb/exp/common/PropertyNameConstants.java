@@ -30,19 +30,24 @@ public class PropertyNameConstants {
     public static final String LIMIT = "limit";
     public static final String OFFSET = "offset";
     public static final String ADD_SPANS = "addSpans";
+    public static final String RESTRICT_PAYLOAD = "restrictPayload";
     
     // related to keyword matcher
     public static final String KEYWORD_QUERY = "query";
     public static final String KEYWORD_MATCHING_TYPE = "matchingType";
+    public static final String KEYWORD_SCORE_ATTRIBUTE_NAME = "scoreAttribute";
     
     // related to dictionary matcher
     public static final String DICTIONARY = "dictionary";
     public static final String DICTIONARY_ENTRIES = "dictionaryEntries";
+    public static final String DICTIONARY_NAME = "dictionaryName";
     
     // related to regex matcher
     public static final String REGEX = "regex";
     public static final String REGEX_IGNORE_CASE = "regexIgnoreCase";
     public static final String REGEX_USE_INDEX = "regexUseIndex";
+    public static final String REGEX_ENGINE = "regexEngine";
+    public static final String REGEX_LIST = "regexes";
     
     // related to fuzzy token matcher
     public static final String FUZZY_TOKEN_QUERY = "query";
@@ -2,22 +2,37 @@ package edu.uci.ics.textdb.exp.dictionarymatcher;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import edu.uci.ics.textdb.api.exception.DataFlowException;
 import edu.uci.ics.textdb.exp.common.PropertyNameConstants;
 
 /**
+ * A dictionary is either a collection of entries, or the name of a dictionary in the DictionaryStore.
+ * 
+ * A named dictionary keeps large dictionaries out of the plans: only the name is in the JSON of the plan,
+ *   and the entries are read from the FST of the dictionary in the DictionaryStore when they are used,
+ *   they are not copied into a list (see DictionaryEntryList).
+ * 
  * @author Sudeep [inkudo]
  *
  */
 public class Dictionary {
     
     private final LinkedHashSet<String> dictionaryEntries;       
+    private final String dictionaryName;
+    // the entries of the dictionary, and the index of each inline entry (a named dictionary looks them up in its FST)
+    private List<String> entryList;
+    private Map<String, Integer> inlineEntryIndexes;
     private Iterator<String> dictionaryIterator;
     
     /**
@@ -25,25 +40,102 @@ public class Dictionary {
      * 
      * @param dictionaryEntries, a collection of dictionary entries
      */
+    public Dictionary(Collection<String> dictionaryEntries) {
+        this(dictionaryEntries, null);
+    }
+    
+    /**
+     * Create a dictionary using a collection of entries, or the name of a dictionary in the DictionaryStore.
+     * Exactly one of them must be given.
+     * 
+     * @param dictionaryEntries, a collection of dictionary entries
+     * @param dictionaryName, the name of a dictionary in the DictionaryStore
+     */
     @JsonCreator
     public Dictionary(
-            @JsonProperty(value = PropertyNameConstants.DICTIONARY_ENTRIES, required = true)
-            Collection<String> dictionaryEntries) {
+            @JsonProperty(value = PropertyNameConstants.DICTIONARY_ENTRIES, required = false)
+            Collection<String> dictionaryEntries,
+            @JsonProperty(value = PropertyNameConstants.DICTIONARY_NAME, required = false)
+            String dictionaryName) {
+        if ((dictionaryEntries == null) == (dictionaryName == null)) {
+            throw new DataFlowException("Dictionary: either the entries or the name of the dictionary must be given");
+        }
+        if (dictionaryName != null && ! DictionaryStore.getInstance().containsDictionary(dictionaryName)) {
+            throw new DataFlowException(String.format("dictionary %s doesn't exist", dictionaryName));
+        }
         // Using LinkedHashSet so that getNextValue() returns the words in order.
-        this.dictionaryEntries = new LinkedHashSet<>(dictionaryEntries);
-        this.dictionaryIterator = this.dictionaryEntries.iterator();
+        this.dictionaryEntries = dictionaryEntries == null ? null : new LinkedHashSet<>(dictionaryEntries);
+        this.dictionaryName = dictionaryName;
+        this.dictionaryIterator = null;
     }
     
+    /**
+     * Gets the entries of the dictionary inlined in the plan, null for a named dictionary.
+     */
     @JsonProperty(value = PropertyNameConstants.DICTIONARY_ENTRIES)
-    public Collection<String> getDictionaryEntries() {
-        return new ArrayList<>(this.dictionaryEntries);
+    public Collection<String> getInlineDictionaryEntries() {
+        return this.dictionaryEntries == null ? null : new ArrayList<>(this.dictionaryEntries);
+    }
+    
+    @JsonProperty(value = PropertyNameConstants.DICTIONARY_NAME)
+    public String getDictionaryName() {
+        return this.dictionaryName;
     }
     
     /**
-     * Gets next dictionary entry from the dictionary
+     * Gets the entries of the dictionary, as an unmodifiable list.
+     * The list of a named dictionary is backed by its FST in the DictionaryStore.
+     */
+    @JsonIgnore
+    public synchronized List<String> getDictionaryEntries() {
+        if (this.entryList == null) {
+            this.entryList = this.dictionaryName != null ?
+                    DictionaryStore.getInstance().getDictionaryEntries(this.dictionaryName) :
+                    Collections.unmodifiableList(new ArrayList<>(this.dictionaryEntries));
+        }
+        return this.entryList;
+    }
+    
+    /**
+     * Gets the index of an entry in getDictionaryEntries(), or -1 if the dictionary doesn't contain it.
+     * The index of an entry of a named dictionary is its ordinal in the FST.
+     */
+    @JsonIgnore
+    public synchronized int getEntryIndex(String entry) {
+        if (this.dictionaryName != null) {
+            return getDictionaryEntries().indexOf(entry);
+        }
+        if (this.inlineEntryIndexes == null) {
+            this.inlineEntryIndexes = new HashMap<>();
+            List<String> entries = getDictionaryEntries();
+            for (int i = 0; i < entries.size(); i++) {
+                this.inlineEntryIndexes.put(entries.get(i), i);
+            }
+        }
+        Integer entryIndex = this.inlineEntryIndexes.get(entry);
+        return entryIndex == null ? -1 : entryIndex;
+    }
+    
+    /**
+     * Gets the token matcher of the entries (see DictionaryTokenMatcher).
+     * The token matcher of a named dictionary is compiled once and cached in the DictionaryStore.
+     */
+    DictionaryTokenMatcher getTokenMatcher(String luceneAnalyzerString) {
+        if (this.dictionaryName != null) {
+            return DictionaryStore.getInstance().getTokenMatcher(this.dictionaryName, luceneAnalyzerString);
+        }
+        return new DictionaryTokenMatcher(getDictionaryEntries(), luceneAnalyzerString);
+    }
+    
+    /**
+     * Gets next dictionary entry from the dictionary.
+     * The entries of a named dictionary are iterated over its FST.
      */
     @JsonIgnore
     public String getNextEntry() {
+        if (dictionaryIterator == null) {
+            dictionaryIterator = getDictionaryEntries().iterator();
+        }
         if (dictionaryIterator.hasNext()) {
             return dictionaryIterator.next();
         }
@@ -55,7 +147,7 @@ public class Dictionary {
      */
     @JsonIgnore
     public void resetCursor() {
-        dictionaryIterator = dictionaryEntries.iterator();
+        dictionaryIterator = null;
     }
     
 }
@@ -0,0 +1,135 @@
+package edu.uci.ics.textdb.exp.dictionarymatcher;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.fst.BytesRefFSTEnum;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.Util;
+
+import edu.uci.ics.textdb.api.exception.StorageException;
+
+/**
+ * DictionaryEntryList is the read-only list of the entries of a named dictionary, backed by its FST.
+ *
+ * The output of each entry in the FST is its ordinal (its index in sorted order), so an entry is
+ *   decoded from the FST when it's read (get), and the index of an entry is looked up in the FST (indexOf),
+ *   without keeping the entry strings or a map from the entries to their indexes in memory.
+ *   Iterating the list walks the FST once.
+ */
+class DictionaryEntryList extends AbstractList<String> implements RandomAccess {
+
+    private final FST<Long> dictionaryFST;
+    private final int size;
+
+    DictionaryEntryList(FST<Long> dictionaryFST, int size) {
+        this.dictionaryFST = dictionaryFST;
+        this.size = size;
+    }
+
+    /**
+     * Creates the list of an FST loaded from a file, the entries are counted by walking the FST once.
+     */
+    static DictionaryEntryList countEntries(FST<Long> dictionaryFST) throws StorageException {
+        BytesRefFSTEnum<Long> fstEnum = new BytesRefFSTEnum<>(dictionaryFST);
+        int size = 0;
+        try {
+            while (fstEnum.next() != null) {
+                size++;
+            }
+        } catch (IOException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+        return new DictionaryEntryList(dictionaryFST, size);
+    }
+
+    FST<Long> getDictionaryFST() {
+        return dictionaryFST;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        try {
+            IntsRef entry = Util.getByOutput(dictionaryFST, index);
+            return Util.toBytesRef(entry, new BytesRefBuilder()).utf8ToString();
+        } catch (IOException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int indexOf(Object entry) {
+        if (! (entry instanceof String)) {
+            return -1;
+        }
+        try {
+            Long ordinal = Util.get(dictionaryFST, new BytesRef((String) entry));
+            return ordinal == null ? -1 : ordinal.intValue();
+        } catch (IOException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int lastIndexOf(Object entry) {
+        // the entries are distinct
+        return indexOf(entry);
+    }
+
+    @Override
+    public boolean contains(Object entry) {
+        return indexOf(entry) >= 0;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        BytesRefFSTEnum<Long> fstEnum = new BytesRefFSTEnum<>(dictionaryFST);
+        return new Iterator<String>() {
+            // the next entry, read ahead by hasNext
+            private String nextEntry = null;
+            private boolean finished = false;
+
+            @Override
+            public boolean hasNext() {
+                if (nextEntry == null && ! finished) {
+                    try {
+                        BytesRefFSTEnum.InputOutput<Long> inputOutput = fstEnum.next();
+                        if (inputOutput == null) {
+                            finished = true;
+                        } else {
+                            nextEntry = inputOutput.input.utf8ToString();
+                        }
+                    } catch (IOException e) {
+                        throw new StorageException(e.getMessage(), e);
+                    }
+                }
+                return nextEntry != null;
+            }
+
+            @Override
+            public String next() {
+                if (! hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String entry = nextEntry;
+                nextEntry = null;
+                return entry;
+            }
+        };
+    }
+
+}
@@ -1,28 +1,65 @@
 package edu.uci.ics.textdb.exp.dictionarymatcher;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.TreeMap;
 
 import edu.uci.ics.textdb.api.constants.ErrorMessages;
+import edu.uci.ics.textdb.api.constants.SchemaConstants;
 import edu.uci.ics.textdb.api.dataflow.IOperator;
 import edu.uci.ics.textdb.api.exception.DataFlowException;
 import edu.uci.ics.textdb.api.exception.TextDBException;
+import edu.uci.ics.textdb.api.field.IField;
+import edu.uci.ics.textdb.api.field.ListField;
+import edu.uci.ics.textdb.api.schema.Attribute;
+import edu.uci.ics.textdb.api.schema.AttributeType;
 import edu.uci.ics.textdb.api.schema.Schema;
+import edu.uci.ics.textdb.api.span.Span;
 import edu.uci.ics.textdb.api.tuple.Tuple;
-import edu.uci.ics.textdb.exp.keywordmatcher.KeywordPredicate;
-import edu.uci.ics.textdb.exp.keywordmatcher.KeywordMatcher;
-
+import edu.uci.ics.textdb.api.utils.Utils;
+import edu.uci.ics.textdb.exp.keywordmatcher.KeywordMatchingType;
+import edu.uci.ics.textdb.exp.keywordmatcher.SubstringMatcher;
+import edu.uci.ics.textdb.exp.utils.DataflowUtils;
+
+/**
+ * DictionaryMatcher matches the entries of a dictionary against the input tuples.
+ *
+ * The results are the same as a KeywordMatcher per dictionary entry: for each entry that matches an input tuple,
+ *   the tuple is returned with the spans of that entry in the span list attribute.
+ *   The results of an input tuple are returned together, in the order of the entries.
+ *   With setOneResultPerTuple, a tuple is returned once instead, with the spans of all its matching entries.
+ *
+ * All the entries are compiled once, when the matcher is created, and each input tuple is matched in one pass:
+ *   - STRING attributes: the value is looked up among the entries (an entry must match the whole value).
+ *   - TEXT attributes, conjunction and phrase: the payload is matched against all the entries' tokens at once
+ *     (see DictionaryTokenMatcher).
+ *   - TEXT attributes, substring: the entries are found in the text by one Aho-Corasick automaton
+ *     (see SubstringMatcher).
+ *
+ */
 public class DictionaryMatcher implements IOperator {
 
     private DictionaryPredicate predicate;
 
     private IOperator inputOperator;
-    private DictionaryTupleCacheOperator cacheOperator;
-    private KeywordPredicate keywordPredicate;
-    private KeywordMatcher keywordMatcher;
 
+    private Schema inputSchema;
     private Schema outputSchema;
 
-    String currentDictionaryEntry;
+    // the dictionary entries, the list of a named dictionary is backed by its FST (see Dictionary)
+    private final List<String> entries;
+
+    // the matchers of TEXT attributes, only the one of the matching type is created
+    private DictionaryTokenMatcher tokenMatcher;
+    private SubstringMatcher substringMatcher;
+
+    // whether the spans of all the entries matching a tuple are returned in one result tuple
+    private boolean oneResultPerTuple = false;
+
+    // the results of the last input tuple not returned yet
+    private final Deque<Tuple> pendingResults = new ArrayDeque<>();
 
     private int resultCursor;
     private int limit;
@@ -36,6 +73,8 @@ public class DictionaryMatcher implements IOperator {
         this.resultCursor = -1;
         this.limit = Integer.MAX_VALUE;
         this.offset = 0;
+
+        this.entries = predicate.getDictionary().getDictionaryEntries();
     }
 
     @Override
@@ -47,27 +86,40 @@ public class DictionaryMatcher implements IOperator {
             if (inputOperator == null) {
                 throw new DataFlowException(ErrorMessages.INPUT_OPERATOR_NOT_SPECIFIED);
             }
-
-            predicate.getDictionary().resetCursor();
-            currentDictionaryEntry = predicate.getDictionary().getNextEntry();
-            if (currentDictionaryEntry == null) {
+            if (entries.isEmpty()) {
                 throw new DataFlowException("Dictionary is empty");
             }
 
-            keywordPredicate = new KeywordPredicate(currentDictionaryEntry,
-                    predicate.getAttributeNames(),
-                    predicate.getAnalyzerString(), predicate.getKeywordMatchingType(), predicate.getSpanListName());
+            // the entries are compiled at the first open, and reused if the matcher is opened again
+            if (predicate.getKeywordMatchingType() == KeywordMatchingType.SUBSTRING_SCANBASED) {
+                if (substringMatcher == null) {
+                    substringMatcher = SubstringMatcher.compile(entries);
+                }
+            } else if (tokenMatcher == null) {
+                tokenMatcher = predicate.getDictionary().getTokenMatcher(predicate.getAnalyzerString());
+            }
 
-            keywordMatcher = new KeywordMatcher(keywordPredicate);
-            
-            cacheOperator = new DictionaryTupleCacheOperator();
-            cacheOperator.setInputOperator(inputOperator);
-            
-            keywordMatcher.setInputOperator(cacheOperator);
+            inputOperator.open();
 
-            cacheOperator.openAll();
-            keywordMatcher.open();
-            outputSchema = keywordMatcher.getOutputSchema();
+            inputSchema = inputOperator.getOutputSchema();
+            outputSchema = inputSchema;
+            if (! inputSchema.containsField(SchemaConstants.PAYLOAD)) {
+                outputSchema = Utils.addAttributeToSchema(outputSchema, SchemaConstants.PAYLOAD_ATTRIBUTE);
+            }
+            if (inputSchema.containsField(predicate.getSpanListName())) {
+                throw new DataFlowException(ErrorMessages.DUPLICATE_ATTRIBUTE(predicate.getSpanListName(), inputSchema));
+            }
+            outputSchema = Utils.addAttributeToSchema(outputSchema,
+                    new Attribute(predicate.getSpanListName(), AttributeType.LIST));
+
+            for (String attributeName : predicate.getAttributeNames()) {
+                AttributeType attributeType = inputSchema.getAttribute(attributeName).getAttributeType();
+                // types other than TEXT and STRING: throw Exception for now
+                if (attributeType != AttributeType.STRING && attributeType != AttributeType.TEXT) {
+                    throw new DataFlowException(
+                            "DictionaryMatcher: Fields other than STRING and TEXT are not supported yet");
+                }
+            }
 
         } catch (Exception e) {
             throw new DataFlowException(e.getMessage(), e);
@@ -84,188 +136,108 @@ public class DictionaryMatcher implements IOperator {
             return null;
         }
 
-        Tuple sourceTuple;
         while (true) {
-            // If there's result from current keywordMatcher, return it.
-            if ((sourceTuple = keywordMatcher.getNextTuple()) != null) {
-                resultCursor++;
-                if (resultCursor >= offset) {
-                    return sourceTuple;
+            if (pendingResults.isEmpty()) {
+                Tuple inputTuple = inputOperator.getNextTuple();
+                if (inputTuple == null) {
+                    return null;
                 }
+                pendingResults.addAll(processOneInputTuple(inputTuple));
                 continue;
             }
-            // If all results from current keywordMatcher are consumed,
-            // advance to next dictionary entry, and
-            // return null if reach the end of dictionary.
-            if ((currentDictionaryEntry = predicate.getDictionary().getNextEntry()) == null) {
-                return null;
+            Tuple resultTuple = pendingResults.poll();
+            resultCursor++;
+            if (resultCursor >= offset) {
+                return resultTuple;
             }
-
-            // Update the KeywordMatcher with the new dictionary entry.
-            keywordMatcher.close();
-            
-            keywordPredicate = new KeywordPredicate(currentDictionaryEntry,
-                    predicate.getAttributeNames(),
-                    predicate.getAnalyzerString(), predicate.getKeywordMatchingType(),
-                    predicate.getSpanListName());
-            keywordMatcher = new KeywordMatcher(keywordPredicate);
-            keywordMatcher.setInputOperator(cacheOperator);
-
-            keywordMatcher.open();
         }
     }
 
-    @Override
-    public void close() throws DataFlowException {
-        if (cursor == CLOSED) {
-            return;
-        }
-        try {
-            if (keywordMatcher != null) {
-                keywordMatcher.close();
-            }
-            if (cacheOperator != null) {
-                cacheOperator.closeAll();
-            }
-        } catch (Exception e) {
-            throw new DataFlowException(e.getMessage(), e);
-        }
-        cursor = CLOSED;
-    }
-    
-    
     /**
-     * The purpose of this operator is to "cache" the tuples from input operator
-     *   in an in-memory list.
-     * 
-     * The DictionaryMatcher uses a new KeywordMatcher for each entry in the dictionary,
-     *   each keyword matcher would have to get all the tuples from the input operators again and again.
-     * 
-     * This operator caches the tuples in the list, so that the tuples don't have to be produced 
-     *   from the input operator again and again for multiple keyword mathchers.
-     *   
-     * This operators relies on a few assumptions in the implementation of DictionaryMatcher:
-     *   - At any time, only ONE operator (KeywordMatcher) is connected to this cache operator.
-     *   - Multiple operators (KeywordMatchers) are connected to this operator sequentially.
-     *   
-     * @author Zuozhi Wang
+     * Matches all the dictionary entries against one input tuple.
+     * Returns a result tuple for each entry that matches, in the order of the entries.
      *
+     * @param inputTuple
+     * @return
+     * @throws TextDBException
      */
-    private class DictionaryTupleCacheOperator implements IOperator {
-        
-        private IOperator inputOperator;
-        private Schema outputSchema;
-        
-        private ArrayList<Tuple> inputTupleList = new ArrayList<>();
-        
-        private boolean isOpen = false;
-        private boolean inputAllConsumed = false;
-        private int cachedTupleCursor = 0;
-        
-        /*
-         * openAll() is the actual "open" function for this cache operator.
-         * It will open this operator and its input operator.
-         * 
-         * It's the caller's responsibility to make sure openAll() is called before everything.
-         */
-        public void openAll() throws TextDBException {
-            if (isOpen) {
-                return;
-            }
-            if (inputOperator == null) {
-                throw new DataFlowException(ErrorMessages.INPUT_OPERATOR_NOT_SPECIFIED);
-            }
-            inputOperator.open();
-            outputSchema = inputOperator.getOutputSchema();
-            isOpen = true;
+    public List<Tuple> processOneInputTuple(Tuple inputTuple) throws TextDBException {
+        KeywordMatchingType matchingType = predicate.getKeywordMatchingType();
+        List<Span> payload = null;
+        if (inputSchema.containsField(SchemaConstants.PAYLOAD)) {
+            ListField<Span> payloadField = inputTuple.getField(SchemaConstants.PAYLOAD);
+            payload = payloadField.getValue();
+        } else if (matchingType != KeywordMatchingType.SUBSTRING_SCANBASED) {
+            payload = DataflowUtils.generatePayloadFromTuple(inputTuple, predicate.getAnalyzerString());
         }
 
-        /*
-         * When the child operator (KeywordMatcher) calls "open()", we don't want to open the input operator again,
-         * so open() is served as an indicator that a new operator (KeywordMatcher) is connected to this operator.
-         */
-        @Override
-        public void open() throws TextDBException {
-            if (! isOpen) {
-                throw new DataFlowException(ErrorMessages.OPERATOR_NOT_OPENED);
-            }
-            // reset the cursor
-            cachedTupleCursor = 0;
-        }
+        // the spans of each matching entry, in the order of the entries
+        TreeMap<Integer, List<Span>> entrySpans = new TreeMap<>();
+        DictionaryTokenMatcher.EntrySpanHandler spanHandler = (entryIndex, span) ->
+            entrySpans.computeIfAbsent(entryIndex, key -> new ArrayList<>()).add(span);
 
-        @Override
-        public Tuple getNextTuple() throws TextDBException {
-            if (! isOpen) {
-                throw new DataFlowException(ErrorMessages.OPERATOR_NOT_OPENED);
+        for (String attributeName : predicate.getAttributeNames()) {
+            AttributeType attributeType = inputSchema.getAttribute(attributeName).getAttributeType();
+            String fieldValue = inputTuple.getField(attributeName).getValue().toString();
+
+            // for STRING type, the entry should match the fieldValue completely
+            if (attributeType == AttributeType.STRING) {
+                int entryIndex = predicate.getDictionary().getEntryIndex(fieldValue);
+                if (entryIndex >= 0) {
+                    spanHandler.onSpan(entryIndex, new Span(attributeName, 0, fieldValue.length(), fieldValue, fieldValue));
+                }
             }
-            // if cursor's next value exceeds the cache's size
-            if (cachedTupleCursor + 1 >= inputTupleList.size()) {
-                // if the input operator has been fully consumed, return null
-                if (inputAllConsumed) {
-                    return null;
-                // else, get the next tuple from input operator, 
-                // add it to tuple list, and advance cursor
+
+            if (attributeType == AttributeType.TEXT) {
+                if (matchingType == KeywordMatchingType.CONJUNCTION_INDEXBASED) {
+                    tokenMatcher.findConjunctions(attributeName, payload, spanHandler);
+                } else if (matchingType == KeywordMatchingType.PHRASE_INDEXBASED) {
+                    tokenMatcher.findPhrases(attributeName, fieldValue, payload, spanHandler);
                 } else {
-                    Tuple tuple = inputOperator.getNextTuple();
-                    if (tuple == null) {
-                        inputAllConsumed = true;
-                    } else {
-                        inputTupleList.add(tuple);
-                        cachedTupleCursor++;
-                    }
-                    return tuple;
+                    substringMatcher.findAll(fieldValue, (entryIndex, start, end) -> spanHandler.onSpan(entryIndex,
+                            new Span(attributeName, start, end, entries.get(entryIndex), fieldValue.substring(start, end))));
                 }
-            // if we can get the tuple from the cache, retrieve it and advance cursor
-            } else {
-                Tuple tuple = inputTupleList.get(cachedTupleCursor);
-                cachedTupleCursor++;
-                return tuple;
             }
         }
-        
-        /*
-         * closeAll() is the actual "close" function for this cache operator.
-         * It will close this operator and its input operator, and clear the cache
-         * 
-         * It's the caller's responsibility to make sure closeAll() is called after everything.
-         */
-        public void closeAll() throws TextDBException {
-            if (! isOpen) {
-                return;
-            }
-            inputAllConsumed = true;
-            isOpen = false;
-            cachedTupleCursor = 0;
-            inputTupleList = new ArrayList<>();
-            inputOperator.close();
+
+        List<Tuple> resultTuples = new ArrayList<>();
+        if (entrySpans.isEmpty()) {
+            return resultTuples;
         }
 
-        /*
-         * When the child operator (KeywordMatcher) calls "close()", we don't want to close the input operator immediately,
-         * because there might be some tuples that are still not fetched from input operator.
-         * 
-         */
-        @Override
-        public void close() throws TextDBException {
-            if (! isOpen) {
-                throw new DataFlowException(ErrorMessages.OPERATOR_NOT_OPENED);
+        List<IField> inputFields = inputTuple.getFields();
+        if (! inputSchema.containsField(SchemaConstants.PAYLOAD)) {
+            if (payload == null) {
+                payload = DataflowUtils.generatePayloadFromTuple(inputTuple, predicate.getAnalyzerString());
             }
-            // reset the cursor
-            cachedTupleCursor = 0;
+            inputFields = new ArrayList<>(inputFields);
+            inputFields.add(new ListField<Span>(payload));
         }
-        
-        @Override
-        public Schema getOutputSchema() {
-            return this.outputSchema;
+        if (oneResultPerTuple) {
+            List<Span> spanList = new ArrayList<>();
+            entrySpans.values().forEach(spanList::addAll);
+            resultTuples.add(DataflowUtils.getSpanTuple(inputFields, spanList, outputSchema));
+            return resultTuples;
         }
-        
-        public void setInputOperator(IOperator inputOperator) {
-            this.inputOperator = inputOperator;
+        for (List<Span> spanList : entrySpans.values()) {
+            resultTuples.add(DataflowUtils.getSpanTuple(inputFields, spanList, outputSchema));
         }
-        
+        return resultTuples;
+    }
+
+    @Override
+    public void close() throws DataFlowException {
+        if (cursor == CLOSED) {
+            return;
+        }
+        try {
+            inputOperator.close();
+        } catch (Exception e) {
+            throw new DataFlowException(e.getMessage(), e);
+        }
+        pendingResults.clear();
+        cursor = CLOSED;
     }
-    
-    
 
     @Override
     public Schema getOutputSchema() {
@@ -288,6 +260,13 @@ public class DictionaryMatcher implements IOperator {
         return this.offset;
     }
 
+    /*
+     * Used by DictionaryMatcherSourceOperator, which returns each document once.
+     */
+    void setOneResultPerTuple(boolean oneResultPerTuple) {
+        this.oneResultPerTuple = oneResultPerTuple;
+    }
+
     public void setInputOperator(IOperator inputOperator) {
         this.inputOperator = inputOperator;
     }
@@ -1,312 +1,252 @@
-
 package edu.uci.ics.textdb.exp.dictionarymatcher;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import edu.uci.ics.textdb.api.constants.ErrorMessages;
+import java.util.Set;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+
+import edu.uci.ics.textdb.api.constants.SchemaConstants;
+import edu.uci.ics.textdb.api.dataflow.IOperator;
 import edu.uci.ics.textdb.api.dataflow.ISourceOperator;
 import edu.uci.ics.textdb.api.exception.DataFlowException;
+import edu.uci.ics.textdb.api.exception.StorageException;
 import edu.uci.ics.textdb.api.exception.TextDBException;
-import edu.uci.ics.textdb.api.field.ListField;
-import edu.uci.ics.textdb.api.schema.Attribute;
 import edu.uci.ics.textdb.api.schema.AttributeType;
 import edu.uci.ics.textdb.api.schema.Schema;
-import edu.uci.ics.textdb.api.span.Span;
 import edu.uci.ics.textdb.api.tuple.Tuple;
 import edu.uci.ics.textdb.api.utils.Utils;
-import edu.uci.ics.textdb.exp.keywordmatcher.KeywordSourcePredicate;
-import edu.uci.ics.textdb.exp.source.scan.ScanBasedSourceOperator;
-import edu.uci.ics.textdb.exp.source.scan.ScanSourcePredicate;
-import edu.uci.ics.textdb.exp.keywordmatcher.KeywordMatcherSourceOperator;
+import edu.uci.ics.textdb.exp.common.AbstractSingleInputOperator;
 import edu.uci.ics.textdb.exp.keywordmatcher.KeywordMatchingType;
 import edu.uci.ics.textdb.exp.utils.DataflowUtils;
+import edu.uci.ics.textdb.storage.DataReader;
+import edu.uci.ics.textdb.storage.RelationManager;
 
 /**
+ * DictionaryMatcherSourceOperator is a source operator with a dictionary.
+ *
+ * The whole dictionary is one Lucene query: a disjunction of the query of each entry on each attribute
+ *   (the same queries as KeywordMatcherSourceOperator), so the index is searched once and each candidate
+ *   document is read once. The disjunction is nested in batches of at most BooleanQuery.getMaxClauseCount()
+ *   clauses, so dictionaries larger than the clause limit are supported.
+ *   For substring matching, the whole table is scanned.
+ *
+ * The matching entries of each document are then found by a DictionaryMatcher, and the document
+ *   is returned once, with the spans of all its matching entries.
+ *
+ * As in KeywordMatcherSourceOperator, the results have the full payload of each document, unless the predicate
+ *   restricts the payload (see DictionarySourcePredicate.isRestrictPayload): the results then don't have
+ *   the payload, and for the conjunction and phrase matching types, the DataReader only adds the spans of
+ *   the dictionary tokens to the payload, read from the postings of the candidate documents
+ *   (see DataReader.setPayloadTerms).
+ *
  * @author Sudeep (inkudo)
  * @author Zuozhi Wang (zuozhi)
- * 
+ *
  */
-public class DictionaryMatcherSourceOperator implements ISourceOperator {
+public class DictionaryMatcherSourceOperator extends AbstractSingleInputOperator implements ISourceOperator {
 
-    private ISourceOperator indexSource;
-    
-    private KeywordMatcherSourceOperator keywordSource;
+    private final DictionarySourcePredicate predicate;
 
-    private Schema inputSchema;
-    private Schema outputSchema;
+    private final DataReader dataReader;
+    private final DictionaryMatcher dictionaryMatcher;
 
-    private Tuple sourceTuple;
-    private String currentDictionaryEntry;
+    private final Schema inputSchema;
 
-    private final DictionarySourcePredicate predicate;
+    private final List<String> entries;
+    // the tokens of all the entries
+    private final Set<String> dictionaryTokenSet = new HashSet<>();
 
-    private int resultCursor;
-    private int limit;
-    private int offset;
+    // whether the payload is removed from the results
+    private final boolean payloadRemoved;
 
     /**
-     * Constructs a DictionaryMatcher with a dictionary predicate
-     * 
+     * Constructs a DictionaryMatcherSourceOperator with a dictionary predicate
+     *
      * @param predicate
-     * 
+     *
      */
-    public DictionaryMatcherSourceOperator(DictionarySourcePredicate predicate) {
-        this.resultCursor = -1;
-        this.limit = Integer.MAX_VALUE;
-        this.offset = 0;
+    public DictionaryMatcherSourceOperator(DictionarySourcePredicate predicate)
+            throws DataFlowException, StorageException {
         this.predicate = predicate;
-    }
-
-    /**
-     * @about Opens dictionary matcher. Must call open() before calling
-     *        getNextTuple().
-     */
-    @Override
-    public void open() throws DataFlowException {
-        try {
-            currentDictionaryEntry = predicate.getDictionary().getNextEntry();
-            if (currentDictionaryEntry == null) {
-                throw new DataFlowException("Dictionary is empty");
+        this.entries = predicate.getDictionary().getDictionaryEntries();
+
+        // input schema must be specified before creating query
+        this.inputSchema = RelationManager.getRelationManager().getTableDataStore(predicate.getTableName()).getSchema();
+
+        // generate dataReader
+        Query luceneQuery = createLuceneQueryObject();
+
+        this.dataReader = RelationManager.getRelationManager().getTableDataReader(predicate.getTableName(), luceneQuery);
+        this.payloadRemoved = predicate.isRestrictPayload();
+        KeywordMatchingType matchingType = predicate.getKeywordMatchingType();
+        if (matchingType == KeywordMatchingType.CONJUNCTION_INDEXBASED
+                || matchingType == KeywordMatchingType.PHRASE_INDEXBASED) {
+            this.dataReader.setPayloadAdded(true);
+            if (this.payloadRemoved) {
+                this.dataReader.setPayloadTerms(this.dictionaryTokenSet);
             }
+        }
+        this.dataReader.setPrefetchSize(DataReader.DEFAULT_PREFETCH_SIZE);
 
-            if (predicate.getKeywordMatchingType() == KeywordMatchingType.SUBSTRING_SCANBASED) {
-                // For Substring matching, create a scan source operator.
-                indexSource = new ScanBasedSourceOperator(new ScanSourcePredicate(predicate.getTableName()));
-                indexSource.open();
-
-                // Substring matching's output schema needs to contains span
-                // list.
-                inputSchema = indexSource.getOutputSchema();
-                outputSchema = inputSchema;
-                if (inputSchema.containsField(predicate.getSpanListName())) {
-                    throw new DataFlowException(ErrorMessages.DUPLICATE_ATTRIBUTE(
-                            predicate.getSpanListName(), inputSchema));
-                }
-                outputSchema = Utils.addAttributeToSchema(outputSchema, 
-                        new Attribute(predicate.getSpanListName(), AttributeType.LIST));
-
-
-            } else {
-                // For other keyword matching types (conjunction and phrase),
-                // create keyword matcher based on index.
-
-                keywordSource = new KeywordMatcherSourceOperator(new KeywordSourcePredicate(
-                        currentDictionaryEntry,
-                        predicate.getAttributeNames(),
-                        predicate.getAnalyzerString(),
-                        predicate.getKeywordMatchingType(),
-                        predicate.getTableName(),
-                        predicate.getSpanListName()));
-                keywordSource.open();
-
-                // Other keyword matching types uses a KeywordMatcher, so the
-                // output schema is the same as keywordMatcher's schema
-                inputSchema = keywordSource.getOutputSchema();
-                outputSchema = keywordSource.getOutputSchema();
-            }
+        // generate DictionaryMatcher
+        this.dictionaryMatcher = new DictionaryMatcher(predicate);
+        this.dictionaryMatcher.setOneResultPerTuple(true);
+        this.dictionaryMatcher.setInputOperator(dataReader);
 
-        } catch (Exception e) {
-            throw new DataFlowException(e.getMessage(), e);
-        }
+        this.inputOperator = this.dictionaryMatcher;
     }
 
-    /**
-     * @about Gets the next matched tuple. <br>
-     *        Returns the tuple with results in spanList. <br>
-     * 
-     *        Performs SCAN, KEYWORD_BASIC, or KEYWORD_PHRASE depends on the
-     *        dictionary predicate. <br>
-     * 
-     *        DictionaryOperatorType.SCAN: <br>
-     *        Scan the tuples using ScanSourceOperator. <br>
-     *        For each tuple, loop through the dictionary and find results. <br>
-     *        We assume the dictionary is smaller than the data at the source
-     *        operator, we treat the data source as the outer relation to reduce
-     *        the number of disk IOs. <br>
-     * 
-     *        DictionaryOperatorType.KEYWORD_BASIC, KEYWORD_PHRASE: <br>
-     *        Use KeywordMatcher to find results. <br>
-     * 
-     *        KEYWORD_BASIC corresponds to KeywordOperatorType.BASIC, which
-     *        performs keyword search on the document. The input query is
-     *        tokenized. The order of the tokens doesn't matter. <br>
-     * 
-     *        KEYWORD_PHRASE corresponds to KeywordOperatorType.PHRASE, which
-     *        performs phrase search on the document. The input query is
-     *        tokenized. The order of the tokens does matter. Stopwords are
-     *        treated as placeholders to indicate an arbitary token. <br>
-     * 
-     */
     @Override
-    public Tuple getNextTuple() throws TextDBException {
-        if (resultCursor >= limit + offset - 1) {
-            return null;
-        }
-        if (predicate.getKeywordMatchingType() == KeywordMatchingType.PHRASE_INDEXBASED
-                || predicate.getKeywordMatchingType() == KeywordMatchingType.CONJUNCTION_INDEXBASED) {
-            // For each dictionary entry,
-            // get all result from KeywordMatcher.
-
-            while (true) {
-                // If there's result from current keywordMatcher, return it.
-                if ((sourceTuple = keywordSource.getNextTuple()) != null) {
-                    resultCursor++;
-                    if (resultCursor >= offset) {
-                        return sourceTuple;
-                    }
-                    continue;
-                }
-                // If all results from current keywordMatcher are consumed,
-                // advance to next dictionary entry, and
-                // return null if reach the end of dictionary.
-                if ((currentDictionaryEntry = predicate.getDictionary().getNextEntry()) == null) {
-                    return null;
-                }
-
-                // Construct a new KeywordMatcher with the new dictionary entry.
-                KeywordMatchingType keywordMatchingType;
-                if (predicate.getKeywordMatchingType() == KeywordMatchingType.PHRASE_INDEXBASED) {
-                    keywordMatchingType = KeywordMatchingType.PHRASE_INDEXBASED;
-                } else {
-                    keywordMatchingType = KeywordMatchingType.CONJUNCTION_INDEXBASED;
-                }
-
-                keywordSource.close();
-
-                KeywordSourcePredicate keywordSourcePredicate = new KeywordSourcePredicate(currentDictionaryEntry,
-                        predicate.getAttributeNames(),
-                        predicate.getAnalyzerString(), keywordMatchingType,
-                        predicate.getTableName(),
-                        predicate.getSpanListName());
+    public Schema getOutputSchema() {
+        return this.outputSchema;
+    }
 
-                keywordSource = new KeywordMatcherSourceOperator(keywordSourcePredicate);
-                keywordSource.open();
-            }
+    @Override
+    protected void setUp() throws DataFlowException {
+        this.outputSchema = dictionaryMatcher.getOutputSchema();
+        if (payloadRemoved) {
+            this.outputSchema = Utils.removeAttributeFromSchema(this.outputSchema, SchemaConstants.PAYLOAD);
         }
-        // Substring matching (based on scan)
-        else {
-            Tuple sourceTuple;
-            Tuple resultTuple = null;
-            while ((sourceTuple = indexSource.getNextTuple()) != null) {
-                sourceTuple = DataflowUtils.getSpanTuple(sourceTuple.getFields(), new ArrayList<Span>(), outputSchema);
-
-                resultTuple = computeMatchingResult(currentDictionaryEntry, sourceTuple);
-                if (resultTuple != null) {
-                    resultCursor++;
-                }
-                if (resultTuple != null && resultCursor >= offset) {
-                    break;
-                }
-            }
-            return resultTuple;
+    }
+
+    @Override
+    protected Tuple computeNextMatchingTuple() throws TextDBException {
+        Tuple resultTuple = this.dictionaryMatcher.getNextTuple();
+        if (resultTuple != null && payloadRemoved) {
+            resultTuple = Utils.removeFields(resultTuple, SchemaConstants.PAYLOAD);
         }
+        return resultTuple;
     }
 
-    public void setLimit(int limit) {
-        this.limit = limit;
+    /**
+     * Returns the input tuple with the spans of all its matching entries, null if no entry matches.
+     */
+    @Override
+    public Tuple processOneInputTuple(Tuple inputTuple) throws TextDBException {
+        List<Tuple> resultTuples = this.dictionaryMatcher.processOneInputTuple(inputTuple);
+        return resultTuples.isEmpty() ? null : resultTuples.get(0);
     }
 
-    public int getLimit() {
-        return this.limit;
+    @Override
+    protected void cleanUp() throws DataFlowException {
     }
 
-    public void setOffset(int offset) {
-        this.offset = offset;
+    /**
+     * Source Operator doesn't need an input operator. Calling setInputOperator
+     * won't have any effects.
+     */
+    @Override
+    public void setInputOperator(IOperator inputOperator) {
     }
 
-    public int getOffset() {
-        return this.offset;
+    public DictionarySourcePredicate getPredicate() {
+        return this.predicate;
     }
 
-    /*
-     * Advance the cursor of dictionary. if reach the end of the dictionary,
-     * advance the cursor of tuples and reset dictionary
+    /**
+     * Creates the Lucene query of the dictionary: a disjunction of the query of each entry on each attribute.
+     * The tokens of the entries are collected in dictionaryTokenSet.
+     *
+     * @return Query
+     * @throws DataFlowException
      */
-    private void advanceDictionaryCursor() throws TextDBException {
-        if ((currentDictionaryEntry = predicate.getDictionary().getNextEntry()) != null) {
-            return;
+    private Query createLuceneQueryObject() throws DataFlowException {
+        for (String attributeName : this.predicate.getAttributeNames()) {
+            AttributeType attributeType = this.inputSchema.getAttribute(attributeName).getAttributeType();
+
+            // types other than TEXT and STRING: throw Exception for now
+            if (attributeType != AttributeType.STRING && attributeType != AttributeType.TEXT) {
+                throw new DataFlowException(
+                        "DictionaryPredicate: Fields other than STRING and TEXT are not supported yet");
+            }
         }
-        predicate.getDictionary().resetCursor();
-        currentDictionaryEntry = predicate.getDictionary().getNextEntry();
-    }
 
-    /*
-     * Match the key against the Tuple. if there's no match, returns the
-     * original Tuple object, if there's a match, return a new Tuple
-     * with span list added
-     */
-    private Tuple computeMatchingResult(String key, Tuple sourceTuple) throws TextDBException {
+        if (this.predicate.getKeywordMatchingType() == KeywordMatchingType.SUBSTRING_SCANBASED) {
+            return new MatchAllDocsQuery();
+        }
 
-        List<String> attributeNames = predicate.getAttributeNames();
-        List<Span> matchingResults = new ArrayList<>();
+        List<Query> entryQueries = new ArrayList<>();
+        for (String entry : entries) {
+            List<String> tokens = DataflowUtils.tokenizeQuery(predicate.getAnalyzerString(), entry);
+            // the phrase positions come from the standard analyzer, as in KeywordMatcherSourceOperator
+            //   (see DictionaryTokenMatcher)
+            List<String> tokensWithStopwords = DataflowUtils.tokenizeQueryWithStopwords(entry);
+            dictionaryTokenSet.addAll(tokens);
 
-        for (String attributeName : attributeNames) {
-            String fieldValue = sourceTuple.getField(attributeName).getValue().toString();
-            AttributeType attributeType = inputSchema.getAttribute(attributeName).getAttributeType();
+            for (String attributeName : this.predicate.getAttributeNames()) {
+                AttributeType attributeType = this.inputSchema.getAttribute(attributeName).getAttributeType();
 
-            // if attribute type is not TEXT, then key needs to match the
-            // fieldValue exactly
-            if (attributeType != AttributeType.TEXT) {
-                if (fieldValue.equals(key)) {
-                    matchingResults.add(new Span(attributeName, 0, fieldValue.length(), key, fieldValue));
+                if (attributeType == AttributeType.STRING) {
+                    entryQueries.add(new TermQuery(new Term(attributeName, entry)));
                 }
-            }
-            // if attribute type is TEXT, then key can match a substring of
-            // fieldValue
-            else {
-                String regex = key.toLowerCase();
-                Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
-                Matcher matcher = pattern.matcher(fieldValue.toLowerCase());
-                while (matcher.find()) {
-                    int start = matcher.start();
-                    int end = matcher.end();
-
-                    matchingResults.add(new Span(attributeName, start, end, key, fieldValue.substring(start, end)));
+                if (attributeType == AttributeType.TEXT && ! tokens.isEmpty()) {
+                    if (this.predicate.getKeywordMatchingType() == KeywordMatchingType.CONJUNCTION_INDEXBASED) {
+                        entryQueries.add(buildConjunctionQuery(attributeName, tokens));
+                    } else {
+                        entryQueries.add(buildPhraseQuery(attributeName, tokens, tokensWithStopwords));
+                    }
                 }
             }
         }
 
-        advanceDictionaryCursor();
+        return buildDisjunctionQuery(entryQueries);
+    }
 
-        if (matchingResults.size() == 0) {
-            return null;
+    private static Query buildConjunctionQuery(String attributeName, List<String> tokens) {
+        BooleanQuery.Builder fieldQueryBuilder = new BooleanQuery.Builder();
+        for (String token : new LinkedHashSet<>(tokens)) {
+            Query termQuery = new TermQuery(new Term(attributeName, token.toLowerCase()));
+            fieldQueryBuilder.add(termQuery, BooleanClause.Occur.MUST);
         }
+        return fieldQueryBuilder.build();
+    }
 
-        ListField<Span> spanListField = sourceTuple.getField(predicate.getSpanListName());
-        List<Span> spanList = spanListField.getValue();
-        spanList.addAll(matchingResults);
-
-        return sourceTuple;
+    private static Query buildPhraseQuery(String attributeName, List<String> tokens, List<String> tokensWithStopwords) {
+        if (tokens.size() == 1) {
+            return new TermQuery(new Term(attributeName, tokens.get(0).toLowerCase()));
+        }
+        PhraseQuery.Builder phraseQueryBuilder = new PhraseQuery.Builder();
+        for (int i = 0; i < tokensWithStopwords.size(); i++) {
+            if (!StandardAnalyzer.STOP_WORDS_SET.contains(tokensWithStopwords.get(i))) {
+                phraseQueryBuilder.add(new Term(attributeName, tokensWithStopwords.get(i).toLowerCase()), i);
+            }
+        }
+        return phraseQueryBuilder.build();
     }
 
-    /**
-     * @about Closes the operator
+    /*
+     * Combines the queries with SHOULD clauses. If there are more queries than the clause limit,
+     *   they are grouped in batches first, and the batches are combined the same way.
      */
-    @Override
-    public void close() throws DataFlowException {
-        try {
-            if (keywordSource != null) {
-                keywordSource.close();
+    private static Query buildDisjunctionQuery(List<Query> queries) {
+        int maxClauseCount = BooleanQuery.getMaxClauseCount();
+        while (queries.size() > maxClauseCount) {
+            List<Query> batchQueries = new ArrayList<>();
+            for (int start = 0; start < queries.size(); start += maxClauseCount) {
+                batchQueries.add(buildBooleanShouldQuery(
+                        queries.subList(start, Math.min(start + maxClauseCount, queries.size()))));
             }
-            if (indexSource != null) {
-                indexSource.close();
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new DataFlowException(e.getMessage(), e);
+            queries = batchQueries;
         }
+        return buildBooleanShouldQuery(queries);
     }
 
-    @Override
-    public Schema getOutputSchema() {
-        return outputSchema;
+    private static Query buildBooleanShouldQuery(List<Query> queries) {
+        BooleanQuery.Builder booleanQueryBuilder = new BooleanQuery.Builder();
+        for (Query query : queries) {
+            booleanQueryBuilder.add(query, BooleanClause.Occur.SHOULD);
+        }
+        return booleanQueryBuilder.build();
     }
 
-    public DictionaryPredicate getPredicate() {
-        return this.predicate;
-    }
-    
 }
@@ -13,6 +13,17 @@ import edu.uci.ics.textdb.exp.keywordmatcher.KeywordMatchingType;
 public class DictionarySourcePredicate extends DictionaryPredicate {
     
     private final String tableName;
+    private final Boolean restrictPayload;
+    
+    public DictionarySourcePredicate(
+            Dictionary dictionary, 
+            List<String> attributeNames, 
+            String luceneAnalyzerStr,
+            KeywordMatchingType keywordMatchingType,
+            String tableName,
+            String spanListName) {
+        this(dictionary, attributeNames, luceneAnalyzerStr, keywordMatchingType, tableName, spanListName, null);
+    }
     
     /**
      * DictionarySourcePredicate is used to create a DictionarySourceOperator.
@@ -22,6 +33,9 @@ public class DictionarySourcePredicate extends DictionaryPredicate {
      * @param luceneAnalyzerStr, the lucene analyzer to tokenize the dictionary entries
      * @param keywordMatchingType, the keyword matching type ({@code KeywordMatchingType}
      * @param tableName, the name of the source table
+     * @param spanListName, the name of the attribute where the results will be put in
+     * @param restrictPayload, optional, removes the payload from the results, so that only the spans of
+     *   the dictionary tokens are read (see DictionaryMatcherSourceOperator), default false
      */
     @JsonCreator
     public DictionarySourcePredicate(
@@ -36,9 +50,16 @@ public class DictionarySourcePredicate extends DictionaryPredicate {
             @JsonProperty(value = PropertyNameConstants.TABLE_NAME, required = true)
             String tableName,
             @JsonProperty(value = PropertyNameConstants.SPAN_LIST_NAME, required = false)
-            String spanListName) {
+            String spanListName,
+            @JsonProperty(value = PropertyNameConstants.RESTRICT_PAYLOAD, required = false)
+            Boolean restrictPayload) {
         super(dictionary, attributeNames, luceneAnalyzerStr, keywordMatchingType, spanListName);
         this.tableName = tableName;
+        if (restrictPayload == null) {
+            this.restrictPayload = false;
+        } else {
+            this.restrictPayload = restrictPayload;
+        }
     }
     
     @JsonProperty(value = PropertyNameConstants.TABLE_NAME)
@@ -46,6 +67,11 @@ public class DictionarySourcePredicate extends DictionaryPredicate {
         return this.tableName;
     }
     
+    @JsonProperty(value = PropertyNameConstants.RESTRICT_PAYLOAD)
+    public Boolean isRestrictPayload() {
+        return this.restrictPayload;
+    }
+    
     @Override
     public IOperator newOperator() {
         return new DictionaryMatcherSourceOperator(this);
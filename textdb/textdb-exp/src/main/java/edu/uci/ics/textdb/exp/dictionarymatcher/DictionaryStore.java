@@ -0,0 +1,302 @@
+package edu.uci.ics.textdb.exp.dictionarymatcher;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.fst.Builder;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.PositiveIntOutputs;
+import org.apache.lucene.util.fst.Util;
+
+import edu.uci.ics.textdb.api.exception.DataFlowException;
+import edu.uci.ics.textdb.api.exception.StorageException;
+import edu.uci.ics.textdb.api.exception.TextDBException;
+import edu.uci.ics.textdb.api.tuple.Tuple;
+import edu.uci.ics.textdb.storage.DataReader;
+import edu.uci.ics.textdb.storage.RelationManager;
+
+/**
+ * DictionaryStore keeps named dictionaries, so that a plan can refer to a large dictionary by its name
+ *   (see Dictionary) instead of listing all its entries.
+ *
+ * A dictionary is stored as a Lucene FST (finite state transducer) of its entries: the entries are sorted
+ *   and deduplicated, and their common prefixes and suffixes are shared, so the FST is much smaller than
+ *   the entry strings. The output of each entry is its ordinal in sorted order.
+ *   Each dictionary is saved in a file in DictionaryStoreConstants.DICTIONARY_DIR,
+ *   and its FST is cached in memory once it's loaded, so the plans using it don't load it again.
+ *
+ * The entries of a named dictionary are returned in sorted (UTF-8 byte) order, as a list backed by the FST
+ *   (see DictionaryEntryList): the entries are decoded when they are read, and looked up by their ordinals,
+ *   no list of the entry strings is built.
+ *   The token matchers compiled from a dictionary are also cached per dictionary and analyzer
+ *   (see getTokenMatcher), so the plans using the same dictionary only analyze its entries once.
+ *   They are softly referenced, so the garbage collector can drop them when memory runs low.
+ *
+ */
+public class DictionaryStore {
+
+    private static DictionaryStore instance = null;
+
+    private final Map<String, DictionaryEntryList> dictionaryCache = new ConcurrentHashMap<>();
+    // the compiled token matchers, keyed by the dictionary name, then by the analyzer string
+    private final Map<String, Map<String, SoftReference<DictionaryTokenMatcher>>> tokenMatcherCache =
+            new ConcurrentHashMap<>();
+
+    private DictionaryStore() {
+    }
+
+    public synchronized static DictionaryStore getInstance() {
+        if (instance == null) {
+            instance = new DictionaryStore();
+        }
+        return instance;
+    }
+
+    /**
+     * Adds a dictionary with a collection of entries. Empty entries are ignored.
+     *
+     * @param dictionaryName, the name of the dictionary
+     * @param entries, the entries of the dictionary
+     * @throws TextDBException, if the name is invalid or there is an existing dictionary with the same name.
+     */
+    public void addDictionary(String dictionaryName, Collection<String> entries) throws TextDBException {
+        checkNewDictionaryName(dictionaryName);
+        DictionaryEntryList dictionaryEntries = buildDictionaryFST(entries);
+
+        Path dictionaryPath = getDictionaryPath(dictionaryName);
+        try {
+            Files.createDirectories(dictionaryPath.getParent());
+            // write a temporary file first, so that a dictionary file is always complete
+            Path temporaryPath = Files.createTempFile(dictionaryPath.getParent(), dictionaryName, null);
+            dictionaryEntries.getDictionaryFST().save(temporaryPath);
+            Files.move(temporaryPath, dictionaryPath, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+        dictionaryCache.put(dictionaryName, dictionaryEntries);
+    }
+
+    /**
+     * Adds a dictionary with the lines of a UTF-8 text file as entries.
+     * The lines are trimmed, and empty lines are ignored.
+     *
+     * @param dictionaryName, the name of the dictionary
+     * @param filePath, the path of the file
+     * @throws TextDBException
+     */
+    public void addDictionaryFromFile(String dictionaryName, String filePath) throws TextDBException {
+        checkNewDictionaryName(dictionaryName);
+        List<String> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(filePath), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                entries.add(line.trim());
+            }
+        } catch (IOException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+        addDictionary(dictionaryName, entries);
+    }
+
+    /**
+     * Adds a dictionary with the values of an attribute of a table as entries.
+     *
+     * @param dictionaryName, the name of the dictionary
+     * @param tableName, the name of the table
+     * @param attributeName, the name of the attribute
+     * @throws TextDBException
+     */
+    public void addDictionaryFromTable(String dictionaryName, String tableName, String attributeName)
+            throws TextDBException {
+        checkNewDictionaryName(dictionaryName);
+        DataReader dataReader = RelationManager.getRelationManager().getTableDataReader(
+                tableName, new MatchAllDocsQuery());
+        List<String> entries = new ArrayList<>();
+        dataReader.open();
+        try {
+            if (! dataReader.getOutputSchema().containsField(attributeName)) {
+                throw new DataFlowException(String.format("attribute %s doesn't exist in table %s",
+                        attributeName, tableName));
+            }
+            Tuple tuple;
+            while ((tuple = dataReader.getNextTuple()) != null) {
+                entries.add(tuple.getField(attributeName).getValue().toString());
+            }
+        } finally {
+            dataReader.close();
+        }
+        addDictionary(dictionaryName, entries);
+    }
+
+    public boolean containsDictionary(String dictionaryName) {
+        if (! isValidDictionaryName(dictionaryName)) {
+            return false;
+        }
+        return dictionaryCache.containsKey(dictionaryName) || Files.exists(getDictionaryPath(dictionaryName));
+    }
+
+    /**
+     * Gets the entries of a dictionary, in sorted order.
+     * The list is backed by the FST of the dictionary (see DictionaryEntryList), the entries are not copied.
+     *
+     * @param dictionaryName, the name of the dictionary
+     * @return
+     * @throws TextDBException, if the dictionary doesn't exist.
+     */
+    public List<String> getDictionaryEntries(String dictionaryName) throws TextDBException {
+        DictionaryEntryList dictionaryEntries = dictionaryCache.get(dictionaryName);
+        if (dictionaryEntries != null) {
+            return dictionaryEntries;
+        }
+        if (! containsDictionary(dictionaryName)) {
+            throw new DataFlowException(String.format("dictionary %s doesn't exist", dictionaryName));
+        }
+        try {
+            dictionaryEntries = DictionaryEntryList.countEntries(
+                    FST.read(getDictionaryPath(dictionaryName), PositiveIntOutputs.getSingleton()));
+        } catch (IOException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+        // another thread may have loaded it at the same time, keep only one of them
+        DictionaryEntryList cachedEntries = dictionaryCache.putIfAbsent(dictionaryName, dictionaryEntries);
+        return cachedEntries != null ? cachedEntries : dictionaryEntries;
+    }
+
+    /**
+     * Iterates the entries of a dictionary in sorted order, reading them from the FST one by one.
+     *
+     * @param dictionaryName, the name of the dictionary
+     * @return
+     * @throws TextDBException, if the dictionary doesn't exist.
+     */
+    public Iterator<String> iterateDictionaryEntries(String dictionaryName) throws TextDBException {
+        return getDictionaryEntries(dictionaryName).iterator();
+    }
+
+    /**
+     * Gets a token matcher of a dictionary (see DictionaryTokenMatcher). The matcher is compiled
+     *   the first time for each analyzer, and the later calls return a copy that shares the compiled entries,
+     *   until the garbage collector drops the cached matcher.
+     *
+     * @param dictionaryName, the name of the dictionary
+     * @param luceneAnalyzerString, the analyzer of the entries
+     * @return
+     * @throws TextDBException, if the dictionary doesn't exist.
+     */
+    DictionaryTokenMatcher getTokenMatcher(String dictionaryName, String luceneAnalyzerString)
+            throws TextDBException {
+        List<String> entries = getDictionaryEntries(dictionaryName);
+        Map<String, SoftReference<DictionaryTokenMatcher>> analyzerMatchers = tokenMatcherCache.computeIfAbsent(
+                dictionaryName, name -> new ConcurrentHashMap<>());
+        SoftReference<DictionaryTokenMatcher> matcherReference = analyzerMatchers.get(luceneAnalyzerString);
+        DictionaryTokenMatcher tokenMatcher = matcherReference == null ? null : matcherReference.get();
+        if (tokenMatcher == null) {
+            // two threads may compile the same matcher at the same time, both of them are correct
+            tokenMatcher = new DictionaryTokenMatcher(entries, luceneAnalyzerString);
+            analyzerMatchers.put(luceneAnalyzerString, new SoftReference<>(tokenMatcher));
+        }
+        return tokenMatcher.copy();
+    }
+
+    /**
+     * Checks if a dictionary contains an entry, without reading all its entries.
+     *
+     * @param dictionaryName, the name of the dictionary
+     * @param entry
+     * @return
+     * @throws TextDBException, if the dictionary doesn't exist.
+     */
+    public boolean containsEntry(String dictionaryName, String entry) throws TextDBException {
+        return getDictionaryEntries(dictionaryName).contains(entry);
+    }
+
+    /**
+     * Deletes a dictionary, both its file and its cached FST.
+     *
+     * @param dictionaryName, the name of the dictionary
+     * @throws TextDBException
+     */
+    public void deleteDictionary(String dictionaryName) throws TextDBException {
+        if (! isValidDictionaryName(dictionaryName)) {
+            return;
+        }
+        dictionaryCache.remove(dictionaryName);
+        tokenMatcherCache.remove(dictionaryName);
+        try {
+            Files.deleteIfExists(getDictionaryPath(dictionaryName));
+        } catch (IOException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+    }
+
+    private void checkNewDictionaryName(String dictionaryName) throws TextDBException {
+        if (! isValidDictionaryName(dictionaryName)) {
+            throw new TextDBException("Dictionary name is not valid. It can only contain alphanumeric characters, " +
+                    "underscore, and hyphen.");
+        }
+        if (containsDictionary(dictionaryName)) {
+            throw new TextDBException("A dictionary with the same name already exists");
+        }
+    }
+
+    private static boolean isValidDictionaryName(String dictionaryName) {
+        return dictionaryName != null && DictionaryStoreConstants.VALID_DICTIONARY_NAME.matcher(dictionaryName).find();
+    }
+
+    /*
+     * Builds the FST of the entries, the FST builder needs the entries in sorted order and without duplicates.
+     * The output of each entry is its ordinal.
+     */
+    private static DictionaryEntryList buildDictionaryFST(Collection<String> entries) throws TextDBException {
+        List<BytesRef> sortedEntries = new ArrayList<>();
+        for (String entry : entries) {
+            if (entry != null && ! entry.isEmpty()) {
+                sortedEntries.add(new BytesRef(entry));
+            }
+        }
+        if (sortedEntries.isEmpty()) {
+            throw new DataFlowException("Dictionary is empty");
+        }
+        Collections.sort(sortedEntries);
+
+        PositiveIntOutputs outputs = PositiveIntOutputs.getSingleton();
+        Builder<Long> builder = new Builder<>(FST.INPUT_TYPE.BYTE1, outputs);
+        IntsRefBuilder scratchInts = new IntsRefBuilder();
+        try {
+            BytesRef previousEntry = null;
+            int ordinal = 0;
+            for (BytesRef entry : sortedEntries) {
+                if (! entry.equals(previousEntry)) {
+                    builder.add(Util.toIntsRef(entry, scratchInts), (long) ordinal);
+                    ordinal++;
+                    previousEntry = entry;
+                }
+            }
+            return new DictionaryEntryList(builder.finish(), ordinal);
+        } catch (IOException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+    }
+
+    private static Path getDictionaryPath(String dictionaryName) {
+        return Paths.get(DictionaryStoreConstants.DICTIONARY_DIR,
+                dictionaryName + DictionaryStoreConstants.DICTIONARY_FILE_EXTENSION);
+    }
+
+}
@@ -0,0 +1,19 @@
+package edu.uci.ics.textdb.exp.dictionarymatcher;
+
+import java.nio.file.Paths;
+import java.util.regex.Pattern;
+
+import edu.uci.ics.textdb.api.utils.Utils;
+
+/**
+ * Variables used in DictionaryStore.java.
+ */
+public class DictionaryStoreConstants {
+
+    public static final Pattern VALID_DICTIONARY_NAME = Pattern.compile("^[a-zA-Z0-9\\-_]{1,}$");
+
+    public static final String DICTIONARY_DIR = Paths.get(Utils.getTextdbHomePath(), "dictionary").toString();
+
+    public static final String DICTIONARY_FILE_EXTENSION = ".fst";
+
+}
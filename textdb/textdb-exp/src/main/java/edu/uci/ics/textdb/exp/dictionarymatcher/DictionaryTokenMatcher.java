@@ -0,0 +1,545 @@
+package edu.uci.ics.textdb.exp.dictionarymatcher;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import edu.uci.ics.textdb.api.span.Span;
+import edu.uci.ics.textdb.exp.utils.DataflowUtils;
+
+/**
+ * DictionaryTokenMatcher matches all the entries of a dictionary against the payload of an attribute at once,
+ *   with the same results as a KeywordMatcher per entry (conjunction or phrase matching).
+ *
+ * The entries are analyzed once, when the matcher is created, and their tokens are mapped to integer IDs.
+ *
+ * Conjunction: each token ID has the list of the entries that contain it. One pass over the spans of the attribute
+ *   counts the distinct tokens present of each entry, and an entry matches if all its tokens are present.
+ *
+ * Phrase: the tokens of each entry up to its first stopword gap (the "head" of the phrase) are compiled into
+ *   an Aho-Corasick automaton over token IDs. The spans of the attribute are laid out by token offset and
+ *   the automaton runs over them once. When the head of an entry is found, the rest of the entry is checked
+ *   at the token offsets given by its gaps.
+ *   As in KeywordMatcher, the tokens of a phrase must be adjacent among the spans of the entry's tokens,
+ *   so a gap can hold any token except one of the entry, and the occurrences of an entry don't overlap.
+ *   The analyzers are assumed to produce at most one token per offset.
+ *   As in KeywordMatcher, the gaps come from the standard analyzer keeping the stopwords, whatever the analyzer
+ *   of the entries is, so they're only exact for analyzers that split the text into words like it.
+ *
+ * The per-call state (counts, stamps, the offset layout) is kept in arrays that are reused across calls.
+ *
+ * A DictionaryTokenMatcher is not thread-safe, each DictionaryMatcher has its own. The matchers of
+ *   a named dictionary are copies of a matcher cached in the DictionaryStore (see copy),
+ *   they share the compiled entries and only have their own per-call state.
+ *
+ */
+class DictionaryTokenMatcher {
+
+    /**
+     * Receives the spans of the entries found by a DictionaryTokenMatcher.
+     */
+    interface EntrySpanHandler {
+        void onSpan(int entryIndex, Span span);
+    }
+
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+    // the token IDs of an offset without a token, and of a token that isn't in any entry
+    private static final int NO_TOKEN = -2;
+    private static final int UNKNOWN_TOKEN = -1;
+
+    private final List<String> entries;
+
+    // the ID of each distinct token of the entries
+    private final Map<String, Integer> tokenIDs;
+
+    // the analyzed tokens of each entry (stopwords removed), their distinct token IDs,
+    //   and the token offset gaps between adjacent tokens (stopwords included), as in KeywordTokenMatcher
+    private final int[][] entryTokenIDs;
+    private final int[][] entryDistinctTokenIDs;
+    private final int[][] entryOffsetGaps;
+
+    // the entries that contain each token
+    private final int[][] tokenEntries;
+
+    // the phrase automaton: the length of the head of each entry (0 if the entry can't match a phrase),
+    //   the edges of state s are the entries [edgeStarts[s], edgeStarts[s + 1]) of edgeLabels and edgeTargets
+    private final int[] entryHeadLengths;
+    private final int[] edgeStarts;
+    private final int[] edgeLabels;
+    private final int[] edgeTargets;
+    private final int[] failureLinks;
+    private final int[] outputLinks;
+    // the first entry whose head ends at each state, and the next entry with the same head
+    private final int[] stateEntries;
+    private final int[] nextSameHeadEntries;
+
+    // per-call state, valid where the stamp equals the current call's stamp
+    private int callStamp = 0;
+    private final int[] tokenStamps;
+    private final int[] entryStamps;
+    private final int[] entryCounts;
+    private final int[] lastMatchEnds;
+    private int[] touchedEntries = new int[16];
+
+    // the spans of the current attribute with their token IDs
+    private int numSpans = 0;
+    private Span[] spans = new Span[16];
+    private int[] spanTokenIDs = new int[16];
+
+    // the spans of the current attribute laid out by token offset, starting at the smallest offset
+    private Span[] offsetSpans = new Span[16];
+    private int[] offsetTokenIDs = new int[16];
+
+    /**
+     * @param entries, the dictionary entries
+     * @param luceneAnalyzerString, the analyzer of the entries, the same as the analyzer of the payload
+     */
+    DictionaryTokenMatcher(List<String> entries, String luceneAnalyzerString) {
+        this.entries = entries;
+        this.tokenIDs = new HashMap<>();
+        int numEntries = entries.size();
+        this.entryTokenIDs = new int[numEntries][];
+        this.entryDistinctTokenIDs = new int[numEntries][];
+        this.entryOffsetGaps = new int[numEntries][];
+
+        // the entries are read in one pass, the list of a named dictionary is backed by its FST
+        Iterator<String> entryIterator = entries.iterator();
+        for (int e = 0; e < numEntries; e++) {
+            String entry = entryIterator.next();
+            List<String> tokens = DataflowUtils.tokenizeQuery(luceneAnalyzerString, entry);
+            List<String> tokensWithStopwords = DataflowUtils.tokenizeQueryWithStopwords(entry);
+
+            int[] tokenIDArray = new int[tokens.size()];
+            int[] distinctTokenIDs = new int[tokens.size()];
+            int numDistinct = 0;
+            for (int i = 0; i < tokens.size(); i++) {
+                Integer tokenID = tokenIDs.get(tokens.get(i));
+                if (tokenID == null) {
+                    tokenID = tokenIDs.size();
+                    tokenIDs.put(tokens.get(i), tokenID);
+                }
+                tokenIDArray[i] = tokenID;
+                if (! contains(distinctTokenIDs, numDistinct, tokenID)) {
+                    distinctTokenIDs[numDistinct++] = tokenID;
+                }
+            }
+            entryTokenIDs[e] = tokenIDArray;
+            entryDistinctTokenIDs[e] = Arrays.copyOf(distinctTokenIDs, numDistinct);
+            entryOffsetGaps[e] = computeOffsetGaps(tokens, tokensWithStopwords);
+        }
+
+        int numTokens = tokenIDs.size();
+        this.tokenEntries = buildTokenEntries(numTokens);
+
+        this.tokenStamps = new int[numTokens];
+        this.entryStamps = new int[numEntries];
+        this.entryCounts = new int[numEntries];
+        this.lastMatchEnds = new int[numEntries];
+
+        // build the trie of the heads with a map of the edges first, it's converted to arrays afterwards
+        this.entryHeadLengths = new int[numEntries];
+        this.nextSameHeadEntries = new int[numEntries];
+        Map<Long, Integer> edges = new HashMap<>();
+        List<Integer> entriesAtState = new ArrayList<>();
+        entriesAtState.add(NONE);
+        // the entries are added backwards, so that the entries with the same head are reported in their order
+        for (int e = numEntries - 1; e >= 0; e--) {
+            nextSameHeadEntries[e] = NONE;
+            int headLength = getHeadLength(e);
+            entryHeadLengths[e] = headLength;
+            if (headLength == 0) {
+                continue;
+            }
+            int state = ROOT;
+            for (int i = 0; i < headLength; i++) {
+                long edgeKey = getEdgeKey(state, entryTokenIDs[e][i]);
+                Integer child = edges.get(edgeKey);
+                if (child == null) {
+                    child = entriesAtState.size();
+                    edges.put(edgeKey, child);
+                    entriesAtState.add(NONE);
+                }
+                state = child;
+            }
+            nextSameHeadEntries[e] = entriesAtState.get(state);
+            entriesAtState.set(state, e);
+        }
+
+        int numStates = entriesAtState.size();
+        long[] edgeKeys = new long[edges.size()];
+        int edge = 0;
+        for (long edgeKey : edges.keySet()) {
+            edgeKeys[edge++] = edgeKey;
+        }
+        // sorted by state, then by label
+        Arrays.sort(edgeKeys);
+        this.edgeStarts = new int[numStates + 1];
+        this.edgeLabels = new int[edgeKeys.length];
+        this.edgeTargets = new int[edgeKeys.length];
+        this.stateEntries = new int[numStates];
+        edge = 0;
+        for (int state = 0; state < numStates; state++) {
+            edgeStarts[state] = edge;
+            while (edge < edgeKeys.length && (int) (edgeKeys[edge] >>> 32) == state) {
+                edgeLabels[edge] = (int) edgeKeys[edge];
+                edgeTargets[edge] = edges.get(edgeKeys[edge]);
+                edge++;
+            }
+            stateEntries[state] = entriesAtState.get(state);
+        }
+        edgeStarts[numStates] = edge;
+
+        // compute the failure and output links in breadth-first order, so that the links of shorter heads are ready
+        this.failureLinks = new int[numStates];
+        this.outputLinks = new int[numStates];
+        outputLinks[ROOT] = NONE;
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(ROOT);
+        while (! queue.isEmpty()) {
+            int state = queue.poll();
+            for (int e = edgeStarts[state]; e < edgeStarts[state + 1]; e++) {
+                int label = edgeLabels[e];
+                int target = edgeTargets[e];
+                int failure = NONE;
+                if (state != ROOT) {
+                    int fallback = failureLinks[state];
+                    while (fallback != ROOT && getTransition(fallback, label) == NONE) {
+                        fallback = failureLinks[fallback];
+                    }
+                    failure = getTransition(fallback, label);
+                }
+                failureLinks[target] = failure == NONE ? ROOT : failure;
+                int failureState = failureLinks[target];
+                outputLinks[target] = stateEntries[failureState] != NONE ? failureState : outputLinks[failureState];
+                queue.add(target);
+            }
+        }
+    }
+
+    /*
+     * Creates a matcher with the compiled entries of another matcher, and its own per-call state.
+     */
+    private DictionaryTokenMatcher(DictionaryTokenMatcher compiledMatcher) {
+        this.entries = compiledMatcher.entries;
+        this.tokenIDs = compiledMatcher.tokenIDs;
+        this.entryTokenIDs = compiledMatcher.entryTokenIDs;
+        this.entryDistinctTokenIDs = compiledMatcher.entryDistinctTokenIDs;
+        this.entryOffsetGaps = compiledMatcher.entryOffsetGaps;
+        this.tokenEntries = compiledMatcher.tokenEntries;
+        this.entryHeadLengths = compiledMatcher.entryHeadLengths;
+        this.edgeStarts = compiledMatcher.edgeStarts;
+        this.edgeLabels = compiledMatcher.edgeLabels;
+        this.edgeTargets = compiledMatcher.edgeTargets;
+        this.failureLinks = compiledMatcher.failureLinks;
+        this.outputLinks = compiledMatcher.outputLinks;
+        this.stateEntries = compiledMatcher.stateEntries;
+        this.nextSameHeadEntries = compiledMatcher.nextSameHeadEntries;
+
+        this.tokenStamps = new int[compiledMatcher.tokenStamps.length];
+        this.entryStamps = new int[entries.size()];
+        this.entryCounts = new int[entries.size()];
+        this.lastMatchEnds = new int[entries.size()];
+    }
+
+    /**
+     * Creates a matcher that shares the compiled entries of this matcher, it can be used by another thread.
+     *
+     * @return
+     */
+    DictionaryTokenMatcher copy() {
+        return new DictionaryTokenMatcher(this);
+    }
+
+    /*
+     * The token offset gaps between adjacent tokens, computed the same way as in KeywordTokenMatcher:
+     *   a gap that can't be computed from the entry never matches.
+     */
+    private static int[] computeOffsetGaps(List<String> tokens, List<String> tokensWithStopwords) {
+        int[] offsets = new int[tokensWithStopwords.size()];
+        int numOffsets = 0;
+        for (int i = 0; i < tokensWithStopwords.size(); i++) {
+            if (tokens.contains(tokensWithStopwords.get(i))) {
+                offsets[numOffsets++] = i;
+            }
+        }
+        int[] offsetGaps = new int[Math.max(0, tokens.size() - 1)];
+        for (int i = 0; i < offsetGaps.length; i++) {
+            offsetGaps[i] = i + 1 < numOffsets ? offsets[i + 1] - offsets[i] : Integer.MIN_VALUE;
+        }
+        return offsetGaps;
+    }
+
+    private int[][] buildTokenEntries(int numTokens) {
+        int[] numTokenEntries = new int[numTokens];
+        for (int[] distinctTokenIDs : entryDistinctTokenIDs) {
+            for (int tokenID : distinctTokenIDs) {
+                numTokenEntries[tokenID]++;
+            }
+        }
+        int[][] tokenEntries = new int[numTokens][];
+        for (int t = 0; t < numTokens; t++) {
+            tokenEntries[t] = new int[numTokenEntries[t]];
+            numTokenEntries[t] = 0;
+        }
+        for (int e = 0; e < entryDistinctTokenIDs.length; e++) {
+            for (int tokenID : entryDistinctTokenIDs[e]) {
+                tokenEntries[tokenID][numTokenEntries[tokenID]++] = e;
+            }
+        }
+        return tokenEntries;
+    }
+
+    /*
+     * The number of tokens of an entry up to its first gap larger than one, 0 if the entry can't match a phrase.
+     */
+    private int getHeadLength(int entryIndex) {
+        int[] offsetGaps = entryOffsetGaps[entryIndex];
+        for (int gap : offsetGaps) {
+            if (gap < 1) {
+                return 0;
+            }
+        }
+        int headLength = Math.min(1, entryTokenIDs[entryIndex].length);
+        while (headLength < entryTokenIDs[entryIndex].length && offsetGaps[headLength - 1] == 1) {
+            headLength++;
+        }
+        return headLength;
+    }
+
+    /**
+     * Finds the entries whose tokens are all present in an attribute of the payload,
+     *   and passes the spans of their tokens in the attribute to the handler, in payload order.
+     *
+     * @param attributeName
+     * @param payload
+     * @param spanHandler
+     */
+    void findConjunctions(String attributeName, List<Span> payload, EntrySpanHandler spanHandler) {
+        loadSpans(attributeName, payload);
+        nextCallStamp();
+
+        int numTouched = 0;
+        for (int i = 0; i < numSpans; i++) {
+            int tokenID = spanTokenIDs[i];
+            if (tokenStamps[tokenID] == callStamp) {
+                continue;
+            }
+            tokenStamps[tokenID] = callStamp;
+            for (int entryIndex : tokenEntries[tokenID]) {
+                if (entryStamps[entryIndex] != callStamp) {
+                    entryStamps[entryIndex] = callStamp;
+                    entryCounts[entryIndex] = 0;
+                    if (numTouched == touchedEntries.length) {
+                        touchedEntries = Arrays.copyOf(touchedEntries, numTouched * 2);
+                    }
+                    touchedEntries[numTouched++] = entryIndex;
+                }
+                entryCounts[entryIndex]++;
+            }
+        }
+
+        for (int t = 0; t < numTouched; t++) {
+            int entryIndex = touchedEntries[t];
+            int[] distinctTokenIDs = entryDistinctTokenIDs[entryIndex];
+            if (entryCounts[entryIndex] != distinctTokenIDs.length) {
+                continue;
+            }
+            for (int i = 0; i < numSpans; i++) {
+                if (contains(distinctTokenIDs, distinctTokenIDs.length, spanTokenIDs[i])) {
+                    spanHandler.onSpan(entryIndex, spans[i]);
+                }
+            }
+        }
+        clearSpans();
+    }
+
+    /**
+     * Finds the occurrences of the entries as phrases in an attribute of the payload,
+     *   and passes a span for each occurrence to the handler.
+     *
+     * @param attributeName
+     * @param fieldValue, the value of the attribute in the tuple
+     * @param payload
+     * @param spanHandler
+     */
+    void findPhrases(String attributeName, String fieldValue, List<Span> payload, EntrySpanHandler spanHandler) {
+        loadSpans(attributeName, payload);
+        if (numSpans == 0) {
+            return;
+        }
+        nextCallStamp();
+
+        // lay out the spans by token offset
+        int minOffset = Integer.MAX_VALUE;
+        int maxOffset = Integer.MIN_VALUE;
+        for (int i = 0; i < numSpans; i++) {
+            minOffset = Math.min(minOffset, spans[i].getTokenOffset());
+            maxOffset = Math.max(maxOffset, spans[i].getTokenOffset());
+        }
+        int numOffsets = maxOffset - minOffset + 1;
+        if (numOffsets > offsetSpans.length) {
+            offsetSpans = new Span[Math.max(numOffsets, offsetSpans.length * 2)];
+            offsetTokenIDs = new int[offsetSpans.length];
+        }
+        Arrays.fill(offsetTokenIDs, 0, numOffsets, NO_TOKEN);
+        // the payload keeps all the tokens, the tokens of no entry are still needed to break the phrases
+        for (Span span : payload) {
+            if (! span.getAttributeName().equals(attributeName)) {
+                continue;
+            }
+            int offset = span.getTokenOffset() - minOffset;
+            if (offset < 0 || offset >= numOffsets || offsetTokenIDs[offset] != NO_TOKEN) {
+                continue;
+            }
+            Integer tokenID = tokenIDs.get(span.getKey());
+            offsetTokenIDs[offset] = tokenID == null ? UNKNOWN_TOKEN : tokenID;
+            offsetSpans[offset] = span;
+        }
+
+        int state = ROOT;
+        for (int offset = 0; offset < numOffsets; offset++) {
+            int tokenID = offsetTokenIDs[offset];
+            if (tokenID < 0) {
+                state = ROOT;
+                continue;
+            }
+            while (true) {
+                int next = getTransition(state, tokenID);
+                if (next != NONE) {
+                    state = next;
+                    break;
+                }
+                if (state == ROOT) {
+                    break;
+                }
+                state = failureLinks[state];
+            }
+
+            int outputState = stateEntries[state] != NONE ? state : outputLinks[state];
+            while (outputState != NONE) {
+                for (int e = stateEntries[outputState]; e != NONE; e = nextSameHeadEntries[e]) {
+                    int start = offset - entryHeadLengths[e] + 1;
+                    if (entryStamps[e] == callStamp && start <= lastMatchEnds[e]) {
+                        // overlaps the previous occurrence of the same entry
+                        continue;
+                    }
+                    int end = matchPhraseTail(e, offset, numOffsets);
+                    if (end == NONE) {
+                        continue;
+                    }
+                    entryStamps[e] = callStamp;
+                    lastMatchEnds[e] = end;
+                    int charStart = offsetSpans[start].getStart();
+                    int charEnd = offsetSpans[end].getEnd();
+                    spanHandler.onSpan(e, new Span(attributeName, charStart, charEnd, entries.get(e),
+                            fieldValue.substring(charStart, charEnd)));
+                }
+                outputState = outputLinks[outputState];
+            }
+        }
+        Arrays.fill(offsetSpans, 0, numOffsets, null);
+        clearSpans();
+    }
+
+    /*
+     * Checks the tokens of an entry after its head, which ends at headEnd.
+     * Returns the offset of the last token of the entry, NONE if the entry doesn't match there.
+     */
+    private int matchPhraseTail(int entryIndex, int headEnd, int numOffsets) {
+        int[] tokens = entryTokenIDs[entryIndex];
+        int[] distinctTokenIDs = entryDistinctTokenIDs[entryIndex];
+        int offset = headEnd;
+        for (int i = entryHeadLengths[entryIndex]; i < tokens.length; i++) {
+            int nextOffset = offset + entryOffsetGaps[entryIndex][i - 1];
+            if (nextOffset >= numOffsets || offsetTokenIDs[nextOffset] != tokens[i]) {
+                return NONE;
+            }
+            // the tokens of the phrase must be adjacent among the tokens of the entry
+            for (int between = offset + 1; between < nextOffset; between++) {
+                if (contains(distinctTokenIDs, distinctTokenIDs.length, offsetTokenIDs[between])) {
+                    return NONE;
+                }
+            }
+            offset = nextOffset;
+        }
+        return offset;
+    }
+
+    /*
+     * Keeps the spans of an attribute whose token is in an entry.
+     */
+    private void loadSpans(String attributeName, List<Span> payload) {
+        numSpans = 0;
+        for (Span span : payload) {
+            if (! span.getAttributeName().equals(attributeName)) {
+                continue;
+            }
+            Integer tokenID = tokenIDs.get(span.getKey());
+            if (tokenID == null) {
+                continue;
+            }
+            if (numSpans == spans.length) {
+                spans = Arrays.copyOf(spans, numSpans * 2);
+                spanTokenIDs = Arrays.copyOf(spanTokenIDs, numSpans * 2);
+            }
+            spans[numSpans] = span;
+            spanTokenIDs[numSpans] = tokenID;
+            numSpans++;
+        }
+    }
+
+    private void clearSpans() {
+        Arrays.fill(spans, 0, numSpans, null);
+        numSpans = 0;
+    }
+
+    private void nextCallStamp() {
+        callStamp++;
+        if (callStamp == 0) {
+            // the stamp wrapped around, forget all the stamps
+            Arrays.fill(tokenStamps, 0);
+            Arrays.fill(entryStamps, 0);
+            callStamp = 1;
+        }
+    }
+
+    private static long getEdgeKey(int state, int label) {
+        return ((long) state << 32) | label;
+    }
+
+    /*
+     * Gets the state reached from a state by a trie edge, NONE if there's no such edge.
+     */
+    private int getTransition(int state, int label) {
+        int low = edgeStarts[state];
+        int high = edgeStarts[state + 1] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleLabel = edgeLabels[middle];
+            if (middleLabel < label) {
+                low = middle + 1;
+            } else if (middleLabel > label) {
+                high = middle - 1;
+            } else {
+                return edgeTargets[middle];
+            }
+        }
+        return NONE;
+    }
+
+    private static boolean contains(int[] array, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (array[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
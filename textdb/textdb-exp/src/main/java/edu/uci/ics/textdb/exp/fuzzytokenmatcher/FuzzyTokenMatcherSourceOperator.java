@@ -32,6 +32,7 @@ public class FuzzyTokenMatcherSourceOperator extends AbstractSingleInputOperator
         this.dataReader = RelationManager.getRelationManager().getTableDataReader(
                 this.predicate.getTableName(), luceneQuery);
         this.dataReader.setPayloadAdded(true);
+        this.dataReader.setPrefetchSize(DataReader.DEFAULT_PREFETCH_SIZE);
         
         // generate FuzzyTokenMatcher
         fuzzyTokenMatcher = new FuzzyTokenMatcher(predicate);
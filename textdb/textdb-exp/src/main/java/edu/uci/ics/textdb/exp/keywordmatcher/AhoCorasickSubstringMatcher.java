@@ -0,0 +1,191 @@
+package edu.uci.ics.textdb.exp.keywordmatcher;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * AhoCorasickSubstringMatcher finds many keywords in a text in one pass, ignoring case.
+ *
+ * The case-folded keywords are compiled into a trie of states, with a failure link from each state
+ *   to the state of its longest proper suffix that is also in the trie, and an output link to the nearest
+ *   state on the failure chain where a keyword ends. The text is scanned one character at a time,
+ *   following the trie edges and falling back along the failure links, so the time is linear in the length
+ *   of the text plus the number of occurrences, whatever the number of keywords.
+ *
+ * The trie is stored in flat arrays: the edges of a state are sorted by character and looked up by binary search.
+ *
+ * To keep the occurrences of each keyword non-overlapping, the end of the last reported occurrence
+ *   of each keyword is remembered during a scan. These arrays are reused by every scan,
+ *   a stamp tells which entries belong to the current scan, so nothing is cleared or allocated per text.
+ *
+ */
+class AhoCorasickSubstringMatcher extends SubstringMatcher {
+
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    private final int[] keywordLengths;
+
+    // the edges of state s are the entries [edgeStarts[s], edgeStarts[s + 1]) of edgeLabels and edgeTargets
+    private final int[] edgeStarts;
+    private final char[] edgeLabels;
+    private final int[] edgeTargets;
+
+    private final int[] failureLinks;
+    private final int[] outputLinks;
+    // the first keyword that ends at each state, and the next keyword with the same folded text
+    private final int[] stateKeywords;
+    private final int[] nextSameKeywords;
+
+    private final int[] lastMatchEnds;
+    private final int[] lastMatchStamps;
+    private int scanStamp = 0;
+
+    AhoCorasickSubstringMatcher(List<String> keywords) {
+        int numKeywords = keywords.size();
+        this.keywordLengths = new int[numKeywords];
+        this.nextSameKeywords = new int[numKeywords];
+        this.lastMatchEnds = new int[numKeywords];
+        this.lastMatchStamps = new int[numKeywords];
+
+        // build the trie with sorted maps first, it's converted to arrays afterwards
+        List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        List<Integer> keywordsAtState = new ArrayList<>();
+        children.add(new TreeMap<>());
+        keywordsAtState.add(NONE);
+        // the keywords are added backwards, so that the keywords with the same text are reported in their order
+        for (int k = numKeywords - 1; k >= 0; k--) {
+            char[] keyword = foldCase(keywords.get(k));
+            keywordLengths[k] = keyword.length;
+            nextSameKeywords[k] = NONE;
+            if (keyword.length == 0) {
+                continue;
+            }
+            int state = ROOT;
+            for (char c : keyword) {
+                Integer child = children.get(state).get(c);
+                if (child == null) {
+                    child = children.size();
+                    children.get(state).put(c, child);
+                    children.add(new TreeMap<>());
+                    keywordsAtState.add(NONE);
+                }
+                state = child;
+            }
+            nextSameKeywords[k] = keywordsAtState.get(state);
+            keywordsAtState.set(state, k);
+        }
+
+        int numStates = children.size();
+        int numEdges = numStates - 1;
+        this.edgeStarts = new int[numStates + 1];
+        this.edgeLabels = new char[numEdges];
+        this.edgeTargets = new int[numEdges];
+        this.stateKeywords = new int[numStates];
+        int edge = 0;
+        for (int state = 0; state < numStates; state++) {
+            edgeStarts[state] = edge;
+            for (Map.Entry<Character, Integer> entry : children.get(state).entrySet()) {
+                edgeLabels[edge] = entry.getKey();
+                edgeTargets[edge] = entry.getValue();
+                edge++;
+            }
+            stateKeywords[state] = keywordsAtState.get(state);
+        }
+        edgeStarts[numStates] = edge;
+
+        // compute the failure and output links in breadth-first order, so that the links of shorter prefixes are ready
+        this.failureLinks = new int[numStates];
+        this.outputLinks = new int[numStates];
+        outputLinks[ROOT] = NONE;
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(ROOT);
+        while (! queue.isEmpty()) {
+            int state = queue.poll();
+            for (int e = edgeStarts[state]; e < edgeStarts[state + 1]; e++) {
+                char c = edgeLabels[e];
+                int target = edgeTargets[e];
+                int failure = NONE;
+                if (state != ROOT) {
+                    int fallback = failureLinks[state];
+                    while (fallback != ROOT && getTransition(fallback, c) == NONE) {
+                        fallback = failureLinks[fallback];
+                    }
+                    failure = getTransition(fallback, c);
+                }
+                failureLinks[target] = failure == NONE ? ROOT : failure;
+                int failureState = failureLinks[target];
+                outputLinks[target] = stateKeywords[failureState] != NONE ? failureState : outputLinks[failureState];
+                queue.add(target);
+            }
+        }
+    }
+
+    @Override
+    public void findAll(CharSequence text, MatchHandler matchHandler) {
+        scanStamp++;
+        if (scanStamp == 0) {
+            // the stamp wrapped around, forget all the stamps
+            Arrays.fill(lastMatchStamps, 0);
+            scanStamp = 1;
+        }
+
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            char c = foldCase(text.charAt(i));
+            while (true) {
+                int next = getTransition(state, c);
+                if (next != NONE) {
+                    state = next;
+                    break;
+                }
+                if (state == ROOT) {
+                    break;
+                }
+                state = failureLinks[state];
+            }
+
+            int outputState = stateKeywords[state] != NONE ? state : outputLinks[state];
+            while (outputState != NONE) {
+                for (int k = stateKeywords[outputState]; k != NONE; k = nextSameKeywords[k]) {
+                    int end = i + 1;
+                    int start = end - keywordLengths[k];
+                    if (lastMatchStamps[k] == scanStamp && start < lastMatchEnds[k]) {
+                        // overlaps the previous occurrence of the same keyword
+                        continue;
+                    }
+                    lastMatchStamps[k] = scanStamp;
+                    lastMatchEnds[k] = end;
+                    matchHandler.onMatch(k, start, end);
+                }
+                outputState = outputLinks[outputState];
+            }
+        }
+    }
+
+    /*
+     * Gets the state reached from a state by a trie edge, NONE if there's no such edge.
+     */
+    private int getTransition(int state, char c) {
+        int low = edgeStarts[state];
+        int high = edgeStarts[state + 1] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char label = edgeLabels[middle];
+            if (label < c) {
+                low = middle + 1;
+            } else if (label > c) {
+                high = middle - 1;
+            } else {
+                return edgeTargets[middle];
+            }
+        }
+        return NONE;
+    }
+
+}
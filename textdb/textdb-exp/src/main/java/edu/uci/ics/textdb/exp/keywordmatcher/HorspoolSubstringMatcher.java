@@ -0,0 +1,60 @@
+package edu.uci.ics.textdb.exp.keywordmatcher;
+
+import java.util.Arrays;
+
+/**
+ * HorspoolSubstringMatcher finds one keyword in a text with the Boyer-Moore-Horspool algorithm, ignoring case.
+ *
+ * The keyword is compared from its last character backwards. On a mismatch, the text character aligned with
+ *   the last character of the keyword decides how far the keyword can be shifted:
+ *   the distance from its last occurrence in the keyword (except the last position) to the end of the keyword,
+ *   or the whole length of the keyword if it doesn't occur.
+ *
+ * The shift table is indexed by the low byte of the folded character. Characters with the same low byte
+ *   share the smallest shift of them, which is always safe.
+ *
+ */
+class HorspoolSubstringMatcher extends SubstringMatcher {
+
+    private static final int SHIFT_TABLE_SIZE = 256;
+
+    private final char[] keyword;
+    private final int[] shiftTable = new int[SHIFT_TABLE_SIZE];
+
+    HorspoolSubstringMatcher(String keyword) {
+        this.keyword = foldCase(keyword);
+        int length = this.keyword.length;
+        Arrays.fill(shiftTable, length);
+        for (int i = 0; i < length - 1; i++) {
+            // the later occurrences give the smaller shifts
+            shiftTable[this.keyword[i] & (SHIFT_TABLE_SIZE - 1)] = length - 1 - i;
+        }
+    }
+
+    @Override
+    public void findAll(CharSequence text, MatchHandler matchHandler) {
+        int length = keyword.length;
+        if (length == 0) {
+            return;
+        }
+        char lastChar = keyword[length - 1];
+        int lastStart = text.length() - length;
+        int start = 0;
+        while (start <= lastStart) {
+            char alignedChar = foldCase(text.charAt(start + length - 1));
+            if (alignedChar == lastChar) {
+                int i = length - 2;
+                while (i >= 0 && foldCase(text.charAt(start + i)) == keyword[i]) {
+                    i--;
+                }
+                if (i < 0) {
+                    matchHandler.onMatch(0, start, start + length);
+                    start += length;
+                    continue;
+                }
+            }
+            start += shiftTable[alignedChar & (SHIFT_TABLE_SIZE - 1)];
+        }
+    }
+
+}
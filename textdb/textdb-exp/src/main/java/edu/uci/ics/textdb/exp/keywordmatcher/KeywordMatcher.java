@@ -1,14 +1,8 @@
 package edu.uci.ics.textdb.exp.keywordmatcher;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 import edu.uci.ics.textdb.api.constants.ErrorMessages;
 import edu.uci.ics.textdb.api.constants.SchemaConstants;
@@ -30,20 +24,23 @@ public class KeywordMatcher extends AbstractSingleInputOperator {
 
     private Schema inputSchema;
     
-    private final ArrayList<String> queryTokenList;
-    private final HashSet<String> queryTokenSet;
-    private final ArrayList<String> queryTokensWithStopwords;
+    // the conjunction and phrase matching kernel, see KeywordTokenMatcher
+    private final KeywordTokenMatcher tokenMatcher;
+    // the matcher of the keyword in the text, for substring matching
+    private final SubstringMatcher substringMatcher;
 
     public KeywordMatcher(KeywordPredicate predicate) {
         this.predicate = predicate;
         
         this.limit = predicate.getLimit();
         this.offset = predicate.getOffset();
-        this.queryTokenList = DataflowUtils.tokenizeQuery(predicate.getLuceneAnalyzerString(), predicate.getQuery());
-        this.queryTokenSet = new HashSet<>(this.queryTokenList);
+        List<String> queryTokenList = DataflowUtils.tokenizeQuery(predicate.getLuceneAnalyzerString(), predicate.getQuery());
         
         // TODO: standard analyzer is assumed here, rewrite it to deal with other analyzers
-        this.queryTokensWithStopwords = DataflowUtils.tokenizeQueryWithStopwords(predicate.getQuery());
+        List<String> queryTokensWithStopwords = DataflowUtils.tokenizeQueryWithStopwords(predicate.getQuery());
+        
+        this.tokenMatcher = new KeywordTokenMatcher(queryTokenList, queryTokensWithStopwords, predicate.getAttributeNames());
+        this.substringMatcher = SubstringMatcher.compile(Arrays.asList(predicate.getQuery()));
     }
 
     @Override
@@ -115,17 +112,16 @@ public class KeywordMatcher extends AbstractSingleInputOperator {
 
     @Override
     protected void cleanUp() {
+        tokenMatcher.clear();
     }
 
     private List<Span> computeConjunctionMatchingResult(Tuple inputTuple) throws DataFlowException {
         ListField<Span> payloadField = inputTuple.getField(SchemaConstants.PAYLOAD);
-        List<Span> payload = payloadField.getValue();
-        List<Span> relevantSpans = filterRelevantSpans(payload);
+        tokenMatcher.loadPayload(payloadField.getValue());
         List<Span> matchingResults = new ArrayList<>();
 
         for (String attributeName : this.predicate.getAttributeNames()) {
             AttributeType attributeType = this.inputSchema.getAttribute(attributeName).getAttributeType();
-            String fieldValue = inputTuple.getField(attributeName).getValue().toString();
 
             // types other than TEXT and STRING: throw Exception for now
             if (attributeType != AttributeType.STRING && attributeType != AttributeType.TEXT) {
@@ -134,6 +130,7 @@ public class KeywordMatcher extends AbstractSingleInputOperator {
 
             // for STRING type, the query should match the fieldValue completely
             if (attributeType == AttributeType.STRING) {
+                String fieldValue = inputTuple.getField(attributeName).getValue().toString();
                 if (fieldValue.equals(predicate.getQuery())) {
                     Span span = new Span(attributeName, 0, predicate.getQuery().length(), predicate.getQuery(), fieldValue);
                     matchingResults.add(span);
@@ -143,12 +140,7 @@ public class KeywordMatcher extends AbstractSingleInputOperator {
             // for TEXT type, every token in the query should be present in span
             // list for this field
             if (attributeType == AttributeType.TEXT) {
-                List<Span> fieldSpanList = relevantSpans.stream().filter(span -> span.getAttributeName().equals(attributeName))
-                        .collect(Collectors.toList());
-
-                if (isAllQueryTokensPresent(fieldSpanList, queryTokenSet)) {
-                    matchingResults.addAll(fieldSpanList);
-                }
+                tokenMatcher.addConjunctionSpans(attributeName, matchingResults);
             }
         }
 
@@ -157,8 +149,7 @@ public class KeywordMatcher extends AbstractSingleInputOperator {
 
     private List<Span> computePhraseMatchingResult(Tuple inputTuple) throws DataFlowException {
         ListField<Span> payloadField = inputTuple.getField(SchemaConstants.PAYLOAD);
-        List<Span> payload = payloadField.getValue();
-        List<Span> relevantSpans = filterRelevantSpans(payload);
+        tokenMatcher.loadPayload(payloadField.getValue());
         List<Span> matchingResults = new ArrayList<>();
 
         for (String attributeName : this.predicate.getAttributeNames()) {
@@ -180,65 +171,7 @@ public class KeywordMatcher extends AbstractSingleInputOperator {
             // for TEXT type, spans need to be reconstructed according to the
             // phrase query
             if (attributeType == AttributeType.TEXT) {
-                List<Span> fieldSpanList = relevantSpans.stream().filter(span -> span.getAttributeName().equals(attributeName))
-                        .collect(Collectors.toList());
-
-                if (!isAllQueryTokensPresent(fieldSpanList, queryTokenSet)) {
-                    // move on to next field if not all query tokens are present
-                    // in the spans
-                    continue;
-                }
-
-                // Sort current field's span list by token offset for later use
-                Collections.sort(fieldSpanList, (span1, span2) -> span1.getTokenOffset() - span2.getTokenOffset());
-
-                List<Integer> queryTokenOffset = new ArrayList<>();
-
-                for (int i = 0; i < queryTokensWithStopwords.size(); i++) {
-                    if (queryTokenList.contains(queryTokensWithStopwords.get(i))) {
-                        queryTokenOffset.add(i);
-                    }
-                }
-
-                int iter = 0; // maintains position of term being checked in
-                              // spanForThisField list
-                while (iter < fieldSpanList.size()) {
-                    if (iter > fieldSpanList.size() - queryTokenList.size()) {
-                        break;
-                    }
-
-                    // Verify if span in the spanForThisField correspond to our
-                    // phrase query, ie relative position offsets should be
-                    // similar
-                    // and the value should be same.
-                    boolean isMismatchInSpan = false;// flag to check if a
-                                                     // mismatch in spans occurs
-
-                    // To check all the terms in query are verified
-                    for (int i = 0; i < queryTokenList.size() - 1; i++) {
-                        Span first = fieldSpanList.get(iter + i);
-                        Span second = fieldSpanList.get(iter + i + 1);
-                        if (!(second.getTokenOffset() - first.getTokenOffset() == queryTokenOffset.get(i + 1)
-                                - queryTokenOffset.get(i) && first.getValue().equalsIgnoreCase(queryTokenList.get(i))
-                                && second.getValue().equalsIgnoreCase(queryTokenList.get(i + 1)))) {
-                            iter++;
-                            isMismatchInSpan = true;
-                            break;
-                        }
-                    }
-
-                    if (isMismatchInSpan) {
-                        continue;
-                    }
-
-                    int combinedSpanStartIndex = fieldSpanList.get(iter).getStart();
-                    int combinedSpanEndIndex = fieldSpanList.get(iter + queryTokenList.size() - 1).getEnd();
-
-                    Span combinedSpan = new Span(attributeName, combinedSpanStartIndex, combinedSpanEndIndex, predicate.getQuery(),
-                            fieldValue.substring(combinedSpanStartIndex, combinedSpanEndIndex));
-                    matchingResults.add(combinedSpan);
-                    iter = iter + queryTokenList.size();
-                }
+                tokenMatcher.addPhraseSpans(attributeName, fieldValue, predicate.getQuery(), matchingResults);
             }
         }
 
@@ -264,40 +197,16 @@ public class KeywordMatcher extends AbstractSingleInputOperator {
                 }
             }
 
+            // for TEXT type, the query is matched literally in the text, ignoring case
             if (attributeType == AttributeType.TEXT) {
-                String regex = predicate.getQuery().toLowerCase();
-                Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
-                Matcher matcher = pattern.matcher(fieldValue.toLowerCase());
-                while (matcher.find()) {
-                    int start = matcher.start();
-                    int end = matcher.end();
-
-                    matchingResults.add(new Span(attributeName, start, end, predicate.getQuery(), fieldValue.substring(start, end)));
-                }
+                substringMatcher.findAll(fieldValue, (keywordIndex, start, end) -> matchingResults.add(
+                        new Span(attributeName, start, end, predicate.getQuery(), fieldValue.substring(start, end))));
             }
 
         }
         return matchingResults;
     }
 
-    private boolean isAllQueryTokensPresent(List<Span> fieldSpanList, Set<String> queryTokenSet) {
-        Set<String> fieldSpanKeys = fieldSpanList.stream().map(span -> span.getKey()).collect(Collectors.toSet());
-
-        return fieldSpanKeys.equals(queryTokenSet);
-    }
-
-    private List<Span> filterRelevantSpans(List<Span> spanList) {
-        List<Span> relevantSpans = new ArrayList<>();
-        Iterator<Span> iterator = spanList.iterator();
-        while (iterator.hasNext()) {
-            Span span = iterator.next();
-            if (queryTokenSet.contains(span.getKey())) {
-                relevantSpans.add(span);
-            }
-        }
-        return relevantSpans;
-    }
-
     public KeywordPredicate getPredicate() {
         return this.predicate;
     }
@@ -13,6 +13,8 @@ import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
 
+import edu.uci.ics.textdb.api.constants.ErrorMessages;
+import edu.uci.ics.textdb.api.constants.SchemaConstants;
 import edu.uci.ics.textdb.api.dataflow.IOperator;
 import edu.uci.ics.textdb.api.dataflow.ISourceOperator;
 import edu.uci.ics.textdb.api.exception.DataFlowException;
@@ -21,6 +23,7 @@ import edu.uci.ics.textdb.api.exception.TextDBException;
 import edu.uci.ics.textdb.api.schema.AttributeType;
 import edu.uci.ics.textdb.api.schema.Schema;
 import edu.uci.ics.textdb.api.tuple.Tuple;
+import edu.uci.ics.textdb.api.utils.Utils;
 import edu.uci.ics.textdb.exp.common.AbstractSingleInputOperator;
 import edu.uci.ics.textdb.exp.utils.DataflowUtils;
 import edu.uci.ics.textdb.storage.DataReader;
@@ -29,13 +32,23 @@ import edu.uci.ics.textdb.storage.RelationManager;
 /**
  * KeywordMatcherSourceOperator is a source operator with a keyword query.
  * 
+ * The results have the full payload of each document, so that the operators after this one can use it.
+ *   If the predicate restricts the payload (see KeywordSourcePredicate.isRestrictPayload), the results
+ *   don't have the payload: for the conjunction and phrase matching types, the DataReader then only adds
+ *   the spans of the query tokens to the payload, read from the postings of the matching documents
+ *   (see DataReader.setPayloadTerms), which is all the KeywordMatcher needs to find the matches.
+ * 
+ * If the predicate is ranked (see KeywordSourcePredicate), the DataReader adds the BM25 score of each hit,
+ *   and only collects the top (limit + offset) hits of the index query. Each of these hits matches the keyword
+ *   query, so the KeywordMatcher's limit and offset then select the same results as on all the hits.
+ * 
  * @author Zuozhi Wang
  * @author Zhenfeng Qi
  *
  */
 public class KeywordMatcherSourceOperator extends AbstractSingleInputOperator implements ISourceOperator {
 
-    private final KeywordPredicate predicate;
+    private final KeywordSourcePredicate predicate;
 
     private final DataReader dataReader;
     private final KeywordMatcher keywordMatcher;
@@ -46,6 +59,8 @@ public class KeywordMatcherSourceOperator extends AbstractSingleInputOperator im
     private final HashSet<String> queryTokenSet;
     private ArrayList<String> queryTokensWithStopwords;
     
+    // whether the payload is removed from the results
+    private final boolean payloadRemoved;
 
     public KeywordMatcherSourceOperator(KeywordSourcePredicate predicate) 
             throws DataFlowException, StorageException {
@@ -59,12 +74,32 @@ public class KeywordMatcherSourceOperator extends AbstractSingleInputOperator im
                 
         // input schema must be specified before creating query
         this.inputSchema = RelationManager.getRelationManager().getTableDataStore(predicate.getTableName()).getSchema();
+        if (predicate.isRanked()) {
+            if (predicate.getMatchingType() == KeywordMatchingType.SUBSTRING_SCANBASED) {
+                throw new DataFlowException("KeywordPredicate: ranking is not supported by substring matching");
+            }
+            if (this.inputSchema.containsField(predicate.getScoreAttributeName())) {
+                throw new DataFlowException(ErrorMessages.DUPLICATE_ATTRIBUTE(
+                        predicate.getScoreAttributeName(), this.inputSchema));
+            }
+        }
         
         // generate dataReader
         Query luceneQuery = createLuceneQueryObject();
 
         this.dataReader = RelationManager.getRelationManager().getTableDataReader(predicate.getTableName(), luceneQuery);
         this.dataReader.setPayloadAdded(true);
+        this.payloadRemoved = predicate.isRestrictPayload();
+        KeywordMatchingType matchingType = predicate.getMatchingType();
+        if (this.payloadRemoved && (matchingType == KeywordMatchingType.CONJUNCTION_INDEXBASED
+                || matchingType == KeywordMatchingType.PHRASE_INDEXBASED)) {
+            this.dataReader.setPayloadTerms(this.queryTokenSet);
+        }
+        if (predicate.isRanked()) {
+            this.dataReader.setScoreAttributeName(predicate.getScoreAttributeName());
+            this.dataReader.setMaxHits(getMaxHits(predicate));
+        }
+        this.dataReader.setPrefetchSize(DataReader.DEFAULT_PREFETCH_SIZE);
         
         // generate KeywordMatcher
         keywordMatcher = new KeywordMatcher(predicate);
@@ -81,11 +116,18 @@ public class KeywordMatcherSourceOperator extends AbstractSingleInputOperator im
     @Override
     protected void setUp() throws DataFlowException {
         this.outputSchema = keywordMatcher.getOutputSchema();
+        if (payloadRemoved) {
+            this.outputSchema = Utils.removeAttributeFromSchema(this.outputSchema, SchemaConstants.PAYLOAD);
+        }
     }
 
     @Override
     protected Tuple computeNextMatchingTuple() throws TextDBException {
-        return this.keywordMatcher.getNextTuple();
+        Tuple resultTuple = this.keywordMatcher.getNextTuple();
+        if (resultTuple != null && payloadRemoved) {
+            resultTuple = Utils.removeFields(resultTuple, SchemaConstants.PAYLOAD);
+        }
+        return resultTuple;
     }
 
     @Override
@@ -105,9 +147,17 @@ public class KeywordMatcherSourceOperator extends AbstractSingleInputOperator im
     public void setInputOperator(IOperator inputOperator) {
     }
 
-    public KeywordPredicate getPredicate() {
+    public KeywordSourcePredicate getPredicate() {
         return this.predicate;
     }
+    
+    /*
+     * The number of hits needed for the results after the offset, up to the limit.
+     */
+    private static int getMaxHits(KeywordPredicate predicate) {
+        long maxHits = (long) predicate.getLimit() + predicate.getOffset();
+        return (int) Math.min(maxHits, Integer.MAX_VALUE);
+    }
 
     /**
      * Creates a Query object as a boolean Query on all attributes Example: For
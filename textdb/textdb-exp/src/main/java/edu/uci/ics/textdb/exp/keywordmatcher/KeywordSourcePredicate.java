@@ -3,6 +3,7 @@ package edu.uci.ics.textdb.exp.keywordmatcher;
 import java.util.List;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import edu.uci.ics.textdb.api.dataflow.IOperator;
@@ -12,6 +13,14 @@ import edu.uci.ics.textdb.exp.common.PropertyNameConstants;
  * KeywordSourcePredicate is the predicate used by KeywordMatcherSourceOperator.
  * This predicate is based on KeywordPredicate, with an additional member "tableName".
  * 
+ * If "scoreAttributeName" is set, the keyword search is ranked: the results are in the order of their
+ *   BM25 scores, the score of each result is in this attribute, and only the top (limit + offset) hits of the
+ *   index query are retrieved. Ranking is supported by the index-based matching types only.
+ * 
+ * If "restrictPayload" is true, the results don't have the payload attribute. The source then only reads
+ *   the spans of the query tokens instead of the full payload of each document (see KeywordMatcherSourceOperator).
+ *   By default, the results have the full payload, like the results of a KeywordMatcher.
+ * 
  * 
  * @author Zuozhi Wang
  *
@@ -19,6 +28,8 @@ import edu.uci.ics.textdb.exp.common.PropertyNameConstants;
 public class KeywordSourcePredicate extends KeywordPredicate {
     
     private final String tableName;
+    private final String scoreAttributeName;
+    private final Boolean restrictPayload;
     
     public KeywordSourcePredicate(
             String query,
@@ -28,8 +39,33 @@ public class KeywordSourcePredicate extends KeywordPredicate {
             String tableName,
             String spanListName) {
         
-        super(query, attributeNames, luceneAnalyzerString, matchingType, spanListName, null, null);
-        this.tableName = tableName;
+        this(query, attributeNames, luceneAnalyzerString, matchingType, tableName, spanListName, null, null);
+    }
+    
+    public KeywordSourcePredicate(
+            String query,
+            List<String> attributeNames,
+            String luceneAnalyzerString, 
+            KeywordMatchingType matchingType,
+            String tableName,
+            String spanListName,
+            Integer limit,
+            Integer offset) {
+        this(query, attributeNames, luceneAnalyzerString, matchingType, tableName, spanListName, limit, offset, null);
+    }
+    
+    public KeywordSourcePredicate(
+            String query,
+            List<String> attributeNames,
+            String luceneAnalyzerString, 
+            KeywordMatchingType matchingType,
+            String tableName,
+            String spanListName,
+            Integer limit,
+            Integer offset,
+            String scoreAttributeName) {
+        this(query, attributeNames, luceneAnalyzerString, matchingType, tableName, spanListName, limit, offset,
+                scoreAttributeName, null);
     }
     
     //TODO find a way to not write duplicate annotations (for fields declared in superclass)
@@ -50,10 +86,24 @@ public class KeywordSourcePredicate extends KeywordPredicate {
             @JsonProperty(value = PropertyNameConstants.LIMIT, required = false)
             Integer limit,
             @JsonProperty(value = PropertyNameConstants.OFFSET, required = false)
-            Integer offset) {
+            Integer offset,
+            @JsonProperty(value = PropertyNameConstants.KEYWORD_SCORE_ATTRIBUTE_NAME, required = false)
+            String scoreAttributeName,
+            @JsonProperty(value = PropertyNameConstants.RESTRICT_PAYLOAD, required = false)
+            Boolean restrictPayload) {
         
         super(query, attributeNames, luceneAnalyzerString, matchingType, spanListName, limit, offset);
         this.tableName = tableName;
+        if (scoreAttributeName == null || scoreAttributeName.trim().isEmpty()) {
+            this.scoreAttributeName = null;
+        } else {
+            this.scoreAttributeName = scoreAttributeName.trim();
+        }
+        if (restrictPayload == null) {
+            this.restrictPayload = false;
+        } else {
+            this.restrictPayload = restrictPayload;
+        }
     }
     
     @JsonProperty(PropertyNameConstants.TABLE_NAME)
@@ -61,6 +111,21 @@ public class KeywordSourcePredicate extends KeywordPredicate {
         return tableName;
     }
     
+    @JsonProperty(PropertyNameConstants.KEYWORD_SCORE_ATTRIBUTE_NAME)
+    public String getScoreAttributeName() {
+        return scoreAttributeName;
+    }
+    
+    @JsonProperty(PropertyNameConstants.RESTRICT_PAYLOAD)
+    public Boolean isRestrictPayload() {
+        return restrictPayload;
+    }
+    
+    @JsonIgnore
+    public boolean isRanked() {
+        return scoreAttributeName != null;
+    }
+    
     @Override
     public IOperator newOperator() {
         return new KeywordMatcherSourceOperator(this);
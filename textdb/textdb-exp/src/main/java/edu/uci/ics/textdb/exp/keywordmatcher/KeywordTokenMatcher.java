@@ -0,0 +1,232 @@
+package edu.uci.ics.textdb.exp.keywordmatcher;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.uci.ics.textdb.api.span.Span;
+
+/**
+ * KeywordTokenMatcher is the matching kernel of the conjunction and phrase matching of KeywordMatcher.
+ *
+ * The query tokens and the attributes to match are mapped to integer IDs once, when the matcher is created.
+ * For each tuple, loadPayload makes one pass over the payload, keeps the spans of the query tokens
+ *   in the attributes to match, together with their token IDs, attribute IDs and token offsets,
+ *   and counts the distinct query tokens present in each attribute.
+ * The conjunction and phrase checks then run on these primitive arrays.
+ *
+ * The arrays are reused across tuples and only grow when a payload has more relevant spans than any before,
+ *   so no collection is created per tuple except the list of results.
+ *
+ * A KeywordTokenMatcher is not thread-safe, each KeywordMatcher has its own.
+ *
+ */
+class KeywordTokenMatcher {
+
+    private static final int NOT_FOUND = -1;
+
+    // the ID of each distinct query token, and the ID of each attribute to match
+    private final Map<String, Integer> queryTokenIDs = new HashMap<>();
+    private final Map<String, Integer> attributeIDs = new HashMap<>();
+    private final int numQueryTokens;
+    private final int numAttributes;
+
+    // the phrase: the token ID of each query token (with duplicates),
+    //   and the token offset gap between each two adjacent query tokens (stopwords included)
+    private final int[] phraseTokenIDs;
+    private final int[] phraseOffsetGaps;
+
+    // the relevant spans of the current tuple, in payload order
+    private int numSpans = 0;
+    private Span[] spans = new Span[16];
+    private int[] spanTokenIDs = new int[16];
+    private int[] spanAttributeIDs = new int[16];
+
+    // the number of distinct query tokens present in each attribute of the current tuple
+    private final int[] presentTokenCounts;
+    // the tuple in which a query token was last seen in an attribute, indexed by (attributeID * numQueryTokens + tokenID)
+    private final int[] tokenSeenStamps;
+    private int tupleStamp = 0;
+
+    // the sort keys of the relevant spans of one attribute, (token offset << 32 | span index)
+    private long[] phraseSortKeys = new long[16];
+
+    /**
+     * @param queryTokens, the analyzed query tokens, stopwords removed
+     * @param queryTokensWithStopwords, the analyzed query tokens, stopwords kept
+     * @param attributeNames, the attributes to match
+     */
+    KeywordTokenMatcher(List<String> queryTokens, List<String> queryTokensWithStopwords, List<String> attributeNames) {
+        for (String queryToken : queryTokens) {
+            queryTokenIDs.putIfAbsent(queryToken, queryTokenIDs.size());
+        }
+        for (String attributeName : attributeNames) {
+            attributeIDs.putIfAbsent(attributeName, attributeIDs.size());
+        }
+        this.numQueryTokens = queryTokenIDs.size();
+        this.numAttributes = attributeIDs.size();
+        this.presentTokenCounts = new int[numAttributes];
+        this.tokenSeenStamps = new int[numAttributes * numQueryTokens];
+
+        this.phraseTokenIDs = new int[queryTokens.size()];
+        for (int i = 0; i < queryTokens.size(); i++) {
+            phraseTokenIDs[i] = queryTokenIDs.get(queryTokens.get(i));
+        }
+        // the positions of the query tokens in the query with stopwords
+        int[] phraseOffsets = new int[queryTokensWithStopwords.size()];
+        int numPhraseOffsets = 0;
+        for (int i = 0; i < queryTokensWithStopwords.size(); i++) {
+            if (queryTokenIDs.containsKey(queryTokensWithStopwords.get(i))) {
+                phraseOffsets[numPhraseOffsets++] = i;
+            }
+        }
+        this.phraseOffsetGaps = new int[Math.max(0, queryTokens.size() - 1)];
+        for (int i = 0; i < phraseOffsetGaps.length; i++) {
+            // a gap that can't be computed from the query never matches
+            phraseOffsetGaps[i] = i + 1 < numPhraseOffsets ? phraseOffsets[i + 1] - phraseOffsets[i] : Integer.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Loads the payload of a tuple, replacing the previous one.
+     *
+     * @param payload
+     */
+    void loadPayload(List<Span> payload) {
+        numSpans = 0;
+        tupleStamp++;
+        if (tupleStamp == 0) {
+            // the stamp wrapped around, forget all the stamps
+            Arrays.fill(tokenSeenStamps, 0);
+            tupleStamp = 1;
+        }
+        Arrays.fill(presentTokenCounts, 0);
+
+        for (int i = 0; i < payload.size(); i++) {
+            Span span = payload.get(i);
+            Integer tokenID = queryTokenIDs.get(span.getKey());
+            if (tokenID == null) {
+                continue;
+            }
+            Integer attributeID = attributeIDs.get(span.getAttributeName());
+            if (attributeID == null) {
+                continue;
+            }
+
+            if (numSpans == spans.length) {
+                int newLength = spans.length * 2;
+                spans = Arrays.copyOf(spans, newLength);
+                spanTokenIDs = Arrays.copyOf(spanTokenIDs, newLength);
+                spanAttributeIDs = Arrays.copyOf(spanAttributeIDs, newLength);
+            }
+            spans[numSpans] = span;
+            spanTokenIDs[numSpans] = tokenID;
+            spanAttributeIDs[numSpans] = attributeID;
+            numSpans++;
+
+            int stampIndex = attributeID * numQueryTokens + tokenID;
+            if (tokenSeenStamps[stampIndex] != tupleStamp) {
+                tokenSeenStamps[stampIndex] = tupleStamp;
+                presentTokenCounts[attributeID]++;
+            }
+        }
+    }
+
+    /**
+     * Releases the references to the spans of the last loaded payload.
+     */
+    void clear() {
+        Arrays.fill(spans, 0, numSpans, null);
+        numSpans = 0;
+    }
+
+    /**
+     * Checks if every query token is present in an attribute of the loaded payload.
+     *
+     * @param attributeName
+     * @return
+     */
+    boolean isAllQueryTokensPresent(String attributeName) {
+        int attributeID = getAttributeID(attributeName);
+        return attributeID != NOT_FOUND && presentTokenCounts[attributeID] == numQueryTokens;
+    }
+
+    /**
+     * Adds the spans of the query tokens in an attribute to the results, in payload order,
+     *   if every query token is present in the attribute.
+     *
+     * @param attributeName
+     * @param results
+     */
+    void addConjunctionSpans(String attributeName, List<Span> results) {
+        if (! isAllQueryTokensPresent(attributeName)) {
+            return;
+        }
+        int attributeID = getAttributeID(attributeName);
+        for (int i = 0; i < numSpans; i++) {
+            if (spanAttributeIDs[i] == attributeID) {
+                results.add(spans[i]);
+            }
+        }
+    }
+
+    /**
+     * Adds a span for each occurrence of the query phrase in an attribute to the results.
+     * The relevant spans of the attribute are ordered by token offset,
+     *   and a phrase occurrence is a run of them with the query tokens in order, at the query's offset gaps.
+     *
+     * @param attributeName
+     * @param fieldValue, the value of the attribute in the tuple
+     * @param query, the key of the result spans
+     * @param results
+     */
+    void addPhraseSpans(String attributeName, String fieldValue, String query, List<Span> results) {
+        int phraseLength = phraseTokenIDs.length;
+        if (phraseLength == 0 || ! isAllQueryTokensPresent(attributeName)) {
+            return;
+        }
+        int attributeID = getAttributeID(attributeName);
+
+        int numFieldSpans = 0;
+        for (int i = 0; i < numSpans; i++) {
+            if (spanAttributeIDs[i] == attributeID) {
+                if (numFieldSpans == phraseSortKeys.length) {
+                    phraseSortKeys = Arrays.copyOf(phraseSortKeys, phraseSortKeys.length * 2);
+                }
+                phraseSortKeys[numFieldSpans++] = ((long) spans[i].getTokenOffset() << 32) | i;
+            }
+        }
+        // the span index in the low bits keeps the payload order of the spans at the same offset
+        Arrays.sort(phraseSortKeys, 0, numFieldSpans);
+
+        int iter = 0;
+        while (iter <= numFieldSpans - phraseLength) {
+            boolean isMismatch = false;
+            for (int i = 0; i < phraseLength - 1; i++) {
+                int first = (int) phraseSortKeys[iter + i];
+                int second = (int) phraseSortKeys[iter + i + 1];
+                if (spans[second].getTokenOffset() - spans[first].getTokenOffset() != phraseOffsetGaps[i]
+                        || spanTokenIDs[first] != phraseTokenIDs[i] || spanTokenIDs[second] != phraseTokenIDs[i + 1]) {
+                    isMismatch = true;
+                    break;
+                }
+            }
+            if (isMismatch) {
+                iter++;
+                continue;
+            }
+
+            int start = spans[(int) phraseSortKeys[iter]].getStart();
+            int end = spans[(int) phraseSortKeys[iter + phraseLength - 1]].getEnd();
+            results.add(new Span(attributeName, start, end, query, fieldValue.substring(start, end)));
+            iter += phraseLength;
+        }
+    }
+
+    private int getAttributeID(String attributeName) {
+        Integer attributeID = attributeIDs.get(attributeName);
+        return attributeID == null ? NOT_FOUND : attributeID;
+    }
+
+}
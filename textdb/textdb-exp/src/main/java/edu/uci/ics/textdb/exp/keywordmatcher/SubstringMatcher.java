@@ -0,0 +1,86 @@
+package edu.uci.ics.textdb.exp.keywordmatcher;
+
+import java.util.List;
+
+/**
+ * SubstringMatcher finds the occurrences of one or more keywords in a text, ignoring case.
+ *
+ * The keywords are matched literally (they are not regular expressions), and the text is scanned as it is,
+ *   it's not lower-cased or copied. Characters are compared after case folding
+ *   (see foldCase), the same way as String.equalsIgnoreCase.
+ *
+ * For each keyword, the occurrences are non-overlapping, leftmost first: after an occurrence is found,
+ *   the search for the same keyword continues after its end. Occurrences of different keywords may overlap.
+ *
+ * A matcher is compiled once (see compile) and reused for all the texts:
+ *   - one keyword: Boyer-Moore-Horspool, which skips over the text by up to the length of the keyword.
+ *   - several keywords: Aho-Corasick, which finds all the keywords in one pass over the text.
+ *
+ * A SubstringMatcher is not thread-safe.
+ *
+ */
+public abstract class SubstringMatcher {
+
+    /**
+     * Receives the occurrences found by a SubstringMatcher.
+     */
+    public interface MatchHandler {
+        /**
+         * @param keywordIndex, the index of the keyword in the list the matcher is compiled from
+         * @param start, the start offset of the occurrence in the text (inclusive)
+         * @param end, the end offset of the occurrence in the text (exclusive)
+         */
+        void onMatch(int keywordIndex, int start, int end);
+    }
+
+    private static final char[] ASCII_FOLDED = new char[128];
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            ASCII_FOLDED[c] = Character.toLowerCase(c);
+        }
+    }
+
+    /**
+     * Compiles a matcher of the given keywords. Empty keywords never match.
+     *
+     * @param keywords
+     * @return
+     */
+    public static SubstringMatcher compile(List<String> keywords) {
+        if (keywords.size() == 1) {
+            return new HorspoolSubstringMatcher(keywords.get(0));
+        }
+        return new AhoCorasickSubstringMatcher(keywords);
+    }
+
+    /**
+     * Finds the occurrences of the keywords in the text, and passes them to the handler.
+     *
+     * @param text
+     * @param matchHandler
+     */
+    public abstract void findAll(CharSequence text, MatchHandler matchHandler);
+
+    /**
+     * Folds the case of a character, two characters are equal ignoring case if their folded characters are equal.
+     *
+     * @param c
+     * @return
+     */
+    static char foldCase(char c) {
+        if (c < 128) {
+            return ASCII_FOLDED[c];
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    static char[] foldCase(String keyword) {
+        char[] folded = new char[keyword.length()];
+        for (int i = 0; i < folded.length; i++) {
+            folded[i] = foldCase(keyword.charAt(i));
+        }
+        return folded;
+    }
+
+}
@@ -0,0 +1,306 @@
+package edu.uci.ics.textdb.exp.materializedview;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import edu.uci.ics.textdb.api.constants.SchemaConstants;
+import edu.uci.ics.textdb.api.dataflow.IOperator;
+import edu.uci.ics.textdb.api.exception.DataFlowException;
+import edu.uci.ics.textdb.api.exception.TextDBException;
+import edu.uci.ics.textdb.api.schema.Attribute;
+import edu.uci.ics.textdb.api.schema.AttributeType;
+import edu.uci.ics.textdb.api.schema.Schema;
+import edu.uci.ics.textdb.api.tuple.Tuple;
+import edu.uci.ics.textdb.api.utils.Utils;
+import edu.uci.ics.textdb.exp.common.PredicateBase;
+import edu.uci.ics.textdb.exp.source.scan.ScanBasedSourceOperator;
+import edu.uci.ics.textdb.exp.source.scan.ScanSourcePredicate;
+import edu.uci.ics.textdb.exp.source.tuple.TupleSourceOperator;
+import edu.uci.ics.textdb.storage.DataWriter;
+import edu.uci.ics.textdb.storage.ITableWriteListener;
+import edu.uci.ics.textdb.storage.RelationManager;
+
+/**
+ * MaterializedView stores the results of a view (a plan over one or more base tables) in a table,
+ *   so that queries on the view read the stored results instead of running the view's plan again.
+ *
+ * The view is defined by the names of its base tables, and the view's plan, which is built
+ *   on top of a source operator. The results of the view are the union of the results of the plan
+ *   over each base table. The plan must process each tuple independently
+ *   (for example, extraction, selection and projection operators), so that the results of
+ *   new tuples can be computed without the rest of the base tables.
+ *
+ * The view's plan is either a chain of operator predicates (each operator's input is the previous one),
+ *   or a builder in Java code.
+ *
+ * The view registers itself as a write listener of every base table (see ITableWriteListener):
+ *   - when tuples are appended to a base table, only the new tuples are run through the view's plan,
+ *     and their results are appended to the view's table.
+ *   - when tuples in a base table are deleted or updated, the whole view is computed again.
+ *
+ * The "_id" and "payload" attributes, and the list attributes (for example, the spans of the matches)
+ *   are not stored in the view's table.
+ *
+ * A view defined by operator predicates is saved in the MaterializedViewStore when it's materialized,
+ *   and MaterializedViewStore.restoreViews() registers it again when the system restarts.
+ *   A view defined by a builder is kept in memory only, materialize() needs to be called again after a restart.
+ *
+ */
+public class MaterializedView implements ITableWriteListener {
+
+    /**
+     * IViewPlanBuilder builds the plan of a view on top of a given source operator.
+     */
+    public interface IViewPlanBuilder {
+        IOperator buildViewPlan(IOperator sourceOperator) throws TextDBException;
+    }
+
+    private final String viewName;
+    private final String viewDirectory;
+    private final List<String> baseTableNames;
+    private final IViewPlanBuilder viewPlanBuilder;
+    // null if the view's plan is defined by a builder
+    private final List<PredicateBase> viewOperatorPredicates;
+
+    public MaterializedView(String viewName, String viewDirectory, String baseTableName,
+            IViewPlanBuilder viewPlanBuilder) {
+        this(viewName, viewDirectory, Arrays.asList(baseTableName), viewPlanBuilder);
+    }
+
+    public MaterializedView(String viewName, String viewDirectory, List<String> baseTableNames,
+            IViewPlanBuilder viewPlanBuilder) {
+        this(viewName, viewDirectory, baseTableNames, viewPlanBuilder, null);
+    }
+
+    /**
+     * Creates a view whose plan is a chain of operators, the first operator reads the base tables,
+     *   and the input of each of the other operators is the previous operator.
+     *
+     * @param viewName
+     * @param viewDirectory
+     * @param baseTableNames
+     * @param viewOperatorPredicates, the predicates of the operators in the view's plan
+     */
+    public MaterializedView(String viewName, String viewDirectory, List<String> baseTableNames,
+            List<PredicateBase> viewOperatorPredicates) {
+        this(viewName, viewDirectory, baseTableNames,
+                sourceOperator -> buildOperatorChain(sourceOperator, viewOperatorPredicates),
+                new ArrayList<>(viewOperatorPredicates));
+    }
+
+    private MaterializedView(String viewName, String viewDirectory, List<String> baseTableNames,
+            IViewPlanBuilder viewPlanBuilder, List<PredicateBase> viewOperatorPredicates) {
+        if (baseTableNames.isEmpty()) {
+            throw new DataFlowException(String.format("View %s must read at least one base table.", viewName));
+        }
+        this.viewName = viewName.toLowerCase();
+        this.viewDirectory = viewDirectory;
+        this.baseTableNames = Collections.unmodifiableList(baseTableNames.stream()
+                .map(String::toLowerCase).distinct().collect(Collectors.toList()));
+        this.viewPlanBuilder = viewPlanBuilder;
+        this.viewOperatorPredicates = viewOperatorPredicates;
+    }
+
+    public String getViewName() {
+        return viewName;
+    }
+
+    public String getViewDirectory() {
+        return viewDirectory;
+    }
+
+    public List<String> getBaseTableNames() {
+        return baseTableNames;
+    }
+
+    /**
+     * Gets the predicates of the operators in the view's plan,
+     *   or null if the view's plan is defined by a builder.
+     */
+    public List<PredicateBase> getViewOperatorPredicates() {
+        return viewOperatorPredicates == null ? null : Collections.unmodifiableList(viewOperatorPredicates);
+    }
+
+    /**
+     * Computes the view and stores the results in the view's table,
+     *   then keeps the view up to date when the base table is written.
+     *
+     * @throws TextDBException
+     */
+    public void materialize() throws TextDBException {
+        refresh();
+        registerWriteListeners();
+        if (viewOperatorPredicates != null) {
+            MaterializedViewStore.getInstance().addView(this);
+        }
+    }
+
+    /**
+     * Stops maintaining the view, removes it from the MaterializedViewStore, and deletes the view's table.
+     *
+     * @throws TextDBException
+     */
+    public void drop() throws TextDBException {
+        RelationManager relationManager = RelationManager.getRelationManager();
+        for (String baseTableName : baseTableNames) {
+            relationManager.removeTableWriteListener(baseTableName, this);
+        }
+        if (viewOperatorPredicates != null) {
+            MaterializedViewStore.getInstance().deleteView(viewName);
+        }
+        relationManager.deleteTable(viewName);
+    }
+
+    /*
+     * Registers the view as a write listener of every base table.
+     */
+    void registerWriteListeners() throws TextDBException {
+        RelationManager relationManager = RelationManager.getRelationManager();
+        for (String baseTableName : baseTableNames) {
+            relationManager.removeTableWriteListener(baseTableName, this);
+            relationManager.addTableWriteListener(baseTableName, this);
+        }
+    }
+
+    /**
+     * Computes the whole view again from the base tables, and replaces the content of the view's table.
+     * The view's table is (re)created if it doesn't exist or its schema has changed.
+     * If the view's plan fails, the previous content of the view's table is kept.
+     *
+     * @throws TextDBException
+     */
+    public synchronized void refresh() throws TextDBException {
+        RelationManager relationManager = RelationManager.getRelationManager();
+        DataWriter viewDataWriter = null;
+        Schema viewSchema = null;
+        try {
+            for (String baseTableName : baseTableNames) {
+                IOperator viewPlan = viewPlanBuilder.buildViewPlan(
+                        new ScanBasedSourceOperator(new ScanSourcePredicate(baseTableName)));
+                viewPlan.open();
+                try {
+                    Schema planSchema = getViewSchema(viewPlan.getOutputSchema());
+                    if (viewDataWriter == null) {
+                        viewSchema = planSchema;
+                        if (! relationManager.checkTableExistence(viewName)
+                                || ! relationManager.getTableSchema(viewName).equals(Utils.getSchemaWithID(viewSchema))) {
+                            relationManager.deleteTable(viewName);
+                            relationManager.createTable(viewName, viewDirectory, viewSchema,
+                                    relationManager.getTableAnalyzerString(baseTableName));
+                        }
+                        // the old results are replaced when the writer is closed
+                        viewDataWriter = relationManager.getTableDataWriter(viewName);
+                        viewDataWriter.open();
+                        viewDataWriter.clearData();
+                    } else if (! planSchema.equals(viewSchema)) {
+                        throw new DataFlowException(String.format(
+                                "The results of view %s over base table %s have a different schema.",
+                                viewName, baseTableName));
+                    }
+                    writeViewResults(viewPlan, viewSchema, viewDataWriter);
+                } finally {
+                    viewPlan.close();
+                }
+            }
+        } catch (RuntimeException e) {
+            // keep the previous results of the view, instead of the part computed before the failure
+            if (viewDataWriter != null) {
+                viewDataWriter.rollback();
+            }
+            throw e;
+        }
+        viewDataWriter.close();
+    }
+
+    @Override
+    public synchronized void tuplesInserted(String tableName, List<Tuple> insertedTuples) throws TextDBException {
+        if (insertedTuples.isEmpty()) {
+            return;
+        }
+        RelationManager relationManager = RelationManager.getRelationManager();
+        IOperator viewPlan = viewPlanBuilder.buildViewPlan(
+                new TupleSourceOperator(insertedTuples, insertedTuples.get(0).getSchema()));
+        viewPlan.open();
+        try {
+            Schema viewSchema = getViewSchema(viewPlan.getOutputSchema());
+            if (! relationManager.getTableSchema(viewName).equals(Utils.getSchemaWithID(viewSchema))) {
+                throw new DataFlowException(String.format(
+                        "The schema of view %s doesn't match the results of the new tuples.", viewName));
+            }
+            DataWriter viewDataWriter = relationManager.getTableDataWriter(viewName);
+            viewDataWriter.open();
+            try {
+                writeViewResults(viewPlan, viewSchema, viewDataWriter);
+            } finally {
+                viewDataWriter.close();
+            }
+        } finally {
+            viewPlan.close();
+        }
+    }
+
+    @Override
+    public void tableModified(String tableName) throws TextDBException {
+        refresh();
+    }
+
+    /**
+     * Builds a chain of operators on top of the source operator, in the order of the predicates.
+     *
+     * @param sourceOperator, the input of the first operator
+     * @param operatorPredicates, the predicates of single input operators
+     * @return the last operator of the chain, or the source operator if there are no predicates
+     * @throws TextDBException
+     */
+    public static IOperator buildOperatorChain(IOperator sourceOperator, List<PredicateBase> operatorPredicates)
+            throws TextDBException {
+        IOperator currentOperator = sourceOperator;
+        for (PredicateBase operatorPredicate : operatorPredicates) {
+            IOperator nextOperator = operatorPredicate.newOperator();
+            try {
+                nextOperator.getClass().getMethod("setInputOperator", IOperator.class)
+                        .invoke(nextOperator, currentOperator);
+            } catch (NoSuchMethodException | SecurityException | IllegalAccessException
+                    | IllegalArgumentException | InvocationTargetException e) {
+                throw new DataFlowException(String.format(
+                        "Operator %s can't be used in a view.", operatorPredicate.getID()), e);
+            }
+            currentOperator = nextOperator;
+        }
+        return currentOperator;
+    }
+
+    /*
+     * Writes all the results of an opened view plan to the view's table.
+     */
+    private static void writeViewResults(IOperator viewPlan, Schema viewSchema, DataWriter viewDataWriter)
+            throws TextDBException {
+        Tuple resultTuple;
+        while ((resultTuple = viewPlan.getNextTuple()) != null) {
+            List<String> removedAttributes = new ArrayList<>();
+            for (Attribute attribute : resultTuple.getSchema().getAttributes()) {
+                if (! viewSchema.containsField(attribute.getAttributeName())) {
+                    removedAttributes.add(attribute.getAttributeName());
+                }
+            }
+            viewDataWriter.insertTuple(Utils.removeFields(resultTuple, removedAttributes.stream().toArray(String[]::new)));
+        }
+    }
+
+    /*
+     * Gets the schema of the view's table from the output schema of the view's plan,
+     *   the attributes that can't be stored are removed.
+     */
+    private static Schema getViewSchema(Schema outputSchema) {
+        return new Schema(outputSchema.getAttributes().stream()
+                .filter(attr -> ! attr.getAttributeName().equalsIgnoreCase(SchemaConstants._ID))
+                .filter(attr -> ! attr.getAttributeName().equalsIgnoreCase(SchemaConstants.PAYLOAD))
+                .filter(attr -> attr.getAttributeType() != AttributeType.LIST)
+                .toArray(Attribute[]::new));
+    }
+
+}
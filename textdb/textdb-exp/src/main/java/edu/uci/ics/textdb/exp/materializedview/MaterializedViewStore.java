@@ -0,0 +1,219 @@
+package edu.uci.ics.textdb.exp.materializedview;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.uci.ics.textdb.api.constants.SchemaConstants;
+import edu.uci.ics.textdb.api.exception.StorageException;
+import edu.uci.ics.textdb.api.exception.TextDBException;
+import edu.uci.ics.textdb.api.field.IDField;
+import edu.uci.ics.textdb.api.field.StringField;
+import edu.uci.ics.textdb.api.tuple.Tuple;
+import edu.uci.ics.textdb.exp.common.PredicateBase;
+import edu.uci.ics.textdb.storage.DataReader;
+import edu.uci.ics.textdb.storage.DataWriter;
+import edu.uci.ics.textdb.storage.RelationManager;
+import edu.uci.ics.textdb.storage.constants.LuceneAnalyzerConstants;
+
+/**
+ * MaterializedViewStore saves the definitions of the materialized views in a table,
+ *   so that the views can be registered again when the system restarts (see restoreViews()).
+ *
+ * Only the views whose plan is a chain of operator predicates can be saved,
+ *   the predicates are saved as JSON.
+ */
+public class MaterializedViewStore {
+
+    private static final TypeReference<List<PredicateBase>> PREDICATE_LIST_TYPE =
+            new TypeReference<List<PredicateBase>>() {};
+    private static final TypeReference<List<String>> STRING_LIST_TYPE =
+            new TypeReference<List<String>>() {};
+
+    private static MaterializedViewStore instance = null;
+    private RelationManager relationManager = null;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private MaterializedViewStore() throws StorageException {
+        relationManager = RelationManager.getRelationManager();
+    }
+
+    public synchronized static MaterializedViewStore getInstance() throws StorageException {
+        if (instance == null) {
+            instance = new MaterializedViewStore();
+        }
+        return instance;
+    }
+
+    /**
+     * Creates the table of the view store if it doesn't exist.
+     * The table is stored on disk, so that the views survive a restart.
+     *
+     * @throws TextDBException
+     */
+    public synchronized void createViewStore() throws TextDBException {
+        if (!relationManager.checkTableExistence(MaterializedViewStoreConstants.TABLE_NAME)) {
+            relationManager.createTable(MaterializedViewStoreConstants.TABLE_NAME,
+                    MaterializedViewStoreConstants.INDEX_DIR,
+                    MaterializedViewStoreConstants.SCHEMA_VIEW,
+                    LuceneAnalyzerConstants.standardAnalyzerString());
+        }
+    }
+
+    /**
+     * Saves the definition of a view, replacing the saved view with the same name.
+     *
+     * @param view, a view whose plan is a chain of operator predicates
+     * @throws TextDBException
+     */
+    public synchronized void addView(MaterializedView view) throws TextDBException {
+        if (view.getViewOperatorPredicates() == null) {
+            throw new StorageException(String.format(
+                    "View %s is defined by a plan builder and can't be saved.", view.getViewName()));
+        }
+        createViewStore();
+        deleteView(view.getViewName());
+
+        String baseTablesJson;
+        String viewPlanJson;
+        try {
+            baseTablesJson = objectMapper.writerFor(STRING_LIST_TYPE).writeValueAsString(view.getBaseTableNames());
+            viewPlanJson = objectMapper.writerFor(PREDICATE_LIST_TYPE).writeValueAsString(view.getViewOperatorPredicates());
+        } catch (IOException e) {
+            throw new StorageException("failed to convert view " + view.getViewName() + " to json", e);
+        }
+
+        Tuple tuple = new Tuple(MaterializedViewStoreConstants.SCHEMA_VIEW,
+                new StringField(view.getViewName()),
+                new StringField(view.getViewDirectory()),
+                new StringField(baseTablesJson),
+                new StringField(viewPlanJson));
+
+        DataWriter dataWriter = relationManager.getTableDataWriter(MaterializedViewStoreConstants.TABLE_NAME);
+        dataWriter.open();
+        dataWriter.insertTuple(tuple);
+        dataWriter.close();
+    }
+
+    /**
+     * Retrieves a saved view by name.
+     *
+     * @param viewName, the name of the view.
+     * @return the view, or null if there's no saved view with the name.
+     * @throws TextDBException
+     */
+    public synchronized MaterializedView getView(String viewName) throws TextDBException {
+        Tuple viewTuple = getViewTuple(viewName.toLowerCase());
+        return viewTuple == null ? null : toView(viewTuple);
+    }
+
+    /**
+     * Retrieves all the saved views.
+     *
+     * @throws TextDBException
+     */
+    public synchronized List<MaterializedView> getViews() throws TextDBException {
+        List<MaterializedView> views = new ArrayList<>();
+        if (!relationManager.checkTableExistence(MaterializedViewStoreConstants.TABLE_NAME)) {
+            return views;
+        }
+        DataReader reader = relationManager.getTableDataReader(
+                MaterializedViewStoreConstants.TABLE_NAME, new MatchAllDocsQuery());
+        reader.open();
+        try {
+            Tuple viewTuple;
+            while ((viewTuple = reader.getNextTuple()) != null) {
+                views.add(toView(viewTuple));
+            }
+        } finally {
+            reader.close();
+        }
+        return views;
+    }
+
+    /**
+     * Removes a saved view by name, the view's table is not deleted.
+     *
+     * @param viewName, the name of the view.
+     * @throws TextDBException
+     */
+    public synchronized void deleteView(String viewName) throws TextDBException {
+        Tuple viewTuple = getViewTuple(viewName.toLowerCase());
+        if (viewTuple == null) {
+            return;
+        }
+
+        DataWriter dataWriter = relationManager.getTableDataWriter(MaterializedViewStoreConstants.TABLE_NAME);
+        dataWriter.open();
+        dataWriter.deleteTupleByID((IDField) viewTuple.getField(SchemaConstants._ID));
+        dataWriter.close();
+    }
+
+    /**
+     * Registers all the saved views again, it's called when the system starts.
+     * Each view is computed again, because writes to the base tables while the views were not registered
+     *   (for example, before a restart) are not reflected in the views' tables.
+     * A view whose base tables don't all exist anymore is not restored.
+     *
+     * @return the restored views
+     * @throws TextDBException
+     */
+    public List<MaterializedView> restoreViews() throws TextDBException {
+        List<MaterializedView> restoredViews = new ArrayList<>();
+        for (MaterializedView view : getViews()) {
+            if (! view.getBaseTableNames().stream().allMatch(relationManager::checkTableExistence)) {
+                continue;
+            }
+            view.refresh();
+            view.registerWriteListeners();
+            restoredViews.add(view);
+        }
+        return restoredViews;
+    }
+
+    private Tuple getViewTuple(String viewName) throws TextDBException {
+        if (!relationManager.checkTableExistence(MaterializedViewStoreConstants.TABLE_NAME)) {
+            return null;
+        }
+        Query q = new TermQuery(new Term(MaterializedViewStoreConstants.NAME, viewName));
+        DataReader reader = relationManager.getTableDataReader(MaterializedViewStoreConstants.TABLE_NAME, q);
+        reader.open();
+        try {
+            Tuple viewTuple;
+            while ((viewTuple = reader.getNextTuple()) != null) {
+                if (viewTuple.getField(MaterializedViewStoreConstants.NAME).getValue().toString().equals(viewName)) {
+                    return viewTuple;
+                }
+            }
+            return null;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private MaterializedView toView(Tuple viewTuple) throws TextDBException {
+        String viewName = viewTuple.getField(MaterializedViewStoreConstants.NAME).getValue().toString();
+        try {
+            List<String> baseTableNames = objectMapper.readValue(
+                    viewTuple.getField(MaterializedViewStoreConstants.BASE_TABLES_JSON).getValue().toString(),
+                    STRING_LIST_TYPE);
+            List<PredicateBase> viewOperatorPredicates = objectMapper.readValue(
+                    viewTuple.getField(MaterializedViewStoreConstants.VIEW_PLAN_JSON).getValue().toString(),
+                    PREDICATE_LIST_TYPE);
+            return new MaterializedView(viewName,
+                    viewTuple.getField(MaterializedViewStoreConstants.DIRECTORY).getValue().toString(),
+                    baseTableNames, viewOperatorPredicates);
+        } catch (IOException e) {
+            throw new StorageException("the saved json of view " + viewName + " is invalid", e);
+        }
+    }
+
+}
@@ -0,0 +1,33 @@
+package edu.uci.ics.textdb.exp.materializedview;
+
+import java.nio.file.Paths;
+
+import edu.uci.ics.textdb.api.schema.Attribute;
+import edu.uci.ics.textdb.api.schema.AttributeType;
+import edu.uci.ics.textdb.api.schema.Schema;
+import edu.uci.ics.textdb.api.utils.Utils;
+
+/**
+ * Variables used in MaterializedViewStore.java.
+ */
+public class MaterializedViewStoreConstants {
+    public static final String TABLE_NAME = "materialized_view";
+
+    public static final String INDEX_DIR = Paths.get(Utils.getTextdbHomePath(), "materialized_view").toString();
+
+    // the default directory of the views' tables, each view's table is in a sub-directory with the view's name
+    public static final String VIEW_INDEX_DIR = Paths.get(Utils.getTextdbHomePath(), "view").toString();
+
+    public static final String NAME = "name";
+    public static final String DIRECTORY = "directory";
+    public static final String BASE_TABLES_JSON = "baseTables";
+    public static final String VIEW_PLAN_JSON = "viewPlan";
+
+    public static final Attribute NAME_ATTR = new Attribute(NAME, AttributeType.STRING);
+    public static final Attribute DIRECTORY_ATTR = new Attribute(DIRECTORY, AttributeType.STRING);
+    public static final Attribute BASE_TABLES_JSON_ATTR = new Attribute(BASE_TABLES_JSON, AttributeType.STRING);
+    public static final Attribute VIEW_PLAN_JSON_ATTR = new Attribute(VIEW_PLAN_JSON, AttributeType.STRING);
+
+    public static final Attribute[] ATTRIBUTES_VIEW = {NAME_ATTR, DIRECTORY_ATTR, BASE_TABLES_JSON_ATTR, VIEW_PLAN_JSON_ATTR};
+    public static final Schema SCHEMA_VIEW = new Schema(ATTRIBUTES_VIEW);
+}
@@ -19,6 +19,8 @@ import edu.uci.ics.textdb.exp.nlp.sentiment.NlpSentimentPredicate;
 import edu.uci.ics.textdb.exp.nlp.splitter.NlpSplitPredicate;
 import edu.uci.ics.textdb.exp.projection.ProjectionPredicate;
 import edu.uci.ics.textdb.exp.regexmatcher.RegexPredicate;
+import edu.uci.ics.textdb.exp.regexmatcher.RegexSetPredicate;
+import edu.uci.ics.textdb.exp.regexmatcher.RegexSetSourcePredicate;
 import edu.uci.ics.textdb.exp.regexmatcher.RegexSourcePredicate;
 import edu.uci.ics.textdb.exp.regexsplit.RegexSplitPredicate;
 import edu.uci.ics.textdb.exp.sampler.SamplerPredicate;
@@ -47,6 +49,8 @@ public class OperatorArityConstants {
         fixedInputArityMap.put(KeywordSourcePredicate.class, 0); 
         fixedInputArityMap.put(RegexPredicate.class, 1); 
         fixedInputArityMap.put(RegexSourcePredicate.class, 0); 
+        fixedInputArityMap.put(RegexSetPredicate.class, 1); 
+        fixedInputArityMap.put(RegexSetSourcePredicate.class, 0); 
 
         fixedInputArityMap.put(JoinDistancePredicate.class, 2);
         fixedInputArityMap.put(SimilarityJoinPredicate.class, 2);
@@ -79,6 +83,8 @@ public class OperatorArityConstants {
         fixedOutputArityMap.put(KeywordSourcePredicate.class, 1); 
         fixedOutputArityMap.put(RegexPredicate.class, 1); 
         fixedOutputArityMap.put(RegexSourcePredicate.class, 1); 
+        fixedOutputArityMap.put(RegexSetPredicate.class, 1); 
+        fixedOutputArityMap.put(RegexSetSourcePredicate.class, 1); 
 
         fixedOutputArityMap.put(JoinDistancePredicate.class, 1);
         fixedOutputArityMap.put(SimilarityJoinPredicate.class, 1);
@@ -11,7 +11,9 @@ import edu.uci.ics.textdb.api.tuple.Tuple;
 import edu.uci.ics.textdb.storage.DataReader;
 import edu.uci.ics.textdb.storage.DataWriter;
 import edu.uci.ics.textdb.storage.RelationManager;
+import edu.uci.ics.textdb.storage.TableProperties;
 import edu.uci.ics.textdb.storage.constants.LuceneAnalyzerConstants;
+import edu.uci.ics.textdb.storage.constants.LuceneDirectoryConstants;
 
 import java.io.IOException;
 
@@ -51,10 +53,14 @@ public class PlanStore {
      */
     public void createPlanStore() throws TextDBException {
         if (!relationManager.checkTableExistence(PlanStoreConstants.TABLE_NAME)) {
+            // the plan store is small and read on every plan request, so it's kept in memory
+            TableProperties planStoreProperties = new TableProperties();
+            planStoreProperties.setDirectoryType(LuceneDirectoryConstants.ramDirectoryString());
             relationManager.createTable(PlanStoreConstants.TABLE_NAME,
                     PlanStoreConstants.INDEX_DIR,
                     PlanStoreConstants.SCHEMA_PLAN,
-                    LuceneAnalyzerConstants.standardAnalyzerString());
+                    LuceneAnalyzerConstants.standardAnalyzerString(),
+                    planStoreProperties);
         }
     }
 
@@ -0,0 +1,265 @@
+package edu.uci.ics.textdb.exp.regexmatcher;
+
+import java.util.regex.PatternSyntaxException;
+
+import edu.uci.ics.textdb.api.exception.DataFlowException;
+
+/**
+ * CompiledRegex is a regex compiled by one of the regex engines (see RegexEngine),
+ *   it finds the matches of the regex in a text.
+ *
+ * java.util.regex backtracks, so a regex like "(a+)+b" takes exponential time on a text like "aaaaaaaaaaaaaaaaaaaac".
+ *   re2j runs the regex as an automaton, its time is linear in the length of the text for any regex,
+ *   but it doesn't support backreferences and lookarounds, and some of its syntax has a different meaning.
+ *
+ * With RegexEngine.AUTO, the regex is first translated to an re2j regex that has the same matches
+ *   as the java regex (see toLinearTimeRegex), and re2j is used if the translation succeeds.
+ *   The translation is conservative, it fails on any syntax it doesn't know to be the same in both engines.
+ *   The only remaining difference is that re2j ignores case with Unicode case folding, so a case insensitive regex
+ *   "k" or "[a-z]" also matches the Kelvin sign (U+212A), and "s" also matches the long s (U+017F).
+ *
+ * The matches are the same as Matcher.find: non-overlapping, leftmost first.
+ *
+ */
+public abstract class CompiledRegex {
+
+    /**
+     * Receives the matches found by a CompiledRegex.
+     */
+    public interface MatchHandler {
+        /**
+         * @param start, the start offset of the match in the text (inclusive)
+         * @param end, the end offset of the match in the text (exclusive)
+         */
+        void onMatch(int start, int end);
+    }
+
+    // the same line terminators as "." in java.util.regex without the DOTALL flag
+    private static final String JAVA_DOT = "[^\\n\\r\\x{85}\\x{2028}\\x{2029}]";
+    // the same whitespace characters as "\s" in java.util.regex, re2j's "\s" doesn't have \x0B
+    private static final String JAVA_WHITESPACE = "\\t\\n\\x0B\\f\\r ";
+
+    // the characters escaped in the quoted text of "\Q...\E"
+    private static final String REGEX_META_CHARACTERS = "\\.+*?()|[]{}^$";
+
+    // the escaped letters which have the same meaning in both engines
+    private static final String COMPATIBLE_ESCAPE_LETTERS = "dDwWtnrfaxpPAz";
+
+    /**
+     * Compiles a regex with the given engine.
+     *
+     * @param regex
+     * @param ignoreCase
+     * @param regexEngine
+     * @return
+     * @throws DataFlowException, if the regex is not valid, or RegexEngine.RE2J is used and re2j doesn't support the regex.
+     */
+    public static CompiledRegex compile(String regex, boolean ignoreCase, RegexEngine regexEngine)
+            throws DataFlowException {
+        if (regexEngine == RegexEngine.RE2J) {
+            String linearTimeRegex = toLinearTimeRegex(regex, ignoreCase);
+            try {
+                return new Re2jCompiledRegex(linearTimeRegex != null ? linearTimeRegex : regex, ignoreCase);
+            } catch (com.google.re2j.PatternSyntaxException e) {
+                throw new DataFlowException("regex is not supported by re2j: " + e.getMessage(), e);
+            }
+        }
+
+        // the java pattern is always compiled first, so that an invalid regex has the same error with any engine
+        java.util.regex.Pattern javaPattern;
+        try {
+            javaPattern = ignoreCase ? java.util.regex.Pattern.compile(regex, java.util.regex.Pattern.CASE_INSENSITIVE)
+                    : java.util.regex.Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            throw new DataFlowException(e.getMessage(), e);
+        }
+        if (regexEngine == RegexEngine.AUTO) {
+            String linearTimeRegex = toLinearTimeRegex(regex, ignoreCase);
+            if (linearTimeRegex != null) {
+                try {
+                    return new Re2jCompiledRegex(linearTimeRegex, ignoreCase);
+                } catch (com.google.re2j.PatternSyntaxException e) {
+                    // re2j doesn't support the regex, use java
+                }
+            }
+        }
+        return new JavaCompiledRegex(javaPattern);
+    }
+
+    /**
+     * Finds the matches of the regex in the text, and passes them to the handler.
+     *
+     * @param text
+     * @param matchHandler
+     */
+    public abstract void findAll(CharSequence text, MatchHandler matchHandler);
+
+    /**
+     * Gets the engine that runs the regex, RegexEngine.JAVA or RegexEngine.RE2J.
+     *
+     * @return
+     */
+    public abstract RegexEngine getRegexEngine();
+
+    /**
+     * Translates a java regex to an re2j regex that has the same matches.
+     *
+     * "." and "\s" are replaced by the character classes they have in java, and "\Q...\E" is replaced by
+     *   the escaped characters. The translation fails on all the other syntax that is not the same in re2j:
+     *   "$" (which also matches before a final line terminator in java), "\b", backreferences,
+     *   the groups "(?...)" other than "(?:...)" (flags, named groups, and lookarounds),
+     *   nested classes and class intersections, and the escapes not in COMPATIBLE_ESCAPE_LETTERS.
+     *   If the case is ignored, it also fails on non-ASCII characters, since java only ignores the case of
+     *   ASCII characters, and re2j ignores the case of all characters.
+     *
+     * A regex that re2j rejects (for example, possessive quantifiers) is left as it is,
+     *   the error is found when it's compiled by re2j.
+     *
+     * @param regex
+     * @param ignoreCase
+     * @return the re2j regex, null if the regex can't be translated
+     */
+    static String toLinearTimeRegex(String regex, boolean ignoreCase) {
+        StringBuilder result = new StringBuilder(regex.length() + 16);
+        boolean inClass = false;
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (ignoreCase && c >= 128) {
+                return null;
+            }
+            if (c == '\\') {
+                if (i + 1 >= regex.length()) {
+                    return null;
+                }
+                char escaped = regex.charAt(i + 1);
+                i += 2;
+                if (escaped == 'Q' && ! inClass) {
+                    int quoteEnd = regex.indexOf("\\E", i);
+                    if (quoteEnd < 0) {
+                        quoteEnd = regex.length();
+                    }
+                    for (int j = i; j < quoteEnd; j++) {
+                        char quoted = regex.charAt(j);
+                        if (ignoreCase && quoted >= 128) {
+                            return null;
+                        }
+                        if (REGEX_META_CHARACTERS.indexOf(quoted) >= 0) {
+                            result.append('\\');
+                        }
+                        result.append(quoted);
+                    }
+                    i = Math.min(quoteEnd + 2, regex.length());
+                } else if (escaped == 's') {
+                    // "-" next to "\s" would become a range of the expanded characters
+                    if (inClass && (regex.charAt(i - 3) == '-' || (i < regex.length() && regex.charAt(i) == '-'))) {
+                        return null;
+                    }
+                    result.append(inClass ? JAVA_WHITESPACE : "[" + JAVA_WHITESPACE + "]");
+                } else if (escaped == 'S' && ! inClass) {
+                    result.append("[^" + JAVA_WHITESPACE + "]");
+                } else if (escaped < 128 && ! Character.isLetterOrDigit(escaped)) {
+                    // an escaped ASCII punctuation is itself in both engines
+                    result.append(c).append(escaped);
+                } else if (COMPATIBLE_ESCAPE_LETTERS.indexOf(escaped) >= 0) {
+                    if (ignoreCase && (escaped == 'x' || escaped == 'p' || escaped == 'P')) {
+                        return null;
+                    }
+                    result.append(c).append(escaped);
+                } else {
+                    return null;
+                }
+                continue;
+            }
+
+            if (inClass) {
+                if (c == '[' || (c == '&' && i + 1 < regex.length() && regex.charAt(i + 1) == '&')) {
+                    return null;
+                }
+                if (c == ']') {
+                    inClass = false;
+                }
+                result.append(c);
+                i++;
+            } else if (c == '[') {
+                inClass = true;
+                result.append(c);
+                i++;
+                if (i < regex.length() && regex.charAt(i) == '^') {
+                    result.append('^');
+                    i++;
+                }
+                // "]" at the start of a class is a literal in re2j, but an empty class in java
+                if (i < regex.length() && regex.charAt(i) == ']') {
+                    return null;
+                }
+            } else if (c == '.') {
+                result.append(JAVA_DOT);
+                i++;
+            } else if (c == '$') {
+                return null;
+            } else if (c == '(' && i + 1 < regex.length() && regex.charAt(i + 1) == '?') {
+                if (i + 2 >= regex.length() || regex.charAt(i + 2) != ':') {
+                    return null;
+                }
+                result.append("(?:");
+                i += 3;
+            } else {
+                result.append(c);
+                i++;
+            }
+        }
+        if (inClass) {
+            return null;
+        }
+        return result.toString();
+    }
+
+    private static class JavaCompiledRegex extends CompiledRegex {
+
+        private final java.util.regex.Pattern pattern;
+
+        JavaCompiledRegex(java.util.regex.Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        public void findAll(CharSequence text, MatchHandler matchHandler) {
+            java.util.regex.Matcher matcher = pattern.matcher(text);
+            while (matcher.find()) {
+                matchHandler.onMatch(matcher.start(), matcher.end());
+            }
+        }
+
+        @Override
+        public RegexEngine getRegexEngine() {
+            return RegexEngine.JAVA;
+        }
+
+    }
+
+    private static class Re2jCompiledRegex extends CompiledRegex {
+
+        private final com.google.re2j.Pattern pattern;
+
+        Re2jCompiledRegex(String regex, boolean ignoreCase) throws com.google.re2j.PatternSyntaxException {
+            this.pattern = ignoreCase ? com.google.re2j.Pattern.compile(regex, com.google.re2j.Pattern.CASE_INSENSITIVE)
+                    : com.google.re2j.Pattern.compile(regex);
+        }
+
+        @Override
+        public void findAll(CharSequence text, MatchHandler matchHandler) {
+            com.google.re2j.Matcher matcher = pattern.matcher(text);
+            while (matcher.find()) {
+                matchHandler.onMatch(matcher.start(), matcher.end());
+            }
+        }
+
+        @Override
+        public RegexEngine getRegexEngine() {
+            return RegexEngine.RE2J;
+        }
+
+    }
+
+}
@@ -446,6 +446,59 @@ public class GramBooleanQuery {
         return true;
     }
 
+    /*
+     * evaluation of the query tree on the grams of a text
+     * ---------------------------------------------------------
+     */
+
+    /**
+     * This function checks if a text that has the given grams satisfies the
+     * query. <br>
+     * The query must not be escaped for Lucene (see
+     * RegexToGramQueryTranslator.translateWithoutEscaping). <br>
+     * 
+     * @param grams,
+     *            the lower-case grams that occur in the text
+     * @return true if the query is satisfied
+     */
+    boolean matches(Set<String> grams) {
+        switch (this.operator) {
+        case NONE:
+            return false;
+        case LEAF:
+            return grams.contains(this.leaf);
+        case AND:
+            for (GramBooleanQuery subQuery : this.subQuerySet) {
+                if (!subQuery.matches(grams)) {
+                    return false;
+                }
+            }
+            return true;
+        case OR:
+            for (GramBooleanQuery subQuery : this.subQuerySet) {
+                if (subQuery.matches(grams)) {
+                    return true;
+                }
+            }
+            return this.subQuerySet.isEmpty();
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * This function adds the grams of all the leaf nodes to a set. <br>
+     */
+    void collectGrams(Set<String> grams) {
+        if (this.operator == QueryOp.LEAF) {
+            grams.add(this.leaf);
+        } else {
+            for (GramBooleanQuery subQuery : this.subQuerySet) {
+                subQuery.collectGrams(grams);
+            }
+        }
+    }
+
     /*
      * string representations of the query tree
      * ---------------------------------------------------------
@@ -0,0 +1,41 @@
+package edu.uci.ics.textdb.exp.regexmatcher;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * RegexEngine: the engine that executes the regex matching. <br>
+ * 
+ * AUTO: <br>
+ * Uses the linear-time re2j engine if the regex has the same meaning in re2j as in java.util.regex,
+ * and java.util.regex otherwise (see CompiledRegex). <br>
+ * 
+ * JAVA: <br>
+ * Always uses java.util.regex. It supports every feature of the java regex syntax
+ * (backreferences, lookarounds, possessive quantifiers), but it backtracks,
+ * so some regexes take exponential time on some texts. <br>
+ * 
+ * RE2J: <br>
+ * Always uses re2j, whose time is linear in the length of the text. A regex that re2j doesn't support
+ * is an error. <br>
+ * 
+ */
+public enum RegexEngine {
+    AUTO("auto"),
+    
+    JAVA("java"),
+    
+    RE2J("re2j");
+    
+    private final String name;
+    
+    private RegexEngine(String name) {
+        this.name = name;
+    }
+    
+    // use the name string instead of enum string in JSON
+    @JsonValue
+    public String getName() {
+        return this.name;
+    }
+    
+}
@@ -64,7 +64,7 @@ public class RegexMatcher extends AbstractSingleInputOperator {
     
     private Schema inputSchema;
     
-    private Pattern regexPattern;
+    private CompiledRegex compiledRegex;
     LabeledRegexProcessor labeledRegexProcessor;
 
     public RegexMatcher(RegexPredicate predicate) {
@@ -85,9 +85,8 @@ public class RegexMatcher extends AbstractSingleInputOperator {
         findRegexType();
         // Check if labeled or unlabeled
         if (this.regexType == RegexType.NO_LABELS) {
-            regexPattern = predicate.isIgnoreCase() ? 
-                    Pattern.compile(predicate.getRegex(), Pattern.CASE_INSENSITIVE)
-                    : Pattern.compile(predicate.getRegex());
+            compiledRegex = CompiledRegex.compile(predicate.getRegex(), predicate.isIgnoreCase(),
+                    predicate.getRegexEngine());
         } else {
             labeledRegexProcessor = new LabeledRegexProcessor(predicate);
         }
@@ -150,7 +149,7 @@ public class RegexMatcher extends AbstractSingleInputOperator {
         if (this.regexType != RegexType.NO_LABELS) {
             matchingResults = labeledRegexProcessor.computeMatchingResults(inputTuple);
         } else {
-            matchingResults = computeMatchingResultsWithPattern(inputTuple, predicate, regexPattern);
+            matchingResults = computeMatchingResults(inputTuple, predicate, compiledRegex);
         }
         
         if (matchingResults.isEmpty()) {
@@ -164,7 +163,8 @@ public class RegexMatcher extends AbstractSingleInputOperator {
         return inputTuple;
     }
 
-    public static List<Span> computeMatchingResultsWithPattern(Tuple inputTuple, RegexPredicate predicate, Pattern pattern) {
+    public static List<Span> computeMatchingResults(Tuple inputTuple, RegexPredicate predicate,
+            CompiledRegex compiledRegex) {
         List<Span> matchingResults = new ArrayList<>();
 
         for (String attributeName : predicate.getAttributeNames()) {
@@ -176,13 +176,8 @@ public class RegexMatcher extends AbstractSingleInputOperator {
                 throw new DataFlowException("KeywordMatcher: Fields other than STRING and TEXT are not supported yet");
             }
             
-            Matcher javaMatcher = pattern.matcher(fieldValue);
-            while (javaMatcher.find()) {
-                int start = javaMatcher.start();
-                int end = javaMatcher.end();
-                matchingResults.add(
-                        new Span(attributeName, start, end, predicate.getRegex(), fieldValue.substring(start, end)));
-            }
+            compiledRegex.findAll(fieldValue, (start, end) -> matchingResults.add(
+                    new Span(attributeName, start, end, predicate.getRegex(), fieldValue.substring(start, end))));
         }
         
         return matchingResults;
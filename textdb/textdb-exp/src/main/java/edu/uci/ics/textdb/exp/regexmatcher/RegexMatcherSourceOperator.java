@@ -1,5 +1,7 @@
 package edu.uci.ics.textdb.exp.regexmatcher;
 
+import java.util.List;
+
 import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.search.MatchAllDocsQuery;
@@ -32,6 +34,7 @@ public class RegexMatcherSourceOperator extends AbstractSingleInputOperator impl
             this.dataReader = RelationManager.getRelationManager().getTableDataReader(this.predicate.getTableName(), 
                     new MatchAllDocsQuery());
         }
+        this.dataReader.setPrefetchSize(DataReader.DEFAULT_PREFETCH_SIZE);
         
         regexMatcher = new RegexMatcher(this.predicate);
         regexMatcher.setInputOperator(dataReader);
@@ -59,27 +62,33 @@ public class RegexMatcherSourceOperator extends AbstractSingleInputOperator impl
     }
     
     public static Query createLuceneQuery(RegexSourcePredicate predicate) throws StorageException {
-        Query luceneQuery;
-        String queryString;
-        
+        return parseLuceneQuery(createLuceneQueryString(predicate.getRegex()), predicate.getAttributeNames(),
+                predicate.getTableName());
+    }
+    
+    /*
+     * Translates the regex to a gram query string, or the scan query if the translator fails.
+     */
+    static String createLuceneQueryString(String regex) {
         // Try to apply translator. If it fails, use scan query.
         try {
-            queryString = RegexToGramQueryTranslator.translate(predicate.getRegex()).getLuceneQueryString();
+            return RegexToGramQueryTranslator.translate(regex).getLuceneQueryString();
         } catch (com.google.re2j.PatternSyntaxException e) {
-            queryString = DataConstants.SCAN_QUERY;
+            return DataConstants.SCAN_QUERY;
         }
-
+    }
+    
+    static Query parseLuceneQuery(String queryString, List<String> attributeNames, String tableName)
+            throws StorageException {
         // Try to parse the query string. It if fails, raise an exception.
         try {
-            luceneQuery = new MultiFieldQueryParser(
-                    predicate.getAttributeNames().stream().toArray(String[]::new), 
-                    RelationManager.getRelationManager().getTableAnalyzer(predicate.getTableName()))
+            return new MultiFieldQueryParser(
+                    attributeNames.stream().toArray(String[]::new), 
+                    RelationManager.getRelationManager().getTableAnalyzer(tableName))
                     .parse(queryString);
         } catch (ParseException e) {
             throw new StorageException (e);
         }
-        
-        return luceneQuery;
     }
 
 }
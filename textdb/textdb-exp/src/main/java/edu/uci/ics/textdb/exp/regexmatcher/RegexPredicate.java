@@ -24,12 +24,17 @@ public class RegexPredicate extends PredicateBase {
     private final List<String> attributeNames;
     private final String spanListName;
     private final Boolean ignoreCase;
+    private final RegexEngine regexEngine;
     
     /*
      * This constructor is only for internal use.
      */
     public RegexPredicate(String regex, List<String> attributeNames, String spanListName) {
-        this(regex, attributeNames, null, spanListName);
+        this(regex, attributeNames, null, null, spanListName);
+    }
+    
+    public RegexPredicate(String regex, List<String> attributeNames, Boolean ignoreCase, String spanListName) {
+        this(regex, attributeNames, ignoreCase, null, spanListName);
     }
 
     /**
@@ -38,6 +43,7 @@ public class RegexPredicate extends PredicateBase {
      * @param regex, the regex to be used
      * @param attributeNames, a list of attribute names to match regex on
      * @param ignoreCase, optional, ignores regex case, default false
+     * @param regexEngine, optional, the engine that executes the regex, default auto (see RegexEngine)
      * @param spanListName, the name of the attribute where the results will be put in
      */
     @JsonCreator
@@ -48,6 +54,8 @@ public class RegexPredicate extends PredicateBase {
             List<String> attributeNames,
             @JsonProperty(value = PropertyNameConstants.REGEX_IGNORE_CASE, required = false)
             Boolean ignoreCase,
+            @JsonProperty(value = PropertyNameConstants.REGEX_ENGINE, required = false)
+            RegexEngine regexEngine,
             @JsonProperty(value = PropertyNameConstants.SPAN_LIST_NAME, required = true)
             String spanListName) {
         this.regex = regex;
@@ -57,6 +65,11 @@ public class RegexPredicate extends PredicateBase {
         } else {
             this.ignoreCase = ignoreCase;
         }
+        if (regexEngine == null) {
+            this.regexEngine = RegexEngine.AUTO;
+        } else {
+            this.regexEngine = regexEngine;
+        }
         if (spanListName == null || spanListName.trim().isEmpty()) {
             this.spanListName = this.getID();
         } else {
@@ -84,6 +97,11 @@ public class RegexPredicate extends PredicateBase {
         return this.ignoreCase;
     }
     
+    @JsonProperty(PropertyNameConstants.REGEX_ENGINE)
+    public RegexEngine getRegexEngine() {
+        return this.regexEngine;
+    }
+    
     @Override
     public IOperator newOperator() {
         return new RegexMatcher(this);
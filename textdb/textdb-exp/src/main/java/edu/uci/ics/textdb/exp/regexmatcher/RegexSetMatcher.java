@@ -0,0 +1,210 @@
+package edu.uci.ics.textdb.exp.regexmatcher;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import edu.uci.ics.textdb.api.constants.ErrorMessages;
+import edu.uci.ics.textdb.api.exception.DataFlowException;
+import edu.uci.ics.textdb.api.exception.TextDBException;
+import edu.uci.ics.textdb.api.field.ListField;
+import edu.uci.ics.textdb.api.schema.Attribute;
+import edu.uci.ics.textdb.api.schema.AttributeType;
+import edu.uci.ics.textdb.api.schema.Schema;
+import edu.uci.ics.textdb.api.span.Span;
+import edu.uci.ics.textdb.api.tuple.Tuple;
+import edu.uci.ics.textdb.api.utils.Utils;
+import edu.uci.ics.textdb.exp.common.AbstractSingleInputOperator;
+import edu.uci.ics.textdb.exp.keywordmatcher.SubstringMatcher;
+import edu.uci.ics.textdb.exp.utils.DataflowUtils;
+
+/**
+ * RegexSetMatcher matches a set of regexes on the same attributes. A tuple is returned if any of the regexes
+ *   matches it, with the spans of all the matching regexes in the span list attribute:
+ *   the key of each span is the regex that matched. The results are the union of the results of
+ *   a RegexMatcher for each regex, with the spans of the same tuple merged into one result
+ *   (a chain of RegexMatchers would only return the tuples that all the regexes match).
+ *
+ * Instead of running every regex on every field, each field is first scanned once for the grams
+ *   (the substrings of TranslatorUtils.DEFAULT_GRAM_LENGTH characters) that the regexes require,
+ *   with one Aho-Corasick automaton of the grams of all the regexes (see SubstringMatcher).
+ *   A regex is only run on a field if the grams in the field satisfy its gram query
+ *   (see RegexToGramQueryTranslator, the same query as the index of RegexMatcherSourceOperator).
+ *   A regex that has no gram query (for example, "\d+") is run on every field.
+ *
+ * The gram query is only used for regexes with the same meaning in re2j (see CompiledRegex.toLinearTimeRegex),
+ *   since the translator parses the regex with re2j. Labeled regexes are not supported.
+ *
+ */
+public class RegexSetMatcher extends AbstractSingleInputOperator {
+
+    private final RegexSetPredicate predicate;
+    private final List<String> regexes;
+
+    private Schema inputSchema;
+
+    private List<CompiledRegex> compiledRegexes;
+    // the gram query of each regex, null if the regex is always run
+    private List<GramBooleanQuery> gramQueries;
+    private List<String> grams;
+    private SubstringMatcher gramMatcher;
+
+    public RegexSetMatcher(RegexSetPredicate predicate) {
+        this.predicate = predicate;
+        this.regexes = predicate.getRegexes();
+    }
+
+    @Override
+    protected void setUp() throws DataFlowException {
+        inputSchema = inputOperator.getOutputSchema();
+
+        if (this.inputSchema.containsField(predicate.getSpanListName())) {
+            throw new DataFlowException(ErrorMessages.DUPLICATE_ATTRIBUTE(predicate.getSpanListName(), inputSchema));
+        }
+        outputSchema = Utils.addAttributeToSchema(inputSchema,
+                new Attribute(predicate.getSpanListName(), AttributeType.LIST));
+
+        Pattern labelPattern = Pattern.compile(RegexMatcher.CHECK_REGEX_LABEL);
+        compiledRegexes = new ArrayList<>();
+        gramQueries = new ArrayList<>();
+        Set<String> gramSet = new HashSet<>();
+        for (String regex : regexes) {
+            if (labelPattern.matcher(regex).find()) {
+                throw new DataFlowException("labeled regex is not supported in a regex set: " + regex);
+            }
+            compiledRegexes.add(CompiledRegex.compile(regex, predicate.isIgnoreCase(), predicate.getRegexEngine()));
+            GramBooleanQuery gramQuery = createGramQuery(regex);
+            if (gramQuery != null) {
+                gramQuery.collectGrams(gramSet);
+            }
+            gramQueries.add(gramQuery);
+        }
+        grams = new ArrayList<>(gramSet);
+        if (! grams.isEmpty()) {
+            gramMatcher = SubstringMatcher.compile(grams);
+        }
+    }
+
+    /*
+     * Creates the gram query of a regex, returns null if the regex should be run on every field.
+     *
+     * The grams are lower case and the SubstringMatcher ignores case, so the gram query is also correct
+     *   for a regex that doesn't ignore case. The regex must be ASCII, since String.toLowerCase (used by the translator)
+     *   can change the length of non-ASCII characters, and it must not have upper case escapes like "\D" or "\W",
+     *   since they are changed to the opposite classes by String.toLowerCase.
+     */
+    private static GramBooleanQuery createGramQuery(String regex) {
+        String linearTimeRegex = CompiledRegex.toLinearTimeRegex(regex, false);
+        if (linearTimeRegex == null) {
+            return null;
+        }
+        for (int i = 0; i < linearTimeRegex.length(); i++) {
+            char c = linearTimeRegex.charAt(i);
+            if (c >= 128) {
+                return null;
+            }
+            if (c == '\\' && i + 1 < linearTimeRegex.length()) {
+                i++;
+                if (Character.isUpperCase(linearTimeRegex.charAt(i))) {
+                    return null;
+                }
+            }
+        }
+        GramBooleanQuery gramQuery;
+        try {
+            gramQuery = RegexToGramQueryTranslator.translateWithoutEscaping(linearTimeRegex,
+                    TranslatorUtils.DEFAULT_GRAM_LENGTH);
+        } catch (com.google.re2j.PatternSyntaxException e) {
+            return null;
+        }
+        if (gramQuery.operator != GramBooleanQuery.QueryOp.LEAF && gramQuery.operator != GramBooleanQuery.QueryOp.AND
+                && gramQuery.operator != GramBooleanQuery.QueryOp.OR) {
+            return null;
+        }
+        return gramQuery;
+    }
+
+    @Override
+    protected Tuple computeNextMatchingTuple() throws TextDBException {
+        Tuple inputTuple = null;
+        Tuple resultTuple = null;
+
+        while ((inputTuple = inputOperator.getNextTuple()) != null) {
+            inputTuple = DataflowUtils.getSpanTuple(inputTuple.getFields(), new ArrayList<Span>(), outputSchema);
+            resultTuple = processOneInputTuple(inputTuple);
+            if (resultTuple != null) {
+                break;
+            }
+        }
+
+        return resultTuple;
+    }
+
+    /**
+     * Adds the spans of all the regexes to the span list of the tuple.
+     *
+     * @param inputTuple
+     * @return the tuple, null if no regex matches
+     * @throws DataFlowException
+     */
+    @Override
+    public Tuple processOneInputTuple(Tuple inputTuple) throws DataFlowException {
+        if (inputTuple == null) {
+            return null;
+        }
+
+        List<Span> matchingResults = new ArrayList<>();
+        for (String attributeName : predicate.getAttributeNames()) {
+            AttributeType attributeType = inputTuple.getSchema().getAttribute(attributeName).getAttributeType();
+            String fieldValue = inputTuple.getField(attributeName).getValue().toString();
+
+            // types other than TEXT and STRING: throw Exception for now
+            if (attributeType != AttributeType.STRING && attributeType != AttributeType.TEXT) {
+                throw new DataFlowException("RegexSetMatcher: Fields other than STRING and TEXT are not supported yet");
+            }
+
+            Set<String> fieldGrams = findGrams(fieldValue);
+            for (int i = 0; i < regexes.size(); i++) {
+                GramBooleanQuery gramQuery = gramQueries.get(i);
+                if (gramQuery != null && ! gramQuery.matches(fieldGrams)) {
+                    continue;
+                }
+                String regex = regexes.get(i);
+                compiledRegexes.get(i).findAll(fieldValue, (start, end) -> matchingResults.add(
+                        new Span(attributeName, start, end, regex, fieldValue.substring(start, end))));
+            }
+        }
+
+        if (matchingResults.isEmpty()) {
+            return null;
+        }
+
+        ListField<Span> spanListField = inputTuple.getField(predicate.getSpanListName());
+        List<Span> spanList = spanListField.getValue();
+        spanList.addAll(matchingResults);
+
+        return inputTuple;
+    }
+
+    /*
+     * Finds the grams of the regexes that occur in the text, in one pass.
+     */
+    private Set<String> findGrams(String text) {
+        Set<String> fieldGrams = new HashSet<>();
+        if (gramMatcher != null) {
+            gramMatcher.findAll(text, (gramIndex, start, end) -> fieldGrams.add(grams.get(gramIndex)));
+        }
+        return fieldGrams;
+    }
+
+    @Override
+    protected void cleanUp() throws DataFlowException {
+    }
+
+    public RegexSetPredicate getPredicate() {
+        return this.predicate;
+    }
+
+}
@@ -0,0 +1,100 @@
+package edu.uci.ics.textdb.exp.regexmatcher;
+
+import java.util.StringJoiner;
+
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+
+import edu.uci.ics.textdb.api.constants.DataConstants;
+import edu.uci.ics.textdb.api.dataflow.IOperator;
+import edu.uci.ics.textdb.api.dataflow.ISourceOperator;
+import edu.uci.ics.textdb.api.exception.DataFlowException;
+import edu.uci.ics.textdb.api.exception.StorageException;
+import edu.uci.ics.textdb.api.exception.TextDBException;
+import edu.uci.ics.textdb.api.tuple.Tuple;
+import edu.uci.ics.textdb.exp.common.AbstractSingleInputOperator;
+import edu.uci.ics.textdb.storage.DataReader;
+import edu.uci.ics.textdb.storage.RelationManager;
+
+/**
+ * RegexSetMatcherSourceOperator is a source operator with a set of regexes.
+ *
+ * The index is searched once with the disjunction of the gram queries of all the regexes
+ *   (the same query as RegexMatcherSourceOperator for each regex), and the candidate documents
+ *   are matched by a RegexSetMatcher. If a regex has no gram query, the whole table is scanned.
+ *
+ */
+public class RegexSetMatcherSourceOperator extends AbstractSingleInputOperator implements ISourceOperator {
+
+    private final RegexSetSourcePredicate predicate;
+
+    private final DataReader dataReader;
+    private final RegexSetMatcher regexSetMatcher;
+
+    public RegexSetMatcherSourceOperator(RegexSetSourcePredicate predicate) throws StorageException, DataFlowException {
+        this.predicate = predicate;
+
+        if (this.predicate.isUseIndex()) {
+            this.dataReader = RelationManager.getRelationManager().getTableDataReader(this.predicate.getTableName(),
+                    createLuceneQuery(this.predicate));
+        } else {
+            this.dataReader = RelationManager.getRelationManager().getTableDataReader(this.predicate.getTableName(),
+                    new MatchAllDocsQuery());
+        }
+        this.dataReader.setPrefetchSize(DataReader.DEFAULT_PREFETCH_SIZE);
+
+        regexSetMatcher = new RegexSetMatcher(this.predicate);
+        regexSetMatcher.setInputOperator(dataReader);
+
+        this.inputOperator = this.regexSetMatcher;
+    }
+
+    @Override
+    protected void setUp() throws TextDBException {
+        this.outputSchema = regexSetMatcher.getOutputSchema();
+    }
+
+    @Override
+    protected Tuple computeNextMatchingTuple() throws TextDBException {
+        return this.regexSetMatcher.getNextTuple();
+    }
+
+    @Override
+    public Tuple processOneInputTuple(Tuple inputTuple) throws TextDBException {
+        return this.regexSetMatcher.processOneInputTuple(inputTuple);
+    }
+
+    @Override
+    protected void cleanUp() throws TextDBException {
+    }
+
+    /**
+     * Source Operator doesn't need an input operator. Calling setInputOperator
+     * won't have any effects.
+     */
+    @Override
+    public void setInputOperator(IOperator inputOperator) {
+    }
+
+    public RegexSetSourcePredicate getPredicate() {
+        return this.predicate;
+    }
+
+    public static Query createLuceneQuery(RegexSetSourcePredicate predicate) throws StorageException {
+        StringJoiner queryStringJoiner = new StringJoiner(" OR ");
+        for (String regex : predicate.getRegexes()) {
+            String queryString = RegexMatcherSourceOperator.createLuceneQueryString(regex);
+            // one regex can match any document, so all the documents are candidates
+            if (queryString.equals(DataConstants.SCAN_QUERY)) {
+                return new MatchAllDocsQuery();
+            }
+            queryStringJoiner.add(queryString);
+        }
+        if (queryStringJoiner.length() == 0) {
+            return new MatchAllDocsQuery();
+        }
+        return RegexMatcherSourceOperator.parseLuceneQuery(queryStringJoiner.toString(), predicate.getAttributeNames(),
+                predicate.getTableName());
+    }
+
+}
@@ -0,0 +1,102 @@
+package edu.uci.ics.textdb.exp.regexmatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import edu.uci.ics.textdb.api.dataflow.IOperator;
+import edu.uci.ics.textdb.exp.common.PredicateBase;
+import edu.uci.ics.textdb.exp.common.PropertyNameConstants;
+
+/**
+ * This class is the predicate for a set of regexes matched together (see RegexSetMatcher).
+ *
+ */
+public class RegexSetPredicate extends PredicateBase {
+
+    private final List<String> regexes;
+    private final List<String> attributeNames;
+    private final String spanListName;
+    private final Boolean ignoreCase;
+    private final RegexEngine regexEngine;
+
+    /*
+     * This constructor is only for internal use.
+     */
+    public RegexSetPredicate(List<String> regexes, List<String> attributeNames, String spanListName) {
+        this(regexes, attributeNames, null, null, spanListName);
+    }
+
+    /**
+     * RegexSetPredicate is used to create a RegexSetMatcher.
+     * 
+     * @param regexes, the regexes to be used
+     * @param attributeNames, a list of attribute names to match the regexes on
+     * @param ignoreCase, optional, ignores regex case, default false
+     * @param regexEngine, optional, the engine that executes the regexes, default auto (see RegexEngine)
+     * @param spanListName, the name of the attribute where the results will be put in
+     */
+    @JsonCreator
+    public RegexSetPredicate(
+            @JsonProperty(value = PropertyNameConstants.REGEX_LIST, required = true)
+            List<String> regexes,
+            @JsonProperty(value = PropertyNameConstants.ATTRIBUTE_NAMES, required = true)
+            List<String> attributeNames,
+            @JsonProperty(value = PropertyNameConstants.REGEX_IGNORE_CASE, required = false)
+            Boolean ignoreCase,
+            @JsonProperty(value = PropertyNameConstants.REGEX_ENGINE, required = false)
+            RegexEngine regexEngine,
+            @JsonProperty(value = PropertyNameConstants.SPAN_LIST_NAME, required = true)
+            String spanListName) {
+        this.regexes = regexes;
+        this.attributeNames = attributeNames;
+        if (ignoreCase == null) {
+            this.ignoreCase = false;
+        } else {
+            this.ignoreCase = ignoreCase;
+        }
+        if (regexEngine == null) {
+            this.regexEngine = RegexEngine.AUTO;
+        } else {
+            this.regexEngine = regexEngine;
+        }
+        if (spanListName == null || spanListName.trim().isEmpty()) {
+            this.spanListName = this.getID();
+        } else {
+            this.spanListName = spanListName.trim();
+        }
+    }
+
+    @JsonProperty(PropertyNameConstants.REGEX_LIST)
+    public List<String> getRegexes() {
+        return new ArrayList<>(this.regexes);
+    }
+
+    @JsonProperty(PropertyNameConstants.ATTRIBUTE_NAMES)
+    public List<String> getAttributeNames() {
+        return new ArrayList<>(this.attributeNames);
+    }
+
+    @JsonProperty(PropertyNameConstants.SPAN_LIST_NAME)
+    public String getSpanListName() {
+        return this.spanListName;
+    }
+
+    @JsonProperty(PropertyNameConstants.REGEX_IGNORE_CASE)
+    public Boolean isIgnoreCase() {
+        return this.ignoreCase;
+    }
+
+    @JsonProperty(PropertyNameConstants.REGEX_ENGINE)
+    public RegexEngine getRegexEngine() {
+        return this.regexEngine;
+    }
+
+    @Override
+    public IOperator newOperator() {
+        return new RegexSetMatcher(this);
+    }
+
+}
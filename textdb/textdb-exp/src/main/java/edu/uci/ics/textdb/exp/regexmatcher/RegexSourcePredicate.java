@@ -21,7 +21,17 @@ public class RegexSourcePredicate extends RegexPredicate {
             List<String> attributeNames, 
             String tableName,
             String spanListName) {
-        this(regex, attributeNames, null, tableName, null, spanListName);
+        this(regex, attributeNames, null, null, tableName, null, spanListName);
+    }
+    
+    public RegexSourcePredicate(
+            String regex, 
+            List<String> attributeNames, 
+            Boolean ignoreCase, 
+            String tableName,
+            Boolean useIndex,
+            String spanListName) {
+        this(regex, attributeNames, ignoreCase, null, tableName, useIndex, spanListName);
     }
 
     /**
@@ -30,6 +40,7 @@ public class RegexSourcePredicate extends RegexPredicate {
      * @param regex, the regex to be used
      * @param attributeNames, a list of attribute names to match regex on
      * @param ignoreCase, optional, ignores regex case, default false
+     * @param regexEngine, optional, the engine that executes the regex, default auto (see RegexEngine)
      * @param tableName, the name of the source table
      * @param useIndex, optional, use the gram-based regex index query, default true
      * @param spanListName, the name of the attribute where the results will be put in
@@ -42,13 +53,15 @@ public class RegexSourcePredicate extends RegexPredicate {
             List<String> attributeNames, 
             @JsonProperty(value = PropertyNameConstants.REGEX_IGNORE_CASE, required = false)
             Boolean ignoreCase, 
+            @JsonProperty(value = PropertyNameConstants.REGEX_ENGINE, required = false)
+            RegexEngine regexEngine,
             @JsonProperty(value = PropertyNameConstants.TABLE_NAME, required = true)
             String tableName,
             @JsonProperty(value = PropertyNameConstants.REGEX_USE_INDEX, required = false)
             Boolean useIndex,
             @JsonProperty(value = PropertyNameConstants.SPAN_LIST_NAME, required = true)
             String spanListName) {
-        super(regex, attributeNames, ignoreCase, spanListName);
+        super(regex, attributeNames, ignoreCase, regexEngine, spanListName);
         this.tableName = tableName;
         if (useIndex == null) {
             this.useIndex = true;
@@ -43,6 +43,26 @@ public class RegexToGramQueryTranslator {
     public static GramBooleanQuery translate(String regex, int gramLength)
             throws com.google.re2j.PatternSyntaxException {
 
+        GramBooleanQuery gramQuery = translateWithoutEscaping(regex, gramLength);
+
+        TranslatorUtils.escapeSpecialCharacters(gramQuery);
+
+        return gramQuery;
+    }
+
+    /**
+     * This method translates a regular expression to a boolean expression of
+     * n-grams, without escaping the special characters of Lucene. <br>
+     * The result can be evaluated on the grams of a text in memory (see
+     * GramBooleanQuery.matches). <br>
+     * 
+     * @param regex,
+     *            the regex string to be translated.
+     * @return GamBooleanQeruy, a boolean query of n-grams.
+     */
+    static GramBooleanQuery translateWithoutEscaping(String regex, int gramLength)
+            throws com.google.re2j.PatternSyntaxException {
+
         TranslatorUtils.GRAM_LENGTH = gramLength;
 
         // Since the inverted index relies on lower-case grams, we need to
@@ -57,8 +77,6 @@ public class RegexToGramQueryTranslator {
 
         TranslatorUtils.GRAM_LENGTH = TranslatorUtils.DEFAULT_GRAM_LENGTH;
 
-        TranslatorUtils.escapeSpecialCharacters(regexInfo.match);
-
         return regexInfo.match;
     }
 
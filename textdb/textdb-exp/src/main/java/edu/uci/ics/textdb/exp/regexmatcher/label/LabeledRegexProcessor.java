@@ -2,23 +2,30 @@ package edu.uci.ics.textdb.exp.regexmatcher.label;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.StringJoiner;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 import edu.uci.ics.textdb.api.exception.DataFlowException;
 import edu.uci.ics.textdb.api.field.ListField;
 import edu.uci.ics.textdb.api.span.Span;
 import edu.uci.ics.textdb.api.tuple.Tuple;
+import edu.uci.ics.textdb.exp.regexmatcher.CompiledRegex;
 import edu.uci.ics.textdb.exp.regexmatcher.RegexMatcher;
 import edu.uci.ics.textdb.exp.regexmatcher.RegexPredicate;
 
 /**
  * Helper class for processing labeled regex.
  * 
+ * The labels are replaced by the alternation of their values in each tuple, and the regex is compiled again.
+ *   The compiled regexes are cached by the label values (the least recently used one is evicted),
+ *   since many tuples have the same label values.
+ * 
  * @author Bhushan Pagariya (bhushanpagariya)
  * @author Harshini Shah
  * @author Yashaswini Amaresh
@@ -27,10 +34,24 @@ import edu.uci.ics.textdb.exp.regexmatcher.RegexPredicate;
  */
 public class LabeledRegexProcessor {
     
+    // the maximum number of compiled regexes in the cache
+    private static final int COMPILED_REGEX_CACHE_SIZE = 1000;
+    
     private RegexPredicate predicate;
     private String cleanedRegex;
     private ArrayList<String> labelList = new ArrayList<>();
     
+    // the compiled regexes, keyed by the values of the labels
+    private final Map<Map<String, Set<String>>, CompiledRegex> compiledRegexCache = 
+            new LinkedHashMap<Map<String, Set<String>>, CompiledRegex>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Map<String, Set<String>>, CompiledRegex> eldest) {
+            return size() > COMPILED_REGEX_CACHE_SIZE;
+        }
+    };
+    
     public LabeledRegexProcessor(RegexPredicate predicate) {
         this.predicate = predicate;
         preprocessRegex();
@@ -55,12 +76,14 @@ public class LabeledRegexProcessor {
      */
     public List<Span> computeMatchingResults(Tuple inputTuple) {
         Map<String, Set<String>> labelValues = fetchLabelValues(inputTuple);
-        String regexWithVal = rewriteRegexWithLabelValues(labelValues);
-        Pattern regexPattern = predicate.isIgnoreCase() ? 
-                Pattern.compile(regexWithVal, Pattern.CASE_INSENSITIVE)
-                : Pattern.compile(regexWithVal);
-                
-        return RegexMatcher.computeMatchingResultsWithPattern(inputTuple, predicate, regexPattern);
+        CompiledRegex compiledRegex = compiledRegexCache.get(labelValues);
+        if (compiledRegex == null) {
+            String regexWithVal = rewriteRegexWithLabelValues(labelValues);
+            compiledRegex = CompiledRegex.compile(regexWithVal, predicate.isIgnoreCase(), predicate.getRegexEngine());
+            compiledRegexCache.put(labelValues, compiledRegex);
+        }
+        
+        return RegexMatcher.computeMatchingResults(inputTuple, predicate, compiledRegex);
     }
     
     /**
@@ -75,10 +98,10 @@ public class LabeledRegexProcessor {
                 throw new DataFlowException("label " + label + " does not exist");
             }
             ListField<Span> spanListField = inputTuple.getField(label);
-            Set<String> labelValues = spanListField.getValue().stream()
-                    .map(span -> span.getValue())
-                    .map(value -> escapeString(value))
-                    .collect(Collectors.toSet());
+            Set<String> labelValues = new HashSet<>();
+            for (Span span : spanListField.getValue()) {
+                labelValues.add(escapeString(span.getValue()));
+            }
             labelSpanList.put(label, labelValues);
         }
         return labelSpanList;
@@ -86,15 +109,29 @@ public class LabeledRegexProcessor {
     
     /*
      * Try to escape all special characters in a string
-     *   by escape all non-letter and non-digit character.
+     *   by escape all ASCII non-letter and non-digit character.
      * 
      * If the character is not a special character in regex,
      *   then escaping it will still be itself.
+     * Non-ASCII characters are never special characters, they are not escaped,
+     *   so that the regex can still be run by re2j (see CompiledRegex).
      */
-    private static String escapeString(String str) {
-        return str.chars()
-            .mapToObj(ch -> (Character.isLetterOrDigit(ch) ? "" : "\\") + String.valueOf((char) ch))
-            .collect(Collectors.joining());
+    static String escapeString(String str) {
+        StringBuilder escaped = null;
+        for (int i = 0; i < str.length(); i++) {
+            char ch = str.charAt(i);
+            if (ch < 128 && ! Character.isLetterOrDigit(ch)) {
+                if (escaped == null) {
+                    escaped = new StringBuilder(str.length() + 8);
+                    escaped.append(str, 0, i);
+                }
+                escaped.append('\\');
+            }
+            if (escaped != null) {
+                escaped.append(ch);
+            }
+        }
+        return escaped == null ? str : escaped.toString();
     }
     
     /**
@@ -106,8 +143,12 @@ public class LabeledRegexProcessor {
     private String rewriteRegexWithLabelValues(Map<String, Set<String>> labelValues) {
         String regexWithValue = cleanedRegex;
         for(Map.Entry<String, Set<String>> entry : labelValues.entrySet()){
-            String repVal = "(" + entry.getValue().stream().collect(Collectors.joining("|")) + ")";
-            regexWithValue = regexWithValue.replaceAll("<"+entry.getKey()+">", repVal);
+            StringJoiner repVal = new StringJoiner("|", "(", ")");
+            for (String value : entry.getValue()) {
+                repVal.add(value);
+            }
+            // replace literally, the label and the escaped values are not regexes
+            regexWithValue = regexWithValue.replace("<" + entry.getKey() + ">", repVal.toString());
         }
         return regexWithValue;
     }
@@ -7,6 +7,7 @@ import edu.uci.ics.textdb.api.exception.DataFlowException;
 import edu.uci.ics.textdb.api.exception.TextDBException;
 import edu.uci.ics.textdb.api.schema.Schema;
 import edu.uci.ics.textdb.api.tuple.Tuple;
+import edu.uci.ics.textdb.storage.ReadSnapshot;
 
 /**
  * Created by chenli on 5/11/16.
@@ -19,6 +20,7 @@ import edu.uci.ics.textdb.api.tuple.Tuple;
 public abstract class AbstractSink implements ISink {
 
     private IOperator inputOperator;
+    private ReadSnapshot readSnapshot;
     private int cursor = CLOSED;
 
     /**
@@ -29,7 +31,7 @@ public abstract class AbstractSink implements ISink {
         if (cursor != CLOSED) {
             return;
         }
-        inputOperator.open();
+        readSnapshot = ReadSnapshot.openWith(inputOperator::open);
         cursor = OPENED;
     }
 
@@ -46,12 +48,13 @@ public abstract class AbstractSink implements ISink {
         if (cursor == CLOSED) {
             throw new DataFlowException(ErrorMessages.OPERATOR_NOT_OPENED);
         }
-        Tuple nextTuple;
-
-        while ((nextTuple = inputOperator.getNextTuple()) != null) {
-            processOneTuple(nextTuple);
-            cursor++;
-        }
+        ReadSnapshot.runWith(readSnapshot, () -> {
+            Tuple nextTuple;
+            while ((nextTuple = inputOperator.getNextTuple()) != null) {
+                processOneTuple(nextTuple);
+                cursor++;
+            }
+        });
     }
 
     /**
@@ -66,7 +69,7 @@ public abstract class AbstractSink implements ISink {
         if (cursor == CLOSED) {
             return;
         }
-        inputOperator.close();
+        ReadSnapshot.closeWith(readSnapshot, inputOperator::close);
         cursor = CLOSED;
     }
     
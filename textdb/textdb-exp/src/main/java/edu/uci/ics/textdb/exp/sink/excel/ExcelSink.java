@@ -30,6 +30,7 @@ import edu.uci.ics.textdb.api.schema.AttributeType;
 import edu.uci.ics.textdb.api.schema.Schema;
 import edu.uci.ics.textdb.api.tuple.Tuple;
 import edu.uci.ics.textdb.api.utils.Utils;
+import edu.uci.ics.textdb.storage.ReadSnapshot;
 
 /**
  * ExcelSink is a sink that can write a list of tuples into an excel file
@@ -41,6 +42,7 @@ public class ExcelSink implements ISink {
     
     private ExcelSinkPredicate predicate;
     private IOperator inputOperator;
+    private ReadSnapshot readSnapshot;
     
     private Schema inputSchema;
     private Schema outputSchema;
@@ -76,7 +78,7 @@ public class ExcelSink implements ISink {
         if (cursor != CLOSED) {
             return;
         }
-        inputOperator.open();
+        readSnapshot = ReadSnapshot.openWith(inputOperator::open);
         inputSchema = inputOperator.getOutputSchema();
         outputSchema = new Schema(inputSchema.getAttributes().stream()
                 .filter(attr -> ! attr.getAttributeName().equalsIgnoreCase(SchemaConstants._ID))
@@ -123,16 +125,9 @@ public class ExcelSink implements ISink {
         if (cursor >= predicate.getLimit() + predicate.getOffset()) {
             return null;
         }
-        Tuple inputTuple = null;
-        while (true) {
-            inputTuple = inputOperator.getNextTuple();
-            if (inputTuple == null) {
-                return null;
-            }
-            cursor++;
-            if (cursor > predicate.getOffset()) {
-                break;
-            }
+        Tuple inputTuple = ReadSnapshot.callWith(readSnapshot, this::getNextInputTupleAfterOffset);
+        if (inputTuple == null) {
+            return null;
         }
         
         Tuple resultTuple = Utils.removeFields(inputTuple, SchemaConstants._ID, SchemaConstants.PAYLOAD);
@@ -145,12 +140,25 @@ public class ExcelSink implements ISink {
         return resultTuple;
     }
 
+    private Tuple getNextInputTupleAfterOffset() {
+        while (true) {
+            Tuple inputTuple = inputOperator.getNextTuple();
+            if (inputTuple == null) {
+                return null;
+            }
+            cursor++;
+            if (cursor > predicate.getOffset()) {
+                return inputTuple;
+            }
+        }
+    }
+
     @Override
     public void close() throws TextDBException {
         if (cursor == CLOSED) {
             return;
         }
-    	inputOperator.close();
+        ReadSnapshot.closeWith(readSnapshot, inputOperator::close);
         try {
             wb.write(fileOut);
 			fileOut.close();
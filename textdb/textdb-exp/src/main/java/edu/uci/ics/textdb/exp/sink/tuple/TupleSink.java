@@ -11,6 +11,7 @@ import edu.uci.ics.textdb.api.exception.TextDBException;
 import edu.uci.ics.textdb.api.schema.Schema;
 import edu.uci.ics.textdb.api.tuple.Tuple;
 import edu.uci.ics.textdb.api.utils.Utils;
+import edu.uci.ics.textdb.storage.ReadSnapshot;
 
 /**
  * TupleStreamSink is a sink that can be used by the caller to get tuples one by one.
@@ -23,6 +24,7 @@ public class TupleSink implements ISink {
     private TupleSinkPredicate predicate;
     
     private IOperator inputOperator;
+    private ReadSnapshot readSnapshot;
     
     private Schema inputSchema;
     private Schema outputSchema;
@@ -69,7 +71,7 @@ public class TupleSink implements ISink {
         if (inputOperator == null) {
             throw new RuntimeException(ErrorMessages.INPUT_OPERATOR_NOT_SPECIFIED);
         }
-        inputOperator.open();
+        readSnapshot = ReadSnapshot.openWith(inputOperator::open);
         inputSchema = inputOperator.getOutputSchema();
         outputSchema = Utils.removeAttributeFromSchema(inputSchema, SchemaConstants.PAYLOAD);
         cursor = OPENED;
@@ -88,26 +90,38 @@ public class TupleSink implements ISink {
         if (cursor >= predicate.getLimit() + predicate.getOffset()) {
             return null;
         }
-        Tuple resultTuple = null;
+        Tuple resultTuple = ReadSnapshot.callWith(readSnapshot, this::getNextInputTupleAfterOffset);
+        if (resultTuple == null) {
+            return null;
+        }
+        return Utils.removeFields(resultTuple, SchemaConstants.PAYLOAD);
+    }
+
+    private Tuple getNextInputTupleAfterOffset() {
         while (true) {
-            resultTuple = inputOperator.getNextTuple();
-            if (resultTuple == null) {
+            Tuple inputTuple = inputOperator.getNextTuple();
+            if (inputTuple == null) {
                 return null;
             }
             cursor++;
             if (cursor > predicate.getOffset()) {
-                break;
+                return inputTuple;
             }
         }
-        return Utils.removeFields(resultTuple, SchemaConstants.PAYLOAD);
     }
 
     @Override
     public void close() throws TextDBException {
         if (cursor == CLOSED) {
         }
-        if (inputOperator != null) {
-            inputOperator.close();
+        try {
+            ReadSnapshot.closeWith(readSnapshot, () -> {
+                if (inputOperator != null) {
+                    inputOperator.close();
+                }
+            });
+        } finally {
+            readSnapshot = null;
         }
         cursor = CLOSED;
     }
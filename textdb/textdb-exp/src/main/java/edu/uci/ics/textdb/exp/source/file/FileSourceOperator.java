@@ -51,6 +51,37 @@ public class FileSourceOperator implements ISourceOperator {
             .findAny().isPresent();
     }
     
+    /*
+     * Lists the valid text files of a file path according to the predicate.
+     * If the path is a directory, it lists the files under it (recursively if the predicate says so),
+     *   and filters out directories, files starting with ".", and files that don't end with allowedExtensions.
+     */
+    static List<Path> listFiles(Path filePath, FileSourcePredicate predicate) throws IOException {
+        List<Path> pathList = new ArrayList<>();
+        if (Files.isDirectory(filePath)) {
+            if (predicate.isRecursive()) {
+                pathList.addAll(Files.walk(filePath, predicate.getMaxDepth()).collect(Collectors.toList()));
+            } else {
+                pathList.addAll(Files.list(filePath).collect(Collectors.toList()));
+            }
+        } else {
+            pathList.add(filePath);
+        }
+        
+        return pathList.stream()
+            .filter(path -> isValidFile(path, predicate))
+            .collect(Collectors.toList());
+    }
+    
+    /*
+     * A file is valid if it's not a directory, doesn't start with ".", and ends with one of the allowedExtensions.
+     */
+    static boolean isValidFile(Path path, FileSourcePredicate predicate) {
+        return ! Files.isDirectory(path) 
+                && ! path.getFileName().startsWith(".") 
+                && isExtensionAllowed(predicate.getAllowedExtensions(), path);
+    }
+    
     private final FileSourcePredicate predicate;
     // output schema of this file source operator
     private final Schema outputSchema;
@@ -68,36 +99,17 @@ public class FileSourceOperator implements ISourceOperator {
                 SchemaConstants._ID_ATTRIBUTE,
                 new Attribute(predicate.getAttributeName(), AttributeType.TEXT));
 
-        this.pathList = new ArrayList<>();
-        
         Path filePath = Paths.get(predicate.getFilePath());
         if (! Files.exists(filePath)) {
             throw new RuntimeException(String.format("file %s doesn't exist", filePath));
         }
         
-        if (Files.isDirectory(filePath)) {
-            try {
-                if (this.predicate.isRecursive()) {
-                    pathList.addAll(Files.walk(filePath, this.predicate.getMaxDepth()).collect(Collectors.toList()));
-                } else {
-                    pathList.addAll(Files.list(filePath).collect(Collectors.toList()));
-                }
-                
-            } catch (IOException e) {
-                throw new RuntimeException(String.format(
-                        "opening directory %s failed: " + e.getMessage(), filePath));
-            }
-        } else {
-            pathList.add(filePath);
+        try {
+            this.pathList = listFiles(filePath, this.predicate);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format(
+                    "opening directory %s failed: " + e.getMessage(), filePath));
         }
-                
-        // filter directories, files starting with ".", 
-        //   and files that don't end with allowedExtensions
-        this.pathList = pathList.stream()
-            .filter(path -> ! Files.isDirectory(path))
-            .filter(path -> ! path.getFileName().startsWith("."))
-            .filter(path -> isExtensionAllowed(this.predicate.getAllowedExtensions(), path))
-            .collect(Collectors.toList());
         
         // check if the path list is empty
         if (pathList.isEmpty()) {
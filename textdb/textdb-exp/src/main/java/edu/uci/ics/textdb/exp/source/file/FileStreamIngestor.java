@@ -0,0 +1,553 @@
+package edu.uci.ics.textdb.exp.source.file;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.uci.ics.textdb.api.exception.DataFlowException;
+import edu.uci.ics.textdb.api.exception.TextDBException;
+import edu.uci.ics.textdb.api.field.TextField;
+import edu.uci.ics.textdb.api.schema.Attribute;
+import edu.uci.ics.textdb.api.schema.AttributeType;
+import edu.uci.ics.textdb.api.schema.Schema;
+import edu.uci.ics.textdb.api.tuple.Tuple;
+import edu.uci.ics.textdb.api.utils.Utils;
+import edu.uci.ics.textdb.storage.DataWriter;
+import edu.uci.ics.textdb.storage.RelationManager;
+
+/**
+ * FileStreamIngestor continuously ingests the text files under a directory into a table.
+ *
+ * The files are selected the same way as FileSourceOperator (see FileSourcePredicate):
+ *   the allowed extensions, and optionally the sub-directories up to the max depth.
+ *   The table must have one TEXT attribute, with the attributeName of the predicate.
+ *
+ * The ingestor remembers how many bytes of each file have been ingested (the offset of the file):
+ *   - a new file is ingested as one tuple, like FileSourceOperator.
+ *   - when content is appended to a file, only the appended content is ingested, as a new tuple.
+ *   While the directory is watched, a changed file is only read when no change of it has been reported
+ *   for QUIET_PERIOD_MILLIS, so a file that is written in several parts is ingested as one tuple.
+ *   If the writer of the file pauses for longer than that, the rest of the file is ingested as appended content.
+ *   - when a file becomes shorter than its offset (it's truncated or replaced), it's ingested again from the beginning.
+ *
+ * The tuples are written to the table in batches, through the table's DataWriter.
+ *   A batch is written when it has batchSize tuples, or when no more changes arrive in a short time.
+ *
+ * The offsets are saved in a JSON offset file after each batch is written,
+ *   so that a restarted ingestor doesn't ingest the same content again.
+ *   If the process stops after a batch is written but before the offsets are saved,
+ *   the last batch is ingested again when it restarts (at-least-once).
+ *
+ * Usage:
+ *   ingestAvailable() ingests everything that has changed since the last ingestion, and returns.
+ *   start() ingests everything that has changed, then watches the directory (using a WatchService)
+ *     and ingests the changes in a background thread, until stop() is called.
+ *     If the background thread fails, it stops ingesting (see getFailure), and stop() must still be called
+ *     to release the WatchService and write the pending tuples.
+ *
+ */
+public class FileStreamIngestor implements AutoCloseable {
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    // how long the watcher waits for more changes before it writes a partial batch
+    public static final long POLL_TIMEOUT_MILLIS = 500;
+
+    // how long a file must have no reported changes before the watcher reads it
+    public static final long QUIET_PERIOD_MILLIS = 500;
+
+    private static final ObjectMapper offsetMapper = new ObjectMapper();
+
+    private final FileSourcePredicate predicate;
+    private final String tableName;
+    private final Path offsetFilePath;
+    private final int batchSize;
+
+    private final Path directoryPath;
+    private final Schema tupleSchema;
+
+    // the ingested offsets of the files, keyed by the absolute path of the file
+    private final Map<String, Long> fileOffsets;
+    // the tuples and offsets that are not written yet
+    private final List<Tuple> pendingTuples = new ArrayList<>();
+    private final Map<String, Long> pendingOffsets = new HashMap<>();
+    private boolean offsetsChanged = false;
+
+    private WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    // the files changed while watching, with the time of their last reported change
+    private final Map<Path, Long> changedFiles = new LinkedHashMap<>();
+    private Thread watcherThread;
+    // whether the ingestor is started and not stopped yet, it stays true if the background thread fails
+    private volatile boolean running = false;
+    private volatile Exception failure = null;
+
+    /**
+     * Constructs a FileStreamIngestor with the default batch size.
+     *
+     * @param predicate, the directory and the files to ingest
+     * @param tableName, the table to write the files to
+     * @param offsetFilePath, the file where the offsets are saved
+     * @throws TextDBException
+     */
+    public FileStreamIngestor(FileSourcePredicate predicate, String tableName, String offsetFilePath)
+            throws TextDBException {
+        this(predicate, tableName, offsetFilePath, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructs a FileStreamIngestor, and loads the offsets saved by a previous run.
+     *
+     * @param predicate, the directory and the files to ingest
+     * @param tableName, the table to write the files to
+     * @param offsetFilePath, the file where the offsets are saved, it must not be under the ingested directory
+     * @param batchSize, the max number of tuples written in one batch
+     * @throws TextDBException
+     */
+    public FileStreamIngestor(FileSourcePredicate predicate, String tableName, String offsetFilePath, int batchSize)
+            throws TextDBException {
+        if (batchSize <= 0) {
+            throw new DataFlowException("batch size must be greater than 0");
+        }
+        this.predicate = predicate;
+        this.tableName = tableName;
+        this.offsetFilePath = Paths.get(offsetFilePath);
+        this.batchSize = batchSize;
+
+        this.directoryPath = Paths.get(predicate.getFilePath()).toAbsolutePath().normalize();
+        if (! Files.isDirectory(directoryPath)) {
+            throw new DataFlowException(String.format("directory %s doesn't exist", directoryPath));
+        }
+
+        this.tupleSchema = new Schema(new Attribute(predicate.getAttributeName(), AttributeType.TEXT));
+        Schema tableSchema = RelationManager.getRelationManager().getTableSchema(tableName);
+        if (! tableSchema.equals(Utils.getSchemaWithID(tupleSchema))) {
+            throw new DataFlowException(String.format(
+                    "table %s must have exactly one TEXT attribute %s", tableName, predicate.getAttributeName()));
+        }
+
+        this.fileOffsets = loadOffsets(this.offsetFilePath);
+    }
+
+    /**
+     * Ingests all the new and appended content of the files, and writes it to the table.
+     *
+     * @return the number of tuples written
+     * @throws TextDBException
+     */
+    public synchronized int ingestAvailable() throws TextDBException {
+        try {
+            removeDeletedFiles();
+            scanDirectory(directoryPath);
+        } catch (IOException e) {
+            throw new DataFlowException(e.getMessage(), e);
+        }
+        return flush();
+    }
+
+    /**
+     * Ingests all the new and appended content of the files,
+     *   then keeps watching the directory and ingesting the changes in a background thread.
+     *
+     * @throws TextDBException
+     */
+    public synchronized void start() throws TextDBException {
+        if (running) {
+            return;
+        }
+        try {
+            watchService = directoryPath.getFileSystem().newWatchService();
+        } catch (IOException e) {
+            throw new DataFlowException(e.getMessage(), e);
+        }
+        try {
+            registerDirectories(directoryPath);
+            // the directories are watched before the catch-up ingestion, so that no change is missed
+            ingestAvailable();
+        } catch (IOException e) {
+            closeWatchServiceAfterFailure(e);
+            throw new DataFlowException(e.getMessage(), e);
+        } catch (RuntimeException | Error e) {
+            closeWatchServiceAfterFailure(e);
+            throw e;
+        }
+
+        running = true;
+        failure = null;
+        changedFiles.clear();
+        watcherThread = new Thread(this::watchDirectory, "textdb-file-ingestor");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+    }
+
+    /**
+     * Stops watching the directory, and writes the pending tuples to the table.
+     * The WatchService is closed and the pending tuples are written even if the background thread has failed.
+     *
+     * @throws TextDBException
+     */
+    public void stop() throws TextDBException {
+        Thread thread;
+        IOException closeException = null;
+        synchronized (this) {
+            if (! running) {
+                return;
+            }
+            running = false;
+            thread = watcherThread;
+            watcherThread = null;
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                closeException = e;
+            }
+            watchService = null;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            watchedDirectories.clear();
+            // the files that are still changing are read as they are now
+            readQuietFiles(Long.MAX_VALUE);
+            flush();
+        }
+        if (closeException != null) {
+            throw new DataFlowException(closeException.getMessage(), closeException);
+        }
+    }
+
+    /*
+     * Closes the WatchService when start() fails, since stop() only closes it after a successful start.
+     */
+    private void closeWatchServiceAfterFailure(Throwable failure) {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+        watchService = null;
+        watchedDirectories.clear();
+    }
+
+    @Override
+    public void close() throws TextDBException {
+        stop();
+    }
+
+    /**
+     * Returns true if the ingestor is started, and the background thread is still ingesting the changes.
+     *
+     * @return
+     */
+    public boolean isRunning() {
+        return running && failure == null;
+    }
+
+    /**
+     * Gets the exception that stopped the background thread, returns null if there isn't one.
+     *
+     * @return
+     */
+    public Exception getFailure() {
+        return failure;
+    }
+
+    /**
+     * Gets the ingested offsets of the files, keyed by the absolute path of the file.
+     *
+     * @return
+     */
+    public synchronized Map<String, Long> getFileOffsets() {
+        return new TreeMap<>(fileOffsets);
+    }
+
+    /*
+     * The loop of the background thread, which ingests the changes reported by the watch service.
+     */
+    private void watchDirectory() {
+        try {
+            while (running) {
+                WatchKey watchKey = watchService.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                synchronized (this) {
+                    if (watchKey != null) {
+                        processWatchEvents(watchKey);
+                    }
+                    readQuietFiles(System.currentTimeMillis() - QUIET_PERIOD_MILLIS);
+                    if (watchKey == null) {
+                        // no more changes for a while, write the partial batch
+                        flush();
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // the ingestor is stopped
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+        } catch (TextDBException | IOException e) {
+            // the ingestor stays started, stop() closes the watch service and writes the pending tuples
+            failure = e;
+        }
+    }
+
+    private void processWatchEvents(WatchKey watchKey) throws IOException, TextDBException {
+        Path directory = watchedDirectories.get(watchKey);
+        for (WatchEvent<?> event : watchKey.pollEvents()) {
+            long changeTime = System.currentTimeMillis();
+            if (event.kind() == OVERFLOW || directory == null) {
+                // some events are lost, check all the files again
+                for (Path file : listFiles(directoryPath)) {
+                    changedFiles.put(file, changeTime);
+                }
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            if (event.kind() == ENTRY_DELETE) {
+                changedFiles.remove(path);
+                removeFile(path);
+            } else if (Files.isDirectory(path)) {
+                if (event.kind() == ENTRY_CREATE) {
+                    // the files of a new directory may be created before the directory is watched
+                    registerDirectories(path);
+                    for (Path file : listFiles(path)) {
+                        changedFiles.put(file, changeTime);
+                    }
+                }
+            } else if (FileSourceOperator.isValidFile(path, predicate)) {
+                changedFiles.put(path, changeTime);
+            }
+        }
+        if (! watchKey.reset()) {
+            watchedDirectories.remove(watchKey);
+        }
+    }
+
+    /*
+     * The depth of a directory under the ingested directory (the ingested directory itself is 0).
+     */
+    private int getDepth(Path directory) {
+        if (directory.equals(directoryPath)) {
+            return 0;
+        }
+        return directoryPath.relativize(directory).getNameCount();
+    }
+
+    /*
+     * The max depth of the files under a directory (relative to the directory) that are ingested.
+     */
+    private int getRemainingDepth(Path directory) {
+        if (! predicate.isRecursive()) {
+            return directory.equals(directoryPath) ? 1 : 0;
+        }
+        return predicate.getMaxDepth() - getDepth(directory);
+    }
+
+    private void registerDirectories(Path directory) throws IOException {
+        // a directory is only watched if it can contain files that are ingested
+        int directoryDepth = getRemainingDepth(directory) - 1;
+        if (directoryDepth < 0) {
+            return;
+        }
+        List<Path> directories = Files.walk(directory, directoryDepth)
+                .filter(path -> Files.isDirectory(path))
+                .collect(Collectors.toList());
+        for (Path path : directories) {
+            watchedDirectories.put(path.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), path);
+        }
+    }
+
+    private List<Path> listFiles(Path directory) throws IOException {
+        int remainingDepth = getRemainingDepth(directory);
+        if (remainingDepth <= 0) {
+            return new ArrayList<>();
+        }
+        return Files.walk(directory, remainingDepth)
+                .filter(path -> FileSourceOperator.isValidFile(path, predicate))
+                .collect(Collectors.toList());
+    }
+
+    private void scanDirectory(Path directory) throws IOException, TextDBException {
+        for (Path file : listFiles(directory)) {
+            readNewContent(file);
+        }
+    }
+
+    /*
+     * Reads the changed files whose last change was reported at or before the given time.
+     */
+    private void readQuietFiles(long quietTime) throws TextDBException {
+        Iterator<Map.Entry<Path, Long>> changedFileIterator = changedFiles.entrySet().iterator();
+        while (changedFileIterator.hasNext()) {
+            Map.Entry<Path, Long> changedFile = changedFileIterator.next();
+            if (changedFile.getValue() <= quietTime) {
+                changedFileIterator.remove();
+                readNewContent(changedFile.getKey());
+            }
+        }
+    }
+
+    /*
+     * Reads the content of a file after its offset, and adds it to the pending batch.
+     */
+    private void readNewContent(Path file) throws TextDBException {
+        String fileKey = file.toAbsolutePath().normalize().toString();
+        long offset = pendingOffsets.containsKey(fileKey) ? pendingOffsets.get(fileKey)
+                : fileOffsets.getOrDefault(fileKey, 0L);
+
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = fileChannel.size();
+            if (fileSize < offset) {
+                // the file is truncated or replaced, ingest it again
+                offset = 0;
+            }
+            if (fileSize == offset) {
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(fileSize - offset, Integer.MAX_VALUE - 8));
+            fileChannel.position(offset);
+            while (buffer.hasRemaining() && fileChannel.read(buffer) >= 0) {
+            }
+            // a character that is being written is left for the next read
+            int length = getCompleteUTF8Length(buffer.array(), buffer.position());
+            if (length == 0) {
+                return;
+            }
+            pendingTuples.add(new Tuple(tupleSchema,
+                    new TextField(new String(buffer.array(), 0, length, StandardCharsets.UTF_8))));
+            pendingOffsets.put(fileKey, offset + length);
+        } catch (NoSuchFileException e) {
+            // the file is deleted before it's read
+            return;
+        } catch (IOException e) {
+            throw new DataFlowException(e.getMessage(), e);
+        }
+
+        if (pendingTuples.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /*
+     * Gets the length of the bytes without a multi-byte UTF-8 character that is cut off at the end.
+     */
+    private static int getCompleteUTF8Length(byte[] bytes, int length) {
+        int continuationBytes = 0;
+        int leadIndex = length - 1;
+        while (leadIndex >= 0 && continuationBytes < 3 && (bytes[leadIndex] & 0xC0) == 0x80) {
+            leadIndex--;
+            continuationBytes++;
+        }
+        if (leadIndex < 0) {
+            return length;
+        }
+        int leadByte = bytes[leadIndex] & 0xFF;
+        int characterLength = leadByte >= 0xF0 ? 4 : leadByte >= 0xE0 ? 3 : leadByte >= 0xC0 ? 2 : 1;
+        return continuationBytes + 1 < characterLength ? leadIndex : length;
+    }
+
+    private void removeFile(Path file) {
+        String fileKey = file.toAbsolutePath().normalize().toString();
+        pendingOffsets.remove(fileKey);
+        if (fileOffsets.remove(fileKey) != null) {
+            offsetsChanged = true;
+        }
+    }
+
+    /*
+     * Forgets the offsets of the files that have been deleted while the ingestor was not running.
+     */
+    private void removeDeletedFiles() {
+        for (String fileKey : new ArrayList<>(fileOffsets.keySet())) {
+            if (! Files.exists(Paths.get(fileKey))) {
+                removeFile(Paths.get(fileKey));
+            }
+        }
+    }
+
+    /*
+     * Writes the pending tuples to the table, then saves the offsets.
+     */
+    private int flush() throws TextDBException {
+        if (pendingTuples.isEmpty() && ! offsetsChanged) {
+            return 0;
+        }
+        int tupleCount = pendingTuples.size();
+        if (! pendingTuples.isEmpty()) {
+            DataWriter dataWriter = RelationManager.getRelationManager().getTableDataWriter(tableName);
+            dataWriter.open();
+            try {
+                for (Tuple tuple : pendingTuples) {
+                    dataWriter.insertTuple(tuple);
+                }
+            } finally {
+                dataWriter.close();
+            }
+        }
+        fileOffsets.putAll(pendingOffsets);
+        pendingTuples.clear();
+        pendingOffsets.clear();
+        saveOffsets();
+        offsetsChanged = false;
+        return tupleCount;
+    }
+
+    private static Map<String, Long> loadOffsets(Path offsetFilePath) throws DataFlowException {
+        if (! Files.exists(offsetFilePath)) {
+            return new HashMap<>();
+        }
+        try {
+            return offsetMapper.readValue(offsetFilePath.toFile(), new TypeReference<HashMap<String, Long>>() {});
+        } catch (IOException e) {
+            throw new DataFlowException("reading offset file " + offsetFilePath + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    /*
+     * The offsets are written to a temporary file first, and then moved to the offset file,
+     *   so that the offset file is never partially written.
+     */
+    private void saveOffsets() throws DataFlowException {
+        try {
+            Path absoluteOffsetFilePath = offsetFilePath.toAbsolutePath();
+            Files.createDirectories(absoluteOffsetFilePath.getParent());
+            Path tempFilePath = absoluteOffsetFilePath.resolveSibling(absoluteOffsetFilePath.getFileName() + ".tmp");
+            offsetMapper.writeValue(tempFilePath.toFile(), new TreeMap<>(fileOffsets));
+            Files.move(tempFilePath, absoluteOffsetFilePath,
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new DataFlowException("writing offset file " + offsetFilePath + " failed: " + e.getMessage(), e);
+        }
+    }
+
+}
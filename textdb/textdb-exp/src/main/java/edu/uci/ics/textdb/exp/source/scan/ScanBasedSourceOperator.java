@@ -28,6 +28,8 @@ public class ScanBasedSourceOperator implements ISourceOperator {
                     predicate.getTableName(), new MatchAllDocsQuery());
             // TODO add an option to set if payload is added in the future.
             this.dataReader.setPayloadAdded(true);
+            // decode the next tuples while the downstream operators process the current ones
+            this.dataReader.setPrefetchSize(DataReader.DEFAULT_PREFETCH_SIZE);
         } catch (StorageException e) {
             throw new DataFlowException(e);
         }
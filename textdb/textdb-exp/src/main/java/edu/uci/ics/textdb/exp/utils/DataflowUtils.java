@@ -9,8 +9,6 @@ import java.util.stream.Collectors;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
-import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
-import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.apache.lucene.analysis.util.CharArraySet;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 
@@ -30,9 +28,13 @@ import edu.uci.ics.textdb.api.schema.Schema;
 import edu.uci.ics.textdb.api.span.Span;
 import edu.uci.ics.textdb.api.tuple.*;
 import edu.uci.ics.textdb.storage.constants.LuceneAnalyzerConstants;
+import edu.uci.ics.textdb.storage.utils.StorageUtils;
 
 public class DataflowUtils {
     
+    // a standard analyzer with an empty stopword set, which is shared by all the calls of tokenizeQueryWithStopwords
+    private static final Analyzer standardAnalyzerKeepingStopwords = new StandardAnalyzer(new CharArraySet(1, true));
+    
     /**
      * Returns the AttributeType of a field object.
      * 
@@ -89,15 +91,14 @@ public class DataflowUtils {
      */
     public static ArrayList<String> tokenizeQuery(Analyzer luceneAnalyzer, String query) {
         ArrayList<String> result = new ArrayList<String>();
-        TokenStream tokenStream = luceneAnalyzer.tokenStream(null, new StringReader(query));
-        CharTermAttribute term = tokenStream.addAttribute(CharTermAttribute.class);
-
-        try {
+        // the analyzers are shared, the token stream must always be closed so that it can be reused
+        try (TokenStream tokenStream = luceneAnalyzer.tokenStream(null, new StringReader(query))) {
+            CharTermAttribute term = tokenStream.addAttribute(CharTermAttribute.class);
             tokenStream.reset();
             while (tokenStream.incrementToken()) {
                 result.add(term.toString());
             }
-            tokenStream.close();
+            tokenStream.end();
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -107,12 +108,8 @@ public class DataflowUtils {
 
     public static ArrayList<String> tokenizeQueryWithStopwords(String query) {
         ArrayList<String> result = new ArrayList<String>();
-        CharArraySet emptyStopwords = new CharArraySet(1, true);
-        Analyzer luceneAnalyzer = new StandardAnalyzer(emptyStopwords);
-        TokenStream tokenStream = luceneAnalyzer.tokenStream(null, new StringReader(query));
-        CharTermAttribute term = tokenStream.addAttribute(CharTermAttribute.class);
-
-        try {
+        try (TokenStream tokenStream = standardAnalyzerKeepingStopwords.tokenStream(null, new StringReader(query))) {
+            CharTermAttribute term = tokenStream.addAttribute(CharTermAttribute.class);
             tokenStream.reset();
             while (tokenStream.incrementToken()) {
                 String token = term.toString();
@@ -122,13 +119,11 @@ public class DataflowUtils {
                 String actualQueryToken = query.substring(tokenIndex, tokenIndex + token.length());
                 result.add(actualQueryToken);
             }
-            tokenStream.close();
+            tokenStream.end();
         } catch (Exception e) {
             e.printStackTrace();
         }
 
-        luceneAnalyzer.close();
-
         return result;
     }
     
@@ -225,34 +220,11 @@ public class DataflowUtils {
     }
 
     public static List<Span> generatePayload(String attributeName, String fieldValue, Analyzer luceneAnalyzer) {
-        List<Span> payload = new ArrayList<>();
-        
         try {
-            TokenStream tokenStream = luceneAnalyzer.tokenStream(null, new StringReader(fieldValue));
-            OffsetAttribute offsetAttribute = tokenStream.addAttribute(OffsetAttribute.class);
-            CharTermAttribute charTermAttribute = tokenStream.addAttribute(CharTermAttribute.class);
-            PositionIncrementAttribute positionIncrementAttribute = 
-                    tokenStream.addAttribute(PositionIncrementAttribute.class);
-            
-            int tokenPositionCounter = -1;
-            tokenStream.reset();
-            while (tokenStream.incrementToken()) {
-                tokenPositionCounter += positionIncrementAttribute.getPositionIncrement();
-                
-                int tokenPosition = tokenPositionCounter;
-                int charStart = offsetAttribute.startOffset();
-                int charEnd = offsetAttribute.endOffset();
-                String analyzedTermStr = charTermAttribute.toString();
-                String originalTermStr = fieldValue.substring(charStart, charEnd);
-
-                payload.add(new Span(attributeName, charStart, charEnd, analyzedTermStr, originalTermStr, tokenPosition));
-            }
-            tokenStream.close();
+            return StorageUtils.generatePayload(attributeName, fieldValue, luceneAnalyzer);
         } catch (IOException e) {
-            payload.clear(); // return empty payload
+            return new ArrayList<>(); // return empty payload
         }
-
-        return payload;
     }
 
 }
\ No newline at end of file
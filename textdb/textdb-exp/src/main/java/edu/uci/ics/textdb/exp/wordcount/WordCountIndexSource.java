@@ -9,6 +9,7 @@ import java.util.Map.Entry;
 import java.util.stream.Collectors;
 
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.MatchAllDocsQuery;
@@ -91,11 +92,31 @@ public class WordCountIndexSource implements ISourceOperator {
                     predicate.getTableName(), new MatchAllDocsQuery());
             
             dataReader.open();
+            try {
+                countWords(dataReader.getLuceneIndexReader(), wordCountMap);
+            } finally {
+                // the index reader is released by the data reader, it must not be closed here
+                dataReader.close();
+            }
             
-            IndexReader luceneIndexReader = dataReader.getLuceneIndexReader();
+            sortedWordCountMap = wordCountMap.entrySet().stream()
+                    .sorted((e1, e2) -> e2.getValue().compareTo(e1.getValue()))
+                    .collect(Collectors.toList());
+            wordCountIterator = sortedWordCountMap.iterator();
             
+        } catch (IOException e) {
+            throw new DataFlowException(e);
+        }
+    }
+    
+    private void countWords(IndexReader luceneIndexReader, HashMap<String, Integer> wordCountMap)
+            throws TextDBException, IOException {
+        if (RelationManager.getRelationManager().getTableProperties(predicate.getTableName()).isTermVectorsStored()) {
             for (int i = 0; i< luceneIndexReader.numDocs(); i++) {
                 Terms termVector = luceneIndexReader.getTermVector(i, predicate.getAttribute());
+                if (termVector == null) {
+                    continue;
+                }
                 
                 TermsEnum termsEnum = termVector.iterator();
                 while(termsEnum.next() != null){
@@ -105,21 +126,17 @@ public class WordCountIndexSource implements ISourceOperator {
                                 wordCountMap.get(key) + ((int) termsEnum.totalTermFreq()));
                 }
             }
-            
-            luceneIndexReader.close();
-            dataReader.close();
-            
-            sortedWordCountMap = wordCountMap.entrySet().stream()
-                    .sorted((e1, e2) -> e2.getValue().compareTo(e1.getValue()))
-                    .collect(Collectors.toList());
-            wordCountIterator = sortedWordCountMap.iterator();
-            
-        } catch (IOException e) {
-            throw new DataFlowException(e);
+        } else {
+            // the table doesn't keep term vectors, count the words using the terms dictionary of the index
+            Terms terms = MultiFields.getTerms(luceneIndexReader, predicate.getAttribute());
+            if (terms != null) {
+                TermsEnum termsEnum = terms.iterator();
+                while(termsEnum.next() != null){
+                    wordCountMap.put(termsEnum.term().utf8ToString(), (int) termsEnum.totalTermFreq());
+                }
+            }
         }
-        
     }
-    
 
     @Override
     public void close() throws TextDBException {
@@ -27,6 +27,8 @@ import edu.uci.ics.textdb.exp.nlp.splitter.NLPOutputType;
 import edu.uci.ics.textdb.exp.nlp.splitter.NlpSplitPredicate;
 import edu.uci.ics.textdb.exp.projection.ProjectionPredicate;
 import edu.uci.ics.textdb.exp.regexmatcher.RegexPredicate;
+import edu.uci.ics.textdb.exp.regexmatcher.RegexSetPredicate;
+import edu.uci.ics.textdb.exp.regexmatcher.RegexSetSourcePredicate;
 import edu.uci.ics.textdb.exp.regexmatcher.RegexSourcePredicate;
 import edu.uci.ics.textdb.exp.regexsplit.RegexSplitPredicate;
 import edu.uci.ics.textdb.exp.regexsplit.RegexSplitPredicate.SplitType;
@@ -169,6 +171,22 @@ public class PredicateBaseTest {
         testPredicate(regexSourcePredicate);
     }
     
+    @Test
+    public void testRegexSetMatcher() throws Exception {
+        RegexSetPredicate regexSetPredicate = new RegexSetPredicate(
+                Arrays.asList("regex1", "regex2"),
+                attributeNames,
+                "spanListName");
+        testPredicate(regexSetPredicate);
+        
+        RegexSetSourcePredicate regexSetSourcePredicate = new RegexSetSourcePredicate(
+                Arrays.asList("regex1", "regex2"),
+                attributeNames,
+                "tableName",
+                "spanListName");
+        testPredicate(regexSetSourcePredicate);
+    }
+    
     @Test
     public void testRegexSplit() throws Exception {
         RegexSplitPredicate regexSplitPredicate = new RegexSplitPredicate(
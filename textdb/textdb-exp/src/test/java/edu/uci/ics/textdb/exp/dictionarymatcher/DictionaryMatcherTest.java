@@ -5,13 +5,17 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import org.apache.lucene.search.BooleanQuery;
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import edu.uci.ics.textdb.api.constants.SchemaConstants;
 import edu.uci.ics.textdb.api.constants.TestConstants;
 import edu.uci.ics.textdb.api.constants.TestConstantsChinese;
+import edu.uci.ics.textdb.api.dataflow.IOperator;
+import edu.uci.ics.textdb.api.exception.TextDBException;
 import edu.uci.ics.textdb.api.field.DateField;
 import edu.uci.ics.textdb.api.field.DoubleField;
 import edu.uci.ics.textdb.api.field.IField;
@@ -27,7 +31,12 @@ import edu.uci.ics.textdb.api.tuple.Tuple;
 import edu.uci.ics.textdb.api.utils.TestUtils;
 import edu.uci.ics.textdb.api.utils.Utils;
 import edu.uci.ics.textdb.exp.dictionarymatcher.Dictionary;
+import edu.uci.ics.textdb.exp.keywordmatcher.KeywordMatcher;
 import edu.uci.ics.textdb.exp.keywordmatcher.KeywordMatchingType;
+import edu.uci.ics.textdb.exp.keywordmatcher.KeywordPredicate;
+import edu.uci.ics.textdb.exp.source.scan.ScanBasedSourceOperator;
+import edu.uci.ics.textdb.exp.source.scan.ScanSourcePredicate;
+import edu.uci.ics.textdb.storage.constants.LuceneAnalyzerConstants;
 
 /**
  * @author rajeshyarlagadda
@@ -1074,5 +1083,80 @@ public class DictionaryMatcherTest {
         Assert.assertEquals(resultList.size(), 1);
         Assert.assertTrue(TestUtils.containsAll(expectedList, resultList));
     }
+
+    /**
+     * Scenario: verifies the DictionarySourceOperator with more entries than the clause limit of a Lucene query.
+     * The entries that don't occur in the table don't change the results.
+     */
+    @Test
+    public void testDictionaryLargerThanClauseLimit() throws Exception {
+        List<String> attributeNames = Arrays.asList(TestConstants.FIRST_NAME, TestConstants.LAST_NAME,
+                TestConstants.DESCRIPTION);
+        List<String> names = Arrays.asList("lin clooney", "angry");
+        List<Tuple> expectedResults = DictionaryMatcherTestHelper.getQueryResults(PEOPLE_TABLE,
+                new Dictionary(names), attributeNames, KeywordMatchingType.CONJUNCTION_INDEXBASED);
+
+        List<String> largeNames = new ArrayList<>(names);
+        for (int i = 0; i < BooleanQuery.getMaxClauseCount() * 2; i++) {
+            largeNames.add("absent" + i + " entry");
+        }
+        List<Tuple> returnedResults = DictionaryMatcherTestHelper.getQueryResults(PEOPLE_TABLE,
+                new Dictionary(largeNames), attributeNames, KeywordMatchingType.CONJUNCTION_INDEXBASED);
+
+        Assert.assertFalse(expectedResults.isEmpty());
+        Assert.assertTrue(TestUtils.equals(expectedResults, returnedResults));
+    }
+
+    /*
+     * Gets the results of a KeywordMatcher for "angry" after the given operator.
+     */
+    private static List<Tuple> getDownstreamMatcherResults(IOperator inputOperator) throws TextDBException {
+        KeywordMatcher keywordMatcher = new KeywordMatcher(new KeywordPredicate("angry",
+                Arrays.asList(TestConstants.DESCRIPTION), LuceneAnalyzerConstants.standardAnalyzerString(),
+                KeywordMatchingType.CONJUNCTION_INDEXBASED, "angry results"));
+        keywordMatcher.setInputOperator(inputOperator);
+
+        List<Tuple> results = new ArrayList<>();
+        keywordMatcher.open();
+        Tuple tuple;
+        while ((tuple = keywordMatcher.getNextTuple()) != null) {
+            results.add(tuple);
+        }
+        keywordMatcher.close();
+        return results;
+    }
+
+    /**
+     * Scenario: verifies that the DictionarySourceOperator keeps the full payload in its results,
+     * so a matcher after it finds the tokens that are not in the dictionary.
+     * With a restricted payload, the payload is removed from the results, and the matcher generates it again.
+     */
+    @Test
+    public void testMatcherAfterDictionarySource() throws Exception {
+        List<String> attributeNames = Arrays.asList(TestConstants.DESCRIPTION);
+        Dictionary dictionary = new Dictionary(Arrays.asList("short"));
+        String luceneAnalyzerStr = LuceneAnalyzerConstants.standardAnalyzerString();
+
+        DictionaryMatcher dictionaryMatcher = new DictionaryMatcher(new DictionaryPredicate(dictionary,
+                attributeNames, luceneAnalyzerStr, KeywordMatchingType.CONJUNCTION_INDEXBASED, RESULTS));
+        dictionaryMatcher.setInputOperator(new ScanBasedSourceOperator(new ScanSourcePredicate(PEOPLE_TABLE)));
+        List<Tuple> expectedResults = getDownstreamMatcherResults(dictionaryMatcher);
+
+        DictionaryMatcherSourceOperator dictionarySource = new DictionaryMatcherSourceOperator(
+                new DictionarySourcePredicate(dictionary, attributeNames, luceneAnalyzerStr,
+                        KeywordMatchingType.CONJUNCTION_INDEXBASED, PEOPLE_TABLE, RESULTS));
+        List<Tuple> returnedResults = getDownstreamMatcherResults(dictionarySource);
+
+        DictionaryMatcherSourceOperator restrictedDictionarySource = new DictionaryMatcherSourceOperator(
+                new DictionarySourcePredicate(dictionary, attributeNames, luceneAnalyzerStr,
+                        KeywordMatchingType.CONJUNCTION_INDEXBASED, PEOPLE_TABLE, RESULTS, true));
+        List<Tuple> restrictedResults = getDownstreamMatcherResults(restrictedDictionarySource);
+
+        Assert.assertEquals(2, returnedResults.size());
+        Assert.assertTrue(TestUtils.equals(expectedResults, returnedResults));
+        Assert.assertTrue(TestUtils.equals(expectedResults, restrictedResults));
+        Assert.assertTrue(dictionarySource.getOutputSchema().containsField(SchemaConstants.PAYLOAD));
+        Assert.assertFalse(restrictedDictionarySource.getOutputSchema().containsField(SchemaConstants.PAYLOAD));
+    }
     
 }
\ No newline at end of file
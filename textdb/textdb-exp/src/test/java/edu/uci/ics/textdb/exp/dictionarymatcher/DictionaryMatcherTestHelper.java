@@ -1,12 +1,18 @@
 package edu.uci.ics.textdb.exp.dictionarymatcher;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import edu.uci.ics.textdb.api.constants.SchemaConstants;
 import edu.uci.ics.textdb.api.constants.TestConstants;
 import edu.uci.ics.textdb.api.constants.TestConstantsChinese;
 import edu.uci.ics.textdb.api.exception.DataFlowException;
 import edu.uci.ics.textdb.api.exception.TextDBException;
+import edu.uci.ics.textdb.api.field.IField;
+import edu.uci.ics.textdb.api.field.ListField;
+import edu.uci.ics.textdb.api.span.Span;
 import edu.uci.ics.textdb.api.tuple.Tuple;
 import edu.uci.ics.textdb.api.utils.TestUtils;
 import edu.uci.ics.textdb.exp.dictionarymatcher.Dictionary;
@@ -64,39 +70,66 @@ public class DictionaryMatcherTestHelper {
     public static List<Tuple> getQueryResults(String tableName, Dictionary dictionary, List<String> attributeNames,
             KeywordMatchingType matchingType, int limit, int offset) throws TextDBException {
         
-        // results from a scan on the table followed by a keyword match
+        // results from a scan on the table followed by a dictionary match
         List<Tuple> scanSourceResults = getScanSourceResults(tableName, dictionary, attributeNames,
                 matchingType, limit, offset);
         // reset the dictionary's cursor after each run because the same dictionary may be used later.
         dictionary.resetCursor();
-        // results from index-based keyword search on the table
-        List<Tuple> dictionarySourceResults = getDictionarySourceResults(tableName, dictionary, attributeNames,
-                matchingType, limit, offset);
+        List<Tuple> allScanSourceResults = getScanSourceResults(tableName, dictionary, attributeNames,
+                matchingType, Integer.MAX_VALUE, 0);
+        dictionary.resetCursor();
+        // results from index-based dictionary search on the table
+        List<Tuple> allDictionarySourceResults = getDictionarySourceResults(tableName, dictionary, attributeNames,
+                matchingType, Integer.MAX_VALUE, 0);
         dictionary.resetCursor();
         
-        // if limit and offset are not relevant, the results from scan source and keyword source must be the same
+        // the dictionary source returns each document once, with the spans of all its matching entries
+        if (! TestUtils.equals(mergeResultsByDocument(allScanSourceResults), allDictionarySourceResults)) {
+            throw new DataFlowException("results from scanSource and dictionarySource are inconsistent");
+        }
         if (limit == Integer.MAX_VALUE && offset == 0) {
-            if (TestUtils.equals(scanSourceResults, dictionarySourceResults)) {
-                return scanSourceResults;
-            } else {
-                throw new DataFlowException("results from scanSource and dictionarySource are inconsistent");
-            }
+            return scanSourceResults;
         }
+        
         // if limit and offset are relevant, then the results can be different (since the order doesn't matter)
-        // in this case, we get all the results and test if the whole result set contains both results
-        else {
-            List<Tuple> allResults = getDictionarySourceResults(tableName, dictionary, attributeNames,
-                    matchingType, Integer.MAX_VALUE, 0);
-            dictionary.resetCursor();
-            
-            if (scanSourceResults.size() == dictionarySourceResults.size() &&
-                    TestUtils.containsAll(allResults, scanSourceResults) && 
-                    TestUtils.containsAll(allResults, dictionarySourceResults)) {
-                return scanSourceResults;
-            } else {
-                throw new DataFlowException("results from scanSource and dictionarySource are inconsistent");
-            }   
+        // in this case, we test if the whole result sets contain the results
+        List<Tuple> dictionarySourceResults = getDictionarySourceResults(tableName, dictionary, attributeNames,
+                matchingType, limit, offset);
+        dictionary.resetCursor();
+        int expectedSourceResultSize = Math.max(0, Math.min(limit, allDictionarySourceResults.size() - offset));
+        if (dictionarySourceResults.size() == expectedSourceResultSize &&
+                TestUtils.containsAll(allScanSourceResults, scanSourceResults) && 
+                TestUtils.containsAll(allDictionarySourceResults, dictionarySourceResults)) {
+            return scanSourceResults;
+        } else {
+            throw new DataFlowException("results from scanSource and dictionarySource are inconsistent");
+        }
+    }
+    
+    /**
+     * Merges the results of a DictionaryMatcher (one tuple for each matching entry of a document)
+     *   into one tuple for each document, with the spans of the entries in their order.
+     * 
+     * @param results
+     * @return
+     */
+    public static List<Tuple> mergeResultsByDocument(List<Tuple> results) {
+        Map<Object, Tuple> documentResults = new LinkedHashMap<>();
+        for (Tuple tuple : results) {
+            Object documentID = tuple.getField(SchemaConstants._ID).getValue();
+            Tuple documentTuple = documentResults.get(documentID);
+            if (documentTuple == null) {
+                documentResults.put(documentID, tuple);
+                continue;
+            }
+            List<Span> spanList = new ArrayList<>();
+            spanList.addAll(documentTuple.<ListField<Span>>getField(RESULTS).getValue());
+            spanList.addAll(tuple.<ListField<Span>>getField(RESULTS).getValue());
+            List<IField> fields = new ArrayList<>(documentTuple.getFields());
+            fields.set(documentTuple.getSchema().getIndex(RESULTS), new ListField<Span>(spanList));
+            documentResults.put(documentID, new Tuple(documentTuple.getSchema(), fields));
         }
+        return new ArrayList<>(documentResults.values());
     }
     
     /**
@@ -0,0 +1,158 @@
+package edu.uci.ics.textdb.exp.dictionarymatcher;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.uci.ics.textdb.api.constants.TestConstants;
+import edu.uci.ics.textdb.api.exception.TextDBException;
+import edu.uci.ics.textdb.api.span.Span;
+import edu.uci.ics.textdb.api.tuple.Tuple;
+import edu.uci.ics.textdb.api.utils.TestUtils;
+import edu.uci.ics.textdb.exp.common.PredicateBase;
+import edu.uci.ics.textdb.exp.keywordmatcher.KeywordMatchingType;
+import edu.uci.ics.textdb.exp.utils.DataflowUtils;
+import edu.uci.ics.textdb.storage.constants.LuceneAnalyzerConstants;
+
+public class DictionaryStoreTest {
+
+    private static final String DICTIONARY_NAME = "dictionary_store_test";
+
+    private static DictionaryStore dictionaryStore;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        DictionaryMatcherTestHelper.writeTestTables();
+        dictionaryStore = DictionaryStore.getInstance();
+    }
+
+    @AfterClass
+    public static void cleanUp() throws Exception {
+        DictionaryMatcherTestHelper.deleteTestTables();
+    }
+
+    @After
+    public void deleteDictionary() throws Exception {
+        dictionaryStore.deleteDictionary(DICTIONARY_NAME);
+    }
+
+    @Test
+    public void testAddDictionary() throws Exception {
+        dictionaryStore.addDictionary(DICTIONARY_NAME, Arrays.asList("lin", "angry", "", "lin", "george lin"));
+
+        Assert.assertTrue(dictionaryStore.containsDictionary(DICTIONARY_NAME));
+        Assert.assertEquals(Arrays.asList("angry", "george lin", "lin"),
+                dictionaryStore.getDictionaryEntries(DICTIONARY_NAME));
+        Assert.assertTrue(dictionaryStore.containsEntry(DICTIONARY_NAME, "george lin"));
+        Assert.assertFalse(dictionaryStore.containsEntry(DICTIONARY_NAME, "george"));
+
+        dictionaryStore.deleteDictionary(DICTIONARY_NAME);
+        Assert.assertFalse(dictionaryStore.containsDictionary(DICTIONARY_NAME));
+    }
+
+    @Test
+    public void testIterateDictionaryEntries() throws Exception {
+        dictionaryStore.addDictionary(DICTIONARY_NAME, Arrays.asList("lin", "angry", "george lin"));
+
+        List<String> entries = new ArrayList<>();
+        Iterator<String> entryIterator = dictionaryStore.iterateDictionaryEntries(DICTIONARY_NAME);
+        while (entryIterator.hasNext()) {
+            entries.add(entryIterator.next());
+        }
+        Assert.assertEquals(dictionaryStore.getDictionaryEntries(DICTIONARY_NAME), entries);
+
+        Dictionary dictionary = new Dictionary(null, DICTIONARY_NAME);
+        Assert.assertEquals("angry", dictionary.getNextEntry());
+        // the entries are read once per dictionary
+        Assert.assertSame(dictionary.getDictionaryEntries(), dictionary.getDictionaryEntries());
+    }
+
+    /*
+     * The token matchers of a named dictionary are copies of one cached matcher, each with its own per-call state.
+     */
+    @Test
+    public void testCachedTokenMatcher() throws Exception {
+        dictionaryStore.addDictionary(DICTIONARY_NAME, Arrays.asList("lin clooney", "george lin"));
+        Dictionary dictionary = new Dictionary(null, DICTIONARY_NAME);
+        String analyzerString = LuceneAnalyzerConstants.standardAnalyzerString();
+        DictionaryTokenMatcher firstMatcher = dictionary.getTokenMatcher(analyzerString);
+        DictionaryTokenMatcher secondMatcher = new Dictionary(null, DICTIONARY_NAME).getTokenMatcher(analyzerString);
+        Assert.assertNotSame(firstMatcher, secondMatcher);
+
+        String text = "George Lin Clooney";
+        List<Span> payload = DataflowUtils.generatePayload("content", text,
+                LuceneAnalyzerConstants.getLuceneAnalyzer(analyzerString));
+        List<Integer> firstEntries = new ArrayList<>();
+        List<Integer> secondEntries = new ArrayList<>();
+        firstMatcher.findPhrases("content", text, payload, (entryIndex, span) -> firstEntries.add(entryIndex));
+        secondMatcher.findPhrases("content", text, payload, (entryIndex, span) -> secondEntries.add(entryIndex));
+        Assert.assertEquals(Arrays.asList(0, 1), firstEntries);
+        Assert.assertEquals(firstEntries, secondEntries);
+    }
+
+    @Test(expected = TextDBException.class)
+    public void testAddDuplicateDictionary() throws Exception {
+        dictionaryStore.addDictionary(DICTIONARY_NAME, Arrays.asList("lin"));
+        dictionaryStore.addDictionary(DICTIONARY_NAME, Arrays.asList("angry"));
+    }
+
+    @Test(expected = TextDBException.class)
+    public void testInvalidDictionaryName() throws Exception {
+        dictionaryStore.addDictionary("../dictionary", Arrays.asList("lin"));
+    }
+
+    @Test
+    public void testAddDictionaryFromFile() throws Exception {
+        Path dictionaryFile = Files.createTempFile(DICTIONARY_NAME, ".txt");
+        try {
+            Files.write(dictionaryFile, Arrays.asList("Tall", "  short  ", "", "angry", "short"), StandardCharsets.UTF_8);
+            dictionaryStore.addDictionaryFromFile(DICTIONARY_NAME, dictionaryFile.toString());
+        } finally {
+            Files.delete(dictionaryFile);
+        }
+        Assert.assertEquals(Arrays.asList("Tall", "angry", "short"), dictionaryStore.getDictionaryEntries(DICTIONARY_NAME));
+    }
+
+    @Test
+    public void testAddDictionaryFromTable() throws Exception {
+        dictionaryStore.addDictionaryFromTable(DICTIONARY_NAME, DictionaryMatcherTestHelper.PEOPLE_TABLE,
+                TestConstants.FIRST_NAME);
+        Assert.assertTrue(dictionaryStore.containsEntry(DICTIONARY_NAME, "bruce"));
+        Assert.assertTrue(dictionaryStore.containsEntry(DICTIONARY_NAME, "george lin lin"));
+    }
+
+    /*
+     * A named dictionary has the same results as the same entries inlined in the plan,
+     *   and only its name is in the JSON of the predicate.
+     */
+    @Test
+    public void testNamedDictionary() throws Exception {
+        List<String> entries = Arrays.asList("lin clooney", "angry", "bruce");
+        dictionaryStore.addDictionary(DICTIONARY_NAME, entries);
+        List<String> attributeNames = Arrays.asList(TestConstants.FIRST_NAME, TestConstants.LAST_NAME,
+                TestConstants.DESCRIPTION);
+
+        List<Tuple> expectedResults = DictionaryMatcherTestHelper.getQueryResults(DictionaryMatcherTestHelper.PEOPLE_TABLE,
+                new Dictionary(entries), attributeNames, KeywordMatchingType.PHRASE_INDEXBASED);
+        List<Tuple> returnedResults = DictionaryMatcherTestHelper.getQueryResults(DictionaryMatcherTestHelper.PEOPLE_TABLE,
+                new Dictionary(null, DICTIONARY_NAME), attributeNames, KeywordMatchingType.PHRASE_INDEXBASED);
+        Assert.assertTrue(TestUtils.equals(expectedResults, returnedResults));
+
+        PredicateBase predicate = new DictionaryPredicate(new Dictionary(null, DICTIONARY_NAME), attributeNames,
+                "standard", KeywordMatchingType.PHRASE_INDEXBASED, "dictResults");
+        String json = TestUtils.testJsonSerialization(predicate).toString();
+        Assert.assertTrue(json.contains(DICTIONARY_NAME));
+        Assert.assertFalse(json.contains("lin clooney"));
+    }
+
+}
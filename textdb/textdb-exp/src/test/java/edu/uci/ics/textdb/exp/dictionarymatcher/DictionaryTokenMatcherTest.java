@@ -0,0 +1,76 @@
+package edu.uci.ics.textdb.exp.dictionarymatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.uci.ics.textdb.api.span.Span;
+import edu.uci.ics.textdb.exp.utils.DataflowUtils;
+import edu.uci.ics.textdb.storage.constants.LuceneAnalyzerConstants;
+
+public class DictionaryTokenMatcherTest {
+
+    private static final String ATTRIBUTE = "content";
+
+    /*
+     * Finds the spans as "entryIndex:start-end:value" strings, in the order they are reported.
+     */
+    private static List<String> find(List<String> entries, String text, boolean phrase) throws Exception {
+        DictionaryTokenMatcher tokenMatcher = new DictionaryTokenMatcher(entries,
+                LuceneAnalyzerConstants.standardAnalyzerString());
+        List<Span> payload = DataflowUtils.generatePayload(ATTRIBUTE, text,
+                LuceneAnalyzerConstants.getLuceneAnalyzer(LuceneAnalyzerConstants.standardAnalyzerString()));
+        List<String> results = new ArrayList<>();
+        DictionaryTokenMatcher.EntrySpanHandler spanHandler = (entryIndex, span) ->
+            results.add(entryIndex + ":" + span.getStart() + "-" + span.getEnd() + ":" + span.getValue());
+        if (phrase) {
+            tokenMatcher.findPhrases(ATTRIBUTE, text, payload, spanHandler);
+        } else {
+            tokenMatcher.findConjunctions(ATTRIBUTE, payload, spanHandler);
+        }
+        return results;
+    }
+
+    @Test
+    public void testConjunction() throws Exception {
+        List<String> entries = Arrays.asList("lin clooney", "george lin", "brad");
+        Assert.assertEquals(Arrays.asList("1:0-6:George", "1:15-18:Lin", "0:7-14:Clooney", "0:15-18:Lin"),
+                find(entries, "George Clooney Lin", false));
+        Assert.assertEquals(Arrays.asList(), find(entries, "Brangelina", false));
+    }
+
+    @Test
+    public void testPhrase() throws Exception {
+        List<String> entries = Arrays.asList("george lin", "lin", "clooney lin");
+        Assert.assertEquals(Arrays.asList("0:8-18:George Lin", "1:15-18:Lin"),
+                find(entries, "Clooney George Lin", true));
+        Assert.assertEquals(Arrays.asList("0:0-10:George Lin", "1:7-10:Lin", "1:11-14:lin"),
+                find(entries, "George Lin lin", true));
+    }
+
+    /*
+     * The stopwords of an entry leave a gap that any token but one of the entry can fill.
+     */
+    @Test
+    public void testPhraseWithStopwords() throws Exception {
+        List<String> entries = Arrays.asList("lord of the rings");
+        Assert.assertEquals(Arrays.asList("0:4-21:lord of the rings"), find(entries, "The lord of the rings", true));
+        Assert.assertEquals(Arrays.asList("0:0-16:lord in an rings"), find(entries, "lord in an rings", true));
+        Assert.assertEquals(Arrays.asList(), find(entries, "lord of rings", true));
+        Assert.assertEquals(Arrays.asList(), find(entries, "lord of lord rings", true));
+    }
+
+    /*
+     * Occurrences of the same entry don't overlap, different entries may.
+     */
+    @Test
+    public void testPhraseOverlapping() throws Exception {
+        List<String> entries = Arrays.asList("new new", "new york");
+        Assert.assertEquals(Arrays.asList("0:0-7:new new", "1:4-12:new york"), find(entries, "new new york", true));
+        Assert.assertEquals(Arrays.asList("0:0-7:new new", "0:8-15:new new"), find(entries, "new new new new new", true));
+    }
+
+}
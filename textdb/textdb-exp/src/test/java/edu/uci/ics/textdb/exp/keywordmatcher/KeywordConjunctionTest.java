@@ -2,10 +2,13 @@ package edu.uci.ics.textdb.exp.keywordmatcher;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import edu.uci.ics.textdb.api.constants.SchemaConstants;
 import edu.uci.ics.textdb.api.constants.TestConstants;
 import edu.uci.ics.textdb.api.constants.TestConstantsChinese;
+import edu.uci.ics.textdb.api.dataflow.IOperator;
 import edu.uci.ics.textdb.api.exception.TextDBException;
 import edu.uci.ics.textdb.api.field.DateField;
 import edu.uci.ics.textdb.api.field.DoubleField;
@@ -20,6 +23,10 @@ import edu.uci.ics.textdb.api.schema.Schema;
 import edu.uci.ics.textdb.api.span.Span;
 import edu.uci.ics.textdb.api.tuple.Tuple;
 import edu.uci.ics.textdb.api.utils.TestUtils;
+import edu.uci.ics.textdb.api.utils.Utils;
+import edu.uci.ics.textdb.exp.source.scan.ScanBasedSourceOperator;
+import edu.uci.ics.textdb.exp.source.scan.ScanSourcePredicate;
+import edu.uci.ics.textdb.storage.constants.LuceneAnalyzerConstants;
 
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.junit.AfterClass;
@@ -510,4 +517,106 @@ public class KeywordConjunctionTest {
         Assert.assertTrue(contains);
     }
 
+    /**
+     * Verifies the ranked keyword source: the results are in the order of their scores,
+     *   and the top-k results with a limit are the first results of the ranked search without a limit.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testRankedTopK() throws Exception {
+        String query = "angry";
+        ArrayList<String> attributeNames = new ArrayList<>();
+        attributeNames.add(TestConstants.DESCRIPTION);
+        String scoreAttributeName = "score";
+
+        List<Tuple> allResults = KeywordTestHelper.getRankedKeywordSourceResults(PEOPLE_TABLE, query,
+                attributeNames, conjunction, scoreAttributeName, Integer.MAX_VALUE, 0);
+        List<Tuple> topResults = KeywordTestHelper.getRankedKeywordSourceResults(PEOPLE_TABLE, query,
+                attributeNames, conjunction, scoreAttributeName, 2, 0);
+        List<Tuple> unrankedResults = KeywordTestHelper.getQueryResults(PEOPLE_TABLE, query,
+                attributeNames, conjunction);
+
+        Assert.assertEquals(4, allResults.size());
+        for (int i = 1; i < allResults.size(); i++) {
+            double previousScore = (Double) allResults.get(i - 1).getField(scoreAttributeName).getValue();
+            double score = (Double) allResults.get(i).getField(scoreAttributeName).getValue();
+            Assert.assertTrue(previousScore >= score);
+        }
+        Assert.assertEquals(allResults.subList(0, 2), topResults);
+        Assert.assertTrue(TestUtils.equals(unrankedResults, Utils.removeFields(allResults, scoreAttributeName)));
+    }
+
+    private static List<Tuple> getResults(IOperator operator) throws TextDBException {
+        List<Tuple> results = new ArrayList<>();
+        operator.open();
+        Tuple tuple;
+        while ((tuple = operator.getNextTuple()) != null) {
+            results.add(tuple);
+        }
+        operator.close();
+        return results;
+    }
+
+    /*
+     * Gets the results of a KeywordMatcher for "angry" after the given operator.
+     */
+    private static List<Tuple> getDownstreamMatcherResults(IOperator inputOperator) throws TextDBException {
+        KeywordMatcher keywordMatcher = new KeywordMatcher(new KeywordPredicate("angry",
+                Arrays.asList(TestConstants.DESCRIPTION), LuceneAnalyzerConstants.standardAnalyzerString(),
+                conjunction, "angry results"));
+        keywordMatcher.setInputOperator(inputOperator);
+        return getResults(keywordMatcher);
+    }
+
+    /**
+     * Verifies that the keyword source keeps the full payload in its results,
+     *   so a matcher after it finds the tokens that are not in the keyword query.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMatcherAfterKeywordSource() throws Exception {
+        List<String> attributeNames = Arrays.asList(TestConstants.DESCRIPTION);
+
+        KeywordMatcher scanKeywordMatcher = new KeywordMatcher(new KeywordPredicate("short", attributeNames,
+                LuceneAnalyzerConstants.standardAnalyzerString(), conjunction, RESULTS));
+        scanKeywordMatcher.setInputOperator(new ScanBasedSourceOperator(new ScanSourcePredicate(PEOPLE_TABLE)));
+        List<Tuple> expectedResults = getDownstreamMatcherResults(scanKeywordMatcher);
+
+        KeywordMatcherSourceOperator keywordSource = new KeywordMatcherSourceOperator(new KeywordSourcePredicate(
+                "short", attributeNames, LuceneAnalyzerConstants.standardAnalyzerString(), conjunction,
+                PEOPLE_TABLE, RESULTS));
+        List<Tuple> results = getDownstreamMatcherResults(keywordSource);
+
+        Assert.assertEquals(2, results.size());
+        Assert.assertTrue(TestUtils.equals(expectedResults, results));
+        Assert.assertTrue(keywordSource.getOutputSchema().containsField(SchemaConstants.PAYLOAD));
+    }
+
+    /**
+     * Verifies that the keyword source with a restricted payload removes the payload from its results,
+     *   and a matcher after it generates the payload again.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMatcherAfterKeywordSourceWithRestrictedPayload() throws Exception {
+        List<String> attributeNames = Arrays.asList(TestConstants.DESCRIPTION);
+
+        KeywordMatcherSourceOperator keywordSource = new KeywordMatcherSourceOperator(new KeywordSourcePredicate(
+                "short", attributeNames, LuceneAnalyzerConstants.standardAnalyzerString(), conjunction,
+                PEOPLE_TABLE, RESULTS));
+        List<Tuple> expectedResults = getDownstreamMatcherResults(keywordSource);
+
+        KeywordMatcherSourceOperator restrictedKeywordSource = new KeywordMatcherSourceOperator(
+                new KeywordSourcePredicate("short", attributeNames, LuceneAnalyzerConstants.standardAnalyzerString(),
+                        conjunction, PEOPLE_TABLE, RESULTS, null, null, null, true));
+        List<Tuple> results = getDownstreamMatcherResults(restrictedKeywordSource);
+
+        Assert.assertEquals(2, results.size());
+        Assert.assertTrue(TestUtils.equals(expectedResults, results));
+        Assert.assertFalse(restrictedKeywordSource.getOutputSchema().containsField(SchemaConstants.PAYLOAD));
+    }
+
 }
@@ -161,5 +161,27 @@ public class KeywordTestHelper {
         
         return results;
     }
+    
+    public static List<Tuple> getRankedKeywordSourceResults(String tableName, String keywordQuery, 
+            List<String> attributeNames, KeywordMatchingType matchingType, String scoreAttributeName,
+            int limit, int offset) throws TextDBException {
+        RelationManager relationManager = RelationManager.getRelationManager();
+        KeywordSourcePredicate keywordSourcePredicate = new KeywordSourcePredicate(
+                keywordQuery, attributeNames, relationManager.getTableAnalyzerString(tableName), matchingType, 
+                tableName, RESULTS, limit, offset, scoreAttributeName);
+        KeywordMatcherSourceOperator keywordSource = new KeywordMatcherSourceOperator(
+                keywordSourcePredicate);
+        
+        Tuple tuple;
+        List<Tuple> results = new ArrayList<>();
+        
+        keywordSource.open();
+        while ((tuple = keywordSource.getNextTuple()) != null) {
+            results.add(tuple);
+        }
+        keywordSource.close();
+        
+        return results;
+    }
 
 }
@@ -0,0 +1,80 @@
+package edu.uci.ics.textdb.exp.keywordmatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.uci.ics.textdb.api.span.Span;
+
+public class KeywordTokenMatcherTest {
+
+    private static final String CONTENT = "content";
+    private static final String TITLE = "title";
+
+    /*
+     * The payload of "new york is new york" in content, and "york" in title, not in token offset order.
+     */
+    private static List<Span> getPayload() {
+        return Arrays.asList(
+                new Span(CONTENT, 12, 15, "new", "new", 3),
+                new Span(CONTENT, 0, 3, "new", "new", 0),
+                new Span(CONTENT, 4, 8, "york", "york", 1),
+                new Span(CONTENT, 9, 11, "is", "is", 2),
+                new Span(CONTENT, 16, 20, "york", "york", 4),
+                new Span(TITLE, 0, 4, "york", "york", 0));
+    }
+
+    @Test
+    public void testConjunction() throws Exception {
+        KeywordTokenMatcher tokenMatcher = new KeywordTokenMatcher(
+                Arrays.asList("new", "york"), Arrays.asList("new", "york"), Arrays.asList(CONTENT, TITLE));
+        tokenMatcher.loadPayload(getPayload());
+
+        Assert.assertTrue(tokenMatcher.isAllQueryTokensPresent(CONTENT));
+        Assert.assertFalse(tokenMatcher.isAllQueryTokensPresent(TITLE));
+
+        List<Span> results = new ArrayList<>();
+        tokenMatcher.addConjunctionSpans(CONTENT, results);
+        tokenMatcher.addConjunctionSpans(TITLE, results);
+        Assert.assertEquals(4, results.size());
+
+        // the counts are reset for the next tuple
+        tokenMatcher.loadPayload(Arrays.asList(new Span(CONTENT, 0, 3, "new", "new", 0)));
+        Assert.assertFalse(tokenMatcher.isAllQueryTokensPresent(CONTENT));
+    }
+
+    @Test
+    public void testPhrase() throws Exception {
+        KeywordTokenMatcher tokenMatcher = new KeywordTokenMatcher(
+                Arrays.asList("new", "york"), Arrays.asList("new", "york"), Arrays.asList(CONTENT, TITLE));
+        tokenMatcher.loadPayload(getPayload());
+
+        String fieldValue = "new york is new york";
+        List<Span> results = new ArrayList<>();
+        tokenMatcher.addPhraseSpans(CONTENT, fieldValue, "new york", results);
+        tokenMatcher.addPhraseSpans(TITLE, "york", "new york", results);
+
+        List<Span> expectedResults = Arrays.asList(
+                new Span(CONTENT, 0, 8, "new york", "new york"),
+                new Span(CONTENT, 12, 20, "new york", "new york"));
+        Assert.assertEquals(expectedResults, results);
+    }
+
+    /*
+     * The stopwords in the query are counted in the token offset gaps of the phrase.
+     */
+    @Test
+    public void testPhraseWithStopwords() throws Exception {
+        KeywordTokenMatcher tokenMatcher = new KeywordTokenMatcher(
+                Arrays.asList("york", "new"), Arrays.asList("york", "is", "new"), Arrays.asList(CONTENT));
+        tokenMatcher.loadPayload(getPayload());
+
+        List<Span> results = new ArrayList<>();
+        tokenMatcher.addPhraseSpans(CONTENT, "new york is new york", "york is new", results);
+        Assert.assertEquals(Arrays.asList(new Span(CONTENT, 4, 15, "york is new", "york is new")), results);
+    }
+
+}
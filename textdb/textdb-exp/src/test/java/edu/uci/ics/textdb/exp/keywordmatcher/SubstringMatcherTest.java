@@ -0,0 +1,58 @@
+package edu.uci.ics.textdb.exp.keywordmatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SubstringMatcherTest {
+
+    /*
+     * Finds the occurrences as "keywordIndex:start-end" strings, in the order they are reported.
+     */
+    private static List<String> findAll(List<String> keywords, String text) {
+        List<String> occurrences = new ArrayList<>();
+        SubstringMatcher.compile(keywords).findAll(text,
+                (keywordIndex, start, end) -> occurrences.add(keywordIndex + ":" + start + "-" + end));
+        return occurrences;
+    }
+
+    @Test
+    public void testSingleKeywordIgnoresCase() throws Exception {
+        Assert.assertEquals(Arrays.asList("0:0-4", "0:16-20"),
+                findAll(Arrays.asList("brad"), "Brad Pitt met a BRAD"));
+    }
+
+    /*
+     * Regular expression metacharacters in the keyword are matched literally.
+     */
+    @Test
+    public void testSingleKeywordIsLiteral() throws Exception {
+        Assert.assertEquals(Arrays.asList("0:6-9"), findAll(Arrays.asList("c++"), "I use c++ and c"));
+        Assert.assertEquals(Arrays.asList("0:4-7"), findAll(Arrays.asList("a.b"), "axb a.b"));
+        Assert.assertEquals(Arrays.asList(), findAll(Arrays.asList("(unclosed"), "no parenthesis here"));
+    }
+
+    @Test
+    public void testSingleKeywordNonOverlapping() throws Exception {
+        Assert.assertEquals(Arrays.asList("0:0-3", "0:3-6"), findAll(Arrays.asList("aaa"), "aaaaaaa"));
+        Assert.assertEquals(Arrays.asList(), findAll(Arrays.asList(""), "any text"));
+        Assert.assertEquals(Arrays.asList(), findAll(Arrays.asList("longer than the text"), "short"));
+    }
+
+    /*
+     * Different keywords may overlap, occurrences of the same keyword don't.
+     */
+    @Test
+    public void testMultipleKeywords() throws Exception {
+        List<String> keywords = Arrays.asList("he", "she", "his", "hers", "HE");
+        Assert.assertEquals(Arrays.asList("1:1-4", "0:2-4", "4:2-4", "3:2-6"), findAll(keywords, "ushers"));
+        Assert.assertEquals(Arrays.asList("0:0-2", "4:0-2", "2:4-7"), findAll(keywords, "He, his"));
+
+        Assert.assertEquals(Arrays.asList("0:0-2", "1:0-3", "0:2-4", "1:3-6", "0:4-6", "0:6-8"),
+                findAll(Arrays.asList("aa", "aaa"), "aaaaaaaa"));
+    }
+
+}
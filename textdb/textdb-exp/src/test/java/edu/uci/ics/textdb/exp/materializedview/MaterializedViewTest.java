@@ -0,0 +1,208 @@
+package edu.uci.ics.textdb.exp.materializedview;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.uci.ics.textdb.api.constants.TestConstants;
+import edu.uci.ics.textdb.api.exception.TextDBException;
+import edu.uci.ics.textdb.api.field.IDField;
+import edu.uci.ics.textdb.api.schema.Schema;
+import edu.uci.ics.textdb.api.tuple.Tuple;
+import edu.uci.ics.textdb.api.utils.Utils;
+import edu.uci.ics.textdb.exp.projection.ProjectionOperator;
+import edu.uci.ics.textdb.exp.projection.ProjectionPredicate;
+import edu.uci.ics.textdb.exp.source.scan.ScanBasedSourceOperator;
+import edu.uci.ics.textdb.exp.source.scan.ScanSourcePredicate;
+import edu.uci.ics.textdb.storage.DataWriter;
+import edu.uci.ics.textdb.storage.RelationManager;
+import edu.uci.ics.textdb.storage.constants.LuceneAnalyzerConstants;
+
+public class MaterializedViewTest {
+
+    public static final String PEOPLE_TABLE = "materialized_view_test_people";
+    public static final String PEOPLE_VIEW = "materialized_view_test_description";
+
+    private MaterializedView materializedView;
+
+    @Before
+    public void setUp() throws Exception {
+        RelationManager relationManager = RelationManager.getRelationManager();
+
+        relationManager.deleteTable(PEOPLE_TABLE);
+        relationManager.createTable(PEOPLE_TABLE, "../index/test_tables/" + PEOPLE_TABLE,
+                TestConstants.SCHEMA_PEOPLE, LuceneAnalyzerConstants.standardAnalyzerString());
+        insertPeopleTuples();
+
+        materializedView = new MaterializedView(PEOPLE_VIEW, "../index/test_tables/" + PEOPLE_VIEW, PEOPLE_TABLE,
+                sourceOperator -> {
+                    ProjectionOperator projection = new ProjectionOperator(
+                            new ProjectionPredicate(Arrays.asList(TestConstants.DESCRIPTION)));
+                    projection.setInputOperator(sourceOperator);
+                    return projection;
+                });
+    }
+
+    @After
+    public void cleanUp() throws Exception {
+        materializedView.drop();
+        RelationManager.getRelationManager().deleteTable(PEOPLE_TABLE);
+    }
+
+    private static void insertPeopleTuples() throws TextDBException {
+        DataWriter peopleDataWriter = RelationManager.getRelationManager().getTableDataWriter(PEOPLE_TABLE);
+        peopleDataWriter.open();
+        for (Tuple tuple : TestConstants.getSamplePeopleTuples()) {
+            peopleDataWriter.insertTuple(tuple);
+        }
+        peopleDataWriter.close();
+    }
+
+    private static List<Tuple> scanTable(String tableName) throws TextDBException {
+        ScanBasedSourceOperator scanSource = new ScanBasedSourceOperator(new ScanSourcePredicate(tableName));
+        scanSource.open();
+        List<Tuple> results = new ArrayList<>();
+        Tuple tuple;
+        while ((tuple = scanSource.getNextTuple()) != null) {
+            results.add(tuple);
+        }
+        scanSource.close();
+        return results;
+    }
+
+    /*
+     * Materializing a view should store the results of the view's plan in the view's table.
+     */
+    @Test
+    public void testMaterialize() throws Exception {
+        materializedView.materialize();
+
+        RelationManager relationManager = RelationManager.getRelationManager();
+        Assert.assertTrue(relationManager.checkTableExistence(PEOPLE_VIEW));
+        Assert.assertEquals(Utils.getSchemaWithID(new Schema(TestConstants.DESCRIPTION_ATTR)),
+                relationManager.getTableSchema(PEOPLE_VIEW));
+        Assert.assertEquals(TestConstants.getSamplePeopleTuples().size(), scanTable(PEOPLE_VIEW).size());
+    }
+
+    /*
+     * Appending tuples to the base table should append their results to the view's table.
+     */
+    @Test
+    public void testIncrementalInsert() throws Exception {
+        materializedView.materialize();
+
+        insertPeopleTuples();
+
+        List<Tuple> viewTuples = scanTable(PEOPLE_VIEW);
+        Assert.assertEquals(TestConstants.getSamplePeopleTuples().size() * 2, viewTuples.size());
+
+        List<String> expectedDescriptions = scanTable(PEOPLE_TABLE).stream()
+                .map(tuple -> tuple.getField(TestConstants.DESCRIPTION).getValue().toString())
+                .sorted().collect(Collectors.toList());
+        List<String> viewDescriptions = viewTuples.stream()
+                .map(tuple -> tuple.getField(TestConstants.DESCRIPTION).getValue().toString())
+                .sorted().collect(Collectors.toList());
+        Assert.assertEquals(expectedDescriptions, viewDescriptions);
+    }
+
+    /*
+     * Appending more tuples than the listener batch size with one writer should append all their results,
+     *   the view is notified of the inserted tuples in several batches.
+     */
+    @Test
+    public void testIncrementalInsertInBatches() throws Exception {
+        materializedView.materialize();
+
+        DataWriter peopleDataWriter = RelationManager.getRelationManager().getTableDataWriter(PEOPLE_TABLE);
+        peopleDataWriter.open();
+        int numInsertedTuples = 0;
+        while (numInsertedTuples <= DataWriter.WRITE_LISTENER_BATCH_SIZE * 2) {
+            for (Tuple tuple : TestConstants.getSamplePeopleTuples()) {
+                peopleDataWriter.insertTuple(tuple);
+                numInsertedTuples++;
+            }
+        }
+        peopleDataWriter.close();
+
+        Assert.assertEquals(scanTable(PEOPLE_TABLE).size(), scanTable(PEOPLE_VIEW).size());
+    }
+
+    /*
+     * Deleting tuples from the base table should compute the view again.
+     */
+    @Test
+    public void testRefreshOnDelete() throws Exception {
+        materializedView.materialize();
+
+        List<Tuple> peopleTuples = scanTable(PEOPLE_TABLE);
+        DataWriter peopleDataWriter = RelationManager.getRelationManager().getTableDataWriter(PEOPLE_TABLE);
+        peopleDataWriter.open();
+        peopleDataWriter.deleteTupleByID((IDField) peopleTuples.get(0).getField(0));
+        peopleDataWriter.close();
+
+        Assert.assertEquals(peopleTuples.size() - 1, scanTable(PEOPLE_VIEW).size());
+    }
+
+    /*
+     * Rolling back a writer of the base table should discard its tuples from the view too,
+     *   even after the view is passed a batch of them while the writer was open.
+     */
+    @Test
+    public void testRollbackAfterBatch() throws Exception {
+        materializedView.materialize();
+
+        DataWriter peopleDataWriter = RelationManager.getRelationManager().getTableDataWriter(PEOPLE_TABLE);
+        peopleDataWriter.open();
+        int numInsertedTuples = 0;
+        while (numInsertedTuples <= DataWriter.WRITE_LISTENER_BATCH_SIZE) {
+            for (Tuple tuple : TestConstants.getSamplePeopleTuples()) {
+                peopleDataWriter.insertTuple(tuple);
+                numInsertedTuples++;
+            }
+        }
+        peopleDataWriter.rollback();
+
+        Assert.assertEquals(TestConstants.getSamplePeopleTuples().size(), scanTable(PEOPLE_TABLE).size());
+        Assert.assertEquals(scanTable(PEOPLE_TABLE).size(), scanTable(PEOPLE_VIEW).size());
+    }
+
+    /*
+     * Rolling back a writer of the base table before the view is passed any tuple should keep the view as it is.
+     */
+    @Test
+    public void testRollbackBeforeBatch() throws Exception {
+        materializedView.materialize();
+
+        DataWriter peopleDataWriter = RelationManager.getRelationManager().getTableDataWriter(PEOPLE_TABLE);
+        peopleDataWriter.open();
+        for (Tuple tuple : TestConstants.getSamplePeopleTuples()) {
+            peopleDataWriter.insertTuple(tuple);
+        }
+        peopleDataWriter.rollback();
+
+        Assert.assertEquals(TestConstants.getSamplePeopleTuples().size(), scanTable(PEOPLE_TABLE).size());
+        Assert.assertEquals(TestConstants.getSamplePeopleTuples().size(), scanTable(PEOPLE_VIEW).size());
+    }
+
+    /*
+     * Dropping a view should delete its table, and later writes to the base table should not recreate it.
+     */
+    @Test
+    public void testDrop() throws Exception {
+        materializedView.materialize();
+        materializedView.drop();
+
+        insertPeopleTuples();
+
+        RelationManager relationManager = RelationManager.getRelationManager();
+        Assert.assertFalse(relationManager.checkTableExistence(PEOPLE_VIEW));
+        Assert.assertFalse(relationManager.getTableWriteListeners(PEOPLE_TABLE).contains(materializedView));
+    }
+
+}
@@ -0,0 +1,105 @@
+package edu.uci.ics.textdb.exp.regexmatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.uci.ics.textdb.api.exception.DataFlowException;
+
+public class CompiledRegexTest {
+
+    private static final List<String> TEXTS = Arrays.asList(
+            "George Lin, Brad Lie and angelina joie are 23-year-old students.\r\nphone: (949)888-8888",
+            "first line\nsecond line\u0085third line \u000B tab\tend\n",
+            "a.b*c [x] $5 100% done");
+
+    /*
+     * Finds the matches as "start-end" strings.
+     */
+    private static List<String> findAll(CompiledRegex compiledRegex, String text) {
+        List<String> results = new ArrayList<>();
+        compiledRegex.findAll(text, (start, end) -> results.add(start + "-" + end));
+        return results;
+    }
+
+    /*
+     * Checks that the regex is run by re2j with AUTO, and has the same matches as java on all the texts.
+     */
+    private static void assertSameMatches(String regex, boolean ignoreCase) {
+        CompiledRegex autoRegex = CompiledRegex.compile(regex, ignoreCase, RegexEngine.AUTO);
+        CompiledRegex javaRegex = CompiledRegex.compile(regex, ignoreCase, RegexEngine.JAVA);
+        Assert.assertEquals(RegexEngine.RE2J, autoRegex.getRegexEngine());
+        Assert.assertEquals(RegexEngine.JAVA, javaRegex.getRegexEngine());
+        for (String text : TEXTS) {
+            Assert.assertEquals(findAll(javaRegex, text), findAll(autoRegex, text));
+        }
+    }
+
+    @Test
+    public void testCompatibleRegex() throws Exception {
+        assertSameMatches("g[^\\s]*", false);
+        assertSameMatches("lin|lie", true);
+        assertSameMatches("\\(\\d{3}\\)\\d{3}-\\d{4}", false);
+        assertSameMatches("line.", false);
+        assertSameMatches(".+", false);
+        assertSameMatches("\\s+\\S", false);
+        assertSameMatches("[\\s,]+", false);
+        assertSameMatches("(?:br|an)[a-z]+?e", true);
+        assertSameMatches("^\\w+", false);
+        assertSameMatches("\\Q[x] $5\\E", false);
+        assertSameMatches("x*", false);
+    }
+
+    @Test
+    public void testTranslation() throws Exception {
+        Assert.assertEquals("a[^\\n\\r\\x{85}\\x{2028}\\x{2029}]b", CompiledRegex.toLinearTimeRegex("a.b", false));
+        Assert.assertEquals("[.\\t\\n\\x0B\\f\\r ]", CompiledRegex.toLinearTimeRegex("[.\\s]", false));
+        Assert.assertEquals("\\$5\\.", CompiledRegex.toLinearTimeRegex("\\Q$5.\\E", false));
+        Assert.assertEquals("[$]", CompiledRegex.toLinearTimeRegex("[$]", false));
+    }
+
+    /*
+     * The regexes that have a different meaning in re2j are run by java.
+     */
+    @Test
+    public void testIncompatibleRegex() throws Exception {
+        List<String> regexes = Arrays.asList("\\bLin\\b", "end$", "(a)\\1", "(?i)lin", "a(?=b)", "[a-z&&[^b]]",
+                "[\\S]", "\\v", "a*+");
+        for (String regex : regexes) {
+            Assert.assertEquals(regex, RegexEngine.JAVA,
+                    CompiledRegex.compile(regex, false, RegexEngine.AUTO).getRegexEngine());
+        }
+        // java only ignores the case of ASCII characters
+        Assert.assertEquals(RegexEngine.JAVA, CompiledRegex.compile("é", true, RegexEngine.AUTO).getRegexEngine());
+        Assert.assertEquals(RegexEngine.RE2J, CompiledRegex.compile("é", false, RegexEngine.AUTO).getRegexEngine());
+    }
+
+    @Test(expected = DataFlowException.class)
+    public void testInvalidRegex() throws Exception {
+        CompiledRegex.compile("(lin", false, RegexEngine.AUTO);
+    }
+
+    @Test(expected = DataFlowException.class)
+    public void testRegexNotSupportedByRe2j() throws Exception {
+        CompiledRegex.compile("(a)\\1", false, RegexEngine.RE2J);
+    }
+
+    /*
+     * This regex takes exponential time in java on this text, it takes linear time in re2j.
+     */
+    @Test(timeout = 10000)
+    public void testCatastrophicBacktracking() throws Exception {
+        CompiledRegex compiledRegex = CompiledRegex.compile("(a+)+b", false, RegexEngine.AUTO);
+        Assert.assertEquals(RegexEngine.RE2J, compiledRegex.getRegexEngine());
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaac ");
+        }
+        Assert.assertEquals(Arrays.asList(), findAll(compiledRegex, text.toString()));
+    }
+
+}
@@ -0,0 +1,153 @@
+package edu.uci.ics.textdb.exp.regexmatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.uci.ics.textdb.api.constants.SchemaConstants;
+import edu.uci.ics.textdb.api.dataflow.IOperator;
+import edu.uci.ics.textdb.api.exception.TextDBException;
+import edu.uci.ics.textdb.api.field.IField;
+import edu.uci.ics.textdb.api.field.ListField;
+import edu.uci.ics.textdb.api.span.Span;
+import edu.uci.ics.textdb.api.tuple.Tuple;
+import edu.uci.ics.textdb.api.utils.TestUtils;
+import edu.uci.ics.textdb.exp.source.scan.ScanBasedSourceOperator;
+import edu.uci.ics.textdb.exp.source.scan.ScanSourcePredicate;
+
+public class RegexSetMatcherTest {
+
+    public static final String TEXT_TABLE = RegexMatcherTestHelper.TEXT_TABLE;
+    public static final String RESULTS = RegexMatcherTestHelper.RESULTS;
+
+    // regexes with gram queries, without gram queries ("\d+"), and only supported by java ("\b")
+    public static final List<String> REGEXES = Arrays.asList("test(er|ing|ed|s)?", "follow(-| )?up",
+            "([a-zA-Z])+o[a-z]a[a-z]o", "\\[(.)?\\]", "patient", "[Tt]he\\W", "\\d+", "regex\\b");
+
+    public static final List<String> ATTRIBUTE_NAMES = Arrays.asList(RegexTestConstantsText.CONTENT);
+
+    @BeforeClass
+    public static void setUp() throws TextDBException {
+        RegexMatcherTestHelper.writeTestTables();
+    }
+
+    @AfterClass
+    public static void cleanUp() throws TextDBException {
+        RegexMatcherTestHelper.deleteTestTables();
+    }
+
+    private static List<Tuple> getResults(IOperator operator) throws TextDBException {
+        List<Tuple> results = new ArrayList<>();
+        operator.open();
+        Tuple tuple;
+        while ((tuple = operator.getNextTuple()) != null) {
+            results.add(tuple);
+        }
+        operator.close();
+        return results;
+    }
+
+    /*
+     * Merges the results of the RegexMatchers of each regex into one tuple for each document.
+     */
+    private static List<Tuple> getRegexMatcherResults(List<String> regexes) throws TextDBException {
+        Map<Object, Tuple> documentResults = new LinkedHashMap<>();
+        for (String regex : regexes) {
+            for (Tuple tuple : RegexMatcherTestHelper.getScanSourceResults(TEXT_TABLE, regex, ATTRIBUTE_NAMES,
+                    Integer.MAX_VALUE, 0)) {
+                Object documentID = tuple.getField(SchemaConstants._ID).getValue();
+                Tuple documentTuple = documentResults.get(documentID);
+                if (documentTuple == null) {
+                    documentResults.put(documentID, tuple);
+                    continue;
+                }
+                List<Span> spanList = new ArrayList<>();
+                spanList.addAll(documentTuple.<ListField<Span>>getField(RESULTS).getValue());
+                spanList.addAll(tuple.<ListField<Span>>getField(RESULTS).getValue());
+                List<IField> fields = new ArrayList<>(documentTuple.getFields());
+                fields.set(documentTuple.getSchema().getIndex(RESULTS), new ListField<Span>(spanList));
+                documentResults.put(documentID, new Tuple(documentTuple.getSchema(), fields));
+            }
+        }
+        return new ArrayList<>(documentResults.values());
+    }
+
+    private static List<Tuple> getRegexSetMatcherResults(List<String> regexes) throws TextDBException {
+        RegexSetMatcher regexSetMatcher = new RegexSetMatcher(new RegexSetPredicate(regexes, ATTRIBUTE_NAMES, RESULTS));
+        regexSetMatcher.setInputOperator(new ScanBasedSourceOperator(new ScanSourcePredicate(TEXT_TABLE)));
+        return getResults(regexSetMatcher);
+    }
+
+    /*
+     * A tuple is returned if any regex matches it, so the results are compared with the union of the results
+     *   of the RegexMatchers of each regex, merged by _id (see getRegexMatcherResults).
+     */
+    @Test
+    public void testSameResultsAsUnionOfRegexMatchers() throws Exception {
+        List<Tuple> expectedResults = getRegexMatcherResults(REGEXES);
+        List<Tuple> exactResults = getRegexSetMatcherResults(REGEXES);
+
+        Assert.assertFalse(exactResults.isEmpty());
+        Assert.assertTrue(TestUtils.equals(expectedResults, exactResults));
+    }
+
+    /*
+     * The key of each span is the regex that matched.
+     */
+    @Test
+    public void testSpanKeys() throws Exception {
+        List<Tuple> exactResults = getRegexSetMatcherResults(Arrays.asList("patient", "follow(-| )?up"));
+
+        Assert.assertEquals(3, exactResults.size());
+        for (Tuple tuple : exactResults) {
+            HashSet<String> spanKeys = new HashSet<>();
+            for (Span span : tuple.<ListField<Span>>getField(RESULTS).getValue()) {
+                spanKeys.add(span.getKey());
+            }
+            Assert.assertEquals(new HashSet<>(Arrays.asList("patient", "follow(-| )?up")), spanKeys);
+        }
+    }
+
+    @Test
+    public void testSourceOperator() throws Exception {
+        List<Tuple> expectedResults = getRegexSetMatcherResults(REGEXES);
+        List<Tuple> exactResults = getResults(new RegexSetMatcherSourceOperator(
+                new RegexSetSourcePredicate(REGEXES, ATTRIBUTE_NAMES, TEXT_TABLE, RESULTS)));
+
+        Assert.assertTrue(TestUtils.equals(expectedResults, exactResults));
+    }
+
+    /*
+     * Without the regexes that are always run, the index only returns the documents that have the grams
+     *   of one of the regexes.
+     */
+    @Test
+    public void testSourceOperatorWithGramQueries() throws Exception {
+        List<String> regexes = Arrays.asList("patient", "tomato", "brackets");
+        List<Tuple> expectedResults = getRegexSetMatcherResults(regexes);
+        List<Tuple> exactResults = getResults(new RegexSetMatcherSourceOperator(
+                new RegexSetSourcePredicate(regexes, ATTRIBUTE_NAMES, TEXT_TABLE, RESULTS)));
+
+        Assert.assertEquals(5, exactResults.size());
+        Assert.assertTrue(TestUtils.equals(expectedResults, exactResults));
+    }
+
+    @Test
+    public void testGramQuery() throws Exception {
+        GramBooleanQuery gramQuery = RegexToGramQueryTranslator.translateWithoutEscaping("follow(-| )?up",
+                TranslatorUtils.DEFAULT_GRAM_LENGTH);
+
+        Assert.assertTrue(gramQuery.matches(new HashSet<>(Arrays.asList("fol", "oll", "llo", "low", "owu", "wup"))));
+        Assert.assertTrue(gramQuery.matches(new HashSet<>(Arrays.asList("fol", "oll", "llo", "low", "ow-", "w-u", "-up"))));
+        Assert.assertFalse(gramQuery.matches(new HashSet<>(Arrays.asList("fol", "oll", "llo", "low"))));
+    }
+
+}
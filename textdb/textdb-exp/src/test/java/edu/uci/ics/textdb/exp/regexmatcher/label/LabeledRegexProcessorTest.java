@@ -0,0 +1,20 @@
+package edu.uci.ics.textdb.exp.regexmatcher.label;
+
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LabeledRegexProcessorTest {
+
+    @Test
+    public void testEscapeString() throws Exception {
+        Assert.assertEquals("george", LabeledRegexProcessor.escapeString("george"));
+        Assert.assertEquals("Dr\\.\\ Smith", LabeledRegexProcessor.escapeString("Dr. Smith"));
+        Assert.assertEquals("café\\ \\(\\$5\\)", LabeledRegexProcessor.escapeString("café ($5)"));
+
+        String value = "a+b* [c]|{d}^$\\ — e?";
+        Assert.assertTrue(Pattern.compile(LabeledRegexProcessor.escapeString(value)).matcher(value).matches());
+    }
+
+}
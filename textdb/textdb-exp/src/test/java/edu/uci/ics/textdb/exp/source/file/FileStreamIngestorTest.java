@@ -0,0 +1,216 @@
+package edu.uci.ics.textdb.exp.source.file;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.uci.ics.textdb.api.exception.TextDBException;
+import edu.uci.ics.textdb.api.schema.Attribute;
+import edu.uci.ics.textdb.api.schema.AttributeType;
+import edu.uci.ics.textdb.api.schema.Schema;
+import edu.uci.ics.textdb.api.tuple.Tuple;
+import edu.uci.ics.textdb.exp.source.scan.ScanBasedSourceOperator;
+import edu.uci.ics.textdb.exp.source.scan.ScanSourcePredicate;
+import edu.uci.ics.textdb.storage.RelationManager;
+import edu.uci.ics.textdb.storage.constants.LuceneAnalyzerConstants;
+import edu.uci.ics.textdb.storage.utils.StorageUtils;
+
+public class FileStreamIngestorTest {
+
+    public static final String INGEST_TABLE = "file_stream_ingestor_test";
+    public static final String ATTRIBUTE_NAME = "content";
+
+    public static Path testFolderPath = Paths.get("./index/test_tables/filestreamingestor/");
+    public static Path ingestFolderPath = testFolderPath.resolve("ingest/");
+    public static Path offsetFilePath = testFolderPath.resolve("offsets.json");
+
+    @Before
+    public void setUp() throws Exception {
+        cleanUp();
+        Files.createDirectories(ingestFolderPath);
+        RelationManager.getRelationManager().createTable(INGEST_TABLE, "../index/test_tables/" + INGEST_TABLE,
+                new Schema(new Attribute(ATTRIBUTE_NAME, AttributeType.TEXT)),
+                LuceneAnalyzerConstants.standardAnalyzerString());
+    }
+
+    @After
+    public void cleanUp() throws Exception {
+        RelationManager.getRelationManager().deleteTable(INGEST_TABLE);
+        if (Files.exists(testFolderPath)) {
+            StorageUtils.deleteDirectory(testFolderPath.toString());
+        }
+    }
+
+    private static List<String> getTableContents() throws Exception {
+        ScanBasedSourceOperator scanSource = new ScanBasedSourceOperator(new ScanSourcePredicate(INGEST_TABLE));
+        scanSource.open();
+        List<String> contents = new ArrayList<>();
+        Tuple tuple;
+        while ((tuple = scanSource.getNextTuple()) != null) {
+            contents.add(tuple.getField(ATTRIBUTE_NAME).getValue().toString());
+        }
+        scanSource.close();
+        return contents;
+    }
+
+    /*
+     * New files are ingested as one tuple each,
+     *   appended content is ingested as a new tuple, and unchanged files are not ingested again.
+     */
+    @Test
+    public void testIngestNewAndAppendedFiles() throws Exception {
+        Files.write(ingestFolderPath.resolve("a.txt"), "file a".getBytes());
+        Files.write(ingestFolderPath.resolve("b.txt"), "file b".getBytes());
+        Files.write(ingestFolderPath.resolve("c.tmp"), "file c is not allowed".getBytes());
+
+        FileStreamIngestor ingestor = new FileStreamIngestor(
+                new FileSourcePredicate(ingestFolderPath.toString(), ATTRIBUTE_NAME), INGEST_TABLE, offsetFilePath.toString());
+        Assert.assertEquals(2, ingestor.ingestAvailable());
+        Assert.assertEquals(0, ingestor.ingestAvailable());
+
+        Files.write(ingestFolderPath.resolve("a.txt"), " appended".getBytes(), StandardOpenOption.APPEND);
+        Assert.assertEquals(1, ingestor.ingestAvailable());
+
+        List<String> contents = getTableContents();
+        Assert.assertEquals(3, contents.size());
+        Assert.assertTrue(contents.contains("file a"));
+        Assert.assertTrue(contents.contains("file b"));
+        Assert.assertTrue(contents.contains(" appended"));
+    }
+
+    /*
+     * A restarted ingestor reads the saved offsets, and doesn't ingest the same content again.
+     */
+    @Test
+    public void testRestart() throws Exception {
+        Files.write(ingestFolderPath.resolve("a.txt"), "file a".getBytes());
+        FileSourcePredicate predicate = new FileSourcePredicate(ingestFolderPath.toString(), ATTRIBUTE_NAME);
+
+        FileStreamIngestor ingestor = new FileStreamIngestor(predicate, INGEST_TABLE, offsetFilePath.toString());
+        Assert.assertEquals(1, ingestor.ingestAvailable());
+
+        Files.write(ingestFolderPath.resolve("b.txt"), "file b".getBytes());
+        FileStreamIngestor restartedIngestor = new FileStreamIngestor(predicate, INGEST_TABLE, offsetFilePath.toString());
+        Assert.assertEquals(1, restartedIngestor.ingestAvailable());
+        Assert.assertEquals(2, getTableContents().size());
+    }
+
+    /*
+     * A started ingestor watches the directory and ingests new files in the background.
+     */
+    @Test
+    public void testWatchDirectory() throws Exception {
+        FileStreamIngestor ingestor = new FileStreamIngestor(
+                new FileSourcePredicate(ingestFolderPath.toString(), ATTRIBUTE_NAME), INGEST_TABLE, offsetFilePath.toString());
+        ingestor.start();
+        try {
+            Files.write(ingestFolderPath.resolve("a.txt"), "file a".getBytes());
+
+            long deadline = System.currentTimeMillis() + 30000;
+            while (getTableContents().isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            Assert.assertNull(ingestor.getFailure());
+            Assert.assertEquals(1, getTableContents().size());
+        } finally {
+            ingestor.stop();
+        }
+        Assert.assertFalse(ingestor.isRunning());
+        Assert.assertTrue(Files.exists(offsetFilePath));
+    }
+
+    /*
+     * A file that is written in several parts while the directory is watched is ingested as one tuple,
+     *   since it's only read when it has no changes for the quiet period.
+     */
+    @Test
+    public void testWatchFileWrittenInParts() throws Exception {
+        FileStreamIngestor ingestor = new FileStreamIngestor(
+                new FileSourcePredicate(ingestFolderPath.toString(), ATTRIBUTE_NAME), INGEST_TABLE, offsetFilePath.toString());
+        ingestor.start();
+        try {
+            Path filePath = ingestFolderPath.resolve("a.txt");
+            Files.write(filePath, "part one".getBytes());
+            for (String part : Arrays.asList(", part two", ", part three")) {
+                Thread.sleep(FileStreamIngestor.QUIET_PERIOD_MILLIS / 5);
+                Files.write(filePath, part.getBytes(), StandardOpenOption.APPEND);
+            }
+
+            long deadline = System.currentTimeMillis() + 30000;
+            while (getTableContents().isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            Assert.assertNull(ingestor.getFailure());
+        } finally {
+            ingestor.stop();
+        }
+        Assert.assertEquals(Arrays.asList("part one, part two, part three"), getTableContents());
+    }
+
+    /*
+     * When the background thread fails, the ingestor stops ingesting,
+     *   and stop() still writes the pending tuples.
+     */
+    @Test
+    public void testStopAfterFailure() throws Exception {
+        FileStreamIngestor ingestor = new FileStreamIngestor(
+                new FileSourcePredicate(ingestFolderPath.toString(), ATTRIBUTE_NAME), INGEST_TABLE, offsetFilePath.toString());
+        ingestor.start();
+        // writing the batch fails without the table
+        RelationManager.getRelationManager().deleteTable(INGEST_TABLE);
+        Files.write(ingestFolderPath.resolve("a.txt"), "file a".getBytes());
+
+        long deadline = System.currentTimeMillis() + 30000;
+        while (ingestor.getFailure() == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        Assert.assertNotNull(ingestor.getFailure());
+        Assert.assertFalse(ingestor.isRunning());
+
+        RelationManager.getRelationManager().createTable(INGEST_TABLE, "../index/test_tables/" + INGEST_TABLE,
+                new Schema(new Attribute(ATTRIBUTE_NAME, AttributeType.TEXT)),
+                LuceneAnalyzerConstants.standardAnalyzerString());
+        ingestor.stop();
+        Assert.assertEquals(1, getTableContents().size());
+    }
+
+    /*
+     * When the catch-up ingestion of start() fails, the ingestor is not started,
+     *   and it can be started again after the failure is fixed.
+     */
+    @Test
+    public void testStartAfterFailedStart() throws Exception {
+        FileStreamIngestor ingestor = new FileStreamIngestor(
+                new FileSourcePredicate(ingestFolderPath.toString(), ATTRIBUTE_NAME), INGEST_TABLE, offsetFilePath.toString());
+        // writing the batch fails without the table
+        RelationManager.getRelationManager().deleteTable(INGEST_TABLE);
+        Files.write(ingestFolderPath.resolve("a.txt"), "file a".getBytes());
+        try {
+            ingestor.start();
+            Assert.fail("start() should fail without the table");
+        } catch (TextDBException e) {
+        }
+        Assert.assertFalse(ingestor.isRunning());
+
+        RelationManager.getRelationManager().createTable(INGEST_TABLE, "../index/test_tables/" + INGEST_TABLE,
+                new Schema(new Attribute(ATTRIBUTE_NAME, AttributeType.TEXT)),
+                LuceneAnalyzerConstants.standardAnalyzerString());
+        ingestor.start();
+        try {
+            Assert.assertTrue(ingestor.isRunning());
+        } finally {
+            ingestor.stop();
+        }
+        Assert.assertEquals(Arrays.asList("file a"), getTableContents());
+    }
+
+}
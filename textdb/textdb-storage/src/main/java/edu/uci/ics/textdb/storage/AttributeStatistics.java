@@ -0,0 +1,123 @@
+package edu.uci.ics.textdb.storage;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * AttributeStatistics contains the statistics of one attribute of a table,
+ *   collected from the terms dictionary of the attribute's index (see TableStatistics).
+ *
+ * Statistics:
+ *
+ *   documentCount: the number of documents that have at least one indexed term in the attribute.
+ *
+ *   averageFieldLength: the average number of tokens per document (TEXT attributes only).
+ *
+ *   distinctCount: the number of distinct indexed values (distinct tokens for TEXT attributes).
+ *
+ *   minValue / maxValue: the smallest and largest values (not collected for TEXT attributes).
+ *
+ *   topTerms: the most frequent values (or tokens) and their document frequencies, most frequent first
+ *     (STRING, DATE and TEXT attributes only).
+ *
+ *   histogram: the number of documents in each of the equi-width buckets between minValue and maxValue
+ *     (INTEGER and DOUBLE attributes only).
+ *
+ * Document frequencies include deleted documents that haven't been merged away yet,
+ *   so they are an approximation right after many deletions.
+ *
+ */
+public class AttributeStatistics {
+
+    private String attributeName;
+    private String attributeType;
+    private int documentCount = 0;
+    private double averageFieldLength = 0;
+    private long distinctCount = 0;
+    private String minValue = null;
+    private String maxValue = null;
+    private LinkedHashMap<String, Integer> topTerms = new LinkedHashMap<>();
+    private List<Long> histogram = new ArrayList<>();
+
+    public AttributeStatistics() {
+    }
+
+    public AttributeStatistics(String attributeName, String attributeType) {
+        this.attributeName = attributeName;
+        this.attributeType = attributeType;
+    }
+
+    public String getAttributeName() {
+        return attributeName;
+    }
+
+    public void setAttributeName(String attributeName) {
+        this.attributeName = attributeName;
+    }
+
+    public String getAttributeType() {
+        return attributeType;
+    }
+
+    public void setAttributeType(String attributeType) {
+        this.attributeType = attributeType;
+    }
+
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    public void setDocumentCount(int documentCount) {
+        this.documentCount = documentCount;
+    }
+
+    public double getAverageFieldLength() {
+        return averageFieldLength;
+    }
+
+    public void setAverageFieldLength(double averageFieldLength) {
+        this.averageFieldLength = averageFieldLength;
+    }
+
+    public long getDistinctCount() {
+        return distinctCount;
+    }
+
+    public void setDistinctCount(long distinctCount) {
+        this.distinctCount = distinctCount;
+    }
+
+    public String getMinValue() {
+        return minValue;
+    }
+
+    public void setMinValue(String minValue) {
+        this.minValue = minValue;
+    }
+
+    public String getMaxValue() {
+        return maxValue;
+    }
+
+    public void setMaxValue(String maxValue) {
+        this.maxValue = maxValue;
+    }
+
+    public LinkedHashMap<String, Integer> getTopTerms() {
+        return topTerms;
+    }
+
+    public void setTopTerms(LinkedHashMap<String, Integer> topTerms) {
+        this.topTerms = topTerms;
+    }
+
+    public List<Long> getHistogram() {
+        return histogram;
+    }
+
+    public void setHistogram(List<Long> histogram) {
+        this.histogram = histogram;
+    }
+
+}
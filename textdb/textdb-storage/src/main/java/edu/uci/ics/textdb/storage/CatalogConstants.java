@@ -1,9 +1,14 @@
 package edu.uci.ics.textdb.storage;
 
+import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import edu.uci.ics.textdb.api.exception.StorageException;
 import edu.uci.ics.textdb.api.field.IntegerField;
 import edu.uci.ics.textdb.api.field.StringField;
@@ -21,10 +26,15 @@ import edu.uci.ics.textdb.api.utils.Utils;
  * 
  * Initial tuples for the table catalog:
  * 
- *  tableName    |    tableDirectory    |    luceneAnalyzer
+ *  tableName    |    tableDirectory    |    luceneAnalyzer         |  payloadStored  |  directoryType  |  numShards  |  partitionType
+ * 
+ * tableCatalog       ../catalog/table       standardLuceneAnalyzer      false              fs                1             hash
+ * schemaCatalog      ../catalog/schema      standardLuceneAnalyzer      false              fs                1             hash
  * 
- * tableCatalog       ../catalog/table       standardLuceneAnalyzer
- * schemaCatalog      ../catalog/schema      standardLuceneAnalyzer
+ *  (continued)  storedFieldsCompression  |  termVectorsStored  |  offsetsIndexed
+ *  
+ *                      speed                      true                 true
+ *                      speed                      true                 true
  *   
  * ============================================
  *   
@@ -34,13 +44,34 @@ import edu.uci.ics.textdb.api.utils.Utils;
  *   tableCatalog       tableName           string                0
  *   tableCatalog    tableDirectory         string                1
  *   tableCatalog     luceneAnalyzer        string                2
+ *   tableCatalog     payloadStored         string                3
+ *   tableCatalog     directoryType         string                4
+ *   tableCatalog       numShards           string                5
+ *   tableCatalog     partitionType         string                6
+ *   tableCatalog  storedFieldsCompression  string                7
+ *   tableCatalog   termVectorsStored       string                8
+ *   tableCatalog     offsetsIndexed        string                9
  *   schemaCatalog      tableName           string                0
  *   schemaCatalog    attributeName         string                1
  *   schemaCatalog    attributeType         string                2
  *   schemaCatalog  attributePosition       string                3
+ *   statisticsCatalog  tableName           string                0
+ *   statisticsCatalog  attributeName       string                1
+ *   statisticsCatalog  statistics          string                2
  *     
  * ============================================
  * 
+ *  Tuples in the statistics catalog (see TableStatistics and AttributeStatistics),
+ *    one tuple for the table-level statistics, and one tuple for each attribute.
+ *    The statistics are serialized to JSON.
+ *    
+ *    tableName    |    attributeName    |    statistics
+ *    
+ *    people               *               {"documentCount":2,"modificationCount":0, ...}
+ *    people           firstName           {"distinctCount":2,"topTerms":{"bruce":1, ...}, ...}
+ *  
+ * ============================================
+ * 
  * @author Zuozhi Wang
  *
  */
@@ -48,22 +79,47 @@ public class CatalogConstants {
 
     public static final String TABLE_CATALOG = "tableCatalog";
     public static final String SCHEMA_CATALOG = "schemaCatalog";
+    public static final String STATISTICS_CATALOG = "statisticsCatalog";
 
     public static final String TABLE_CATALOG_DIRECTORY = Paths.get(Utils.getTextdbHomePath(), "catalog", "table").toString();
     public static final String SCHEMA_CATALOG_DIRECTORY = Paths.get(Utils.getTextdbHomePath(), "catalog", "schema").toString();
+    public static final String STATISTICS_CATALOG_DIRECTORY = Paths.get(Utils.getTextdbHomePath(), "catalog", "statistics").toString();
 
     // Schema for the "table catalog" table
     public static final String TABLE_NAME = "tableName";
     public static final String TABLE_DIRECTORY = "tableDirectory";
     public static final String TABLE_LUCENE_ANALYZER = "luceneAnalyzer";
+    public static final String TABLE_PAYLOAD_STORED = "payloadStored";
+    public static final String TABLE_DIRECTORY_TYPE = "directoryType";
+    public static final String TABLE_NUM_SHARDS = "numShards";
+    public static final String TABLE_PARTITION_TYPE = "partitionType";
+    public static final String TABLE_STORED_FIELDS_COMPRESSION = "storedFieldsCompression";
+    public static final String TABLE_TERM_VECTORS_STORED = "termVectorsStored";
+    public static final String TABLE_OFFSETS_INDEXED = "offsetsIndexed";
 
     public static final Attribute TABLE_NAME_ATTR = new Attribute(TABLE_NAME, AttributeType.STRING);
     public static final Attribute TABLE_DIRECTORY_ATTR = new Attribute(TABLE_DIRECTORY, AttributeType.STRING);
     public static final Attribute TABLE_LUCENE_ANALYZER_ATTR = new Attribute(TABLE_LUCENE_ANALYZER,
             AttributeType.STRING);
+    public static final Attribute TABLE_PAYLOAD_STORED_ATTR = new Attribute(TABLE_PAYLOAD_STORED, 
+            AttributeType.STRING);
+    public static final Attribute TABLE_DIRECTORY_TYPE_ATTR = new Attribute(TABLE_DIRECTORY_TYPE, 
+            AttributeType.STRING);
+    public static final Attribute TABLE_NUM_SHARDS_ATTR = new Attribute(TABLE_NUM_SHARDS, 
+            AttributeType.STRING);
+    public static final Attribute TABLE_PARTITION_TYPE_ATTR = new Attribute(TABLE_PARTITION_TYPE, 
+            AttributeType.STRING);
+    public static final Attribute TABLE_STORED_FIELDS_COMPRESSION_ATTR = new Attribute(TABLE_STORED_FIELDS_COMPRESSION, 
+            AttributeType.STRING);
+    public static final Attribute TABLE_TERM_VECTORS_STORED_ATTR = new Attribute(TABLE_TERM_VECTORS_STORED, 
+            AttributeType.STRING);
+    public static final Attribute TABLE_OFFSETS_INDEXED_ATTR = new Attribute(TABLE_OFFSETS_INDEXED, 
+            AttributeType.STRING);
 
     public static final Schema TABLE_CATALOG_SCHEMA = new Schema(TABLE_NAME_ATTR, TABLE_DIRECTORY_ATTR,
-            TABLE_LUCENE_ANALYZER_ATTR);
+            TABLE_LUCENE_ANALYZER_ATTR, TABLE_PAYLOAD_STORED_ATTR, TABLE_DIRECTORY_TYPE_ATTR,
+            TABLE_NUM_SHARDS_ATTR, TABLE_PARTITION_TYPE_ATTR, TABLE_STORED_FIELDS_COMPRESSION_ATTR,
+            TABLE_TERM_VECTORS_STORED_ATTR, TABLE_OFFSETS_INDEXED_ATTR);
     public static final Schema TABLE_CATALOG_SCHEMA_WITH_ID = Utils.getSchemaWithID(TABLE_CATALOG_SCHEMA);
 
     // Schema for "schema catalog" table
@@ -78,13 +134,28 @@ public class CatalogConstants {
     public static final Schema SCHEMA_CATALOG_SCHEMA = new Schema(TABLE_NAME_ATTR, ATTR_NAME_ATTR, ATTR_TYPE_ATTR,
             ATTR_POSITION_ATTR);
     public static final Schema SCHEMA_CATALOG_SCHEMA_WITH_ID = Utils.getSchemaWithID(SCHEMA_CATALOG_SCHEMA);
+    
+    // Schema for "statistics catalog" table
+    public static final String STATISTICS = "statistics";
+    // the attribute name of the tuple that keeps the table-level statistics
+    public static final String TABLE_STATISTICS_ATTR_NAME = "*";
+    
+    public static final Attribute STATISTICS_ATTR = new Attribute(STATISTICS, AttributeType.STRING);
+    
+    public static final Schema STATISTICS_CATALOG_SCHEMA = new Schema(TABLE_NAME_ATTR, ATTR_NAME_ATTR, STATISTICS_ATTR);
+    public static final Schema STATISTICS_CATALOG_SCHEMA_WITH_ID = Utils.getSchemaWithID(STATISTICS_CATALOG_SCHEMA);
 
     
-    // DataStore for table catalog and schema catalog
+    private static final ObjectMapper statisticsMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    
+    // DataStore for table catalog, schema catalog and statistics catalog
     public static final DataStore TABLE_CATALOG_DATASTORE = 
             new DataStore(TABLE_CATALOG_DIRECTORY, TABLE_CATALOG_SCHEMA_WITH_ID);
     public static final DataStore SCHEMA_CATALOG_DATASTORE = 
             new DataStore(SCHEMA_CATALOG_DIRECTORY, SCHEMA_CATALOG_SCHEMA_WITH_ID);
+    public static final DataStore STATISTICS_CATALOG_DATASTORE = 
+            new DataStore(STATISTICS_CATALOG_DIRECTORY, STATISTICS_CATALOG_SCHEMA_WITH_ID);
 
 
     /**
@@ -93,14 +164,67 @@ public class CatalogConstants {
      * @param tableName
      * @param tableDirectory
      * @param luceneAnalyzerStr
+     * @param tableProperties
      * @return
      * @throws StorageException
      */
-    public static Tuple getTableCatalogTuple(String tableName, String tableDirectory, String luceneAnalyzerStr) {
+    public static Tuple getTableCatalogTuple(String tableName, String tableDirectory, String luceneAnalyzerStr,
+            TableProperties tableProperties) {
         return new Tuple(TABLE_CATALOG_SCHEMA, 
                 new StringField(tableName), 
                 new StringField(tableDirectory),
-                new StringField(luceneAnalyzerStr));
+                new StringField(luceneAnalyzerStr),
+                new StringField(Boolean.toString(tableProperties.isPayloadStored())),
+                new StringField(tableProperties.getDirectoryType()),
+                new StringField(Integer.toString(tableProperties.getNumShards())),
+                new StringField(tableProperties.getPartitionType()),
+                new StringField(tableProperties.getStoredFieldsCompression()),
+                new StringField(Boolean.toString(tableProperties.isTermVectorsStored())),
+                new StringField(Boolean.toString(tableProperties.isOffsetsIndexed())));
+    }
+    
+    /**
+     * Gets the table properties from a tuple in the table catalog.
+     * 
+     * A property that is missing in the tuple (for example, the table was created 
+     *   before the property was introduced) is set to its default value.
+     * 
+     * @param tableCatalogTuple
+     * @return
+     */
+    public static TableProperties getTableProperties(Tuple tableCatalogTuple) {
+        TableProperties tableProperties = new TableProperties();
+        
+        Object payloadStored = tableCatalogTuple.getField(TABLE_PAYLOAD_STORED).getValue();
+        if (payloadStored != null) {
+            tableProperties.setPayloadStored(Boolean.parseBoolean(payloadStored.toString()));
+        }
+        Object directoryType = tableCatalogTuple.getField(TABLE_DIRECTORY_TYPE).getValue();
+        if (directoryType != null) {
+            tableProperties.setDirectoryType(directoryType.toString());
+        }
+        Object numShards = tableCatalogTuple.getField(TABLE_NUM_SHARDS).getValue();
+        if (numShards != null) {
+            tableProperties.setNumShards(Integer.parseInt(numShards.toString()));
+        }
+        Object partitionType = tableCatalogTuple.getField(TABLE_PARTITION_TYPE).getValue();
+        if (partitionType != null) {
+            tableProperties.setPartitionType(partitionType.toString());
+        }
+        Object storedFieldsCompression = tableCatalogTuple.getField(TABLE_STORED_FIELDS_COMPRESSION).getValue();
+        if (storedFieldsCompression != null) {
+            tableProperties.setStoredFieldsCompression(storedFieldsCompression.toString());
+        }
+        Object termVectorsStored = tableCatalogTuple.getField(TABLE_TERM_VECTORS_STORED).getValue();
+        if (termVectorsStored != null) {
+            tableProperties.setTermVectorsStored(Boolean.parseBoolean(termVectorsStored.toString()));
+        }
+        Object offsetsIndexed = tableCatalogTuple.getField(TABLE_OFFSETS_INDEXED).getValue();
+        if (offsetsIndexed != null) {
+            tableProperties.setOffsetsIndexed(Boolean.parseBoolean(offsetsIndexed.toString()));
+        }
+        
+        return tableProperties;
     }
     
     /**
@@ -125,5 +249,63 @@ public class CatalogConstants {
         }
         return schemaCatalogTuples;
     }
+    
+    /**
+     * Gets the tuples to be inserted to the statistics catalog,
+     *   one tuple for the table-level statistics, and one tuple for each attribute.
+     * 
+     * @param tableStatistics
+     * @return
+     * @throws StorageException, if the statistics can't be serialized
+     */
+    public static List<Tuple> getStatisticsCatalogTuples(TableStatistics tableStatistics) throws StorageException {
+        List<Tuple> statisticsCatalogTuples = new ArrayList<>();
+        String tableName = tableStatistics.getTableName();
+        try {
+            statisticsCatalogTuples.add(new Tuple(STATISTICS_CATALOG_SCHEMA,
+                    new StringField(tableName),
+                    new StringField(TABLE_STATISTICS_ATTR_NAME),
+                    new StringField(statisticsMapper.writeValueAsString(tableStatistics))));
+            for (AttributeStatistics attributeStatistics : tableStatistics.getAttributeStatistics()) {
+                statisticsCatalogTuples.add(new Tuple(STATISTICS_CATALOG_SCHEMA,
+                        new StringField(tableName),
+                        new StringField(attributeStatistics.getAttributeName()),
+                        new StringField(statisticsMapper.writeValueAsString(attributeStatistics))));
+            }
+        } catch (JsonProcessingException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+        return statisticsCatalogTuples;
+    }
+    
+    /**
+     * Gets the table statistics from the tuples of a table in the statistics catalog.
+     * Returns null if the table-level tuple is not found.
+     * 
+     * @param statisticsCatalogTuples
+     * @return
+     * @throws StorageException, if the statistics can't be deserialized
+     */
+    public static TableStatistics getTableStatistics(List<Tuple> statisticsCatalogTuples) throws StorageException {
+        TableStatistics tableStatistics = null;
+        List<AttributeStatistics> attributeStatistics = new ArrayList<>();
+        try {
+            for (Tuple tuple : statisticsCatalogTuples) {
+                String attributeName = tuple.getField(ATTR_NAME).getValue().toString();
+                String statistics = tuple.getField(STATISTICS).getValue().toString();
+                if (attributeName.equals(TABLE_STATISTICS_ATTR_NAME)) {
+                    tableStatistics = statisticsMapper.readValue(statistics, TableStatistics.class);
+                } else {
+                    attributeStatistics.add(statisticsMapper.readValue(statistics, AttributeStatistics.class));
+                }
+            }
+        } catch (IOException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+        if (tableStatistics != null) {
+            tableStatistics.setAttributeStatistics(attributeStatistics);
+        }
+        return tableStatistics;
+    }
 
 }
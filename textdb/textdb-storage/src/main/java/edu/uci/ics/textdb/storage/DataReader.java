@@ -3,13 +3,29 @@ package edu.uci.ics.textdb.storage;
 import java.io.IOException;
 import java.nio.file.Paths;
 import java.text.ParseException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiReader;
 import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.DocIdSetIterator;
@@ -17,13 +33,18 @@ import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.similarities.BM25Similarity;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
 
 import edu.uci.ics.textdb.api.constants.ErrorMessages;
 import edu.uci.ics.textdb.api.constants.SchemaConstants;
 import edu.uci.ics.textdb.api.dataflow.IOperator;
 import edu.uci.ics.textdb.api.exception.StorageException;
+import edu.uci.ics.textdb.api.field.DoubleField;
+import edu.uci.ics.textdb.api.field.IDField;
 import edu.uci.ics.textdb.api.field.IField;
 import edu.uci.ics.textdb.api.field.ListField;
 import edu.uci.ics.textdb.api.schema.Attribute;
@@ -32,6 +53,9 @@ import edu.uci.ics.textdb.api.schema.Schema;
 import edu.uci.ics.textdb.api.span.Span;
 import edu.uci.ics.textdb.api.tuple.*;
 import edu.uci.ics.textdb.api.utils.Utils;
+import edu.uci.ics.textdb.storage.DecodedTupleCache.CachedTuple;
+import edu.uci.ics.textdb.storage.constants.LuceneDirectoryConstants;
+import edu.uci.ics.textdb.storage.utils.StorageExecutors;
 import edu.uci.ics.textdb.storage.utils.StorageUtils;
 
 /**
@@ -47,6 +71,41 @@ import edu.uci.ics.textdb.storage.utils.StorageUtils;
  * 
  * The purpose of the "payload" field is to make subsequent keyword match, fuzzy token match, and dictionary match faster,
  * because they don't need to tokenize the tuple every time.
+ * 
+ * If the table is partitioned into several shards (see TableProperties), DataReader opens all the shards,
+ * runs the query on them in parallel, and merges their results into one stream.
+ * 
+ * If the table stores the payload at index time (see TableProperties), the payload is decoded directly
+ * from the stored field. Otherwise, the payload is reconstructed from the term vectors.
+ * 
+ * If the payload is restricted to a few terms (see setPayloadTerms), only the spans of these terms are added.
+ * They are read from the postings of the terms if the table indexes the offsets, so the spans of the other
+ * tokens of the document are never built.
+ * 
+ * The hits are returned in score order. If the number of hits is limited (see setMaxHits), only the top hits
+ * are collected, in a priority queue of that size, instead of collecting and sorting all the matching documents.
+ * If a score attribute is set (see setScoreAttributeName), the hits are scored with BM25,
+ * and the score of each hit is appended to its tuple as a DOUBLE field.
+ * 
+ * If a read snapshot is current on the thread when a DataReader of a user table is opened (see ReadSnapshot),
+ * the DataReader reads from the snapshot's pinned view of the table, and shares it with the other DataReaders
+ * of the same query plan.
+ * 
+ * A DataReader can also look up tuples by their _id fields instead of running a query (see TupleIDLookup).
+ * The lookups read from the shared reader of the table (see SharedIndexReaders) if no read snapshot is current.
+ * 
+ * The decoded fields and payload of a document are kept in the DecodedTupleCache, keyed by the document's
+ * segment and its docID in the segment, so that hot documents are not loaded and parsed again by later queries.
+ * 
+ * With parallel decoding enabled (see setParallelDecoding), the hits are split into batches that are decoded
+ * on the shared reader pool (see StorageExecutors), a few batches ahead of the consumer. Each batch reads its
+ * documents in docID order, so the stored fields blocks of a segment are decompressed sequentially.
+ * The tuples are returned in the order of the hits, unless the order doesn't need to be preserved,
+ * in which case the hits are grouped by segment and each batch is returned as soon as it's decoded.
+ * 
+ * With prefetching enabled (see setPrefetchSize), a background thread decodes the tuples ahead of the consumer
+ * into a bounded queue, so that reading the index overlaps with the processing of the previous tuples.
+ * The thread blocks when the queue is full, and stops when the DataReader is closed.
  *   
  * 
  * DataReader for a specific table is only accessible from RelationManager.
@@ -57,6 +116,12 @@ import edu.uci.ics.textdb.storage.utils.StorageUtils;
  */
 public class DataReader implements IOperator {
 
+    // the number of hits decoded by one task of parallel decoding
+    static final int DECODING_BATCH_SIZE = 64;
+    
+    // the default number of tuples decoded ahead of the consumer in the prefetching mode
+    public static final int DEFAULT_PREFETCH_SIZE = 256;
+
     private DataStore dataStore;
     private Query query;
     
@@ -66,10 +131,56 @@ public class DataReader implements IOperator {
     private IndexReader luceneIndexReader;
     private IndexSearcher luceneIndexSearcher;
     private ScoreDoc[] scoreDocs;
+    
+    // the segments of the index, and their keys in the decoded tuple cache
+    private String tableCacheKey;
+    private List<LeafReaderContext> segmentContexts;
+    private String[] segmentCacheKeys;
 
     private int cursor = CLOSED;
 
     private boolean payloadAdded;
+    // whether the payload is added to the tuples read since the last open, it's false if the table can't provide it
+    private boolean payloadReturned = false;
+    // the analyzed terms the payload is restricted to, null if the payload contains every token
+    private List<BytesRef> payloadTerms = null;
+    
+    // the maximum number of hits collected, and the attribute of the hit scores (null if the score isn't added)
+    private int maxHits = Integer.MAX_VALUE;
+    private String scoreAttributeName = null;
+    
+    // whether the DataReader reads from the current read snapshot of the thread (see ReadSnapshot)
+    private boolean snapshotEnabled = false;
+    // whether the DataReader reads from the shared reader of the table when there's no read snapshot
+    private boolean sharedReaderEnabled = false;
+    // whether the index reader is shared with a read snapshot or other DataReaders, and must be released instead of closed
+    private boolean sharedIndexReader = false;
+    // the IDs of the tuples to look up, null if the DataReader runs the query
+    private List<IDField> lookupIDs = null;
+    
+    // whether the hits are decoded in parallel, and whether they are returned in the order of the hits
+    private boolean parallelDecoding = false;
+    private boolean orderPreserved = true;
+    
+    // the state of parallel decoding: the batches not submitted yet, the submitted batches (in submission order),
+    //   the batches decoded (in completion order), and the batch being returned
+    private Deque<DecodingBatch> pendingBatches;
+    private Deque<DecodingBatch> submittedBatches;
+    private BlockingQueue<DecodingBatch> decodedBatches;
+    private DecodingBatch currentBatch;
+    private int currentBatchCursor;
+    private volatile boolean decodingCancelled;
+    
+    // the maximum number of prefetched tuples, 0 if the tuples are decoded when they are asked for
+    private int prefetchSize = 0;
+    
+    // the state of prefetching: the decoded tuples (an empty element marks the end),
+    //   whether the end has been returned, and the failure of the prefetching thread
+    private BlockingQueue<Optional<Tuple>> prefetchQueue;
+    private boolean prefetchDone;
+    private volatile boolean prefetchStopped;
+    private volatile Throwable prefetchFailure;
+    private CountDownLatch prefetchFinished;
 
     /*
      * The package-only level constructor is only accessible inside the storage package.
@@ -92,26 +203,338 @@ public class DataReader implements IOperator {
             return;
         }
         try {
-            String indexDirectoryStr = this.dataStore.getDataDirectory();
-            Directory indexDirectory = FSDirectory.open(Paths.get(indexDirectoryStr));
-            luceneIndexReader = DirectoryReader.open(indexDirectory);
-            luceneIndexSearcher = new IndexSearcher(luceneIndexReader);
+            ReadSnapshot readSnapshot = snapshotEnabled ? ReadSnapshot.getCurrentSnapshot() : null;
+            if (readSnapshot != null) {
+                luceneIndexSearcher = readSnapshot.acquireIndexSearcher(this.dataStore);
+                luceneIndexReader = luceneIndexSearcher.getIndexReader();
+                sharedIndexReader = true;
+            } else if (sharedReaderEnabled) {
+                luceneIndexSearcher = SharedIndexReaders.acquireIndexSearcher(this.dataStore);
+                luceneIndexReader = luceneIndexSearcher.getIndexReader();
+                sharedIndexReader = true;
+            } else {
+                luceneIndexReader = openLuceneIndexReader(this.dataStore);
+                luceneIndexSearcher = createLuceneIndexSearcher(luceneIndexReader, this.dataStore);
+                sharedIndexReader = false;
+            }
+
+            openSegmentCacheKeys();
 
-            TopDocs topDocs = luceneIndexSearcher.search(query, Integer.MAX_VALUE);
-            scoreDocs = topDocs.scoreDocs;
+            if (lookupIDs != null) {
+                scoreDocs = TupleIDLookup.lookupDocIDs(luceneIndexReader, lookupIDs);
+            } else if (maxHits <= 0) {
+                scoreDocs = new ScoreDoc[0];
+            } else {
+                IndexSearcher querySearcher = luceneIndexSearcher;
+                if (scoreAttributeName != null) {
+                    // the searcher may be shared, rank with a searcher of its own over the same reader
+                    querySearcher = createLuceneIndexSearcher(luceneIndexReader, this.dataStore);
+                    querySearcher.setSimilarity(new BM25Similarity());
+                }
+                TopDocs topDocs = querySearcher.search(query, maxHits);
+                scoreDocs = topDocs.scoreDocs;
+            }
 
             inputSchema = this.dataStore.getSchema();
-            if (payloadAdded) {
+            // the payload can only be added if the table stores either the payload or the term vectors,
+            // or if the payload is restricted to a few terms and the postings have the offsets,
+            // otherwise the operators that need the payload generate it from the text
+            // (the configured payloadAdded is kept, so the setting still applies if the reader is opened again)
+            TableProperties tableProperties = this.dataStore.getTableProperties();
+            payloadReturned = payloadAdded && (tableProperties.isPayloadStored() || tableProperties.isTermVectorsStored()
+                    || (payloadTerms != null && tableProperties.isOffsetsIndexed()));
+            if (payloadReturned) {
                 outputSchema = Utils.addAttributeToSchema(inputSchema, SchemaConstants.PAYLOAD_ATTRIBUTE);
             } else {
                 outputSchema = inputSchema;
             }
+            if (scoreAttributeName != null) {
+                outputSchema = Utils.addAttributeToSchema(outputSchema, 
+                        new Attribute(scoreAttributeName, AttributeType.DOUBLE));
+            }
 
         } catch (IOException e) {
             throw new StorageException(e.getMessage(), e);
         }
 
         cursor = OPENED;
+        
+        // decoding a few documents in parallel is not worth it
+        if (parallelDecoding && scoreDocs.length > DECODING_BATCH_SIZE) {
+            startParallelDecoding();
+        }
+        if (prefetchSize > 0 && scoreDocs.length > 0) {
+            startPrefetching();
+        }
+    }
+    
+    /*
+     * Starts the background thread that fills the prefetch queue.
+     */
+    private void startPrefetching() {
+        prefetchQueue = new ArrayBlockingQueue<>(prefetchSize);
+        prefetchDone = false;
+        prefetchStopped = false;
+        prefetchFailure = null;
+        prefetchFinished = new CountDownLatch(1);
+        StorageExecutors.getPrefetchExecutor().execute(() -> {
+            try {
+                Tuple tuple;
+                do {
+                    tuple = decodeNextTuple();
+                    if (! offerPrefetched(Optional.ofNullable(tuple))) {
+                        return;
+                    }
+                } while (tuple != null);
+            } catch (Throwable e) {
+                // errors are queued too, otherwise the consumer would wait for the end forever
+                prefetchFailure = e;
+                offerPrefetched(Optional.empty());
+            } finally {
+                prefetchFinished.countDown();
+            }
+        });
+    }
+    
+    /*
+     * Puts a prefetched element to the queue, waits while the queue is full.
+     * Returns false if the prefetching is stopped before the element is queued.
+     */
+    private boolean offerPrefetched(Optional<Tuple> element) {
+        try {
+            while (! prefetchStopped) {
+                if (prefetchQueue.offer(element, 100, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+    
+    private Tuple takePrefetchedTuple() throws StorageException {
+        if (prefetchDone) {
+            return null;
+        }
+        Optional<Tuple> element;
+        try {
+            element = prefetchQueue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException(e.getMessage(), e);
+        }
+        if (element.isPresent()) {
+            return element.get();
+        }
+        prefetchDone = true;
+        if (prefetchFailure != null) {
+            rethrowBackgroundFailure(prefetchFailure);
+        }
+        return null;
+    }
+
+    /*
+     * Rethrows the failure of a background thread in the consumer's thread:
+     *   errors and StorageExceptions as they are, the other failures wrapped in a StorageException.
+     */
+    private static void rethrowBackgroundFailure(Throwable failure) throws StorageException {
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure instanceof StorageException) {
+            throw (StorageException) failure;
+        }
+        throw new StorageException(failure.getMessage(), failure);
+    }
+    
+    /*
+     * Stops the prefetching thread and waits for it, so that the index reader can be released.
+     */
+    private void stopPrefetching() {
+        prefetchStopped = true;
+        boolean interrupted = false;
+        while (true) {
+            try {
+                prefetchFinished.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        prefetchQueue = null;
+    }
+    
+    /*
+     * Splits the hits into decoding batches, and submits the first batches to the reader pool.
+     * If the order doesn't need to be preserved, the hits are sorted by docID first,
+     *   so that a batch never spans two segments.
+     */
+    private void startParallelDecoding() {
+        Integer[] hitOrder = new Integer[scoreDocs.length];
+        for (int i = 0; i < hitOrder.length; i++) {
+            hitOrder[i] = i;
+        }
+        if (! orderPreserved) {
+            Arrays.sort(hitOrder, Comparator.comparingInt(i -> scoreDocs[i].doc));
+        }
+        
+        pendingBatches = new ArrayDeque<>();
+        submittedBatches = new ArrayDeque<>();
+        decodedBatches = new LinkedBlockingQueue<>();
+        currentBatch = null;
+        currentBatchCursor = 0;
+        decodingCancelled = false;
+        
+        int batchStart = 0;
+        int batchSegment = ReaderUtil.subIndex(scoreDocs[hitOrder[0]].doc, segmentContexts);
+        for (int i = 1; i <= hitOrder.length; i++) {
+            int segment = i < hitOrder.length ? ReaderUtil.subIndex(scoreDocs[hitOrder[i]].doc, segmentContexts) : -1;
+            if (i == hitOrder.length || i - batchStart == DECODING_BATCH_SIZE 
+                    || (! orderPreserved && segment != batchSegment)) {
+                int[] hitIndexes = new int[i - batchStart];
+                for (int j = batchStart; j < i; j++) {
+                    hitIndexes[j - batchStart] = hitOrder[j];
+                }
+                pendingBatches.add(new DecodingBatch(hitIndexes));
+                batchStart = i;
+                batchSegment = segment;
+            }
+        }
+        submitDecodingBatches();
+    }
+    
+    /*
+     * Keeps the number of submitted but not yet returned batches at the read-ahead limit,
+     *   two batches per thread of the reader pool.
+     */
+    private void submitDecodingBatches() {
+        ExecutorService readerExecutor = StorageExecutors.getReaderExecutor();
+        int readAheadBatches = 2 * Runtime.getRuntime().availableProcessors();
+        while (! pendingBatches.isEmpty() && submittedBatches.size() < readAheadBatches) {
+            DecodingBatch decodingBatch = pendingBatches.poll();
+            submittedBatches.add(decodingBatch);
+            readerExecutor.execute(decodingBatch);
+        }
+    }
+    
+    /*
+     * Gets the next decoded batch: the oldest submitted batch if the order is preserved,
+     *   otherwise the first batch that finishes. Returns null if all the batches have been returned.
+     */
+    private DecodingBatch takeDecodedBatch() throws StorageException {
+        if (submittedBatches.isEmpty()) {
+            return null;
+        }
+        DecodingBatch decodingBatch;
+        try {
+            if (orderPreserved) {
+                decodingBatch = submittedBatches.poll();
+                decodingBatch.awaitFinished();
+            } else {
+                decodingBatch = decodedBatches.take();
+                submittedBatches.remove(decodingBatch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException(e.getMessage(), e);
+        }
+        if (decodingBatch.failure != null) {
+            rethrowBackgroundFailure(decodingBatch.failure);
+        }
+        submitDecodingBatches();
+        return decodingBatch;
+    }
+    
+    /*
+     * Stops parallel decoding: the batches that haven't started are cancelled,
+     *   and the running ones are waited for, so that the index reader can be released.
+     */
+    private void stopParallelDecoding() {
+        decodingCancelled = true;
+        for (DecodingBatch decodingBatch : submittedBatches) {
+            decodingBatch.cancel();
+        }
+        boolean interrupted = false;
+        for (DecodingBatch decodingBatch : submittedBatches) {
+            while (true) {
+                try {
+                    decodingBatch.awaitFinished();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        pendingBatches = null;
+        submittedBatches = null;
+        decodedBatches = null;
+        currentBatch = null;
+    }
+
+    /*
+     * Gets the cache keys of the segments of the opened index,
+     *   and drops the cached entries of the segments that are no longer in the index.
+     */
+    private void openSegmentCacheKeys() {
+        tableCacheKey = DecodedTupleCache.getTableKey(this.dataStore);
+        segmentContexts = luceneIndexReader.leaves();
+        segmentCacheKeys = new String[segmentContexts.size()];
+        List<String> liveSegmentKeys = new ArrayList<>();
+        for (int i = 0; i < segmentContexts.size(); i++) {
+            segmentCacheKeys[i] = DecodedTupleCache.getSegmentKey(segmentContexts.get(i).reader());
+            if (segmentCacheKeys[i] != null) {
+                liveSegmentKeys.add(segmentCacheKeys[i]);
+            }
+        }
+        DecodedTupleCache.retainSegments(tableCacheKey, liveSegmentKeys);
+    }
+
+    /**
+     * Opens a Lucene IndexReader on all the shards of a table.
+     * If the table has more than one shard, the returned reader is a MultiReader over the shards.
+     * 
+     * @param dataStore
+     * @return
+     * @throws IOException
+     * @throws StorageException
+     */
+    static IndexReader openLuceneIndexReader(DataStore dataStore) throws IOException, StorageException {
+        List<IndexReader> shardIndexReaders = new ArrayList<>();
+        boolean opened = false;
+        try {
+            for (String shardDirectory : dataStore.getShardDirectories()) {
+                Directory indexDirectory = LuceneDirectoryConstants.getLuceneDirectory(
+                        dataStore.getTableProperties().getDirectoryType(), shardDirectory);
+                shardIndexReaders.add(DirectoryReader.open(indexDirectory));
+            }
+            opened = true;
+        } finally {
+            // don't leak the readers of the shards opened before the failure
+            if (! opened) {
+                IOUtils.closeWhileHandlingException(shardIndexReaders);
+            }
+        }
+        if (shardIndexReaders.size() == 1) {
+            return shardIndexReaders.get(0);
+        }
+        return new MultiReader(shardIndexReaders.stream().toArray(IndexReader[]::new));
+    }
+    
+    /*
+     * Creates the IndexSearcher of a table's IndexReader.
+     */
+    static IndexSearcher createLuceneIndexSearcher(IndexReader indexReader, DataStore dataStore) {
+        if (dataStore.getTableProperties().getNumShards() <= 1) {
+            return new IndexSearcher(indexReader);
+        }
+        // scatter the query to all shards in parallel, and gather the results in score order
+        return new IndexSearcher(indexReader, StorageExecutors.getReaderExecutor());
     }
 
     @Override
@@ -119,14 +542,26 @@ public class DataReader implements IOperator {
         if (cursor == CLOSED) {
             throw new StorageException(ErrorMessages.OPERATOR_NOT_OPENED);
         }
+        if (prefetchQueue != null) {
+            return takePrefetchedTuple();
+        }
+        return decodeNextTuple();
+    }
+    
+    /*
+     * Decodes the next tuple on the calling thread, or takes it from the parallel decoding batches.
+     */
+    private Tuple decodeNextTuple() throws StorageException {
+        if (submittedBatches != null) {
+            return getNextDecodedTuple();
+        }
 
         Tuple resultTuple;
         try {
             if (cursor >= scoreDocs.length) {
                 return null;
             }
-            int docID = scoreDocs[cursor].doc;
-            resultTuple = constructTuple(docID);
+            resultTuple = constructTuple(scoreDocs[cursor]);
 
         } catch (IOException | ParseException e) {
             throw new StorageException(e.getMessage(), e);
@@ -136,12 +571,39 @@ public class DataReader implements IOperator {
         return resultTuple;
     }
 
+    private Tuple getNextDecodedTuple() throws StorageException {
+        if (currentBatch == null || currentBatchCursor >= currentBatch.tuples.length) {
+            currentBatch = takeDecodedBatch();
+            currentBatchCursor = 0;
+            if (currentBatch == null) {
+                return null;
+            }
+        }
+        Tuple resultTuple = currentBatch.tuples[currentBatchCursor];
+        // the returned tuples are not kept by the batch
+        currentBatch.tuples[currentBatchCursor] = null;
+        currentBatchCursor++;
+        cursor++;
+        return resultTuple;
+    }
+
     @Override
     public void close() throws StorageException {
+        // the prefetching thread reads the cursor, it's stopped first
+        if (prefetchQueue != null) {
+            stopPrefetching();
+        }
         cursor = CLOSED;
+        if (submittedBatches != null) {
+            stopParallelDecoding();
+        }
         if (luceneIndexReader != null) {
             try {
-                luceneIndexReader.close();
+                if (sharedIndexReader) {
+                    luceneIndexReader.decRef();
+                } else {
+                    luceneIndexReader.close();
+                }
                 luceneIndexReader = null;
             } catch (IOException e) {
                 throw new StorageException(e.getMessage(), e);
@@ -149,16 +611,55 @@ public class DataReader implements IOperator {
         }
     }
 
-    private Tuple constructTuple(int docID) throws IOException, ParseException {
-        Document luceneDocument = luceneIndexSearcher.doc(docID);
-        ArrayList<IField> docFields = documentToFields(luceneDocument);
+    private Tuple constructTuple(ScoreDoc scoreDoc) throws IOException, ParseException {
+        int docID = scoreDoc.doc;
+        // look up the decoded document in the cache first
+        int segmentIndex = ReaderUtil.subIndex(docID, segmentContexts);
+        String segmentCacheKey = segmentCacheKeys[segmentIndex];
+        int segmentDocID = docID - segmentContexts.get(segmentIndex).docBase;
+        CachedTuple cachedTuple = null;
+        if (segmentCacheKey != null) {
+            cachedTuple = DecodedTupleCache.get(tableCacheKey, segmentCacheKey, segmentDocID);
+        }
 
-        if (payloadAdded) {
-            ArrayList<Span> payloadSpanList = buildPayloadFromTermVector(docFields, docID);
+        Document luceneDocument = null;
+        if (cachedTuple == null) {
+            luceneDocument = luceneIndexSearcher.doc(docID);
+            cachedTuple = new CachedTuple(documentToFields(luceneDocument));
+            if (segmentCacheKey != null) {
+                DecodedTupleCache.put(tableCacheKey, segmentCacheKey, segmentDocID, cachedTuple);
+            }
+        }
+        ArrayList<IField> docFields = new ArrayList<>(cachedTuple.getFields());
+
+        if (payloadReturned && payloadTerms != null) {
+            docFields.add(new ListField<Span>(buildRestrictedPayload(cachedTuple, docFields, docID, segmentIndex)));
+        } else if (payloadReturned) {
+            List<Span> cachedPayload = cachedTuple.getPayload();
+            ArrayList<Span> payloadSpanList = null;
+            if (cachedPayload != null) {
+                payloadSpanList = new ArrayList<>(cachedPayload);
+            } else {
+                if (dataStore.getTableProperties().isPayloadStored()) {
+                    if (luceneDocument == null) {
+                        luceneDocument = luceneIndexSearcher.doc(docID);
+                    }
+                    payloadSpanList = buildPayloadFromStoredField(luceneDocument, docFields);
+                }
+                // fall back to the term vectors if the payload is not stored
+                if (payloadSpanList == null) {
+                    payloadSpanList = buildPayloadFromTermVector(docFields, docID, null);
+                }
+                cachedTuple.setPayload(payloadSpanList);
+            }
             ListField<Span> payloadField = new ListField<Span>(payloadSpanList);
             docFields.add(payloadField);
         }
 
+        if (scoreAttributeName != null) {
+            docFields.add(new DoubleField((double) scoreDoc.score));
+        }
+
         Tuple resultTuple = new Tuple(outputSchema, docFields.stream().toArray(IField[]::new));
         return resultTuple;
     }
@@ -173,7 +674,35 @@ public class DataReader implements IOperator {
         return fields;
     }
 
-    private ArrayList<Span> buildPayloadFromTermVector(List<IField> fields, int docID) throws IOException {
+    /*
+     * Decodes the payload precomputed at index time.
+     * Returns null if the payload of any TEXT field is not stored in the document.
+     */
+    private ArrayList<Span> buildPayloadFromStoredField(Document luceneDocument, List<IField> fields) {
+        ArrayList<Span> payloadSpanList = new ArrayList<>();
+
+        for (Attribute attr : inputSchema.getAttributes()) {
+            String attributeName = attr.getAttributeName();
+            if (attr.getAttributeType() != AttributeType.TEXT) {
+                continue;
+            }
+
+            BytesRef payloadBytes = luceneDocument.getBinaryValue(StorageUtils.getPayloadFieldName(attributeName));
+            if (payloadBytes == null) {
+                return null;
+            }
+            String fieldValue = fields.get(inputSchema.getIndex(attributeName)).getValue().toString();
+            payloadSpanList.addAll(StorageUtils.decodePayload(attributeName, fieldValue, payloadBytes));
+        }
+
+        return payloadSpanList;
+    }
+
+    /*
+     * Reconstructs the payload from the term vectors, only the spans of the given terms if they are not null.
+     */
+    private ArrayList<Span> buildPayloadFromTermVector(List<IField> fields, int docID, List<BytesRef> terms)
+            throws IOException {
         ArrayList<Span> payloadSpanList = new ArrayList<>();
 
         for (Attribute attr : inputSchema.getAttributes()) {
@@ -195,29 +724,113 @@ public class DataReader implements IOperator {
 
             TermsEnum termsEnum = termVector.iterator();
             PostingsEnum termPostings = null;
-            // go through document terms
-            while ((termsEnum.next()) != null) {
-                termPostings = termsEnum.postings(termPostings, PostingsEnum.ALL);
-                if (termPostings.nextDoc() == DocIdSetIterator.NO_MORE_DOCS) {
-                    continue;
+            if (terms == null) {
+                // go through document terms
+                while ((termsEnum.next()) != null) {
+                    termPostings = addTermSpans(payloadSpanList, attributeName, fieldValue,
+                            termsEnum, termPostings, 0);
                 }
-                // for each term, go through its postings
-                for (int i = 0; i < termPostings.freq(); i++) {
-                    int tokenPosition = termPostings.nextPosition(); // nextPosition needs to be called first
-                    int charStart = termPostings.startOffset();
-                    int charEnd = termPostings.endOffset();
-                    String analyzedTermStr = termsEnum.term().utf8ToString();
-                    String originalTermStr = fieldValue.substring(charStart, charEnd);
-
-                    Span span = new Span(attributeName, charStart, charEnd, analyzedTermStr, originalTermStr,
-                            tokenPosition);
-                    payloadSpanList.add(span);
+            } else {
+                for (BytesRef term : terms) {
+                    if (termsEnum.seekExact(term)) {
+                        termPostings = addTermSpans(payloadSpanList, attributeName, fieldValue,
+                            termsEnum, termPostings, 0);
+                    }
+                }
+            }
+        }
+
+        return payloadSpanList;
+    }
+
+    /*
+     * Builds the payload of the payload terms only. The restricted payload is not cached,
+     *   but the full payload is reused if it's already in the cache.
+     */
+    private ArrayList<Span> buildRestrictedPayload(CachedTuple cachedTuple, List<IField> fields, int docID,
+            int segmentIndex) throws IOException {
+        List<Span> cachedPayload = cachedTuple.getPayload();
+        if (cachedPayload != null) {
+            return filterPayload(cachedPayload);
+        }
+        TableProperties tableProperties = dataStore.getTableProperties();
+        if (tableProperties.isOffsetsIndexed()) {
+            return buildPayloadFromPostings(fields, segmentContexts.get(segmentIndex), docID);
+        }
+        if (tableProperties.isTermVectorsStored()) {
+            return buildPayloadFromTermVector(fields, docID, payloadTerms);
+        }
+        ArrayList<Span> payloadSpanList = buildPayloadFromStoredField(luceneIndexSearcher.doc(docID), fields);
+        return payloadSpanList == null ? new ArrayList<>() : filterPayload(payloadSpanList);
+    }
+
+    private ArrayList<Span> filterPayload(List<Span> payload) {
+        ArrayList<Span> payloadSpanList = new ArrayList<>();
+        for (Span span : payload) {
+            if (payloadTerms.contains(new BytesRef(span.getKey()))) {
+                payloadSpanList.add(span);
+            }
+        }
+        return payloadSpanList;
+    }
+
+    /*
+     * Reads the spans of the payload terms from their postings in the document's segment,
+     *   the postings must include the character offsets.
+     */
+    private ArrayList<Span> buildPayloadFromPostings(List<IField> fields, LeafReaderContext segmentContext,
+            int docID) throws IOException {
+        ArrayList<Span> payloadSpanList = new ArrayList<>();
+        int segmentDocID = docID - segmentContext.docBase;
+
+        for (Attribute attr : inputSchema.getAttributes()) {
+            String attributeName = attr.getAttributeName();
+            if (attr.getAttributeType() != AttributeType.TEXT) {
+                continue;
+            }
+            Terms terms = segmentContext.reader().terms(attributeName);
+            if (terms == null) {
+                continue;
+            }
+            String fieldValue = fields.get(inputSchema.getIndex(attributeName)).getValue().toString();
+
+            TermsEnum termsEnum = terms.iterator();
+            PostingsEnum termPostings = null;
+            for (BytesRef term : payloadTerms) {
+                if (termsEnum.seekExact(term)) {
+                    termPostings = addTermSpans(payloadSpanList, attributeName, fieldValue, termsEnum, termPostings,
+                            segmentDocID);
                 }
             }
         }
 
         return payloadSpanList;
     }
+
+    /*
+     * Adds the spans of the current term of the terms enum in a document, from the term's positions and offsets.
+     *   Returns the postings enum so that it can be reused for the next term.
+     */
+    private static PostingsEnum addTermSpans(List<Span> payloadSpanList, String attributeName, String fieldValue,
+            TermsEnum termsEnum, PostingsEnum termPostings, int docID) throws IOException {
+        termPostings = termsEnum.postings(termPostings, PostingsEnum.ALL);
+        if (termPostings.advance(docID) != docID) {
+            return termPostings;
+        }
+        String analyzedTermStr = termsEnum.term().utf8ToString();
+        // for each term, go through its postings
+        for (int i = 0; i < termPostings.freq(); i++) {
+            int tokenPosition = termPostings.nextPosition(); // nextPosition needs to be called first
+            int charStart = termPostings.startOffset();
+            int charEnd = termPostings.endOffset();
+            String originalTermStr = fieldValue.substring(charStart, charEnd);
+
+            Span span = new Span(attributeName, charStart, charEnd, analyzedTermStr, originalTermStr,
+                    tokenPosition);
+            payloadSpanList.add(span);
+        }
+        return termPostings;
+    }
     
     public boolean isPayloadAdded() {
         return this.payloadAdded;
@@ -226,6 +839,125 @@ public class DataReader implements IOperator {
     public void setPayloadAdded(boolean payloadAdded) {
         this.payloadAdded = payloadAdded;
     }
+    
+    public int getMaxHits() {
+        return this.maxHits;
+    }
+    
+    /**
+     * Limits the number of hits to the top hits of the query in score order.
+     * It takes effect the next time the DataReader is opened.
+     * 
+     * @param maxHits
+     */
+    public void setMaxHits(int maxHits) {
+        this.maxHits = maxHits;
+    }
+    
+    public String getScoreAttributeName() {
+        return this.scoreAttributeName;
+    }
+    
+    /**
+     * Sets the attribute of the BM25 score of each hit, or null to not add the score.
+     * It takes effect the next time the DataReader is opened.
+     * 
+     * @param scoreAttributeName
+     */
+    public void setScoreAttributeName(String scoreAttributeName) {
+        this.scoreAttributeName = scoreAttributeName;
+    }
+    
+    public List<String> getPayloadTerms() {
+        if (this.payloadTerms == null) {
+            return null;
+        }
+        List<String> terms = new ArrayList<>();
+        for (BytesRef term : this.payloadTerms) {
+            terms.add(term.utf8ToString());
+        }
+        return terms;
+    }
+    
+    /**
+     * Restricts the payload to the spans of the given analyzed terms, or lifts the restriction if the terms are null.
+     * The restricted payload is enough for the operators that only look for these terms, for example
+     *   the conjunction and phrase keyword matchers, and it's much cheaper to build.
+     * 
+     * @param payloadTerms
+     */
+    public void setPayloadTerms(Collection<String> payloadTerms) {
+        if (payloadTerms == null) {
+            this.payloadTerms = null;
+            return;
+        }
+        this.payloadTerms = new ArrayList<>();
+        for (String term : payloadTerms) {
+            this.payloadTerms.add(new BytesRef(term));
+        }
+    }
+    
+    /*
+     * Only the DataReaders of user tables read from the read snapshot,
+     *   the catalog lookups always read the latest state.
+     */
+    void setSnapshotEnabled(boolean snapshotEnabled) {
+        this.snapshotEnabled = snapshotEnabled;
+    }
+    
+    public boolean isParallelDecoding() {
+        return this.parallelDecoding;
+    }
+    
+    /**
+     * Sets whether the hits are decoded in parallel on the shared reader pool (see StorageExecutors).
+     * It takes effect the next time the DataReader is opened.
+     * 
+     * @param parallelDecoding
+     */
+    public void setParallelDecoding(boolean parallelDecoding) {
+        this.parallelDecoding = parallelDecoding;
+    }
+    
+    public boolean isOrderPreserved() {
+        return this.orderPreserved;
+    }
+    
+    /**
+     * Sets whether the tuples are returned in the order of the hits when they are decoded in parallel.
+     * If not, the tuples of a batch are returned as soon as the batch is decoded. The default is true.
+     * 
+     * @param orderPreserved
+     */
+    public void setOrderPreserved(boolean orderPreserved) {
+        this.orderPreserved = orderPreserved;
+    }
+    
+    public int getPrefetchSize() {
+        return this.prefetchSize;
+    }
+    
+    /**
+     * Sets the number of tuples decoded ahead of the consumer by a background thread,
+     *   0 (the default) disables prefetching. It takes effect the next time the DataReader is opened.
+     * 
+     * @param prefetchSize
+     */
+    public void setPrefetchSize(int prefetchSize) {
+        this.prefetchSize = Math.max(0, prefetchSize);
+    }
+    
+    void setSharedReaderEnabled(boolean sharedReaderEnabled) {
+        this.sharedReaderEnabled = sharedReaderEnabled;
+    }
+    
+    /*
+     * Makes the DataReader return the tuples with the given IDs (in the same order) instead of running the query.
+     * The IDs that are not found are left out.
+     */
+    void setLookupIDs(List<IDField> lookupIDs) {
+        this.lookupIDs = lookupIDs;
+    }
 
     public Schema getOutputSchema() {
         return outputSchema;
@@ -244,4 +976,60 @@ public class DataReader implements IOperator {
         return this.luceneIndexReader;
     }
     
+    /*
+     * A batch of hits decoded by one task of the reader pool.
+     *   The tuples are kept in the order of the hit indexes, while the documents are read in docID order.
+     */
+    private class DecodingBatch implements Runnable {
+        private final int[] hitIndexes;
+        private final Tuple[] tuples;
+        // set when the batch starts running or is cancelled, a batch never runs after it's cancelled
+        private final AtomicBoolean started = new AtomicBoolean(false);
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private volatile Throwable failure;
+        
+        private DecodingBatch(int[] hitIndexes) {
+            this.hitIndexes = hitIndexes;
+            this.tuples = new Tuple[hitIndexes.length];
+        }
+
+        @Override
+        public void run() {
+            if (! started.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                Integer[] readOrder = new Integer[hitIndexes.length];
+                for (int i = 0; i < readOrder.length; i++) {
+                    readOrder[i] = i;
+                }
+                Arrays.sort(readOrder, Comparator.comparingInt(i -> scoreDocs[hitIndexes[i]].doc));
+                for (int i : readOrder) {
+                    if (decodingCancelled) {
+                        break;
+                    }
+                    tuples[i] = constructTuple(scoreDocs[hitIndexes[i]]);
+                }
+            } catch (Throwable e) {
+                failure = e;
+            } finally {
+                // the batch is queued before it's marked finished, stopParallelDecoding waits for both
+                if (! decodingCancelled) {
+                    decodedBatches.add(this);
+                }
+                finished.countDown();
+            }
+        }
+        
+        private void cancel() {
+            if (started.compareAndSet(false, true)) {
+                finished.countDown();
+            }
+        }
+        
+        private void awaitFinished() throws InterruptedException {
+            finished.await();
+        }
+    }
+    
 }
\ No newline at end of file
@@ -1,17 +1,34 @@
 package edu.uci.ics.textdb.storage;
 
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
 import edu.uci.ics.textdb.api.schema.Schema;
 
 public class DataStore {
     private String dataDirectory;
     private int numDocuments;
     private Schema schema;
+    private TableProperties tableProperties;
 
     public DataStore(String dataDirectory, Schema schema) {
+        this(dataDirectory, schema, new TableProperties());
+    }
+
+    public DataStore(String dataDirectory, Schema schema, TableProperties tableProperties) {
         this.dataDirectory = dataDirectory;
         this.schema = schema;
+        this.tableProperties = tableProperties;
     }
 
+    /**
+     * Increments the number of documents of the table.
+     * RelationManager initializes the number from the table statistics (see TableStatistics)
+     *   when it loads the DataStore from the catalog, DataWriter increments it for every inserted tuple.
+     * 
+     * @param incrementBy
+     */
     public void incrementNumDocuments(int incrementBy) {
         numDocuments += incrementBy;
     }
@@ -28,4 +45,27 @@ public class DataStore {
         return schema;
     }
 
+    public TableProperties getTableProperties() {
+        return tableProperties;
+    }
+
+    /**
+     * Gets the index directories of all the shards of the table.
+     * A table with only one shard keeps its index directly in the data directory.
+     * 
+     * @return
+     */
+    public List<String> getShardDirectories() {
+        List<String> shardDirectories = new ArrayList<>();
+        int numShards = tableProperties.getNumShards();
+        if (numShards <= 1) {
+            shardDirectories.add(dataDirectory);
+            return shardDirectories;
+        }
+        for (int i = 0; i < numShards; i++) {
+            shardDirectories.add(Paths.get(dataDirectory, "shard-" + i).toString());
+        }
+        return shardDirectories;
+    }
+
 }
@@ -1,10 +1,14 @@
 package edu.uci.ics.textdb.storage;
 
 import java.io.IOException;
-import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
@@ -13,18 +17,20 @@ import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
 
 import edu.uci.ics.textdb.api.constants.ErrorMessages;
 import edu.uci.ics.textdb.api.constants.SchemaConstants;
 import edu.uci.ics.textdb.api.exception.StorageException;
+import edu.uci.ics.textdb.api.exception.TextDBException;
 import edu.uci.ics.textdb.api.field.IDField;
 import edu.uci.ics.textdb.api.field.IField;
 import edu.uci.ics.textdb.api.schema.Attribute;
 import edu.uci.ics.textdb.api.schema.AttributeType;
 import edu.uci.ics.textdb.api.schema.Schema;
+import edu.uci.ics.textdb.api.span.Span;
 import edu.uci.ics.textdb.api.tuple.Tuple;
 import edu.uci.ics.textdb.api.utils.Utils;
+import edu.uci.ics.textdb.storage.constants.LuceneDirectoryConstants;
 import edu.uci.ics.textdb.storage.utils.StorageUtils;
 
 /**
@@ -44,6 +50,25 @@ import edu.uci.ics.textdb.storage.utils.StorageUtils;
  * Update Operations:
  *   DataWriter can update the tuple, with the tuple's _id remaining the same.
  *   
+ * Sharded Tables:
+ *   If the table is partitioned into several shards (see TableProperties), DataWriter opens one
+ *   Lucene IndexWriter per shard, and routes every inserted tuple to one shard,
+ *   by the hash of its _id or in a round-robin way. Deletions by query and clearing data are applied to all shards.
+ *   
+ * Table Statistics:
+ *   DataWriter counts the tuples it inserts, deletes and updates. When it's closed, it updates
+ *   the in-memory statistics of the table (see RelationManager.updateTableStatistics and TableStatistics).
+ *   Then it notifies the write listeners of the table (see ITableWriteListener) of the inserted tuples,
+ *   or that the table is modified if any tuple is deleted or updated. To bound the memory of the writer,
+ *   the inserted tuples are also passed to the listeners in batches of WRITE_LISTENER_BATCH_SIZE tuples
+ *   while the writer is open.
+ *   
+ * Failures:
+ *   If an operation of the writer fails, or rollback() is called, all the changes made since the writer is opened
+ *   are discarded (see IndexWriter.rollback), and the inserted tuples are not passed to the listeners.
+ *   If the listeners were already passed a batch of inserted tuples, they are notified that the table is modified,
+ *   so that they read the table again instead of keeping the discarded tuples.
+ *   
  *   
  * DataWriter for a specific table is only accessible from RelationManager.
  * 
@@ -52,13 +77,33 @@ import edu.uci.ics.textdb.storage.utils.StorageUtils;
  *
  */
 public class DataWriter {
+    
+    // the maximum number of inserted tuples kept for the write listeners before they are notified
+    public static final int WRITE_LISTENER_BATCH_SIZE = 1000;
+    
+    // the round-robin cursor of each table, keyed by the data directory of the table,
+    //   so that the writers of a table continue from the shard where the previous writer stopped
+    private static final Map<String, AtomicInteger> roundRobinCursors = new ConcurrentHashMap<>();
 
     private String indexDirectory;
     private Schema schema;
     private DataStore dataStore;
     private Analyzer analyzer;
+    // the name of the table whose statistics are refreshed when the writer is closed, null for catalog tables
+    private String tableName;
+    private int modificationCount = 0;
+    private int insertedCount = 0;
+    
+    // the listeners of the table (see ITableWriteListener), and the changes they are notified of
+    private List<ITableWriteListener> writeListeners = new ArrayList<>();
+    private List<Tuple> insertedTuples = new ArrayList<>();
+    private boolean tableModified = false;
+    // whether an operation failed since the writer is opened, then the changes are rolled back
+    private boolean failed = false;
+    // whether the listeners were passed a batch of inserted tuples since the writer is opened
+    private boolean listenersNotified = false;
 
-    private IndexWriter luceneIndexWriter;
+    private List<IndexWriter> luceneIndexWriters;
     
     private boolean isOpen = false;
 
@@ -68,14 +113,20 @@ public class DataWriter {
      *  while upper-level operators can't.
      */
     DataWriter(DataStore dataStore, Analyzer analyzer) {
+        this(dataStore, analyzer, null);
+    }
+    
+    DataWriter(DataStore dataStore, Analyzer analyzer, String tableName) {
         this.indexDirectory = dataStore.getDataDirectory();
         // change the schema to a schema with _ID field
         this.schema = dataStore.getSchema();
         if (! this.schema.containsField(SchemaConstants._ID)) {
             this.schema = Utils.getSchemaWithID(this.schema);
         }
-        this.dataStore = new DataStore(indexDirectory, schema);
+        this.dataStore = new DataStore(indexDirectory, schema, dataStore.getTableProperties());
+        this.dataStore.incrementNumDocuments(dataStore.getNumDocuments());
         this.analyzer = analyzer;
+        this.tableName = tableName;
     }
     
     public DataStore getDataStore() {
@@ -83,27 +134,124 @@ public class DataWriter {
     }
     
     public void open() throws StorageException {
-        if (this.luceneIndexWriter == null || ! this.luceneIndexWriter.isOpen()) {
+        if (! this.isOpen) {
+            if (this.tableName != null) {
+                this.writeListeners = RelationManager.getRelationManager().getTableWriteListeners(this.tableName);
+            }
+            this.insertedTuples = new ArrayList<>();
+            this.tableModified = false;
+            this.failed = false;
+            this.listenersNotified = false;
+            this.luceneIndexWriters = new ArrayList<>();
             try {
-                Directory directory = FSDirectory.open(Paths.get(this.indexDirectory));
-                IndexWriterConfig conf = new IndexWriterConfig(analyzer);
-                this.luceneIndexWriter = new IndexWriter(directory, conf);
+                for (String shardDirectory : this.dataStore.getShardDirectories()) {
+                    Directory directory = LuceneDirectoryConstants.getLuceneDirectory(
+                            this.dataStore.getTableProperties().getDirectoryType(), shardDirectory);
+                    IndexWriterConfig conf = new IndexWriterConfig(analyzer);
+                    conf.setCodec(StorageUtils.getLuceneCodec(this.dataStore.getTableProperties()));
+                    this.luceneIndexWriters.add(new IndexWriter(directory, conf));
+                }
                 this.isOpen = true;
             } catch (IOException e) {
+                closeAfterFailure(e);
                 throw new StorageException(e.getMessage(), e);
             }
         }
     }
 
+    /**
+     * Commits the changes of every shard and closes the writer, or rolls them back after a failure.
+     * Every shard is closed even if closing another shard fails, the first failure is thrown
+     *   after all the shards are closed, the statistics are updated and the listeners are notified.
+     * 
+     * @throws StorageException
+     */
     public void close() throws StorageException {
-        if (this.luceneIndexWriter != null) {
+        if (this.luceneIndexWriters == null) {
+            return;
+        }
+        List<IndexWriter> indexWriters = this.luceneIndexWriters;
+        this.luceneIndexWriters = null;
+        this.isOpen = false;
+        
+        Throwable closeFailure = null;
+        List<String> shardDirectories = this.dataStore.getShardDirectories();
+        for (int i = 0; i < indexWriters.size(); i++) {
             try {
-                this.luceneIndexWriter.close();
-                this.isOpen = false;
-            } catch (IOException e) {
-                throw new StorageException(e.getMessage(), e);
+                if (this.failed) {
+                    // discard the changes, closing the IndexWriter would commit them
+                    indexWriters.get(i).rollback();
+                } else {
+                    indexWriters.get(i).close();
+                    // write the in-memory index back to disk if the table is RAM-resident
+                    LuceneDirectoryConstants.persistLuceneDirectory(
+                            this.dataStore.getTableProperties().getDirectoryType(), shardDirectories.get(i));
+                }
+            } catch (Throwable t) {
+                if (closeFailure == null) {
+                    closeFailure = t;
+                } else {
+                    closeFailure.addSuppressed(t);
+                }
+            }
+        }
+        StorageException closeException = null;
+        if (closeFailure instanceof Error) {
+            throw (Error) closeFailure;
+        } else if (closeFailure != null) {
+            closeException = new StorageException(closeFailure.getMessage(), closeFailure);
+        }
+        
+        if (this.tableName != null) {
+            try {
+                int modifications = this.modificationCount;
+                int inserted = this.insertedCount;
+                this.modificationCount = 0;
+                this.insertedCount = 0;
+                // after a deletion, an update, a rollback or a failed close, the documents are counted again
+                RelationManager.getRelationManager().updateTableStatistics(this.tableName, inserted, modifications,
+                        this.tableModified || this.failed || closeException != null);
+                if (this.failed || closeException != null) {
+                    // after a rollback, the listeners may have written the results of discarded tuples,
+                    //   and after a failed close, only some of the shards may have committed their changes
+                    this.insertedTuples = new ArrayList<>();
+                    this.tableModified = this.listenersNotified || closeException != null;
+                }
+                notifyWriteListeners();
+            } catch (StorageException e) {
+                if (closeException == null) {
+                    throw e;
+                }
+                closeException.addSuppressed(e);
             }
         }
+        if (closeException != null) {
+            throw closeException;
+        }
+    }
+    
+    /**
+     * Discards all the changes made since the writer is opened, and closes the writer.
+     * 
+     * @throws StorageException
+     */
+    public void rollback() throws StorageException {
+        if (this.luceneIndexWriters != null) {
+            this.failed = true;
+        }
+        close();
+    }
+    
+    /*
+     * Rolls back the writer after an operation failed.
+     * A failure of the rollback is added to the suppressed exceptions of the original failure.
+     */
+    private void closeAfterFailure(Exception failure) {
+        try {
+            rollback();
+        } catch (StorageException e) {
+            failure.addSuppressed(e);
+        }
     }
 
     public void clearData() throws StorageException {
@@ -111,9 +259,12 @@ public class DataWriter {
             throw new StorageException(ErrorMessages.OPERATOR_NOT_OPENED);
         }
         try {
-            this.luceneIndexWriter.deleteAll();
+            for (IndexWriter luceneIndexWriter : this.luceneIndexWriters) {
+                luceneIndexWriter.deleteAll();
+            }
+            setTableModified();
         } catch (IOException e) {
-            close();
+            closeAfterFailure(e);
             throw new StorageException(e.getMessage(), e);
         }
     }
@@ -138,12 +289,21 @@ public class DataWriter {
             }
             
             Document document = getLuceneDocument(tupleWithID);
-            this.luceneIndexWriter.addDocument(document);
+            getShardIndexWriter(idField).addDocument(document);
             this.dataStore.incrementNumDocuments(1);
+            this.modificationCount++;
+            this.insertedCount++;
+            // after a deletion or an update, the listeners are only notified that the table is modified
+            if (! this.writeListeners.isEmpty() && ! this.tableModified) {
+                this.insertedTuples.add(tupleWithID);
+                if (this.insertedTuples.size() >= WRITE_LISTENER_BATCH_SIZE) {
+                    notifyWriteListeners();
+                }
+            }
             
             return idField;
         } catch (IOException e) {
-            close();
+            closeAfterFailure(e);
             throw new StorageException(e.getMessage(), e);
         }
     }
@@ -155,17 +315,76 @@ public class DataWriter {
      * @throws StorageException
      */
     public void deleteTupleByID(IDField idField) throws StorageException {
+        deleteTuplesByID(Arrays.asList(idField));
+    }
+    
+    /**
+     * Deletes tuples by their ID fields in one batch.
+     * The deletions are buffered by the IndexWriter of each shard, 
+     *   and applied to the terms dictionary of the _id field when the writer flushes.
+     * 
+     * @param idFields
+     * @throws StorageException
+     */
+    public void deleteTuplesByID(List<IDField> idFields) throws StorageException {
         if (! isOpen) {
             throw new StorageException(ErrorMessages.OPERATOR_NOT_OPENED);
         }
         try {
-            this.luceneIndexWriter.deleteDocuments(new Term(SchemaConstants._ID, idField.getValue().toString()));
+            // group the ID terms by the shards that may contain them
+            Map<IndexWriter, List<Term>> shardIDTerms = new LinkedHashMap<>();
+            for (IDField idField : idFields) {
+                Term idTerm = new Term(SchemaConstants._ID, idField.getValue().toString());
+                for (IndexWriter luceneIndexWriter : getIDIndexWriters(idField)) {
+                    shardIDTerms.computeIfAbsent(luceneIndexWriter, key -> new ArrayList<>()).add(idTerm);
+                }
+            }
+            for (Map.Entry<IndexWriter, List<Term>> entry : shardIDTerms.entrySet()) {
+                entry.getKey().deleteDocuments(entry.getValue().stream().toArray(Term[]::new));
+            }
+            this.modificationCount += idFields.size();
+            if (! idFields.isEmpty()) {
+                setTableModified();
+            }
         } catch (IOException e) {
-            close();
+            closeAfterFailure(e);
             throw new StorageException(e);
         }
     }
     
+    /**
+     * Adds the segments of existing indexes to the table, one index per shard, 
+     *   for example, the staged indexes of an imported table snapshot.
+     * The segments are copied as they are, the documents are not analyzed or indexed again.
+     * 
+     * @param shardIndexDirectories, the index directories to add, in the order of the shards of the table
+     * @throws StorageException
+     */
+    void addShardIndexes(List<Directory> shardIndexDirectories) throws StorageException {
+        if (! isOpen) {
+            throw new StorageException(ErrorMessages.OPERATOR_NOT_OPENED);
+        }
+        if (shardIndexDirectories.size() != this.luceneIndexWriters.size()) {
+            throw new StorageException(String.format("The table has %d shards, but %d indexes are given.", 
+                    this.luceneIndexWriters.size(), shardIndexDirectories.size()));
+        }
+        try {
+            for (int i = 0; i < shardIndexDirectories.size(); i++) {
+                IndexWriter luceneIndexWriter = this.luceneIndexWriters.get(i);
+                int numDocsBefore = luceneIndexWriter.numDocs();
+                luceneIndexWriter.addIndexes(shardIndexDirectories.get(i));
+                int numAddedDocs = luceneIndexWriter.numDocs() - numDocsBefore;
+                this.dataStore.incrementNumDocuments(numAddedDocs);
+                this.modificationCount += numAddedDocs;
+                this.insertedCount += numAddedDocs;
+            }
+            setTableModified();
+        } catch (IOException e) {
+            closeAfterFailure(e);
+            throw new StorageException(e.getMessage(), e);
+        }
+    }
+    
     /**
      * Deletes tuple(s) by one (or more) queries.
      * 
@@ -174,9 +393,12 @@ public class DataWriter {
      */
     public void deleteTuple(Query... deletionQuery) throws StorageException {
         try {
-            this.luceneIndexWriter.deleteDocuments(deletionQuery);
+            for (IndexWriter luceneIndexWriter : this.luceneIndexWriters) {
+                luceneIndexWriter.deleteDocuments(deletionQuery);
+            }
+            setTableModified();
         } catch (IOException e) {
-            close();
+            closeAfterFailure(e);
             throw new StorageException(e.getMessage(), e);
         }
     }
@@ -202,27 +424,120 @@ public class DataWriter {
                 newTuple = getTupleWithID(newTuple, idField);
             }
             
-            this.luceneIndexWriter.updateDocument(
-                    new Term(SchemaConstants._ID, idField.getValue().toString()),
-                    getLuceneDocument(newTuple)); 
+            Term idTerm = new Term(SchemaConstants._ID, idField.getValue().toString());
+            IndexWriter targetIndexWriter = getShardIndexWriter(idField);
+            // in a round-robin table, the old tuple could be in any shard
+            for (IndexWriter luceneIndexWriter : getIDIndexWriters(idField)) {
+                if (luceneIndexWriter != targetIndexWriter) {
+                    luceneIndexWriter.deleteDocuments(idTerm);
+                }
+            }
+            targetIndexWriter.updateDocument(idTerm, getLuceneDocument(newTuple)); 
+            this.modificationCount++;
+            setTableModified();
         } catch (IOException e) {
-            close();
+            closeAfterFailure(e);
             throw new StorageException(e);
         }
     }
 
     /*
-     * Converts a TextDB tuple to a Lucene document
+     * Records that tuples are deleted or updated. The listeners will only be notified that the table is modified,
+     *   so the inserted tuples are not kept anymore.
+     */
+    private void setTableModified() {
+        this.tableModified = true;
+        this.insertedTuples = new ArrayList<>();
+    }
+
+    /*
+     * Notifies the write listeners of the table of the changes made by this writer.
+     * If any tuple is deleted or updated, the inserted tuples are not enough to describe the changes,
+     *   the listeners are only notified that the table is modified.
+     */
+    private void notifyWriteListeners() throws StorageException {
+        if (this.writeListeners.isEmpty() || (! this.tableModified && this.insertedTuples.isEmpty())) {
+            return;
+        }
+        List<Tuple> tuples = this.insertedTuples;
+        boolean modified = this.tableModified;
+        this.insertedTuples = new ArrayList<>();
+        this.tableModified = false;
+        this.listenersNotified = true;
+        try {
+            for (ITableWriteListener writeListener : this.writeListeners) {
+                if (modified) {
+                    writeListener.tableModified(this.tableName);
+                } else {
+                    writeListener.tuplesInserted(this.tableName, tuples);
+                }
+            }
+        } catch (TextDBException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+    }
+
+    /*
+     * Gets the IndexWriter of the shard that a tuple should be written to.
+     */
+    private IndexWriter getShardIndexWriter(IDField idField) {
+        int numShards = this.luceneIndexWriters.size();
+        if (numShards == 1) {
+            return this.luceneIndexWriters.get(0);
+        }
+        if (TableProperties.ROUND_ROBIN_PARTITION.equals(this.dataStore.getTableProperties().getPartitionType())) {
+            AtomicInteger roundRobinCursor = roundRobinCursors.computeIfAbsent(
+                    this.dataStore.getDataDirectory(), dataDirectory -> new AtomicInteger());
+            return this.luceneIndexWriters.get(Math.floorMod(roundRobinCursor.getAndIncrement(), numShards));
+        }
+        return this.luceneIndexWriters.get(getHashShard(idField, numShards));
+    }
+    
+    /*
+     * Gets the IndexWriters of the shards that may contain the tuple with the given ID.
+     * In a hash-partitioned table, it's only the shard the ID hashes to.
+     */
+    private List<IndexWriter> getIDIndexWriters(IDField idField) {
+        int numShards = this.luceneIndexWriters.size();
+        if (numShards == 1 
+                || TableProperties.ROUND_ROBIN_PARTITION.equals(this.dataStore.getTableProperties().getPartitionType())) {
+            return this.luceneIndexWriters;
+        }
+        return Arrays.asList(this.luceneIndexWriters.get(getHashShard(idField, numShards)));
+    }
+    
+    /**
+     * Gets the shard that a tuple ID belongs to in a hash-partitioned table.
+     * 
+     * @param idField
+     * @param numShards
+     * @return
+     */
+    public static int getHashShard(IDField idField, int numShards) {
+        return Math.floorMod(idField.getValue().toString().hashCode(), numShards);
+    }
+
+    /*
+     * Converts a TextDB tuple to a Lucene document.
+     * If the table stores the payload, the payload of each TEXT field is precomputed and added to the document.
      */
-    private static Document getLuceneDocument(Tuple tuple) {
+    private Document getLuceneDocument(Tuple tuple) throws IOException {
         List<IField> fields = tuple.getFields();
         List<Attribute> attributes = tuple.getSchema().getAttributes();
+        TableProperties tableProperties = this.dataStore.getTableProperties();
+        boolean payloadStored = tableProperties.isPayloadStored();
         Document doc = new Document();
         for (int count = 0; count < fields.size(); count++) {
             IField field = fields.get(count);
             Attribute attr = attributes.get(count);
             AttributeType attributeType = attr.getAttributeType();
-            doc.add(StorageUtils.getLuceneField(attributeType, attr.getAttributeName(), field.getValue()));
+            doc.add(StorageUtils.getLuceneField(attributeType, attr.getAttributeName(), field.getValue(), tableProperties));
+            
+            if (payloadStored && attributeType == AttributeType.TEXT) {
+                List<Span> payload = StorageUtils.generatePayload(
+                        attr.getAttributeName(), field.getValue().toString(), analyzer);
+                doc.add(StorageUtils.getLucenePayloadField(attr.getAttributeName(), payload));
+            }
         }
         return doc;
     }
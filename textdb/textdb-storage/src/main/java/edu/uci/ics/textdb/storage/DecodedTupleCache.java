@@ -0,0 +1,298 @@
+package edu.uci.ics.textdb.storage;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.SegmentInfo;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.util.StringHelper;
+
+import edu.uci.ics.textdb.api.field.IField;
+import edu.uci.ics.textdb.api.span.Span;
+
+/**
+ * DecodedTupleCache keeps the decoded fields (and the payload) of recently read documents,
+ *   so that DataReader doesn't load the stored document, parse the fields and rebuild the payload again
+ *   when the same document is read by later queries.
+ *
+ * The entries are keyed by (table, segment, docID in the segment). A Lucene segment is never modified
+ *   after it's written: deleting a document only marks it deleted, and updating a document writes it
+ *   again in a new segment. So an entry never becomes stale, it's only dropped when:
+ *   - the stripe of the entry is full (see below), the least recently used entry of the stripe is evicted.
+ *   - a DataReader of the table opens an index that doesn't contain the segment anymore
+ *     (the segment has been merged away or the table has been cleared).
+ *   - the table is deleted.
+ *
+ * A segment is identified by its name and its unique ID, so that the segments of a table that is
+ *   deleted and created again in the same directory are never mixed up.
+ *
+ * The cache is shared by all the DataReaders and is thread-safe. To keep the readers of different threads
+ *   from contending on one lock, it's split into STRIPE_COUNT stripes by the hash of the key,
+ *   each an LRU map with its own lock and its share of the capacity. So the eviction is only LRU within a stripe,
+ *   and the least recently used entry of the whole cache may be kept a little longer.
+ *
+ */
+public class DecodedTupleCache {
+
+    // the default maximum number of cached documents
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    // the number of stripes of the cache, a power of two
+    static final int STRIPE_COUNT = 16;
+
+    private static volatile int capacity = DEFAULT_CAPACITY;
+
+    private static final Stripe[] stripes = new Stripe[STRIPE_COUNT];
+    static {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new Stripe(getStripeCapacity(DEFAULT_CAPACITY, i));
+        }
+    }
+
+    // the segments that have cached entries, per table
+    private static final Map<String, Set<String>> cachedSegments = new ConcurrentHashMap<>();
+
+    private static final AtomicLong hitCount = new AtomicLong();
+    private static final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Gets the maximum number of cached documents.
+     *
+     * @return
+     */
+    public static int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Sets the maximum number of cached documents, the least recently used entries are evicted if needed.
+     * Setting it to 0 disables the cache.
+     *
+     * @param newCapacity
+     */
+    public static synchronized void setCapacity(int newCapacity) {
+        capacity = Math.max(0, newCapacity);
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i].setCapacity(getStripeCapacity(capacity, i));
+        }
+    }
+
+    /**
+     * Removes all the cached entries.
+     */
+    public static void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+        cachedSegments.clear();
+    }
+
+    public static int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    public static long getHitCount() {
+        return hitCount.get();
+    }
+
+    public static long getMissCount() {
+        return missCount.get();
+    }
+
+    /*
+     * Gets the key of a table in the cache, which is the absolute path of the table directory.
+     */
+    static String getTableKey(DataStore dataStore) {
+        return Paths.get(dataStore.getDataDirectory()).toAbsolutePath().normalize().toString();
+    }
+
+    /*
+     * Gets the key of a segment in the cache, returns null if the reader is not a segment reader.
+     */
+    static String getSegmentKey(LeafReader leafReader) {
+        if (! (leafReader instanceof SegmentReader)) {
+            return null;
+        }
+        SegmentInfo segmentInfo = ((SegmentReader) leafReader).getSegmentInfo().info;
+        return segmentInfo.name + "_" + StringHelper.idToString(segmentInfo.getId());
+    }
+
+    static CachedTuple get(String tableKey, String segmentKey, int segmentDocID) {
+        CacheKey cacheKey = new CacheKey(tableKey, segmentKey, segmentDocID);
+        Stripe stripe = getStripe(cacheKey);
+        CachedTuple cachedTuple;
+        synchronized (stripe) {
+            cachedTuple = stripe.get(cacheKey);
+        }
+        if (cachedTuple == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return cachedTuple;
+    }
+
+    static void put(String tableKey, String segmentKey, int segmentDocID, CachedTuple cachedTuple) {
+        if (capacity == 0) {
+            return;
+        }
+        cachedSegments.computeIfAbsent(tableKey, key -> ConcurrentHashMap.newKeySet()).add(segmentKey);
+        CacheKey cacheKey = new CacheKey(tableKey, segmentKey, segmentDocID);
+        Stripe stripe = getStripe(cacheKey);
+        synchronized (stripe) {
+            stripe.put(cacheKey, cachedTuple);
+        }
+    }
+
+    /*
+     * Drops the entries of the segments of a table that are not in the given live segments.
+     * It's called when a DataReader opens the index of the table.
+     */
+    static void retainSegments(String tableKey, Collection<String> liveSegmentKeys) {
+        Set<String> tableSegments = cachedSegments.get(tableKey);
+        if (tableSegments == null) {
+            return;
+        }
+        Set<String> droppedSegments = new HashSet<>(tableSegments);
+        droppedSegments.removeAll(liveSegmentKeys);
+        if (droppedSegments.isEmpty()) {
+            return;
+        }
+        tableSegments.removeAll(droppedSegments);
+        removeEntries(key -> key.tableKey.equals(tableKey) && droppedSegments.contains(key.segmentKey));
+    }
+
+    /*
+     * Drops all the entries of a table. It's called when the table is deleted.
+     */
+    static void invalidateTable(String tableKey) {
+        if (cachedSegments.remove(tableKey) == null) {
+            return;
+        }
+        removeEntries(key -> key.tableKey.equals(tableKey));
+    }
+
+    private static void removeEntries(Predicate<CacheKey> keyPredicate) {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.keySet().removeIf(keyPredicate);
+            }
+        }
+    }
+
+    private static Stripe getStripe(CacheKey cacheKey) {
+        int hash = cacheKey.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPE_COUNT - 1)];
+    }
+
+    /*
+     * The capacity of a stripe, the capacity of the cache is divided as evenly as possible.
+     */
+    private static int getStripeCapacity(int totalCapacity, int stripeIndex) {
+        return totalCapacity / STRIPE_COUNT + (stripeIndex < totalCapacity % STRIPE_COUNT ? 1 : 0);
+    }
+
+    /*
+     * A stripe of the cache: an LRU map of the entries, it's accessed while holding its lock.
+     */
+    private static class Stripe extends LinkedHashMap<CacheKey, CachedTuple> {
+        private static final long serialVersionUID = 1L;
+
+        private int stripeCapacity;
+
+        private Stripe(int stripeCapacity) {
+            super(16, 0.75f, true);
+            this.stripeCapacity = stripeCapacity;
+        }
+
+        private synchronized void setCapacity(int newCapacity) {
+            stripeCapacity = newCapacity;
+            Iterator<CacheKey> keyIterator = keySet().iterator();
+            while (size() > stripeCapacity && keyIterator.hasNext()) {
+                keyIterator.next();
+                keyIterator.remove();
+            }
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CacheKey, CachedTuple> eldest) {
+            return size() > stripeCapacity;
+        }
+    }
+
+    /*
+     * The decoded fields of a document (in the order of the table schema),
+     *   and its payload if a DataReader has built it.
+     */
+    static class CachedTuple {
+        private final List<IField> fields;
+        private volatile List<Span> payload;
+
+        CachedTuple(List<IField> fields) {
+            this.fields = new ArrayList<>(fields);
+        }
+
+        List<IField> getFields() {
+            return fields;
+        }
+
+        List<Span> getPayload() {
+            return payload;
+        }
+
+        void setPayload(List<Span> payload) {
+            this.payload = new ArrayList<>(payload);
+        }
+    }
+
+    private static class CacheKey {
+        private final String tableKey;
+        private final String segmentKey;
+        private final int segmentDocID;
+
+        private CacheKey(String tableKey, String segmentKey, int segmentDocID) {
+            this.tableKey = tableKey;
+            this.segmentKey = segmentKey;
+            this.segmentDocID = segmentDocID;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(tableKey, segmentKey, segmentDocID);
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            if (this == that) {
+                return true;
+            }
+            if (! (that instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) that;
+            return segmentDocID == other.segmentDocID && segmentKey.equals(other.segmentKey)
+                    && tableKey.equals(other.tableKey);
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+package edu.uci.ics.textdb.storage;
+
+import java.util.List;
+
+import edu.uci.ics.textdb.api.exception.TextDBException;
+import edu.uci.ics.textdb.api.tuple.Tuple;
+
+/**
+ * ITableWriteListener is notified when a DataWriter of a table is closed after writing the table,
+ *   for example, to keep a materialized view of the table up to date. The inserted tuples are also passed
+ *   in batches while the writer is open (see DataWriter.WRITE_LISTENER_BATCH_SIZE).
+ *   If an operation of the writer fails, the listeners are not notified when the writer is closed.
+ *
+ * Listeners are registered by RelationManager.addTableWriteListener, and they are kept in memory only.
+ *
+ */
+public interface ITableWriteListener {
+
+    /**
+     * Called when tuples are appended to a table, and nothing else is changed in the table.
+     *
+     * @param tableName, the name of the table (lower case)
+     * @param insertedTuples, the inserted tuples, with their _id fields
+     * @throws TextDBException
+     */
+    void tuplesInserted(String tableName, List<Tuple> insertedTuples) throws TextDBException;
+
+    /**
+     * Called when tuples in a table are deleted or updated, or the table is cleared.
+     *
+     * @param tableName, the name of the table (lower case)
+     * @throws TextDBException
+     */
+    void tableModified(String tableName) throws TextDBException;
+
+}
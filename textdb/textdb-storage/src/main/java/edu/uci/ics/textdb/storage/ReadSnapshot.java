@@ -0,0 +1,179 @@
+package edu.uci.ics.textdb.storage;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.apache.lucene.search.IndexSearcher;
+
+import edu.uci.ics.textdb.api.exception.StorageException;
+
+/**
+ * ReadSnapshot pins one point-in-time view of every table read by a query plan,
+ *   so that all the DataReaders of the plan see the same state of a table,
+ *   even if a writer commits to the table while the plan is running.
+ *
+ * The index of a table is opened the first time a DataReader of the plan reads the table,
+ *   and the same Lucene IndexReader and IndexSearcher are shared by all the later DataReaders of the table,
+ *   instead of each DataReader opening the index again.
+ *
+ * A snapshot is made current on a thread by setCurrentSnapshot. DataReaders obtained from
+ *   RelationManager.getTableDataReader read from the current snapshot of the thread that opens them.
+ *   The sinks take a snapshot when they open the plan (openWith), run the plan with it (runWith, callWith),
+ *   and release it when they close the plan (closeWith), so all the tables read by a plan
+ *   are read from one snapshot. Each of these makes the snapshot current only while the action runs,
+ *   and restores the previous snapshot of the thread afterwards, even if the action fails.
+ *
+ * Closing the snapshot releases its pinned readers. A reader is actually closed
+ *   after the snapshot and all the DataReaders using it are closed.
+ *
+ */
+public class ReadSnapshot implements AutoCloseable {
+
+    private static final ThreadLocal<ReadSnapshot> currentSnapshot = new ThreadLocal<>();
+
+    // the pinned searchers of the tables, keyed by the absolute path of the table directory
+    private final Map<String, IndexSearcher> pinnedSearchers = new HashMap<>();
+    private boolean closed = false;
+
+    public ReadSnapshot() {
+    }
+
+    /**
+     * Gets the snapshot that is current on this thread, returns null if there isn't one.
+     *
+     * @return
+     */
+    public static ReadSnapshot getCurrentSnapshot() {
+        return currentSnapshot.get();
+    }
+
+    /**
+     * Makes a snapshot current on this thread, and returns the previous one.
+     * Setting it to null means DataReaders open the index by themselves.
+     *
+     * @param readSnapshot
+     * @return the previous snapshot of this thread
+     */
+    public static ReadSnapshot setCurrentSnapshot(ReadSnapshot readSnapshot) {
+        ReadSnapshot previousSnapshot = currentSnapshot.get();
+        if (readSnapshot == null) {
+            currentSnapshot.remove();
+        } else {
+            currentSnapshot.set(readSnapshot);
+        }
+        return previousSnapshot;
+    }
+
+    /**
+     * Runs an action with a snapshot current on this thread, then restores the previous snapshot.
+     *
+     * @param readSnapshot, the snapshot to read from, null means DataReaders open the index by themselves
+     * @param action
+     */
+    public static void runWith(ReadSnapshot readSnapshot, Runnable action) {
+        ReadSnapshot previousSnapshot = setCurrentSnapshot(readSnapshot);
+        try {
+            action.run();
+        } finally {
+            setCurrentSnapshot(previousSnapshot);
+        }
+    }
+
+    /**
+     * Same as runWith, for an action that returns a result.
+     *
+     * @param readSnapshot
+     * @param action
+     * @return the result of the action
+     */
+    public static <T> T callWith(ReadSnapshot readSnapshot, Supplier<T> action) {
+        ReadSnapshot previousSnapshot = setCurrentSnapshot(readSnapshot);
+        try {
+            return action.get();
+        } finally {
+            setCurrentSnapshot(previousSnapshot);
+        }
+    }
+
+    /**
+     * Takes a new snapshot and runs the action that opens a plan with it.
+     * The snapshot is released if the action fails.
+     *
+     * @param openAction
+     * @return the new snapshot, to be released by closeWith
+     */
+    public static ReadSnapshot openWith(Runnable openAction) {
+        ReadSnapshot readSnapshot = new ReadSnapshot();
+        boolean opened = false;
+        try {
+            runWith(readSnapshot, openAction);
+            opened = true;
+        } finally {
+            if (! opened) {
+                readSnapshot.close();
+            }
+        }
+        return readSnapshot;
+    }
+
+    /**
+     * Runs the action that closes a plan with a snapshot, and releases the snapshot afterwards,
+     *   even if the action fails.
+     *
+     * @param readSnapshot, the snapshot returned by openWith, it can be null if the plan wasn't opened
+     * @param closeAction
+     */
+    public static void closeWith(ReadSnapshot readSnapshot, Runnable closeAction) {
+        try {
+            runWith(readSnapshot, closeAction);
+        } finally {
+            if (readSnapshot != null) {
+                readSnapshot.close();
+            }
+        }
+    }
+
+    /*
+     * Gets the pinned searcher of a table, the index is opened if the table hasn't been read in this snapshot.
+     * The reference count of the searcher's reader is incremented,
+     *   the caller must call decRef() on the reader when it's done.
+     */
+    synchronized IndexSearcher acquireIndexSearcher(DataStore dataStore) throws IOException, StorageException {
+        if (closed) {
+            throw new StorageException("The read snapshot is already closed.");
+        }
+        String tableKey = Paths.get(dataStore.getDataDirectory()).toAbsolutePath().normalize().toString();
+        IndexSearcher indexSearcher = pinnedSearchers.get(tableKey);
+        if (indexSearcher == null) {
+            indexSearcher = DataReader.createLuceneIndexSearcher(
+                    DataReader.openLuceneIndexReader(dataStore), dataStore);
+            pinnedSearchers.put(tableKey, indexSearcher);
+        }
+        indexSearcher.getIndexReader().incRef();
+        return indexSearcher;
+    }
+
+    @Override
+    public synchronized void close() throws StorageException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        IOException exception = null;
+        for (IndexSearcher indexSearcher : pinnedSearchers.values()) {
+            try {
+                indexSearcher.getIndexReader().decRef();
+            } catch (IOException e) {
+                exception = e;
+            }
+        }
+        pinnedSearchers.clear();
+        if (exception != null) {
+            throw new StorageException(exception.getMessage(), exception);
+        }
+    }
+
+}
@@ -2,11 +2,18 @@ package edu.uci.ics.textdb.storage;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -15,8 +22,10 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.IOUtils;
 
-import edu.uci.ics.textdb.api.constants.SchemaConstants;
 import edu.uci.ics.textdb.api.exception.DataFlowException;
 import edu.uci.ics.textdb.api.exception.StorageException;
 import edu.uci.ics.textdb.api.field.IDField;
@@ -27,16 +36,42 @@ import edu.uci.ics.textdb.api.schema.Schema;
 import edu.uci.ics.textdb.api.tuple.Tuple;
 import edu.uci.ics.textdb.api.utils.Utils;
 import edu.uci.ics.textdb.storage.constants.LuceneAnalyzerConstants;
+import edu.uci.ics.textdb.storage.constants.LuceneDirectoryConstants;
+import edu.uci.ics.textdb.storage.utils.StorageExecutors;
 import edu.uci.ics.textdb.storage.utils.StorageUtils;
 
 public class RelationManager {
     
     private static volatile RelationManager singletonRelationManager = null;
     
+    // a table is analyzed again when the number of modified tuples since the last analysis
+    //   exceeds ANALYZE_THRESHOLD_BASE + ANALYZE_THRESHOLD_RATIO * (number of documents)
+    public static final int ANALYZE_THRESHOLD_BASE = 50;
+    public static final double ANALYZE_THRESHOLD_RATIO = 0.1;
+    
+    // the statistics of a table updated by the DataWriters are written to the statistics catalog
+    //   after this number of updates (see updateTableStatistics)
+    public static final int STATISTICS_PERSIST_INTERVAL = 100;
+    
+    private final Object statisticsCatalogLock = new Object();
+    
+    // the in-memory statistics of the tables, keyed by the lower case table name
+    private final Map<String, CachedTableStatistics> tableStatisticsCache = new ConcurrentHashMap<>();
+    
+    // the tables waiting to be analyzed in the background (see scheduleAnalyze), by the lower case table name
+    private final Set<String> tablesPendingAnalysis = ConcurrentHashMap.newKeySet();
+    
+    // the write listeners of each table, keyed by the lower case table name
+    private final Map<String, List<ITableWriteListener>> tableWriteListeners = new ConcurrentHashMap<>();
+    
     private RelationManager() throws StorageException {
         if (! checkCatalogExistence()) {
             initializeCatalog();
         }
+        // the statistics catalog is created separately, for the catalogs created before it was introduced
+        if (! DataReader.checkIndexExistence(CatalogConstants.STATISTICS_CATALOG_DIRECTORY)) {
+            initializeStatisticsCatalog();
+        }
     }
 
     public static RelationManager getRelationManager() throws StorageException {
@@ -83,6 +118,22 @@ public class RelationManager {
      */
     public void createTable(String tableName, String indexDirectory, Schema schema, String luceneAnalyzerString)
             throws StorageException {
+        createTable(tableName, indexDirectory, schema, luceneAnalyzerString, new TableProperties());
+    }
+    
+    /**
+     * Creates a new table with the given table-level storage properties.
+     * See createTable(tableName, indexDirectory, schema, luceneAnalyzerString) for details.
+     * 
+     * @param tableName, the name of the table, must be unique, case is not sensitive
+     * @param indexDirectory, the directory to store the index and data, must not duplicate with other tables' directories
+     * @param schema, the schema of the table
+     * @param luceneAnalyzerString, the string representing the lucene analyzer used
+     * @param tableProperties, the storage properties of the table (see TableProperties)
+     * @throws StorageException
+     */
+    public void createTable(String tableName, String indexDirectory, Schema schema, String luceneAnalyzerString,
+            TableProperties tableProperties) throws StorageException {
         // convert the table name to lower case
         tableName = tableName.toLowerCase();
         // table should not exist
@@ -127,16 +178,38 @@ public class RelationManager {
             throw new StorageException("Lucene Analyzer String is not valid.");
         }
         
+        // check if the lucene directory type string is valid
+        LuceneDirectoryConstants.checkDirectoryString(tableProperties.getDirectoryType());
+        
+        // check if the sharding properties are valid
+        if (tableProperties.getNumShards() < 1) {
+            throw new StorageException("Number of shards must be at least 1.");
+        }
+        if (! TableProperties.HASH_PARTITION.equals(tableProperties.getPartitionType()) 
+                && ! TableProperties.ROUND_ROBIN_PARTITION.equals(tableProperties.getPartitionType())) {
+            throw new StorageException(String.format("Partition type %s is not valid.", tableProperties.getPartitionType()));
+        }
+        
+        // check if the stored fields compression mode is valid
+        if (! TableProperties.BEST_SPEED_COMPRESSION.equals(tableProperties.getStoredFieldsCompression())
+                && ! TableProperties.BEST_COMPRESSION.equals(tableProperties.getStoredFieldsCompression())) {
+            throw new StorageException(String.format("Stored fields compression mode %s is not valid.", 
+                    tableProperties.getStoredFieldsCompression()));
+        }
+        
         // create the directory and clear all data in the index directory
         Schema tableSchema = Utils.getSchemaWithID(schema);
-        DataStore tableDataStore = new DataStore(indexDirectory, tableSchema);
+        DataStore tableDataStore = new DataStore(indexDirectory, tableSchema, tableProperties);
         DataWriter dataWriter = new DataWriter(tableDataStore, luceneAnalyzer);
         dataWriter.open();
         dataWriter.clearData();
         dataWriter.close();
         
         // write table info to catalog
-        writeTableInfoToCatalog(tableName, indexDirectory, schema, luceneAnalyzerString);
+        writeTableInfoToCatalog(tableName, indexDirectory, schema, luceneAnalyzerString, tableProperties);
+        
+        // write the initial statistics of the empty table
+        analyzeTable(tableName);
 
     }
 
@@ -160,11 +233,21 @@ public class RelationManager {
         }
         
         // try to clear all data in the table
-        DataWriter dataWriter = getTableDataWriter(tableName);
+        DataStore tableDataStore = getTableDataStoreWithoutDocumentCount(tableName);
+        DataWriter dataWriter = new DataWriter(tableDataStore, getTableAnalyzer(tableName));
         dataWriter.open();
         dataWriter.clearData();
         dataWriter.close();
-        StorageUtils.deleteDirectory(getTableDirectory(tableName));
+        try {
+            SharedIndexReaders.invalidateTable(DecodedTupleCache.getTableKey(tableDataStore));
+        } catch (IOException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+        for (String shardDirectory : tableDataStore.getShardDirectories()) {
+            LuceneDirectoryConstants.releaseLuceneDirectory(shardDirectory);
+        }
+        StorageUtils.deleteDirectory(tableDataStore.getDataDirectory());
+        DecodedTupleCache.invalidateTable(DecodedTupleCache.getTableKey(tableDataStore));
 
         // generate a query for the table name
         Query catalogTableNameQuery = new TermQuery(new Term(CatalogConstants.TABLE_NAME, tableName));
@@ -183,6 +266,307 @@ public class RelationManager {
         schemaCatalogWriter.deleteTuple(catalogTableNameQuery);
         schemaCatalogWriter.close();
         
+        // delete the table from statistics catalog
+        synchronized (statisticsCatalogLock) {
+            DataWriter statisticsCatalogWriter = new DataWriter(CatalogConstants.STATISTICS_CATALOG_DATASTORE,
+                    LuceneAnalyzerConstants.getStandardAnalyzer());
+            statisticsCatalogWriter.open();
+            statisticsCatalogWriter.deleteTuple(catalogTableNameQuery);
+            statisticsCatalogWriter.close();
+            tableStatisticsCache.remove(tableName);
+        }
+        
+    }
+    
+    /**
+     * Exports a table as a binary snapshot: its catalog entry, its schema and its data (see TableSnapshotFormat).
+     * The snapshot is streamed to the output stream, which is flushed but not closed.
+     * 
+     * @param tableName, the name of the table, case insensitive
+     * @param outputStream, the stream to write the snapshot to
+     * @throws StorageException
+     */
+    public void exportTable(String tableName, OutputStream outputStream) throws StorageException {
+        tableName = tableName.toLowerCase();
+        if (isSystemCatalog(tableName)) {
+            throw new StorageException("Exporting a system catalog table is not supported.");
+        }
+        Tuple tableCatalogTuple = getTableCatalogTuple(tableName);
+        if (tableCatalogTuple == null) {
+            throw new StorageException(String.format("Table %s does not exist.", tableName));
+        }
+        TableSnapshotFormat.writeSnapshot(tableCatalogTuple, getTableDataStore(tableName), outputStream);
+    }
+    
+    /**
+     * Imports a table from a binary snapshot written by exportTable.
+     *   The table is created with the schema, the analyzer and the storage properties in the snapshot,
+     *   and its data is restored by adding the segments in the snapshot to the new table,
+     *   the tuples (and their IDs) are not inserted one by one.
+     * 
+     * The snapshot is verified before the table is created, 
+     *   nothing is created if the snapshot is corrupted or truncated.
+     * 
+     * @param tableName, the name of the new table, must be unique, case is not sensitive
+     * @param indexDirectory, the directory to store the index and data, must not duplicate with other tables' directories
+     * @param inputStream, the stream to read the snapshot from, it's not closed
+     * @throws StorageException
+     */
+    public void importTable(String tableName, String indexDirectory, InputStream inputStream) throws StorageException {
+        tableName = tableName.toLowerCase();
+        if (checkTableExistence(tableName)) {
+            throw new StorageException(String.format("Table %s already exists.", tableName));
+        }
+        
+        Path stagingDirectory;
+        try {
+            stagingDirectory = Files.createTempDirectory("textdb-snapshot-");
+        } catch (IOException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+        List<Directory> shardIndexDirectories = new ArrayList<>();
+        try {
+            TableSnapshotFormat.TableSnapshot tableSnapshot = 
+                    TableSnapshotFormat.readSnapshot(inputStream, stagingDirectory);
+            for (Path shardDirectory : tableSnapshot.getShardDirectories()) {
+                shardIndexDirectories.add(FSDirectory.open(shardDirectory));
+            }
+            createTable(tableName, indexDirectory, tableSnapshot.getSchema(), 
+                    tableSnapshot.getLuceneAnalyzerString(), tableSnapshot.getTableProperties());
+            try {
+                DataWriter dataWriter = getTableDataWriter(tableName);
+                dataWriter.open();
+                try {
+                    dataWriter.addShardIndexes(shardIndexDirectories);
+                } finally {
+                    dataWriter.close();
+                }
+                analyzeTable(tableName);
+            } catch (StorageException e) {
+                // don't leave a partially imported table
+                deleteTable(tableName);
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new StorageException(e.getMessage(), e);
+        } finally {
+            IOUtils.closeWhileHandlingException(shardIndexDirectories);
+            StorageUtils.deleteDirectory(stagingDirectory.toString());
+        }
+    }
+    
+    /**
+     * Analyzes a table: collects the statistics of the table and its attributes,
+     *   and stores them in the statistics catalog, replacing the previous statistics.
+     * See TableStatistics and AttributeStatistics for the statistics collected.
+     * 
+     * @param tableName, the name of the table, case insensitive
+     * @return the statistics of the table
+     * @throws StorageException
+     */
+    public TableStatistics analyzeTable(String tableName) throws StorageException {
+        tableName = tableName.toLowerCase();
+        if (isSystemCatalog(tableName)) {
+            throw new StorageException("Analyzing a system catalog table is not supported.");
+        }
+        if (! checkTableExistence(tableName)) {
+            throw new StorageException(String.format("Table %s does not exist.", tableName));
+        }
+        TableStatistics tableStatistics = StatisticsCollector.collectStatistics(
+                tableName, getTableDataStoreWithoutDocumentCount(tableName));
+        synchronized (statisticsCatalogLock) {
+            writeTableStatistics(tableStatistics);
+            tableStatisticsCache.put(tableName, new CachedTableStatistics(tableStatistics));
+        }
+        return tableStatistics;
+    }
+    
+    /**
+     * Gets the statistics of a table, with the updates that are not written to the statistics catalog yet.
+     * Returns null if the table hasn't been analyzed (for example, system catalog tables).
+     * 
+     * @param tableName, the name of the table, case insensitive
+     * @return
+     * @throws StorageException
+     */
+    public TableStatistics getTableStatistics(String tableName) throws StorageException {
+        tableName = tableName.toLowerCase();
+        synchronized (statisticsCatalogLock) {
+            CachedTableStatistics cachedStatistics = getCachedTableStatistics(tableName);
+            if (cachedStatistics == null) {
+                return null;
+            }
+            if (cachedStatistics.documentCountStale) {
+                refreshDocumentCount(tableName, cachedStatistics);
+                if (isAnalyzeNeeded(cachedStatistics.tableStatistics)) {
+                    scheduleAnalyze(tableName);
+                }
+            }
+            return cachedStatistics.tableStatistics;
+        }
+    }
+    
+    /**
+     * Writes the in-memory statistics of a table to the statistics catalog, if they have been updated.
+     * 
+     * @param tableName, the name of the table, case insensitive
+     * @throws StorageException
+     */
+    public void persistTableStatistics(String tableName) throws StorageException {
+        tableName = tableName.toLowerCase();
+        synchronized (statisticsCatalogLock) {
+            CachedTableStatistics cachedStatistics = tableStatisticsCache.get(tableName);
+            if (cachedStatistics == null || cachedStatistics.unpersistedUpdates == 0) {
+                return;
+            }
+            if (cachedStatistics.documentCountStale) {
+                refreshDocumentCount(tableName, cachedStatistics);
+                if (isAnalyzeNeeded(cachedStatistics.tableStatistics)) {
+                    scheduleAnalyze(tableName);
+                }
+            }
+            writeTableStatistics(cachedStatistics.tableStatistics);
+            cachedStatistics.unpersistedUpdates = 0;
+        }
+    }
+    
+    /**
+     * Writes the in-memory statistics of all the tables that have been updated to the statistics catalog,
+     *   for example, before the system is shut down.
+     * 
+     * @throws StorageException
+     */
+    public void persistTableStatistics() throws StorageException {
+        for (String tableName : new ArrayList<>(tableStatisticsCache.keySet())) {
+            persistTableStatistics(tableName);
+        }
+    }
+    
+    /*
+     * Reads the statistics of a table from the statistics catalog, without the in-memory updates.
+     */
+    TableStatistics readTableStatistics(String tableName) throws StorageException {
+        tableName = tableName.toLowerCase();
+        
+        Query tableNameQuery = new TermQuery(new Term(CatalogConstants.TABLE_NAME, tableName));
+        DataReader statisticsCatalogDataReader = new DataReader(CatalogConstants.STATISTICS_CATALOG_DATASTORE, tableNameQuery);
+        statisticsCatalogDataReader.setPayloadAdded(false);
+        
+        statisticsCatalogDataReader.open();
+        List<Tuple> tupleList = new ArrayList<>();
+        Tuple nextTuple;
+        while ((nextTuple = statisticsCatalogDataReader.getNextTuple()) != null) {
+            tupleList.add(nextTuple);
+        }
+        statisticsCatalogDataReader.close();
+        
+        return CatalogConstants.getTableStatistics(tupleList);
+    }
+    
+    /*
+     * Updates the statistics of a table after it's modified, it's called when a DataWriter is closed.
+     * The statistics are only updated in memory, they are written to the statistics catalog 
+     *   every STATISTICS_PERSIST_INTERVAL updates, or when persistTableStatistics is called.
+     * The inserted documents are added to the document count. If documents are removed, the document count is
+     *   counted from the index the next time the statistics are read or written.
+     * The table is analyzed again in the background if it has never been analyzed, 
+     *   or if too many tuples have been modified since the last analysis (see scheduleAnalyze).
+     */
+    void updateTableStatistics(String tableName, int insertedCount, int modificationCount, boolean documentsRemoved)
+            throws StorageException {
+        tableName = tableName.toLowerCase();
+        synchronized (statisticsCatalogLock) {
+            CachedTableStatistics cachedStatistics = getCachedTableStatistics(tableName);
+            if (cachedStatistics == null) {
+                scheduleAnalyze(tableName);
+                return;
+            }
+            if (insertedCount == 0 && modificationCount == 0 && ! documentsRemoved) {
+                return;
+            }
+            
+            TableStatistics tableStatistics = cachedStatistics.tableStatistics;
+            tableStatistics.setDocumentCount(tableStatistics.getDocumentCount() + insertedCount);
+            tableStatistics.setModificationCount(tableStatistics.getModificationCount() + modificationCount);
+            if (documentsRemoved) {
+                cachedStatistics.documentCountStale = true;
+                cachedStatistics.countedChanges += modificationCount - insertedCount;
+            }
+            cachedStatistics.unpersistedUpdates++;
+            
+            if (isAnalyzeNeeded(tableStatistics)) {
+                scheduleAnalyze(tableName);
+            } else if (cachedStatistics.unpersistedUpdates >= STATISTICS_PERSIST_INTERVAL) {
+                persistTableStatistics(tableName);
+            }
+        }
+    }
+    
+    /*
+     * Marks a table to be analyzed, and analyzes it in the background, so that the writers and readers
+     *   don't scan the whole table while they hold the statistics lock.
+     * A table is queued once until its analysis starts. If the analysis fails, the table is marked again
+     *   the next time its statistics are updated or read, because its modification count is still too high.
+     */
+    private void scheduleAnalyze(String tableName) {
+        if (! tablesPendingAnalysis.add(tableName)) {
+            return;
+        }
+        StorageExecutors.getStatisticsExecutor().execute(() -> {
+            tablesPendingAnalysis.remove(tableName);
+            try {
+                if (checkTableExistence(tableName)) {
+                    analyzeTable(tableName);
+                }
+            } catch (StorageException e) {
+                // the table is marked again, see above
+            }
+        });
+    }
+    
+    /*
+     * Gets the in-memory statistics of a table, they are read from the statistics catalog the first time.
+     * Returns null if the table hasn't been analyzed.
+     */
+    private CachedTableStatistics getCachedTableStatistics(String tableName) throws StorageException {
+        CachedTableStatistics cachedStatistics = tableStatisticsCache.get(tableName);
+        if (cachedStatistics != null) {
+            return cachedStatistics;
+        }
+        TableStatistics storedStatistics = readTableStatistics(tableName);
+        if (storedStatistics == null) {
+            return null;
+        }
+        cachedStatistics = new CachedTableStatistics(storedStatistics);
+        // the last updates before the system stopped may not have been written
+        cachedStatistics.documentCountStale = true;
+        CachedTableStatistics previousStatistics = tableStatisticsCache.putIfAbsent(tableName, cachedStatistics);
+        return previousStatistics != null ? previousStatistics : cachedStatistics;
+    }
+    
+    /*
+     * Counts the documents of a table from the index.
+     * The change of the document count that is not explained by the changes counted by the writers
+     *   (deletions by query and clearing the table) is added to the modification count.
+     */
+    private void refreshDocumentCount(String tableName, CachedTableStatistics cachedStatistics) 
+            throws StorageException {
+        TableStatistics tableStatistics = cachedStatistics.tableStatistics;
+        int documentCount = StatisticsCollector.countDocuments(getTableDataStoreWithoutDocumentCount(tableName));
+        int uncountedChanges = Math.max(0, 
+                Math.abs(documentCount - tableStatistics.getDocumentCount()) - cachedStatistics.countedChanges);
+        if (documentCount != tableStatistics.getDocumentCount() || uncountedChanges > 0) {
+            cachedStatistics.unpersistedUpdates++;
+        }
+        tableStatistics.setDocumentCount(documentCount);
+        tableStatistics.setModificationCount(tableStatistics.getModificationCount() + uncountedChanges);
+        cachedStatistics.documentCountStale = false;
+        cachedStatistics.countedChanges = 0;
+    }
+    
+    private static boolean isAnalyzeNeeded(TableStatistics tableStatistics) {
+        return tableStatistics.getModificationCount() 
+                > ANALYZE_THRESHOLD_BASE + ANALYZE_THRESHOLD_RATIO * tableStatistics.getDocumentCount();
     }
     
     /**
@@ -195,18 +579,74 @@ public class RelationManager {
      * @throws StorageException
      */
     public Tuple getTupleByID(String tableName, IDField idField) throws StorageException {
-        // construct the ID query
-        Query tupleIDQuery = new TermQuery(new Term(SchemaConstants._ID, idField.getValue().toString()));
-        
-        // find the tuple using DataReader
-        DataReader dataReader = getTableDataReader(tableName, tupleIDQuery);
+        List<Tuple> tuples = getTuplesByID(tableName, Arrays.asList(idField));
+        return tuples.isEmpty() ? null : tuples.get(0);
+    }
+    
+    /**
+     * Gets the tuples in a table by their _id fields, in one batch.
+     * The IDs are resolved directly from the terms dictionary of the _id field (see TupleIDLookup),
+     *   using the shared reader of the table, or the current read snapshot.
+     * 
+     * @param tableName, the name of the table, case insensitive
+     * @param idFields, the IDFields to lookup
+     * @return the found tuples, in the order of the given IDs. The IDs that don't exist are left out.
+     * @throws StorageException
+     */
+    public List<Tuple> getTuplesByID(String tableName, List<IDField> idFields) throws StorageException {
+        DataReader dataReader = getTableDataReader(tableName, null);
         dataReader.setPayloadAdded(false);
+        dataReader.setSharedReaderEnabled(true);
+        dataReader.setLookupIDs(idFields);
 
-        dataReader.open(); 
-        Tuple tuple = dataReader.getNextTuple();
+        List<Tuple> tuples = new ArrayList<>();
+        dataReader.open();
+        Tuple tuple;
+        while ((tuple = dataReader.getNextTuple()) != null) {
+            tuples.add(tuple);
+        }
         dataReader.close();
 
-        return tuple;
+        return tuples;
+    }
+    
+    /**
+     * Registers a listener that is notified every time the table is written (see ITableWriteListener).
+     * The listeners are kept in memory, they need to be registered again when the system restarts.
+     * 
+     * @param tableName, the name of the table, case insensitive
+     * @param writeListener
+     */
+    public void addTableWriteListener(String tableName, ITableWriteListener writeListener) {
+        tableWriteListeners.computeIfAbsent(tableName.toLowerCase(), key -> new CopyOnWriteArrayList<>())
+                .add(writeListener);
+    }
+    
+    /**
+     * Removes a write listener of a table.
+     * 
+     * @param tableName, the name of the table, case insensitive
+     * @param writeListener
+     */
+    public void removeTableWriteListener(String tableName, ITableWriteListener writeListener) {
+        List<ITableWriteListener> listeners = tableWriteListeners.get(tableName.toLowerCase());
+        if (listeners != null) {
+            listeners.remove(writeListener);
+        }
+    }
+    
+    /**
+     * Gets the write listeners of a table.
+     * 
+     * @param tableName, the name of the table, case insensitive
+     * @return
+     */
+    public List<ITableWriteListener> getTableWriteListeners(String tableName) {
+        List<ITableWriteListener> listeners = tableWriteListeners.get(tableName.toLowerCase());
+        if (listeners == null) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(listeners);
     }
     
     /**
@@ -221,12 +661,14 @@ public class RelationManager {
         if (isSystemCatalog(tableName)) {
             throw new StorageException("modify system catalog is not allowed");
         }
-        return new DataWriter(getTableDataStore(tableName), getTableAnalyzer(tableName));
+        return new DataWriter(getTableDataStore(tableName), getTableAnalyzer(tableName), tableName.toLowerCase());
     }
     
     /**
      * Gets a DataReader for a table based on a query.
      * DataReader can return tuples that match the query.
+     * If a read snapshot is current on the thread when the DataReader is opened, 
+     *   the DataReader reads the table from the snapshot (see ReadSnapshot).
      * 
      * @param tableName, the name of a table, case insensitive
      * @param tupleQuery, the query to run on the table
@@ -235,7 +677,9 @@ public class RelationManager {
      */
     public DataReader getTableDataReader(String tableName, Query tupleQuery) throws StorageException {
         DataStore tableDataStore = getTableDataStore(tableName);
-        return new DataReader(tableDataStore, tupleQuery);
+        DataReader dataReader = new DataReader(tableDataStore, tupleQuery);
+        dataReader.setSnapshotEnabled(! isSystemCatalog(tableName));
+        return dataReader;
     }
     
     /**
@@ -246,9 +690,56 @@ public class RelationManager {
      * @throws StorageException
      */
     public DataStore getTableDataStore(String tableName) throws StorageException {
-        String tableDirectory = getTableDirectory(tableName);
+        DataStore tableDataStore = getTableDataStoreWithoutDocumentCount(tableName);
+        
+        // the number of documents is kept in the in-memory table statistics,
+        //   it's only counted again if documents may have been removed since it was counted
+        if (! isSystemCatalog(tableName)) {
+            synchronized (statisticsCatalogLock) {
+                CachedTableStatistics cachedStatistics = getCachedTableStatistics(tableName.toLowerCase());
+                if (cachedStatistics != null) {
+                    if (cachedStatistics.documentCountStale) {
+                        refreshDocumentCount(tableName.toLowerCase(), cachedStatistics);
+                    }
+                    tableDataStore.incrementNumDocuments(cachedStatistics.tableStatistics.getDocumentCount());
+                }
+            }
+        }
+        return tableDataStore;
+    }
+    
+    /*
+     * Gets the DataStore of a table, whose number of documents is 0.
+     */
+    private DataStore getTableDataStoreWithoutDocumentCount(String tableName) throws StorageException {
+        // the directory and the properties are in the same tuple of the table catalog
+        Tuple tableCatalogTuple = getTableCatalogTuple(tableName);
+        if (tableCatalogTuple == null) {
+            throw new StorageException(String.format("The directory for table %s is not found.", tableName));
+        }
+        String tableDirectory = tableCatalogTuple.getField(CatalogConstants.TABLE_DIRECTORY).getValue().toString();
+        TableProperties tableProperties = CatalogConstants.getTableProperties(tableCatalogTuple);
         Schema tableSchema = getTableSchema(tableName);
-        return new DataStore(tableDirectory, tableSchema);
+        return new DataStore(tableDirectory, tableSchema, tableProperties);
+    }
+    
+    /**
+     * Gets the storage properties of a table.
+     * 
+     * @param tableName, the name of the table, case insensitive
+     * @return
+     * @throws StorageException
+     */
+    public TableProperties getTableProperties(String tableName) throws StorageException {
+        // get the tuples with tableName from the table catalog
+        Tuple tableCatalogTuple = getTableCatalogTuple(tableName);
+        
+        // if the tuple is not found, then the table name is not found
+        if (tableCatalogTuple == null) {
+            throw new StorageException(String.format("The properties of table %s are not found.", tableName));
+        }
+        
+        return CatalogConstants.getTableProperties(tableCatalogTuple);
     }
 
     /**
@@ -349,14 +840,15 @@ public class RelationManager {
      * This is a helper function that writes the table information to 
      *   the table catalog and the schema catalog.
      */
-    private void writeTableInfoToCatalog(String tableName, String indexDirectory, Schema schema, String luceneAnalyzerString) 
-            throws StorageException {   
+    private void writeTableInfoToCatalog(String tableName, String indexDirectory, Schema schema, String luceneAnalyzerString,
+            TableProperties tableProperties) throws StorageException {   
         // write table catalog
         DataStore tableCatalogStore = new DataStore(CatalogConstants.TABLE_CATALOG_DIRECTORY,
                 CatalogConstants.TABLE_CATALOG_SCHEMA);
         DataWriter dataWriter = new DataWriter(tableCatalogStore, LuceneAnalyzerConstants.getStandardAnalyzer());
         dataWriter.open();
-        dataWriter.insertTuple(CatalogConstants.getTableCatalogTuple(tableName, indexDirectory, luceneAnalyzerString));
+        dataWriter.insertTuple(CatalogConstants.getTableCatalogTuple(tableName, indexDirectory, luceneAnalyzerString,
+                tableProperties));
         dataWriter.close();
        
         // write schema catalog
@@ -372,6 +864,25 @@ public class RelationManager {
         dataWriter.close();
     }
     
+    /*
+     * This is a helper function that replaces the statistics of a table in the statistics catalog.
+     */
+    private void writeTableStatistics(TableStatistics tableStatistics) throws StorageException {
+        Query tableNameQuery = new TermQuery(new Term(CatalogConstants.TABLE_NAME, tableStatistics.getTableName()));
+        List<Tuple> statisticsCatalogTuples = CatalogConstants.getStatisticsCatalogTuples(tableStatistics);
+        
+        synchronized (statisticsCatalogLock) {
+            DataWriter dataWriter = new DataWriter(CatalogConstants.STATISTICS_CATALOG_DATASTORE, 
+                    LuceneAnalyzerConstants.getStandardAnalyzer());
+            dataWriter.open();
+            dataWriter.deleteTuple(tableNameQuery);
+            for (Tuple tuple : statisticsCatalogTuples) {
+                dataWriter.insertTuple(tuple);
+            }
+            dataWriter.close();
+        }
+    }
+    
     /*
      * Gets the a tuple of a table from table catalog.
      */
@@ -433,7 +944,8 @@ public class RelationManager {
      */
     private static boolean isSystemCatalog(String tableName) {
         return tableName.equalsIgnoreCase(CatalogConstants.TABLE_CATALOG) 
-                || tableName.equalsIgnoreCase(CatalogConstants.SCHEMA_CATALOG);
+                || tableName.equalsIgnoreCase(CatalogConstants.SCHEMA_CATALOG)
+                || tableName.equalsIgnoreCase(CatalogConstants.STATISTICS_CATALOG);
     }
     
     /*
@@ -445,12 +957,36 @@ public class RelationManager {
             writeTableInfoToCatalog(CatalogConstants.TABLE_CATALOG.toLowerCase(), 
                     new File(CatalogConstants.TABLE_CATALOG_DIRECTORY).getCanonicalPath(), 
                     CatalogConstants.TABLE_CATALOG_SCHEMA,
-                    LuceneAnalyzerConstants.standardAnalyzerString());
+                    LuceneAnalyzerConstants.standardAnalyzerString(),
+                    new TableProperties());
             // create schema catalog
             writeTableInfoToCatalog(CatalogConstants.SCHEMA_CATALOG.toLowerCase(),
                     new File(CatalogConstants.SCHEMA_CATALOG_DIRECTORY).getCanonicalPath(),
                     CatalogConstants.SCHEMA_CATALOG_SCHEMA,
-                    LuceneAnalyzerConstants.standardAnalyzerString()); 
+                    LuceneAnalyzerConstants.standardAnalyzerString(),
+                    new TableProperties()); 
+        } catch (IOException e) {
+            throw new StorageException(e);
+        }
+    }
+    
+    /*
+     * Initializes the statistics catalog table.
+     */
+    private void initializeStatisticsCatalog() throws StorageException {
+        try {
+            // create the empty index
+            DataWriter dataWriter = new DataWriter(CatalogConstants.STATISTICS_CATALOG_DATASTORE,
+                    LuceneAnalyzerConstants.getStandardAnalyzer());
+            dataWriter.open();
+            dataWriter.clearData();
+            dataWriter.close();
+            
+            writeTableInfoToCatalog(CatalogConstants.STATISTICS_CATALOG.toLowerCase(),
+                    new File(CatalogConstants.STATISTICS_CATALOG_DIRECTORY).getCanonicalPath(),
+                    CatalogConstants.STATISTICS_CATALOG_SCHEMA,
+                    LuceneAnalyzerConstants.standardAnalyzerString(),
+                    new TableProperties());
         } catch (IOException e) {
             throw new StorageException(e);
         }
@@ -477,8 +1013,7 @@ public class RelationManager {
         while ((t = dataReader.getNextTuple()) != null) {
             String tableName = (String)t.getField(CatalogConstants.TABLE_NAME).getValue();
 
-            if (!tableName.equals(CatalogConstants.SCHEMA_CATALOG.toLowerCase())
-                    && !tableName.equals(CatalogConstants.TABLE_CATALOG.toLowerCase())) {
+            if (! isSystemCatalog(tableName)) {
                 result.add(new TableMetadata(tableName, getTableSchema(tableName)));
             }
         }
@@ -486,4 +1021,23 @@ public class RelationManager {
 
         return result;
     }
+    
+    /*
+     * The in-memory statistics of a table, with the state of the updates that are not in the statistics catalog.
+     */
+    private static class CachedTableStatistics {
+        
+        private final TableStatistics tableStatistics;
+        // whether documents may have been removed since the document count was counted from the index
+        private boolean documentCountStale = false;
+        // the deletions and updates counted by the writers since the document count was counted
+        private int countedChanges = 0;
+        // the number of updates since the statistics were written to the statistics catalog
+        private int unpersistedUpdates = 0;
+        
+        private CachedTableStatistics(TableStatistics tableStatistics) {
+            this.tableStatistics = tableStatistics;
+        }
+        
+    }
 }
@@ -0,0 +1,175 @@
+package edu.uci.ics.textdb.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
+
+import edu.uci.ics.textdb.api.exception.StorageException;
+import edu.uci.ics.textdb.storage.constants.LuceneDirectoryConstants;
+
+/**
+ * SharedIndexReaders keeps one open IndexReader and IndexSearcher per table, shared by the DataReaders
+ *   that opt in (currently the lookups by _id), instead of each DataReader opening the index again.
+ *
+ * When a DataReader acquires the shared searcher, the reader is checked against the latest commit of the table.
+ *   If the table has been written, the reader is reopened with DirectoryReader.openIfChanged,
+ *   which reuses the unchanged segments. The old reader is closed after its last user releases it.
+ *
+ * The shared reader of a table is released when the table is deleted.
+ *
+ * Each table has its own lock, so checking and reopening the reader of one table
+ *   doesn't block the DataReaders of the other tables.
+ *
+ */
+class SharedIndexReaders {
+
+    // the shared readers of the tables, keyed by the absolute path of the table directory
+    private static final ConcurrentHashMap<String, TableEntry> tableEntries = new ConcurrentHashMap<>();
+
+    /*
+     * Gets the up-to-date shared searcher of a table.
+     * The reference count of the searcher's reader is incremented,
+     *   the caller must call decRef() on the reader when it's done.
+     */
+    static IndexSearcher acquireIndexSearcher(DataStore dataStore) throws IOException, StorageException {
+        String tableKey = DecodedTupleCache.getTableKey(dataStore);
+        while (true) {
+            TableEntry tableEntry = tableEntries.computeIfAbsent(tableKey, key -> new TableEntry());
+            synchronized (tableEntry) {
+                if (tableEntry.invalidated) {
+                    // the table was invalidated after the entry was looked up, use the new entry
+                    continue;
+                }
+                if (tableEntry.sharedReader == null) {
+                    tableEntry.sharedReader = openSharedReader(dataStore);
+                } else {
+                    tableEntry.sharedReader = refreshSharedReader(tableEntry.sharedReader, dataStore);
+                }
+                IndexSearcher indexSearcher = tableEntry.sharedReader.indexSearcher;
+                indexSearcher.getIndexReader().incRef();
+                return indexSearcher;
+            }
+        }
+    }
+
+    /*
+     * Releases the shared reader of a table, for example, when the table is deleted.
+     */
+    static void invalidateTable(String tableKey) throws IOException {
+        TableEntry tableEntry = tableEntries.remove(tableKey);
+        if (tableEntry == null) {
+            return;
+        }
+        synchronized (tableEntry) {
+            tableEntry.invalidated = true;
+            if (tableEntry.sharedReader != null) {
+                tableEntry.sharedReader.release(new ArrayList<>());
+                tableEntry.sharedReader = null;
+            }
+        }
+    }
+
+    private static SharedReader openSharedReader(DataStore dataStore) throws IOException, StorageException {
+        List<DirectoryReader> shardReaders = new ArrayList<>();
+        for (String shardDirectory : dataStore.getShardDirectories()) {
+            shardReaders.add(openShardReader(dataStore, shardDirectory));
+        }
+        return new SharedReader(shardReaders, dataStore);
+    }
+
+    private static DirectoryReader openShardReader(DataStore dataStore, String shardDirectory)
+            throws IOException, StorageException {
+        Directory indexDirectory = LuceneDirectoryConstants.getLuceneDirectory(
+                dataStore.getTableProperties().getDirectoryType(), shardDirectory);
+        return DirectoryReader.open(indexDirectory);
+    }
+
+    /*
+     * Returns the same shared reader if no shard has changed,
+     *   otherwise returns a new shared reader, and releases the old one.
+     */
+    private static SharedReader refreshSharedReader(SharedReader sharedReader, DataStore dataStore)
+            throws IOException, StorageException {
+        List<String> shardDirectories = dataStore.getShardDirectories();
+        if (shardDirectories.size() != sharedReader.shardReaders.size()) {
+            sharedReader.release(new ArrayList<>());
+            return openSharedReader(dataStore);
+        }
+
+        boolean changed = false;
+        List<DirectoryReader> newShardReaders = new ArrayList<>();
+        List<DirectoryReader> keptShardReaders = new ArrayList<>();
+        for (int i = 0; i < shardDirectories.size(); i++) {
+            DirectoryReader shardReader = sharedReader.shardReaders.get(i);
+            DirectoryReader newShardReader;
+            try {
+                newShardReader = DirectoryReader.openIfChanged(shardReader);
+            } catch (AlreadyClosedException e) {
+                // the in-memory directory of the table has been released
+                newShardReader = openShardReader(dataStore, shardDirectories.get(i));
+            }
+            if (newShardReader == null) {
+                newShardReaders.add(shardReader);
+                keptShardReaders.add(shardReader);
+            } else {
+                newShardReaders.add(newShardReader);
+                changed = true;
+            }
+        }
+        if (! changed) {
+            return sharedReader;
+        }
+        sharedReader.release(keptShardReaders);
+        return new SharedReader(newShardReaders, dataStore);
+    }
+
+    /*
+     * The shared reader of one table, guarded by the entry's own lock.
+     */
+    private static class TableEntry {
+        private SharedReader sharedReader;
+        // set when the entry is removed, a DataReader that still holds the entry must look it up again
+        private boolean invalidated = false;
+    }
+
+    private static class SharedReader {
+        // the shared reader holds one reference to each of its shard readers
+        private final List<DirectoryReader> shardReaders;
+        private final IndexSearcher indexSearcher;
+
+        private SharedReader(List<DirectoryReader> shardReaders, DataStore dataStore) throws IOException {
+            this.shardReaders = shardReaders;
+            IndexReader indexReader;
+            if (shardReaders.size() == 1) {
+                indexReader = shardReaders.get(0);
+                // the top reader is the shard reader itself, it needs its own reference
+                indexReader.incRef();
+            } else {
+                // the multi reader increments the reference count of the shard readers
+                indexReader = new MultiReader(shardReaders.stream().toArray(IndexReader[]::new), false);
+            }
+            this.indexSearcher = DataReader.createLuceneIndexSearcher(indexReader, dataStore);
+        }
+
+        /*
+         * Releases the references of this shared reader, except the shard readers that are kept by the next one.
+         */
+        private void release(List<DirectoryReader> keptShardReaders) throws IOException {
+            indexSearcher.getIndexReader().decRef();
+            for (DirectoryReader shardReader : shardReaders) {
+                if (! keptShardReaders.contains(shardReader)) {
+                    shardReader.decRef();
+                }
+            }
+        }
+    }
+
+}
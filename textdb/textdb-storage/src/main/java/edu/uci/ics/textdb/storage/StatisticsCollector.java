@@ -0,0 +1,242 @@
+package edu.uci.ics.textdb.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.NumericUtils;
+
+import edu.uci.ics.textdb.api.exception.StorageException;
+import edu.uci.ics.textdb.api.schema.Attribute;
+import edu.uci.ics.textdb.api.schema.AttributeType;
+
+/**
+ * StatisticsCollector computes the statistics of a table (see TableStatistics).
+ *
+ * All the statistics are computed from the terms dictionaries of the table's index,
+ *   the stored documents are never read. Numeric attributes use the full-precision trie terms.
+ *
+ * StatisticsCollector is only accessible inside the storage package, through RelationManager.
+ *
+ */
+class StatisticsCollector {
+
+    // the number of most frequent terms kept per attribute
+    public static final int TOP_K_TERMS = 20;
+    // the number of buckets of a numeric histogram
+    public static final int HISTOGRAM_BUCKETS = 20;
+    // terms longer than this are truncated in the top terms, to keep the catalog rows small
+    public static final int MAX_TERM_LENGTH = 100;
+
+    /**
+     * Counts the (non-deleted) documents of a table.
+     *
+     * @param dataStore
+     * @return
+     * @throws StorageException
+     */
+    static int countDocuments(DataStore dataStore) throws StorageException {
+        try (IndexReader indexReader = DataReader.openLuceneIndexReader(dataStore)) {
+            return indexReader.numDocs();
+        } catch (IOException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Collects the table-level and attribute-level statistics of a table.
+     *
+     * @param tableName
+     * @param dataStore
+     * @return
+     * @throws StorageException
+     */
+    static TableStatistics collectStatistics(String tableName, DataStore dataStore) throws StorageException {
+        try (IndexReader indexReader = DataReader.openLuceneIndexReader(dataStore)) {
+            TableStatistics tableStatistics = new TableStatistics(tableName);
+            tableStatistics.setDocumentCount(indexReader.numDocs());
+            tableStatistics.setModificationCount(0);
+            tableStatistics.setAnalyzeTime(System.currentTimeMillis());
+
+            List<AttributeStatistics> attributeStatistics = new ArrayList<>();
+            for (Attribute attribute : dataStore.getSchema().getAttributes()) {
+                AttributeType attributeType = attribute.getAttributeType();
+                // _id values are unique, and list attributes are not indexed
+                if (attributeType == AttributeType._ID_TYPE || attributeType == AttributeType.LIST) {
+                    continue;
+                }
+                AttributeStatistics statistics = new AttributeStatistics(
+                        attribute.getAttributeName(), attributeType.toString().toLowerCase());
+                Terms terms = MultiFields.getTerms(indexReader, attribute.getAttributeName());
+                if (terms != null) {
+                    statistics.setDocumentCount(terms.getDocCount());
+                    if (attributeType == AttributeType.INTEGER || attributeType == AttributeType.DOUBLE) {
+                        collectNumericStatistics(terms, attributeType, statistics);
+                    } else {
+                        collectTermStatistics(terms, attributeType, statistics);
+                    }
+                }
+                attributeStatistics.add(statistics);
+            }
+            tableStatistics.setAttributeStatistics(attributeStatistics);
+
+            return tableStatistics;
+        } catch (IOException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+    }
+
+    /*
+     * Collects the distinct count, the min and max values and the top terms of a
+     *   STRING, DATE or TEXT attribute in one pass over its terms.
+     */
+    private static void collectTermStatistics(Terms terms, AttributeType attributeType, AttributeStatistics statistics)
+            throws IOException {
+        // a min-heap of the most frequent terms seen so far
+        PriorityQueue<TermCount> topTerms = new PriorityQueue<>(TOP_K_TERMS + 1);
+        long distinctCount = 0;
+        String minValue = null;
+        String maxValue = null;
+
+        TermsEnum termsEnum = terms.iterator();
+        BytesRef term;
+        while ((term = termsEnum.next()) != null) {
+            distinctCount++;
+            int docFreq = termsEnum.docFreq();
+            if (topTerms.size() < TOP_K_TERMS || docFreq > topTerms.peek().docFreq) {
+                topTerms.add(new TermCount(term.utf8ToString(), docFreq));
+                if (topTerms.size() > TOP_K_TERMS) {
+                    topTerms.poll();
+                }
+            }
+            if (attributeType != AttributeType.TEXT) {
+                // terms are enumerated in sorted order
+                if (minValue == null) {
+                    minValue = term.utf8ToString();
+                }
+                maxValue = term.utf8ToString();
+            }
+        }
+
+        statistics.setDistinctCount(distinctCount);
+        statistics.setMinValue(minValue);
+        statistics.setMaxValue(maxValue);
+
+        List<TermCount> sortedTopTerms = new ArrayList<>(topTerms);
+        Collections.sort(sortedTopTerms, Collections.reverseOrder());
+        LinkedHashMap<String, Integer> topTermMap = new LinkedHashMap<>();
+        for (TermCount termCount : sortedTopTerms) {
+            String termString = termCount.term;
+            if (termString.length() > MAX_TERM_LENGTH) {
+                termString = termString.substring(0, MAX_TERM_LENGTH);
+            }
+            topTermMap.put(termString, termCount.docFreq);
+        }
+        statistics.setTopTerms(topTermMap);
+
+        if (attributeType == AttributeType.TEXT && terms.getDocCount() > 0 && terms.getSumTotalTermFreq() >= 0) {
+            statistics.setAverageFieldLength((double) terms.getSumTotalTermFreq() / terms.getDocCount());
+        }
+    }
+
+    /*
+     * Collects the distinct count, the min and max values and the equi-width histogram
+     *   of an INTEGER or DOUBLE attribute.
+     * The first pass over the full-precision terms finds the min and max values (terms are sorted by value),
+     *   the second pass fills in the histogram buckets.
+     */
+    private static void collectNumericStatistics(Terms terms, AttributeType attributeType, AttributeStatistics statistics)
+            throws IOException {
+        long distinctCount = 0;
+        double minValue = 0;
+        double maxValue = 0;
+
+        TermsEnum termsEnum = getFullPrecisionTermsEnum(terms, attributeType);
+        BytesRef term;
+        while ((term = termsEnum.next()) != null) {
+            double value = getNumericValue(term, attributeType);
+            if (distinctCount == 0) {
+                minValue = value;
+            }
+            maxValue = value;
+            distinctCount++;
+        }
+        if (distinctCount == 0) {
+            return;
+        }
+
+        statistics.setDistinctCount(distinctCount);
+        if (attributeType == AttributeType.INTEGER) {
+            statistics.setMinValue(Integer.toString((int) minValue));
+            statistics.setMaxValue(Integer.toString((int) maxValue));
+        } else {
+            statistics.setMinValue(Double.toString(minValue));
+            statistics.setMaxValue(Double.toString(maxValue));
+        }
+
+        long[] buckets = new long[HISTOGRAM_BUCKETS];
+        double bucketWidth = (maxValue - minValue) / HISTOGRAM_BUCKETS;
+        termsEnum = getFullPrecisionTermsEnum(terms, attributeType);
+        while ((term = termsEnum.next()) != null) {
+            double value = getNumericValue(term, attributeType);
+            int bucket = bucketWidth == 0 ? 0 : (int) ((value - minValue) / bucketWidth);
+            // the max value belongs to the last bucket
+            bucket = Math.min(bucket, HISTOGRAM_BUCKETS - 1);
+            buckets[bucket] += termsEnum.docFreq();
+        }
+        List<Long> histogram = new ArrayList<>();
+        for (long bucketCount : buckets) {
+            histogram.add(bucketCount);
+        }
+        statistics.setHistogram(histogram);
+    }
+
+    /*
+     * Numeric fields are indexed as trie terms with several precisions,
+     *   only the full-precision terms represent the actual values.
+     */
+    private static TermsEnum getFullPrecisionTermsEnum(Terms terms, AttributeType attributeType) throws IOException {
+        if (attributeType == AttributeType.INTEGER) {
+            return NumericUtils.filterPrefixCodedInts(terms.iterator());
+        } else {
+            return NumericUtils.filterPrefixCodedLongs(terms.iterator());
+        }
+    }
+
+    private static double getNumericValue(BytesRef term, AttributeType attributeType) {
+        if (attributeType == AttributeType.INTEGER) {
+            return NumericUtils.prefixCodedToInt(term);
+        } else {
+            return NumericUtils.sortableLongToDouble(NumericUtils.prefixCodedToLong(term));
+        }
+    }
+
+    private static class TermCount implements Comparable<TermCount> {
+        private final String term;
+        private final int docFreq;
+
+        private TermCount(String term, int docFreq) {
+            this.term = term;
+            this.docFreq = docFreq;
+        }
+
+        @Override
+        public int compareTo(TermCount other) {
+            int compare = Integer.compare(this.docFreq, other.docFreq);
+            if (compare == 0) {
+                // among terms with the same frequency, the smaller term is kept
+                compare = other.term.compareTo(this.term);
+            }
+            return compare;
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+package edu.uci.ics.textdb.storage;
+
+import edu.uci.ics.textdb.storage.constants.LuceneDirectoryConstants;
+
+/**
+ * TableProperties contains the table-level storage options of a table.
+ *
+ * The properties are chosen when the table is created (see RelationManager.createTable),
+ *   and they are stored in the table catalog together with the table's directory and analyzer.
+ * Every storage code path (DataReader, DataWriter) reads them from the table's DataStore.
+ *
+ * A default TableProperties object has the same behavior as a table created without any properties.
+ *
+ * Properties:
+ *
+ *   payloadStored: if true, DataWriter analyzes every TEXT field at index time,
+ *     and stores the token payload (in token order) as a compact binary stored field.
+ *     DataReader then decodes the payload directly instead of reconstructing it from the term vectors.
+ *
+ *   directoryType: the Lucene Directory implementation used to open the table's index,
+ *     for example, memory-mapped I/O, NIO, or RAM-resident (see LuceneDirectoryConstants).
+ *     "memory" makes an in-memory table that is never written to disk, for small and intermediate tables.
+ *
+ *   numShards: the number of Lucene indexes the table is partitioned into.
+ *     A table with one shard keeps its index in the table directory,
+ *     a table with more shards keeps shard i in the sub-directory "shard-i" of the table directory.
+ *
+ *   partitionType: how DataWriter routes inserted tuples to shards,
+ *     "hash" (by the hash of the tuple's _id) or "roundrobin".
+ *
+ *   storedFieldsCompression: the compression mode of stored fields,
+ *     "speed" (faster reads and writes) or "compression" (smaller index).
+ *
+ *   termVectorsStored: whether TEXT fields keep term vectors. Term vectors are used to reconstruct
+ *     the payload, tables that don't need the payload (for example, only scanned by regex) can skip them.
+ *     If a table has neither term vectors nor a stored payload, DataReader doesn't add the payload,
+ *     and the operators that need it generate it from the text.
+ *
+ *   offsetsIndexed: whether the postings of TEXT fields include character offsets.
+ *
+ */
+public class TableProperties {
+
+    public static final String HASH_PARTITION = "hash";
+    public static final String ROUND_ROBIN_PARTITION = "roundrobin";
+
+    public static final String BEST_SPEED_COMPRESSION = "speed";
+    public static final String BEST_COMPRESSION = "compression";
+
+    private boolean payloadStored = false;
+    private String directoryType = LuceneDirectoryConstants.fsDirectoryString();
+    private int numShards = 1;
+    private String partitionType = HASH_PARTITION;
+    private String storedFieldsCompression = BEST_SPEED_COMPRESSION;
+    private boolean termVectorsStored = true;
+    private boolean offsetsIndexed = true;
+
+    public TableProperties() {
+    }
+
+    public boolean isPayloadStored() {
+        return payloadStored;
+    }
+
+    public void setPayloadStored(boolean payloadStored) {
+        this.payloadStored = payloadStored;
+    }
+
+    public String getDirectoryType() {
+        return directoryType;
+    }
+
+    public void setDirectoryType(String directoryType) {
+        this.directoryType = directoryType;
+    }
+
+    public int getNumShards() {
+        return numShards;
+    }
+
+    public void setNumShards(int numShards) {
+        this.numShards = numShards;
+    }
+
+    public String getPartitionType() {
+        return partitionType;
+    }
+
+    public void setPartitionType(String partitionType) {
+        this.partitionType = partitionType;
+    }
+
+    public String getStoredFieldsCompression() {
+        return storedFieldsCompression;
+    }
+
+    public void setStoredFieldsCompression(String storedFieldsCompression) {
+        this.storedFieldsCompression = storedFieldsCompression;
+    }
+
+    public boolean isTermVectorsStored() {
+        return termVectorsStored;
+    }
+
+    public void setTermVectorsStored(boolean termVectorsStored) {
+        this.termVectorsStored = termVectorsStored;
+    }
+
+    public boolean isOffsetsIndexed() {
+        return offsetsIndexed;
+    }
+
+    public void setOffsetsIndexed(boolean offsetsIndexed) {
+        this.offsetsIndexed = offsetsIndexed;
+    }
+
+}
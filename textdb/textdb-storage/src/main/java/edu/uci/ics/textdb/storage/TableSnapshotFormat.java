@@ -0,0 +1,322 @@
+package edu.uci.ics.textdb.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+
+import edu.uci.ics.textdb.api.constants.SchemaConstants;
+import edu.uci.ics.textdb.api.exception.StorageException;
+import edu.uci.ics.textdb.api.field.IField;
+import edu.uci.ics.textdb.api.field.StringField;
+import edu.uci.ics.textdb.api.schema.Attribute;
+import edu.uci.ics.textdb.api.schema.AttributeType;
+import edu.uci.ics.textdb.api.schema.Schema;
+import edu.uci.ics.textdb.api.tuple.Tuple;
+import edu.uci.ics.textdb.storage.constants.LuceneDirectoryConstants;
+
+/**
+ * TableSnapshotFormat writes a table to a stream as a binary snapshot, and reads it back.
+ *   A snapshot contains the catalog entry of the table, its schema and its data.
+ *
+ * The data is not exported tuple by tuple: the snapshot contains the files of the latest commit
+ *   of each shard, which are already compressed by Lucene (see TableProperties).
+ *   Importing a snapshot adds these segments to the new table as they are (IndexWriter.addIndexes),
+ *   the documents are not analyzed or indexed again.
+ *
+ * The format (all numbers are big-endian):
+ *   magic number, format version
+ *   catalog entry: number of fields, then (name, has value, value) of each field of the table catalog tuple
+ *   schema: number of attributes, then (name, type) of each attribute except _id
+ *   data: number of shards, then for each shard:
+ *     number of files, then (file name, length, bytes, CRC32 of the bytes) of each file
+ *   end marker, CRC32 of the whole snapshot before it
+ *
+ * Both export and import stream the files with a fixed size buffer,
+ *   the size of a table that can be exported is not limited by memory.
+ *
+ */
+class TableSnapshotFormat {
+
+    // "TXDS"
+    private static final int MAGIC_NUMBER = 0x54584453;
+    private static final int FORMAT_VERSION = 1;
+    private static final int END_MARKER = 0xFFFFFFFF;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /*
+     * Writes the snapshot of a table to the output stream. The output stream is flushed but not closed.
+     *
+     * The files of a shard are opened before any of them is written, so that the snapshot stays consistent
+     *   if a writer commits to the table (and deletes the files of the old commit) during the export.
+     */
+    static void writeSnapshot(Tuple tableCatalogTuple, DataStore dataStore, OutputStream outputStream)
+            throws StorageException {
+        CRC32 snapshotChecksum = new CRC32();
+        DataOutputStream output = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(outputStream, BUFFER_SIZE), snapshotChecksum));
+        try {
+            output.writeInt(MAGIC_NUMBER);
+            output.writeInt(FORMAT_VERSION);
+
+            // catalog entry
+            List<Attribute> catalogAttributes = tableCatalogTuple.getSchema().getAttributes();
+            output.writeInt(catalogAttributes.size());
+            for (Attribute attribute : catalogAttributes) {
+                Object value = tableCatalogTuple.getField(attribute.getAttributeName()).getValue();
+                output.writeUTF(attribute.getAttributeName());
+                output.writeBoolean(value != null);
+                if (value != null) {
+                    output.writeUTF(value.toString());
+                }
+            }
+
+            // schema
+            List<Attribute> schemaAttributes = new ArrayList<>();
+            for (Attribute attribute : dataStore.getSchema().getAttributes()) {
+                if (! attribute.getAttributeName().equals(SchemaConstants._ID)) {
+                    schemaAttributes.add(attribute);
+                }
+            }
+            output.writeInt(schemaAttributes.size());
+            for (Attribute attribute : schemaAttributes) {
+                output.writeUTF(attribute.getAttributeName());
+                output.writeUTF(attribute.getAttributeType().name());
+            }
+
+            // data
+            List<String> shardDirectories = dataStore.getShardDirectories();
+            output.writeInt(shardDirectories.size());
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (String shardDirectory : shardDirectories) {
+                Directory directory = LuceneDirectoryConstants.getLuceneDirectory(
+                        dataStore.getTableProperties().getDirectoryType(), shardDirectory);
+                writeShard(directory, output, buffer);
+            }
+
+            output.writeInt(END_MARKER);
+            // the checksum of everything before it
+            output.writeLong(snapshotChecksum.getValue());
+            output.flush();
+        } catch (IOException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+    }
+
+    private static void writeShard(Directory directory, DataOutputStream output, byte[] buffer) throws IOException {
+        Map<String, IndexInput> fileInputs = new LinkedHashMap<>();
+        try {
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                Collection<String> fileNames = reader.getIndexCommit().getFileNames();
+                // the segments_N file is written last, so that an importer always sees the segment files first
+                Stream.concat(
+                        fileNames.stream().filter(fileName -> ! fileName.startsWith(IndexFileNames.SEGMENTS)),
+                        fileNames.stream().filter(fileName -> fileName.startsWith(IndexFileNames.SEGMENTS)))
+                        .forEachOrdered(fileName -> fileInputs.put(fileName, null));
+                for (String fileName : fileInputs.keySet()) {
+                    fileInputs.put(fileName, directory.openInput(fileName, IOContext.READONCE));
+                }
+            }
+
+            output.writeInt(fileInputs.size());
+            for (Map.Entry<String, IndexInput> entry : fileInputs.entrySet()) {
+                IndexInput fileInput = entry.getValue();
+                long length = fileInput.length();
+                output.writeUTF(entry.getKey());
+                output.writeLong(length);
+
+                CRC32 fileChecksum = new CRC32();
+                long remaining = length;
+                while (remaining > 0) {
+                    int chunkSize = (int) Math.min(buffer.length, remaining);
+                    fileInput.readBytes(buffer, 0, chunkSize);
+                    fileChecksum.update(buffer, 0, chunkSize);
+                    output.write(buffer, 0, chunkSize);
+                    remaining -= chunkSize;
+                }
+                output.writeLong(fileChecksum.getValue());
+            }
+        } finally {
+            for (IndexInput fileInput : fileInputs.values()) {
+                if (fileInput != null) {
+                    fileInput.close();
+                }
+            }
+        }
+    }
+
+    /*
+     * Reads a snapshot from the input stream, and writes the index files of each shard
+     *   to a sub directory of the staging directory. The input stream is not closed.
+     *
+     * The whole snapshot is verified before it returns, a corrupted or truncated snapshot throws a StorageException.
+     */
+    static TableSnapshot readSnapshot(InputStream inputStream, Path stagingDirectory) throws StorageException {
+        CRC32 snapshotChecksum = new CRC32();
+        DataInputStream input = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(inputStream, BUFFER_SIZE), snapshotChecksum));
+        try {
+            if (input.readInt() != MAGIC_NUMBER) {
+                throw new StorageException("The stream is not a table snapshot.");
+            }
+            int formatVersion = input.readInt();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new StorageException(String.format("Table snapshot format version %d is not supported.", formatVersion));
+            }
+
+            // catalog entry
+            Map<String, String> catalogEntry = new LinkedHashMap<>();
+            int numCatalogFields = readCount(input);
+            for (int i = 0; i < numCatalogFields; i++) {
+                String fieldName = input.readUTF();
+                catalogEntry.put(fieldName, input.readBoolean() ? input.readUTF() : null);
+            }
+
+            // schema
+            int numAttributes = readCount(input);
+            List<Attribute> attributes = new ArrayList<>();
+            for (int i = 0; i < numAttributes; i++) {
+                String attributeName = input.readUTF();
+                String attributeType = input.readUTF();
+                try {
+                    attributes.add(new Attribute(attributeName, AttributeType.valueOf(attributeType)));
+                } catch (IllegalArgumentException e) {
+                    throw new StorageException(String.format("Attribute type %s is not valid.", attributeType));
+                }
+            }
+
+            // data
+            int numShards = readCount(input);
+            List<Path> shardDirectories = new ArrayList<>();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int i = 0; i < numShards; i++) {
+                Path shardDirectory = stagingDirectory.resolve("shard-" + i);
+                Files.createDirectories(shardDirectory);
+                try (Directory directory = FSDirectory.open(shardDirectory)) {
+                    readShard(directory, input, buffer);
+                }
+                shardDirectories.add(shardDirectory);
+            }
+
+            if (input.readInt() != END_MARKER) {
+                throw new StorageException("Table snapshot is corrupted: the end marker is not found.");
+            }
+            long expectedChecksum = snapshotChecksum.getValue();
+            if (input.readLong() != expectedChecksum) {
+                throw new StorageException("Table snapshot is corrupted: checksum mismatch.");
+            }
+
+            return new TableSnapshot(catalogEntry, new Schema(attributes.stream().toArray(Attribute[]::new)),
+                    shardDirectories);
+        } catch (IOException e) {
+            throw new StorageException("Table snapshot can't be read: " + e.getMessage(), e);
+        }
+    }
+
+    private static void readShard(Directory directory, DataInputStream input, byte[] buffer)
+            throws IOException, StorageException {
+        List<String> fileNames = new ArrayList<>();
+        int numFiles = readCount(input);
+        for (int i = 0; i < numFiles; i++) {
+            String fileName = input.readUTF();
+            long length = input.readLong();
+            if (length < 0 || fileName.isEmpty() || fileName.contains("/") || fileName.contains("\\")) {
+                throw new StorageException("Table snapshot is corrupted: invalid file entry.");
+            }
+
+            CRC32 fileChecksum = new CRC32();
+            try (IndexOutput fileOutput = directory.createOutput(fileName, IOContext.DEFAULT)) {
+                long remaining = length;
+                while (remaining > 0) {
+                    int chunkSize = (int) Math.min(buffer.length, remaining);
+                    input.readFully(buffer, 0, chunkSize);
+                    fileChecksum.update(buffer, 0, chunkSize);
+                    fileOutput.writeBytes(buffer, 0, chunkSize);
+                    remaining -= chunkSize;
+                }
+            }
+            if (input.readLong() != fileChecksum.getValue()) {
+                throw new StorageException(String.format("Table snapshot is corrupted: checksum mismatch in file %s.", fileName));
+            }
+            fileNames.add(fileName);
+        }
+        directory.sync(fileNames);
+    }
+
+    private static int readCount(DataInputStream input) throws IOException, StorageException {
+        int count = input.readInt();
+        if (count < 0) {
+            throw new StorageException("Table snapshot is corrupted: invalid count.");
+        }
+        return count;
+    }
+
+    /*
+     * The content of a snapshot that has been read:
+     *   the catalog entry, the schema (without _id) and the staged index of each shard.
+     */
+    static class TableSnapshot {
+        private final Map<String, String> catalogEntry;
+        private final Schema schema;
+        private final List<Path> shardDirectories;
+
+        private TableSnapshot(Map<String, String> catalogEntry, Schema schema, List<Path> shardDirectories) {
+            this.catalogEntry = catalogEntry;
+            this.schema = schema;
+            this.shardDirectories = shardDirectories;
+        }
+
+        Schema getSchema() {
+            return schema;
+        }
+
+        List<Path> getShardDirectories() {
+            return shardDirectories;
+        }
+
+        String getLuceneAnalyzerString() throws StorageException {
+            String luceneAnalyzerString = catalogEntry.get(CatalogConstants.TABLE_LUCENE_ANALYZER);
+            if (luceneAnalyzerString == null) {
+                throw new StorageException("Table snapshot doesn't contain the lucene analyzer of the table.");
+            }
+            return luceneAnalyzerString;
+        }
+
+        /*
+         * Gets the table properties from the catalog entry,
+         *   a property missing in the snapshot is set to its default value.
+         */
+        TableProperties getTableProperties() {
+            List<IField> fields = new ArrayList<>();
+            for (Attribute attribute : CatalogConstants.TABLE_CATALOG_SCHEMA.getAttributes()) {
+                fields.add(new StringField(catalogEntry.get(attribute.getAttributeName())));
+            }
+            return CatalogConstants.getTableProperties(
+                    new Tuple(CatalogConstants.TABLE_CATALOG_SCHEMA, fields.stream().toArray(IField[]::new)));
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+package edu.uci.ics.textdb.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * TableStatistics contains the statistics of a table, which are used to estimate
+ *   the cost and the selectivity of the operators running on the table.
+ *
+ * The statistics are collected by RelationManager.analyzeTable and stored in the statistics catalog.
+ * They are kept up to date in memory when the table is written:
+ *   every time a DataWriter of the table is closed, the inserted tuples are added to the document count
+ *   and the number of modified tuples is added to modificationCount. After deletions, the documents are counted
+ *   again the next time the statistics are read. When modificationCount exceeds a fraction of the document count,
+ *   the table is analyzed again. The statistics are written to the statistics catalog
+ *   every RelationManager.STATISTICS_PERSIST_INTERVAL updates, or by RelationManager.persistTableStatistics.
+ *
+ * Statistics:
+ *
+ *   documentCount: the number of (non-deleted) documents in the table.
+ *
+ *   modificationCount: the number of tuples inserted, deleted or updated since the table was last analyzed.
+ *
+ *   analyzeTime: the time (in milliseconds since the epoch) when the table was last analyzed.
+ *
+ *   attributeStatistics: the statistics of each attribute (see AttributeStatistics), in schema order.
+ *
+ */
+public class TableStatistics {
+
+    private String tableName;
+    private int documentCount = 0;
+    private int modificationCount = 0;
+    private long analyzeTime = 0;
+    private List<AttributeStatistics> attributeStatistics = new ArrayList<>();
+
+    public TableStatistics() {
+    }
+
+    public TableStatistics(String tableName) {
+        this.tableName = tableName;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public void setTableName(String tableName) {
+        this.tableName = tableName;
+    }
+
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    public void setDocumentCount(int documentCount) {
+        this.documentCount = documentCount;
+    }
+
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
+    public void setModificationCount(int modificationCount) {
+        this.modificationCount = modificationCount;
+    }
+
+    public long getAnalyzeTime() {
+        return analyzeTime;
+    }
+
+    public void setAnalyzeTime(long analyzeTime) {
+        this.analyzeTime = analyzeTime;
+    }
+
+    /*
+     * Attribute statistics are stored in their own rows of the statistics catalog,
+     *   they are not part of the serialized table-level statistics.
+     */
+    @JsonIgnore
+    public List<AttributeStatistics> getAttributeStatistics() {
+        return attributeStatistics;
+    }
+
+    @JsonIgnore
+    public void setAttributeStatistics(List<AttributeStatistics> attributeStatistics) {
+        this.attributeStatistics = attributeStatistics;
+    }
+
+    /**
+     * Gets the statistics of an attribute, returns null if the attribute is not found.
+     *
+     * @param attributeName
+     * @return
+     */
+    public AttributeStatistics getAttributeStatistics(String attributeName) {
+        for (AttributeStatistics statistics : attributeStatistics) {
+            if (statistics.getAttributeName().equalsIgnoreCase(attributeName)) {
+                return statistics;
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,103 @@
+package edu.uci.ics.textdb.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+import edu.uci.ics.textdb.api.constants.SchemaConstants;
+import edu.uci.ics.textdb.api.field.IDField;
+
+/**
+ * TupleIDLookup resolves tuple IDs to Lucene docIDs directly from the terms dictionary of the _id field,
+ *   without running a query (no weight, scorer or collector is created).
+ *
+ * For each segment, the IDs are looked up with TermsEnum.seekExact in sorted order.
+ *   IDs outside the segment's [min, max] term range are skipped without a seek,
+ *   and the in-memory terms index of the segment rejects most of the other missing IDs without reading the disk.
+ *
+ * An ID is resolved to the first live document that has it, deleted documents are skipped.
+ *
+ */
+class TupleIDLookup {
+
+    /**
+     * Resolves the IDs to the docIDs of an index reader.
+     *
+     * @param indexReader
+     * @param idFields
+     * @return the found documents in the order of the given IDs, the IDs that are not found are left out
+     * @throws IOException
+     */
+    static ScoreDoc[] lookupDocIDs(IndexReader indexReader, List<IDField> idFields) throws IOException {
+        BytesRef[] idTerms = new BytesRef[idFields.size()];
+        for (int i = 0; i < idFields.size(); i++) {
+            idTerms[i] = new BytesRef(idFields.get(i).getValue().toString());
+        }
+        Integer[] sortedOrder = new Integer[idTerms.length];
+        for (int i = 0; i < sortedOrder.length; i++) {
+            sortedOrder[i] = i;
+        }
+        Arrays.sort(sortedOrder, Comparator.comparing(i -> idTerms[i]));
+
+        int[] docIDs = new int[idTerms.length];
+        Arrays.fill(docIDs, -1);
+        int remaining = idTerms.length;
+
+        for (LeafReaderContext leafContext : indexReader.leaves()) {
+            if (remaining == 0) {
+                break;
+            }
+            Terms terms = leafContext.reader().terms(SchemaConstants._ID);
+            if (terms == null) {
+                continue;
+            }
+            BytesRef minTerm = terms.getMin();
+            BytesRef maxTerm = terms.getMax();
+            Bits liveDocs = leafContext.reader().getLiveDocs();
+            TermsEnum termsEnum = terms.iterator();
+            PostingsEnum postings = null;
+
+            for (int i : sortedOrder) {
+                if (docIDs[i] != -1) {
+                    continue;
+                }
+                BytesRef idTerm = idTerms[i];
+                if ((minTerm != null && idTerm.compareTo(minTerm) < 0) || (maxTerm != null && idTerm.compareTo(maxTerm) > 0)) {
+                    continue;
+                }
+                if (! termsEnum.seekExact(idTerm)) {
+                    continue;
+                }
+                postings = termsEnum.postings(postings, PostingsEnum.NONE);
+                for (int docID = postings.nextDoc(); docID != DocIdSetIterator.NO_MORE_DOCS; docID = postings.nextDoc()) {
+                    if (liveDocs == null || liveDocs.get(docID)) {
+                        docIDs[i] = leafContext.docBase + docID;
+                        remaining--;
+                        break;
+                    }
+                }
+            }
+        }
+
+        List<ScoreDoc> scoreDocs = new ArrayList<>();
+        for (int docID : docIDs) {
+            if (docID != -1) {
+                scoreDocs.add(new ScoreDoc(docID, Float.NaN));
+            }
+        }
+        return scoreDocs.stream().toArray(ScoreDoc[]::new);
+    }
+
+}
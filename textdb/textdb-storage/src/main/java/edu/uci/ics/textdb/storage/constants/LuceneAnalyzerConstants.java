@@ -1,6 +1,7 @@
 package edu.uci.ics.textdb.storage.constants;
 
 import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.cn.smart.SmartChineseAnalyzer;
@@ -15,11 +16,18 @@ import edu.uci.ics.textdb.api.exception.DataFlowException;
  * LuceneAnalyzerConstants contains helper functions specifically
  *   used when dealing with different Lucene analyzers.
  * 
+ * Each analyzer configuration is created only once, and the same analyzer object is returned
+ *   to all the callers. Lucene analyzers are thread-safe: each thread reuses its own TokenStream components.
+ *   Because the analyzers are shared, callers must NOT close them, 
+ *   and must close every TokenStream they get from them.
+ * 
  * @author Zuozhi Wang
  *
  */
 public class LuceneAnalyzerConstants {
     
+    // the shared analyzers, keyed by their analyzer string
+    private static final ConcurrentHashMap<String, Analyzer> analyzerRegistry = new ConcurrentHashMap<>();
     
     public static String standardAnalyzerString() {
         return "standard";
@@ -57,14 +65,21 @@ public class LuceneAnalyzerConstants {
                 throw new DataFlowException(luceneAnalyzerString + " is not a valid lucene analyzer");
             }
         } else if (luceneAnalyzerString.equals("smartchinese")) {
-            return new SmartChineseAnalyzer();
+            return getChineseAnalyzer();
         }
         throw new DataFlowException(luceneAnalyzerString + " is not a valid lucene analyzer");
     }
 
 
     public static Analyzer getStandardAnalyzer() {
-        return new StandardAnalyzer();
+        return analyzerRegistry.computeIfAbsent(standardAnalyzerString(), key -> new StandardAnalyzer());
+    }
+    
+    /**
+     * @return the smart chinese analyzer, its dictionaries are loaded only once.
+     */
+    public static Analyzer getChineseAnalyzer() {
+        return analyzerRegistry.computeIfAbsent(chineseAnalyzerString(), key -> new SmartChineseAnalyzer());
     }
 
     /**
@@ -72,6 +87,18 @@ public class LuceneAnalyzerConstants {
      * @throws DataFlowException
      */
     public static Analyzer getNGramAnalyzer(int gramNum) throws DataFlowException {
+        String analyzerString = nGramAnalyzerString(gramNum);
+        Analyzer nGramAnalyzer = analyzerRegistry.get(analyzerString);
+        if (nGramAnalyzer == null) {
+            // if two threads build the same analyzer at the same time, only the first one is kept
+            Analyzer newAnalyzer = buildNGramAnalyzer(gramNum);
+            Analyzer previousAnalyzer = analyzerRegistry.putIfAbsent(analyzerString, newAnalyzer);
+            nGramAnalyzer = previousAnalyzer != null ? previousAnalyzer : newAnalyzer;
+        }
+        return nGramAnalyzer;
+    }
+    
+    private static Analyzer buildNGramAnalyzer(int gramNum) throws DataFlowException {
         try {
             return CustomAnalyzer.builder()
                     .withTokenizer(NGramTokenizerFactory.class, 
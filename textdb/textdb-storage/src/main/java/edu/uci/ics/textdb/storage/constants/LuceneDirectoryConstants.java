@@ -0,0 +1,237 @@
+package edu.uci.ics.textdb.storage.constants;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.FSLockFactory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.RAMDirectory;
+
+import edu.uci.ics.textdb.api.exception.StorageException;
+
+/**
+ * LuceneDirectoryConstants contains helper functions specifically
+ *   used when dealing with different Lucene Directory implementations.
+ *
+ * The directory type of a table is stored in the table catalog (see TableProperties),
+ *   and every storage code path opens the table's index through getLuceneDirectory.
+ *
+ * Directory types currently supported are:
+ *   "fs", the default, lets Lucene choose the best file system directory for the platform.
+ *   "mmap", memory-mapped I/O, same as calling mmapDirectoryString().
+ *   "mmap-n", memory-mapped I/O with a maximum chunk size of n MB, for example, "mmap-256",
+ *     same as calling mmapDirectoryString(256).
+ *   "nio", file system directory using NIO positional reads.
+ *   "ram", the whole index is kept in memory and persisted to the index directory on disk.
+ *     The index is loaded from disk when it's first opened, and all readers and writers of the
+ *     table share the same in-memory index. The index is written back to disk every time a writer is closed.
+ *     This type is only suitable for small tables (for example, dictionaries and the plan store).
+ *   "memory", the whole index is kept in memory and never written to disk. The table starts empty
+ *     every time the system restarts. This type is for intermediate results (for example, tables written
+ *     by IndexSink in one stage of a pipeline and read by the next one), which don't need to be durable.
+ *
+ */
+public class LuceneDirectoryConstants {
+
+    private static final String MMAP = "mmap";
+
+    // in-memory directories of "ram" and "memory" tables, keyed by the absolute path of the index directory
+    private static final Map<String, RAMDirectory> ramDirectoryMap = new HashMap<>();
+
+    public static String fsDirectoryString() {
+        return "fs";
+    }
+
+    public static String mmapDirectoryString() {
+        return MMAP;
+    }
+
+    public static String mmapDirectoryString(int maxChunkSizeMB) {
+        return MMAP + "-" + maxChunkSizeMB;
+    }
+
+    public static String nioDirectoryString() {
+        return "nio";
+    }
+
+    public static String ramDirectoryString() {
+        return "ram";
+    }
+
+    public static String memoryDirectoryString() {
+        return "memory";
+    }
+
+    /**
+     * Checks if the directory type string is valid.
+     *
+     * @param directoryTypeString
+     * @throws StorageException, if the directoryTypeString is invalid
+     */
+    public static void checkDirectoryString(String directoryTypeString) throws StorageException {
+        if (directoryTypeString.equals(fsDirectoryString()) || directoryTypeString.equals(MMAP)
+                || directoryTypeString.equals(nioDirectoryString()) || directoryTypeString.equals(ramDirectoryString())
+                || directoryTypeString.equals(memoryDirectoryString())) {
+            return;
+        }
+        getMMapChunkSize(directoryTypeString);
+    }
+
+    /**
+     * Opens the Lucene directory of an index folder based on the directory type string.
+     *
+     * @param directoryTypeString
+     * @param indexDirectory
+     * @return
+     * @throws IOException
+     * @throws StorageException, if the directoryTypeString is invalid
+     */
+    public static Directory getLuceneDirectory(String directoryTypeString, String indexDirectory)
+            throws IOException, StorageException {
+        Path indexPath = Paths.get(indexDirectory);
+        if (directoryTypeString.equals(fsDirectoryString())) {
+            return FSDirectory.open(indexPath);
+        } else if (directoryTypeString.equals(MMAP)) {
+            return new MMapDirectory(indexPath);
+        } else if (directoryTypeString.startsWith(MMAP + "-")) {
+            int maxChunkSize = getMMapChunkSize(directoryTypeString) << 20;
+            return new MMapDirectory(indexPath, FSLockFactory.getDefault(), maxChunkSize);
+        } else if (directoryTypeString.equals(nioDirectoryString())) {
+            return new NIOFSDirectory(indexPath);
+        } else if (directoryTypeString.equals(ramDirectoryString())) {
+            return getRAMDirectory(indexPath, true);
+        } else if (directoryTypeString.equals(memoryDirectoryString())) {
+            return getRAMDirectory(indexPath, false);
+        }
+        throw new StorageException(directoryTypeString + " is not a valid lucene directory type");
+    }
+
+    /**
+     * Writes the in-memory index of a "ram" table back to its index directory on disk.
+     * It does nothing for other directory types.
+     * This function must be called after the IndexWriter is closed.
+     *
+     * @param directoryTypeString
+     * @param indexDirectory
+     * @throws IOException
+     */
+    public static void persistLuceneDirectory(String directoryTypeString, String indexDirectory) throws IOException {
+        if (! directoryTypeString.equals(ramDirectoryString())) {
+            return;
+        }
+        Path indexPath = Paths.get(indexDirectory).toAbsolutePath().normalize();
+        synchronized (ramDirectoryMap) {
+            RAMDirectory ramDirectory = ramDirectoryMap.get(indexPath.toString());
+            if (ramDirectory == null) {
+                return;
+            }
+            Files.createDirectories(indexPath);
+            try (FSDirectory fsDirectory = FSDirectory.open(indexPath)) {
+                Set<String> ramFiles = new HashSet<>(Arrays.asList(ramDirectory.listAll()));
+                Set<String> fsFiles = new HashSet<>(Arrays.asList(fsDirectory.listAll()));
+
+                // index files are write-once, only new files need to be copied.
+                // the segments_N file is copied last, so that the on-disk index is always valid.
+                List<String> newFiles = new ArrayList<>();
+                for (String fileName : ramFiles) {
+                    if (! fsFiles.contains(fileName) && ! fileName.equals(IndexWriter.WRITE_LOCK_NAME)) {
+                        newFiles.add(fileName);
+                    }
+                }
+                newFiles.sort((file1, file2) -> Boolean.compare(
+                        file1.startsWith(IndexFileNames.SEGMENTS), file2.startsWith(IndexFileNames.SEGMENTS)));
+                for (String fileName : newFiles) {
+                    fsDirectory.copyFrom(ramDirectory, fileName, fileName, IOContext.DEFAULT);
+                }
+                fsDirectory.sync(newFiles);
+
+                // delete files that are no longer referenced by the in-memory index
+                for (String fileName : fsFiles) {
+                    if (! ramFiles.contains(fileName) && ! fileName.equals(IndexWriter.WRITE_LOCK_NAME)) {
+                        fsDirectory.deleteFile(fileName);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases the in-memory index of a "ram" or "memory" table, for example, when the table is deleted.
+     *
+     * @param indexDirectory
+     */
+    public static void releaseLuceneDirectory(String indexDirectory) {
+        Path indexPath = Paths.get(indexDirectory).toAbsolutePath().normalize();
+        synchronized (ramDirectoryMap) {
+            RAMDirectory ramDirectory = ramDirectoryMap.remove(indexPath.toString());
+            if (ramDirectory != null) {
+                ramDirectory.close();
+            }
+        }
+    }
+
+    /*
+     * Gets the shared in-memory directory of an index folder.
+     * If it's opened for the first time, the index is loaded from disk ("ram" tables),
+     *   or an empty index is created ("memory" tables).
+     */
+    private static RAMDirectory getRAMDirectory(Path indexPath, boolean loadFromDisk) throws IOException {
+        indexPath = indexPath.toAbsolutePath().normalize();
+        synchronized (ramDirectoryMap) {
+            RAMDirectory ramDirectory = ramDirectoryMap.get(indexPath.toString());
+            if (ramDirectory == null) {
+                ramDirectory = new RAMDirectory();
+                if (! loadFromDisk) {
+                    // the empty index can be read before anything is written to the table
+                    try (IndexWriter indexWriter = new IndexWriter(ramDirectory, 
+                            new IndexWriterConfig(new KeywordAnalyzer()))) {
+                        indexWriter.commit();
+                    }
+                } else if (Files.exists(indexPath)) {
+                    try (FSDirectory fsDirectory = FSDirectory.open(indexPath)) {
+                        for (String fileName : fsDirectory.listAll()) {
+                            if (! fileName.equals(IndexWriter.WRITE_LOCK_NAME)) {
+                                ramDirectory.copyFrom(fsDirectory, fileName, fileName, IOContext.READONCE);
+                            }
+                        }
+                    }
+                }
+                ramDirectoryMap.put(indexPath.toString(), ramDirectory);
+            }
+            return ramDirectory;
+        }
+    }
+
+    private static int getMMapChunkSize(String directoryTypeString) throws StorageException {
+        if (directoryTypeString.startsWith(MMAP + "-")) {
+            try {
+                int maxChunkSizeMB = Integer.parseInt(directoryTypeString.substring(MMAP.length() + 1));
+                // the chunk size must be a positive power of 2, and fit in an int
+                if (maxChunkSizeMB > 0 && maxChunkSizeMB <= 1024 && Integer.bitCount(maxChunkSizeMB) == 1) {
+                    return maxChunkSizeMB;
+                }
+            } catch (NumberFormatException e) {
+                // fall through
+            }
+        }
+        throw new StorageException(directoryTypeString + " is not a valid lucene directory type");
+    }
+
+}
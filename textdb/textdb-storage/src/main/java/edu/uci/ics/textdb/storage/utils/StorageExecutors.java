@@ -0,0 +1,93 @@
+package edu.uci.ics.textdb.storage.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * StorageExecutors holds the thread pools shared by the parallel read paths of the storage layer.
+ * 
+ * The reader pool is created lazily, has one thread per available processor,
+ *   and uses daemon threads so that it never prevents the JVM from exiting.
+ * 
+ * The prefetch pool runs the background threads of prefetching DataReaders. A prefetching thread
+ *   waits for its consumer most of the time, so it has its own (unbounded) pool, 
+ *   instead of taking a thread of the reader pool away from the CPU-bound tasks.
+ * 
+ * The statistics executor has one thread, which analyzes the tables marked by the RelationManager
+ *   one at a time in the background.
+ *
+ */
+public class StorageExecutors {
+    
+    private static volatile ExecutorService readerExecutor = null;
+    private static volatile ExecutorService prefetchExecutor = null;
+    private static volatile ExecutorService statisticsExecutor = null;
+    
+    /**
+     * Gets the shared thread pool used to read indexes in parallel.
+     * 
+     * @return
+     */
+    public static ExecutorService getReaderExecutor() {
+        if (readerExecutor == null) {
+            synchronized (StorageExecutors.class) {
+                if (readerExecutor == null) {
+                    readerExecutor = Executors.newFixedThreadPool(
+                            Runtime.getRuntime().availableProcessors(), new DaemonThreadFactory("textdb-reader"));
+                }
+            }
+        }
+        return readerExecutor;
+    }
+    
+    /**
+     * Gets the shared thread pool used by the prefetching DataReaders.
+     * 
+     * @return
+     */
+    public static ExecutorService getPrefetchExecutor() {
+        if (prefetchExecutor == null) {
+            synchronized (StorageExecutors.class) {
+                if (prefetchExecutor == null) {
+                    prefetchExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("textdb-prefetch"));
+                }
+            }
+        }
+        return prefetchExecutor;
+    }
+    
+    /**
+     * Gets the single thread executor that analyzes tables in the background.
+     * 
+     * @return
+     */
+    public static ExecutorService getStatisticsExecutor() {
+        if (statisticsExecutor == null) {
+            synchronized (StorageExecutors.class) {
+                if (statisticsExecutor == null) {
+                    statisticsExecutor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("textdb-statistics"));
+                }
+            }
+        }
+        return statisticsExecutor;
+    }
+    
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final String namePrefix;
+        private final AtomicInteger threadCounter = new AtomicInteger(0);
+        
+        DaemonThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, namePrefix + "-" + threadCounter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
@@ -1,6 +1,8 @@
 package edu.uci.ics.textdb.storage.utils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.StringReader;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -8,14 +10,28 @@ import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.lucene50.Lucene50StoredFieldsFormat.Mode;
+import org.apache.lucene.codecs.lucene54.Lucene54Codec;
 import org.apache.lucene.document.DateTools;
 import org.apache.lucene.document.DateTools.Resolution;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.document.StoredField;
 import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.OutputStreamDataOutput;
+import org.apache.lucene.util.BytesRef;
 
 import edu.uci.ics.textdb.api.exception.StorageException;
 import edu.uci.ics.textdb.api.field.DateField;
@@ -27,9 +43,17 @@ import edu.uci.ics.textdb.api.field.ListField;
 import edu.uci.ics.textdb.api.field.StringField;
 import edu.uci.ics.textdb.api.field.TextField;
 import edu.uci.ics.textdb.api.schema.AttributeType;
+import edu.uci.ics.textdb.api.span.Span;
+import edu.uci.ics.textdb.storage.TableProperties;
 
 public class StorageUtils {
     
+    /*
+     * The prefix of the name of the stored field that keeps the precomputed payload of a TEXT attribute.
+     * The "_" prefix avoids conflicts with user attribute names, the same as the "_id" attribute.
+     */
+    public static final String PAYLOAD_FIELD_PREFIX = "_payload_";
+    
     public static IField getField(AttributeType attributeType, String fieldValue) throws ParseException {
         IField field = null;
         switch (attributeType) {
@@ -61,6 +85,21 @@ public class StorageUtils {
     }
 
     public static IndexableField getLuceneField(AttributeType attributeType, String attributeName, Object fieldValue) {
+        return getLuceneField(attributeType, attributeName, fieldValue, new TableProperties());
+    }
+    
+    /**
+     * Converts a field value to a Lucene field, 
+     *   TEXT fields are indexed according to the storage profile of the table.
+     * 
+     * @param attributeType
+     * @param attributeName
+     * @param fieldValue
+     * @param tableProperties
+     * @return
+     */
+    public static IndexableField getLuceneField(AttributeType attributeType, String attributeName, Object fieldValue,
+            TableProperties tableProperties) {
         IndexableField luceneField = null;
         switch (attributeType) {
         // _ID_TYPE is currently same as STRING
@@ -83,13 +122,20 @@ public class StorageUtils {
             // By default we enable positional indexing in Lucene so that we can
             // return
             // information about character offsets and token offsets
+            // offsets in postings and term vectors can be turned off in the table's storage profile
             org.apache.lucene.document.FieldType luceneFieldType = new org.apache.lucene.document.FieldType();
-            luceneFieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+            if (tableProperties.isOffsetsIndexed()) {
+                luceneFieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+            } else {
+                luceneFieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
+            }
             luceneFieldType.setStored(true);
-            luceneFieldType.setStoreTermVectors(true);
-            luceneFieldType.setStoreTermVectorOffsets(true);
-            luceneFieldType.setStoreTermVectorPayloads(true);
-            luceneFieldType.setStoreTermVectorPositions(true);
+            if (tableProperties.isTermVectorsStored()) {
+                luceneFieldType.setStoreTermVectors(true);
+                luceneFieldType.setStoreTermVectorOffsets(true);
+                luceneFieldType.setStoreTermVectorPayloads(true);
+                luceneFieldType.setStoreTermVectorPositions(true);
+            }
             luceneFieldType.setTokenized(true);
 
             luceneField = new org.apache.lucene.document.Field(attributeName, (String) fieldValue, luceneFieldType);
@@ -103,6 +149,127 @@ public class StorageUtils {
         return luceneField;
     }
     
+    /**
+     * Gets the Lucene codec that matches the storage profile of a table.
+     * 
+     * @param tableProperties
+     * @return
+     */
+    public static Codec getLuceneCodec(TableProperties tableProperties) {
+        if (TableProperties.BEST_COMPRESSION.equals(tableProperties.getStoredFieldsCompression())) {
+            return new Lucene54Codec(Mode.BEST_COMPRESSION);
+        }
+        return new Lucene54Codec(Mode.BEST_SPEED);
+    }
+    
+    /**
+     * Gets the name of the stored field that keeps the precomputed payload of a TEXT attribute.
+     * 
+     * @param attributeName
+     * @return
+     */
+    public static String getPayloadFieldName(String attributeName) {
+        return PAYLOAD_FIELD_PREFIX + attributeName;
+    }
+    
+    /**
+     * Analyzes the value of a TEXT field, and generates the payload of this field,
+     *   which is a list of spans (one for each token) in token order.
+     * 
+     * @param attributeName
+     * @param fieldValue
+     * @param luceneAnalyzer
+     * @return
+     * @throws IOException
+     */
+    public static List<Span> generatePayload(String attributeName, String fieldValue, Analyzer luceneAnalyzer) 
+            throws IOException {
+        List<Span> payload = new ArrayList<>();
+        
+        try (TokenStream tokenStream = luceneAnalyzer.tokenStream(null, new StringReader(fieldValue))) {
+            OffsetAttribute offsetAttribute = tokenStream.addAttribute(OffsetAttribute.class);
+            CharTermAttribute charTermAttribute = tokenStream.addAttribute(CharTermAttribute.class);
+            PositionIncrementAttribute positionIncrementAttribute = 
+                    tokenStream.addAttribute(PositionIncrementAttribute.class);
+            
+            int tokenPositionCounter = -1;
+            tokenStream.reset();
+            while (tokenStream.incrementToken()) {
+                tokenPositionCounter += positionIncrementAttribute.getPositionIncrement();
+                
+                int tokenPosition = tokenPositionCounter;
+                int charStart = offsetAttribute.startOffset();
+                int charEnd = offsetAttribute.endOffset();
+                String analyzedTermStr = charTermAttribute.toString();
+                String originalTermStr = fieldValue.substring(charStart, charEnd);
+
+                payload.add(new Span(attributeName, charStart, charEnd, analyzedTermStr, originalTermStr, tokenPosition));
+            }
+            tokenStream.end();
+        }
+        
+        return payload;
+    }
+    
+    /**
+     * Encodes the payload of a TEXT field into a compact binary stored field.
+     * 
+     * For each span, the binary format stores:
+     *   the token position (as the delta to the previous token position),
+     *   the start offset, the length, and the analyzed term.
+     * The original term is not stored, because it's a substring of the field value.
+     * 
+     * @param attributeName
+     * @param payload, the payload of this field, in token order
+     * @return
+     * @throws IOException
+     */
+    public static IndexableField getLucenePayloadField(String attributeName, List<Span> payload) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        OutputStreamDataOutput dataOutput = new OutputStreamDataOutput(byteStream);
+        
+        dataOutput.writeVInt(payload.size());
+        int lastTokenPosition = 0;
+        for (Span span : payload) {
+            dataOutput.writeVInt(span.getTokenOffset() - lastTokenPosition);
+            dataOutput.writeVInt(span.getStart());
+            dataOutput.writeVInt(span.getEnd() - span.getStart());
+            dataOutput.writeString(span.getKey());
+            lastTokenPosition = span.getTokenOffset();
+        }
+        dataOutput.close();
+        
+        return new StoredField(getPayloadFieldName(attributeName), byteStream.toByteArray());
+    }
+    
+    /**
+     * Decodes the payload of a TEXT field from the binary stored field 
+     *   generated by getLucenePayloadField.
+     * 
+     * @param attributeName
+     * @param fieldValue, the original value of the TEXT field
+     * @param payloadBytes
+     * @return
+     */
+    public static List<Span> decodePayload(String attributeName, String fieldValue, BytesRef payloadBytes) {
+        ByteArrayDataInput dataInput = new ByteArrayDataInput(payloadBytes.bytes, payloadBytes.offset, payloadBytes.length);
+        
+        int payloadSize = dataInput.readVInt();
+        List<Span> payload = new ArrayList<>(payloadSize);
+        int tokenPosition = 0;
+        for (int i = 0; i < payloadSize; i++) {
+            tokenPosition += dataInput.readVInt();
+            int charStart = dataInput.readVInt();
+            int charEnd = charStart + dataInput.readVInt();
+            String analyzedTermStr = dataInput.readString();
+            String originalTermStr = fieldValue.substring(charStart, charEnd);
+            
+            payload.add(new Span(attributeName, charStart, charEnd, analyzedTermStr, originalTermStr, tokenPosition));
+        }
+        
+        return payload;
+    }
+    
     public static void deleteDirectory(String indexDir) throws StorageException {
         Path directory = Paths.get(indexDir);
         if (!Files.exists(directory)) {
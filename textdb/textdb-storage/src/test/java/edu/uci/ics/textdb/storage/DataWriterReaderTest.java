@@ -1,7 +1,10 @@
 package edu.uci.ics.textdb.storage;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.junit.AfterClass;
@@ -12,6 +15,12 @@ import org.junit.Test;
 import edu.uci.ics.textdb.api.constants.SchemaConstants;
 import edu.uci.ics.textdb.api.constants.TestConstants;
 import edu.uci.ics.textdb.api.exception.TextDBException;
+import edu.uci.ics.textdb.api.field.ListField;
+import edu.uci.ics.textdb.api.field.TextField;
+import edu.uci.ics.textdb.api.schema.Attribute;
+import edu.uci.ics.textdb.api.schema.AttributeType;
+import edu.uci.ics.textdb.api.schema.Schema;
+import edu.uci.ics.textdb.api.span.Span;
 import edu.uci.ics.textdb.api.tuple.Tuple;
 import edu.uci.ics.textdb.api.utils.Utils;
 import edu.uci.ics.textdb.storage.constants.LuceneAnalyzerConstants;
@@ -19,6 +28,7 @@ import edu.uci.ics.textdb.storage.constants.LuceneAnalyzerConstants;
 public class DataWriterReaderTest {
     
     public static final String PEOPLE_TABLE = "data_writer_reader_test_people";
+    public static final String PEOPLE_TABLE_PAYLOAD_STORED = "data_writer_reader_test_people_payload_stored";
 
     @BeforeClass
     public static void setUp() throws TextDBException {
@@ -34,12 +44,26 @@ public class DataWriterReaderTest {
             peopleDataWriter.insertTuple(tuple);
         }
         peopleDataWriter.close();
+        
+        // create the people table that stores the payload at index time
+        TableProperties payloadStoredProperties = new TableProperties();
+        payloadStoredProperties.setPayloadStored(true);
+        relationManager.createTable(PEOPLE_TABLE_PAYLOAD_STORED, "../index/test_tables/" + PEOPLE_TABLE_PAYLOAD_STORED, 
+                TestConstants.SCHEMA_PEOPLE, LuceneAnalyzerConstants.standardAnalyzerString(), payloadStoredProperties);
+        
+        DataWriter payloadStoredDataWriter = relationManager.getTableDataWriter(PEOPLE_TABLE_PAYLOAD_STORED);
+        payloadStoredDataWriter.open();
+        for (Tuple tuple : TestConstants.getSamplePeopleTuples()) {
+            payloadStoredDataWriter.insertTuple(tuple);
+        }
+        payloadStoredDataWriter.close();
     }
     
     @AfterClass
     public static void cleanUp() throws TextDBException {
         RelationManager relationManager = RelationManager.getRelationManager();
         relationManager.deleteTable(PEOPLE_TABLE);
+        relationManager.deleteTable(PEOPLE_TABLE_PAYLOAD_STORED);
     }
 
     @Test
@@ -60,6 +84,181 @@ public class DataWriterReaderTest {
         Assert.assertTrue(equals);
     }
 
+    /*
+     * Tests that the payload decoded from the stored field is the same as 
+     *   the payload reconstructed from the term vectors.
+     */
+    @Test
+    public void testStoredPayload() throws Exception {
+        List<Tuple> termVectorResults = readAllTuplesWithPayload(PEOPLE_TABLE);
+        List<Tuple> storedPayloadResults = readAllTuplesWithPayload(PEOPLE_TABLE_PAYLOAD_STORED);
+        
+        Assert.assertEquals(termVectorResults.size(), storedPayloadResults.size());
+        for (Tuple storedPayloadTuple : storedPayloadResults) {
+            Tuple termVectorTuple = termVectorResults.stream()
+                    .filter(tuple -> tuple.getField(TestConstants.FIRST_NAME).equals(
+                            storedPayloadTuple.getField(TestConstants.FIRST_NAME)))
+                    .findFirst().get();
+            
+            ListField<Span> termVectorPayload = termVectorTuple.getField(SchemaConstants.PAYLOAD);
+            ListField<Span> storedPayload = storedPayloadTuple.getField(SchemaConstants.PAYLOAD);
+            Assert.assertEquals(new HashSet<>(termVectorPayload.getValue()), new HashSet<>(storedPayload.getValue()));
+        }
+    }
+    
+    /*
+     * Tests that the payload restricted to a few terms has the same spans of these terms as the full payload,
+     *   whether it's read from the postings or filtered from the cached full payload.
+     */
+    @Test
+    public void testRestrictedPayload() throws Exception {
+        List<String> payloadTerms = Arrays.asList("angry", "clooney");
+        for (String tableName : Arrays.asList(PEOPLE_TABLE, PEOPLE_TABLE_PAYLOAD_STORED)) {
+            DecodedTupleCache.clear();
+            List<Tuple> restrictedResults = readAllTuplesWithRestrictedPayload(tableName, payloadTerms);
+            List<Tuple> fullResults = readAllTuplesWithPayload(tableName);
+            List<Tuple> cachedRestrictedResults = readAllTuplesWithRestrictedPayload(tableName, payloadTerms);
+            
+            Assert.assertEquals(fullResults.size(), restrictedResults.size());
+            for (int i = 0; i < fullResults.size(); i++) {
+                ListField<Span> fullPayload = fullResults.get(i).getField(SchemaConstants.PAYLOAD);
+                List<Span> expectedPayload = fullPayload.getValue().stream()
+                        .filter(span -> payloadTerms.contains(span.getKey())).collect(Collectors.toList());
+                
+                ListField<Span> restrictedPayload = restrictedResults.get(i).getField(SchemaConstants.PAYLOAD);
+                ListField<Span> cachedRestrictedPayload = cachedRestrictedResults.get(i).getField(SchemaConstants.PAYLOAD);
+                Assert.assertEquals(new HashSet<>(expectedPayload), new HashSet<>(restrictedPayload.getValue()));
+                Assert.assertEquals(new HashSet<>(expectedPayload), new HashSet<>(cachedRestrictedPayload.getValue()));
+            }
+        }
+    }
+    
+    /*
+     * Tests that the tuples decoded in parallel are the same as the tuples decoded one by one,
+     *   in the same order if the order is preserved.
+     */
+    @Test
+    public void testParallelDecoding() throws Exception {
+        RelationManager relationManager = RelationManager.getRelationManager();
+        String tableName = "data_writer_reader_test_parallel_decoding";
+        Schema tableSchema = new Schema(new Attribute("content", AttributeType.TEXT));
+        relationManager.deleteTable(tableName);
+        relationManager.createTable(tableName, "../index/test_tables/" + tableName, 
+                tableSchema, LuceneAnalyzerConstants.standardAnalyzerString());
+        
+        DataWriter dataWriter = relationManager.getTableDataWriter(tableName);
+        dataWriter.open();
+        for (int i = 0; i < 10 * DataReader.DECODING_BATCH_SIZE + 7; i++) {
+            dataWriter.insertTuple(new Tuple(tableSchema, new TextField("parallel decoding document " + i)));
+        }
+        dataWriter.close();
+        
+        DecodedTupleCache.clear();
+        List<Tuple> sequentialResults = readAllTuples(tableName, false, true);
+        DecodedTupleCache.clear();
+        List<Tuple> orderedResults = readAllTuples(tableName, true, true);
+        DecodedTupleCache.clear();
+        List<Tuple> unorderedResults = readAllTuples(tableName, true, false);
+        
+        Assert.assertEquals(sequentialResults, orderedResults);
+        Assert.assertEquals(sequentialResults.size(), unorderedResults.size());
+        Assert.assertEquals(new HashSet<>(sequentialResults), new HashSet<>(unorderedResults));
+        
+        // closing the reader before all the tuples are returned stops the decoding
+        DataReader dataReader = relationManager.getTableDataReader(tableName, new MatchAllDocsQuery());
+        dataReader.setParallelDecoding(true);
+        dataReader.open();
+        Assert.assertNotNull(dataReader.getNextTuple());
+        dataReader.close();
+        
+        relationManager.deleteTable(tableName);
+    }
+    
+    /*
+     * Tests that a prefetching DataReader returns the same tuples in the same order,
+     *   and that it can be closed while the background thread is waiting for the consumer.
+     */
+    @Test
+    public void testPrefetching() throws Exception {
+        List<Tuple> expectedResults = readAllTuplesWithPayload(PEOPLE_TABLE);
+        
+        DataReader dataReader = RelationManager.getRelationManager().getTableDataReader(
+                PEOPLE_TABLE, new MatchAllDocsQuery());
+        dataReader.setPayloadAdded(true);
+        // a queue smaller than the table, so that the background thread has to wait
+        dataReader.setPrefetchSize(2);
+        
+        Tuple nextTuple = null;
+        List<Tuple> returnedTuples = new ArrayList<Tuple>();
+        dataReader.open();
+        while ((nextTuple = dataReader.getNextTuple()) != null) {
+            returnedTuples.add(nextTuple);
+        }
+        Assert.assertNull(dataReader.getNextTuple());
+        dataReader.close();
+        Assert.assertEquals(expectedResults, returnedTuples);
+        
+        dataReader.open();
+        Assert.assertEquals(expectedResults.get(0), dataReader.getNextTuple());
+        dataReader.close();
+    }
+    
+    private static List<Tuple> readAllTuples(String tableName, boolean parallelDecoding, boolean orderPreserved) 
+            throws Exception {
+        DataReader dataReader = RelationManager.getRelationManager().getTableDataReader(
+                tableName, new MatchAllDocsQuery());
+        dataReader.setPayloadAdded(true);
+        dataReader.setParallelDecoding(parallelDecoding);
+        dataReader.setOrderPreserved(orderPreserved);
+        
+        Tuple nextTuple = null;
+        List<Tuple> returnedTuples = new ArrayList<Tuple>();
+        
+        dataReader.open();
+        while ((nextTuple = dataReader.getNextTuple()) != null) {
+            returnedTuples.add(nextTuple);
+        }
+        dataReader.close();
+        
+        return returnedTuples;
+    }
+    
+    private static List<Tuple> readAllTuplesWithPayload(String tableName) throws Exception {
+        DataReader dataReader = RelationManager.getRelationManager().getTableDataReader(
+                tableName, new MatchAllDocsQuery());
+        dataReader.setPayloadAdded(true);
+        
+        Tuple nextTuple = null;
+        List<Tuple> returnedTuples = new ArrayList<Tuple>();
+        
+        dataReader.open();
+        while ((nextTuple = dataReader.getNextTuple()) != null) {
+            returnedTuples.add(nextTuple);
+        }
+        dataReader.close();
+        
+        return returnedTuples;
+    }
+
+    private static List<Tuple> readAllTuplesWithRestrictedPayload(String tableName, List<String> payloadTerms)
+            throws Exception {
+        DataReader dataReader = RelationManager.getRelationManager().getTableDataReader(
+                tableName, new MatchAllDocsQuery());
+        dataReader.setPayloadAdded(true);
+        dataReader.setPayloadTerms(payloadTerms);
+        
+        Tuple nextTuple = null;
+        List<Tuple> returnedTuples = new ArrayList<Tuple>();
+        
+        dataReader.open();
+        while ((nextTuple = dataReader.getNextTuple()) != null) {
+            returnedTuples.add(nextTuple);
+        }
+        dataReader.close();
+        
+        return returnedTuples;
+    }
+
     public static boolean containsAllResults(List<Tuple> expectedResults, List<Tuple> exactResults) {
         expectedResults = Utils.removeFields(expectedResults, SchemaConstants._ID, SchemaConstants.PAYLOAD);
         exactResults = Utils.removeFields(exactResults, SchemaConstants._ID, SchemaConstants.PAYLOAD);
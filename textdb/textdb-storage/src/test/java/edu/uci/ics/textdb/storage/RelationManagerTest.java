@@ -1,28 +1,42 @@
 package edu.uci.ics.textdb.storage;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import edu.uci.ics.textdb.api.constants.SchemaConstants;
 import edu.uci.ics.textdb.api.exception.StorageException;
 import edu.uci.ics.textdb.api.exception.TextDBException;
 import edu.uci.ics.textdb.api.field.IDField;
+import edu.uci.ics.textdb.api.field.IntegerField;
 import edu.uci.ics.textdb.api.field.StringField;
+import edu.uci.ics.textdb.api.field.TextField;
 import edu.uci.ics.textdb.api.schema.Attribute;
 import edu.uci.ics.textdb.api.schema.AttributeType;
 import edu.uci.ics.textdb.api.schema.Schema;
+import edu.uci.ics.textdb.api.span.Span;
 import edu.uci.ics.textdb.api.tuple.Tuple;
+import edu.uci.ics.textdb.api.utils.TestUtils;
 import edu.uci.ics.textdb.api.utils.Utils;
 import edu.uci.ics.textdb.storage.constants.LuceneAnalyzerConstants;
+import edu.uci.ics.textdb.storage.constants.LuceneDirectoryConstants;
+import edu.uci.ics.textdb.storage.utils.StorageUtils;
 
 public class RelationManagerTest {
     
@@ -431,4 +445,591 @@ public class RelationManagerTest {
 
         relationManager.deleteTable(tableName);
     }
+
+    /*
+     * Test that a RAM-resident table is persisted to its index directory on disk,
+     *   and is loaded back after the in-memory index is released.
+     */
+    @Test
+    public void test18() throws Exception {
+        String tableName = "relation_manager_test_table_ram";
+        String tableDirectory = "./index/test_table_ram";
+        Schema tableSchema = new Schema(
+                new Attribute("content", AttributeType.STRING), new Attribute("number", AttributeType.STRING));
+        
+        TableProperties tableProperties = new TableProperties();
+        tableProperties.setDirectoryType(LuceneDirectoryConstants.ramDirectoryString());
+        
+        relationManager.deleteTable(tableName);
+        relationManager.createTable(
+                tableName, tableDirectory, tableSchema, LuceneAnalyzerConstants.standardAnalyzerString(), tableProperties);
+        Assert.assertEquals(LuceneDirectoryConstants.ramDirectoryString(), 
+                relationManager.getTableProperties(tableName).getDirectoryType());
+        
+        DataWriter dataWriter = relationManager.getTableDataWriter(tableName);
+        dataWriter.open();
+        IDField idField = dataWriter.insertTuple(new Tuple(tableSchema, new StringField("test"), new StringField("1")));
+        dataWriter.close();
+        
+        // drop the in-memory index, the tuple should be loaded from disk
+        LuceneDirectoryConstants.releaseLuceneDirectory(relationManager.getTableDirectory(tableName));
+        
+        Tuple tuple = relationManager.getTupleByID(tableName, idField);
+        Assert.assertNotNull(tuple);
+        Assert.assertEquals("1", tuple.getField("number").getValue().toString());
+        
+        relationManager.deleteTable(tableName);
+    }
+    
+    /*
+     * Test creating a table with an invalid directory type should fail.
+     */
+    @Test(expected = StorageException.class)
+    public void test19() throws Exception {
+        String tableName = "relation_manager_test_table_invalid_directory";
+        String tableDirectory = "./index/test_table_invalid_directory";
+        Schema tableSchema = new Schema(new Attribute("content", AttributeType.STRING));
+        
+        TableProperties tableProperties = new TableProperties();
+        tableProperties.setDirectoryType("mmap-100");
+        
+        relationManager.deleteTable(tableName);
+        relationManager.createTable(
+                tableName, tableDirectory, tableSchema, LuceneAnalyzerConstants.standardAnalyzerString(), tableProperties);
+    }
+    
+    /*
+     * Test inserting, getting, updating and deleting tuples in tables partitioned into several shards.
+     */
+    @Test
+    public void test20() throws Exception {
+        for (String partitionType : new String[] {TableProperties.HASH_PARTITION, TableProperties.ROUND_ROBIN_PARTITION}) {
+            String tableName = "relation_manager_test_table_sharded";
+            String tableDirectory = "./index/test_table_sharded";
+            Schema tableSchema = new Schema(
+                    new Attribute("content", AttributeType.STRING), new Attribute("number", AttributeType.STRING));
+            
+            TableProperties tableProperties = new TableProperties();
+            tableProperties.setNumShards(3);
+            tableProperties.setPartitionType(partitionType);
+            
+            relationManager.deleteTable(tableName);
+            relationManager.createTable(
+                    tableName, tableDirectory, tableSchema, LuceneAnalyzerConstants.standardAnalyzerString(), tableProperties);
+            
+            DataWriter dataWriter = relationManager.getTableDataWriter(tableName);
+            dataWriter.open();
+            List<IDField> idFields = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                idFields.add(dataWriter.insertTuple(
+                        new Tuple(tableSchema, new StringField("test"), new StringField(Integer.toString(i)))));
+            }
+            dataWriter.close();
+            
+            // all tuples should be read from all shards
+            DataReader allTupleReader = relationManager.getTableDataReader(tableName, new TermQuery(new Term("content", "test")));
+            int tupleCounter = 0;
+            allTupleReader.open();
+            while (allTupleReader.getNextTuple() != null) {
+                tupleCounter++;
+            }
+            allTupleReader.close();
+            Assert.assertEquals(10, tupleCounter);
+            
+            // update tuple 0 and delete tuple 1
+            dataWriter.open();
+            dataWriter.updateTuple(new Tuple(tableSchema, new StringField("test"), new StringField("updated")), idFields.get(0));
+            dataWriter.deleteTupleByID(idFields.get(1));
+            dataWriter.close();
+            
+            Assert.assertEquals("updated", 
+                    relationManager.getTupleByID(tableName, idFields.get(0)).getField("number").getValue().toString());
+            Assert.assertNull(relationManager.getTupleByID(tableName, idFields.get(1)));
+            Assert.assertNotNull(relationManager.getTupleByID(tableName, idFields.get(2)));
+            
+            relationManager.deleteTable(tableName);
+        }
+    }
+    
+    /*
+     * Test a table with best compression and without term vectors or offsets:
+     *   tuples are read back correctly, and DataReader doesn't add the payload.
+     */
+    @Test
+    public void test21() throws Exception {
+        String tableName = "relation_manager_test_table_profile";
+        String tableDirectory = "./index/test_table_profile";
+        Schema tableSchema = new Schema(new Attribute("content", AttributeType.TEXT));
+        
+        TableProperties tableProperties = new TableProperties();
+        tableProperties.setStoredFieldsCompression(TableProperties.BEST_COMPRESSION);
+        tableProperties.setTermVectorsStored(false);
+        tableProperties.setOffsetsIndexed(false);
+        
+        relationManager.deleteTable(tableName);
+        relationManager.createTable(
+                tableName, tableDirectory, tableSchema, LuceneAnalyzerConstants.standardAnalyzerString(), tableProperties);
+        
+        TableProperties storedProperties = relationManager.getTableProperties(tableName);
+        Assert.assertEquals(TableProperties.BEST_COMPRESSION, storedProperties.getStoredFieldsCompression());
+        Assert.assertFalse(storedProperties.isTermVectorsStored());
+        Assert.assertFalse(storedProperties.isOffsetsIndexed());
+        
+        DataWriter dataWriter = relationManager.getTableDataWriter(tableName);
+        dataWriter.open();
+        IDField idField = dataWriter.insertTuple(new Tuple(tableSchema, new TextField("a compressed text field")));
+        dataWriter.close();
+        
+        DataReader dataReader = relationManager.getTableDataReader(tableName, new TermQuery(new Term("content", "compressed")));
+        dataReader.setPayloadAdded(true);
+        dataReader.open();
+        Tuple tuple = dataReader.getNextTuple();
+        dataReader.close();
+        
+        Assert.assertEquals(idField, tuple.getField(SchemaConstants._ID));
+        Assert.assertEquals("a compressed text field", tuple.getField("content").getValue().toString());
+        Assert.assertFalse(dataReader.getOutputSchema().containsField(SchemaConstants.PAYLOAD));
+        // the configured setting is kept, it only doesn't apply to this table
+        Assert.assertTrue(dataReader.isPayloadAdded());
+        
+        relationManager.deleteTable(tableName);
+    }
+    
+    /*
+     * Test analyzing a table, and refreshing the statistics when the table is written.
+     */
+    @Test
+    public void test22() throws Exception {
+        String tableName = "relation_manager_test_table_statistics";
+        String tableDirectory = "./index/test_table_statistics";
+        Schema tableSchema = new Schema(
+                new Attribute("city", AttributeType.STRING),
+                new Attribute("age", AttributeType.INTEGER),
+                new Attribute("content", AttributeType.TEXT));
+        
+        relationManager.deleteTable(tableName);
+        relationManager.createTable(
+                tableName, tableDirectory, tableSchema, LuceneAnalyzerConstants.standardAnalyzerString());
+        
+        TableStatistics emptyStatistics = relationManager.getTableStatistics(tableName);
+        Assert.assertEquals(0, emptyStatistics.getDocumentCount());
+        
+        DataWriter dataWriter = relationManager.getTableDataWriter(tableName);
+        dataWriter.open();
+        dataWriter.insertTuple(new Tuple(tableSchema, 
+                new StringField("irvine"), new IntegerField(20), new TextField("data base systems")));
+        dataWriter.insertTuple(new Tuple(tableSchema, 
+                new StringField("irvine"), new IntegerField(30), new TextField("text data")));
+        dataWriter.insertTuple(new Tuple(tableSchema, 
+                new StringField("seattle"), new IntegerField(40), new TextField("data")));
+        dataWriter.close();
+        
+        // the document count is updated in memory when the writer is closed
+        Assert.assertEquals(3, relationManager.getTableStatistics(tableName).getDocumentCount());
+        Assert.assertEquals(3, relationManager.getTableDataStore(tableName).getNumDocuments());
+        
+        // the statistics are written to the statistics catalog on demand
+        Assert.assertEquals(0, relationManager.readTableStatistics(tableName).getDocumentCount());
+        relationManager.persistTableStatistics(tableName);
+        Assert.assertEquals(3, relationManager.readTableStatistics(tableName).getDocumentCount());
+        
+        TableStatistics tableStatistics = relationManager.analyzeTable(tableName);
+        Assert.assertEquals(3, tableStatistics.getDocumentCount());
+        Assert.assertEquals(0, tableStatistics.getModificationCount());
+        
+        // the statistics read from the catalog are the same as the analyzed statistics
+        TableStatistics storedStatistics = relationManager.getTableStatistics(tableName);
+        Assert.assertEquals(3, storedStatistics.getAttributeStatistics().size());
+        
+        AttributeStatistics cityStatistics = storedStatistics.getAttributeStatistics("city");
+        Assert.assertEquals(2, cityStatistics.getDistinctCount());
+        Assert.assertEquals("irvine", cityStatistics.getMinValue());
+        Assert.assertEquals("seattle", cityStatistics.getMaxValue());
+        Assert.assertEquals(new Integer(2), cityStatistics.getTopTerms().get("irvine"));
+        Assert.assertEquals("irvine", cityStatistics.getTopTerms().keySet().iterator().next());
+        
+        AttributeStatistics ageStatistics = storedStatistics.getAttributeStatistics("age");
+        Assert.assertEquals(3, ageStatistics.getDistinctCount());
+        Assert.assertEquals("20", ageStatistics.getMinValue());
+        Assert.assertEquals("40", ageStatistics.getMaxValue());
+        Assert.assertEquals(3, ageStatistics.getHistogram().stream().mapToLong(count -> count).sum());
+        
+        AttributeStatistics contentStatistics = storedStatistics.getAttributeStatistics("content");
+        Assert.assertEquals(4, contentStatistics.getDistinctCount());
+        Assert.assertEquals(2.0, contentStatistics.getAverageFieldLength(), 0.0001);
+        Assert.assertEquals(new Integer(3), contentStatistics.getTopTerms().get("data"));
+        
+        // deletions by query are counted from the change of the document count
+        dataWriter = relationManager.getTableDataWriter(tableName);
+        dataWriter.open();
+        dataWriter.deleteTuple(new TermQuery(new Term("city", "irvine")));
+        dataWriter.close();
+        
+        // the stale document count is counted again before the data store is returned
+        Assert.assertEquals(1, relationManager.getTableDataStore(tableName).getNumDocuments());
+        
+        TableStatistics updatedStatistics = relationManager.getTableStatistics(tableName);
+        Assert.assertEquals(1, updatedStatistics.getDocumentCount());
+        Assert.assertEquals(2, updatedStatistics.getModificationCount());
+        
+        relationManager.deleteTable(tableName);
+        Assert.assertNull(relationManager.getTableStatistics(tableName));
+    }
+    
+    /*
+     * Test that the DataReaders opened in a read snapshot see the same state of a table,
+     *   and share one index reader.
+     */
+    @Test
+    public void test23() throws Exception {
+        String tableName = "relation_manager_test_table_snapshot";
+        String tableDirectory = "./index/test_table_snapshot";
+        Schema tableSchema = new Schema(new Attribute("content", AttributeType.STRING));
+        
+        relationManager.deleteTable(tableName);
+        relationManager.createTable(
+                tableName, tableDirectory, tableSchema, LuceneAnalyzerConstants.standardAnalyzerString());
+        
+        DataWriter dataWriter = relationManager.getTableDataWriter(tableName);
+        dataWriter.open();
+        dataWriter.insertTuple(new Tuple(tableSchema, new StringField("first")));
+        dataWriter.close();
+        
+        ReadSnapshot readSnapshot = new ReadSnapshot();
+        ReadSnapshot previousSnapshot = ReadSnapshot.setCurrentSnapshot(readSnapshot);
+        
+        DataReader dataReader1 = relationManager.getTableDataReader(tableName, new MatchAllDocsQuery());
+        dataReader1.open();
+        
+        // a writer commits while the snapshot is current
+        dataWriter = relationManager.getTableDataWriter(tableName);
+        dataWriter.open();
+        dataWriter.insertTuple(new Tuple(tableSchema, new StringField("second")));
+        dataWriter.close();
+        
+        DataReader dataReader2 = relationManager.getTableDataReader(tableName, new MatchAllDocsQuery());
+        dataReader2.open();
+        Assert.assertSame(dataReader1.getLuceneIndexReader(), dataReader2.getLuceneIndexReader());
+        
+        int count2 = 0;
+        while (dataReader2.getNextTuple() != null) {
+            count2++;
+        }
+        dataReader1.close();
+        dataReader2.close();
+        
+        ReadSnapshot.setCurrentSnapshot(previousSnapshot);
+        readSnapshot.close();
+        
+        DataReader dataReader3 = relationManager.getTableDataReader(tableName, new MatchAllDocsQuery());
+        dataReader3.open();
+        int count3 = 0;
+        while (dataReader3.getNextTuple() != null) {
+            count3++;
+        }
+        dataReader3.close();
+        
+        Assert.assertEquals(1, count2);
+        Assert.assertEquals(2, count3);
+        
+        relationManager.deleteTable(tableName);
+    }
+    
+    /*
+     * Test an in-memory table, which is never written to disk.
+     */
+    @Test
+    public void test24() throws Exception {
+        String tableName = "relation_manager_test_table_memory";
+        String tableDirectory = "./index/test_table_memory";
+        Schema tableSchema = new Schema(new Attribute("content", AttributeType.STRING));
+        
+        TableProperties tableProperties = new TableProperties();
+        tableProperties.setDirectoryType(LuceneDirectoryConstants.memoryDirectoryString());
+        
+        relationManager.deleteTable(tableName);
+        relationManager.createTable(
+                tableName, tableDirectory, tableSchema, LuceneAnalyzerConstants.standardAnalyzerString(), tableProperties);
+        
+        DataWriter dataWriter = relationManager.getTableDataWriter(tableName);
+        dataWriter.open();
+        IDField idField = dataWriter.insertTuple(new Tuple(tableSchema, new StringField("intermediate")));
+        dataWriter.close();
+        
+        Tuple tuple = relationManager.getTupleByID(tableName, idField);
+        Assert.assertEquals("intermediate", tuple.getField("content").getValue().toString());
+        Assert.assertFalse(DataReader.checkIndexExistence(relationManager.getTableDirectory(tableName)));
+        
+        // drop the in-memory index, the table should be empty but still readable
+        LuceneDirectoryConstants.releaseLuceneDirectory(relationManager.getTableDirectory(tableName));
+        Assert.assertNull(relationManager.getTupleByID(tableName, idField));
+        
+        relationManager.deleteTable(tableName);
+    }
+    
+    /*
+     * Test that repeated reads of a table are served from the decoded tuple cache,
+     *   and that the cached entries of a table are dropped when its segments are dropped.
+     */
+    @Test
+    public void test25() throws Exception {
+        String tableName = "relation_manager_test_table_tuple_cache";
+        String tableDirectory = "./index/test_table_tuple_cache";
+        Schema tableSchema = new Schema(new Attribute("content", AttributeType.TEXT));
+        
+        relationManager.deleteTable(tableName);
+        relationManager.createTable(
+                tableName, tableDirectory, tableSchema, LuceneAnalyzerConstants.standardAnalyzerString());
+        
+        DataWriter dataWriter = relationManager.getTableDataWriter(tableName);
+        dataWriter.open();
+        dataWriter.insertTuple(new Tuple(tableSchema, new TextField("hot document one")));
+        dataWriter.insertTuple(new Tuple(tableSchema, new TextField("hot document two")));
+        dataWriter.close();
+        
+        // the readers are obtained before the cache is cleared, so that the catalog lookups are not counted
+        DataReader firstReader = relationManager.getTableDataReader(tableName, new MatchAllDocsQuery());
+        DataReader secondReader = relationManager.getTableDataReader(tableName, new MatchAllDocsQuery());
+        DecodedTupleCache.clear();
+        List<Tuple> firstResults = readAllWithPayload(firstReader);
+        long hitCount = DecodedTupleCache.getHitCount();
+        List<Tuple> secondResults = readAllWithPayload(secondReader);
+        
+        Assert.assertEquals(2, DecodedTupleCache.getHitCount() - hitCount);
+        Assert.assertEquals(firstResults, secondResults);
+        Assert.assertEquals(2, DecodedTupleCache.size());
+        
+        // clearing the table drops its segments, and their cached entries
+        dataWriter = relationManager.getTableDataWriter(tableName);
+        dataWriter.open();
+        dataWriter.clearData();
+        dataWriter.close();
+        DataReader thirdReader = relationManager.getTableDataReader(tableName, new MatchAllDocsQuery());
+        int cacheSize = DecodedTupleCache.size();
+        Assert.assertEquals(0, readAllWithPayload(thirdReader).size());
+        Assert.assertEquals(cacheSize - 2, DecodedTupleCache.size());
+        
+        relationManager.deleteTable(tableName);
+    }
+    
+    /*
+     * Test that the tables with the same analyzer string share the same analyzer object,
+     *   and that a shared analyzer can be used repeatedly.
+     */
+    @Test
+    public void test26() throws Exception {
+        Analyzer standardAnalyzer = LuceneAnalyzerConstants.getLuceneAnalyzer(
+                LuceneAnalyzerConstants.standardAnalyzerString());
+        Assert.assertSame(standardAnalyzer, LuceneAnalyzerConstants.getStandardAnalyzer());
+        Assert.assertSame(standardAnalyzer, relationManager.getTableAnalyzer(CatalogConstants.TABLE_CATALOG));
+        
+        Analyzer trigramAnalyzer = LuceneAnalyzerConstants.getLuceneAnalyzer(
+                LuceneAnalyzerConstants.nGramAnalyzerString(3));
+        Assert.assertSame(trigramAnalyzer, LuceneAnalyzerConstants.getNGramAnalyzer(3));
+        Assert.assertNotSame(trigramAnalyzer, LuceneAnalyzerConstants.getNGramAnalyzer(2));
+        
+        for (int i = 0; i < 3; i++) {
+            List<Span> payload = StorageUtils.generatePayload("content", "shared analyzer", trigramAnalyzer);
+            Assert.assertEquals(13, payload.size());
+        }
+    }
+    
+    /*
+     * Test the batched lookups and deletions by _id, 
+     *   and that the lookups see the changes committed after the shared reader is opened.
+     */
+    @Test
+    public void test27() throws Exception {
+        String tableName = "relation_manager_test_table_id_lookup";
+        String tableDirectory = "./index/test_table_id_lookup";
+        Schema tableSchema = new Schema(new Attribute("content", AttributeType.STRING));
+        
+        relationManager.deleteTable(tableName);
+        relationManager.createTable(
+                tableName, tableDirectory, tableSchema, LuceneAnalyzerConstants.standardAnalyzerString());
+        
+        DataWriter dataWriter = relationManager.getTableDataWriter(tableName);
+        dataWriter.open();
+        IDField id1 = dataWriter.insertTuple(new Tuple(tableSchema, new StringField("one")));
+        IDField id2 = dataWriter.insertTuple(new Tuple(tableSchema, new StringField("two")));
+        IDField id3 = dataWriter.insertTuple(new Tuple(tableSchema, new StringField("three")));
+        dataWriter.close();
+        
+        List<Tuple> tuples = relationManager.getTuplesByID(tableName, 
+                Arrays.asList(id3, new IDField("not-an-id"), id1));
+        Assert.assertEquals(2, tuples.size());
+        Assert.assertEquals("three", tuples.get(0).getField("content").getValue().toString());
+        Assert.assertEquals("one", tuples.get(1).getField("content").getValue().toString());
+        
+        dataWriter = relationManager.getTableDataWriter(tableName);
+        dataWriter.open();
+        dataWriter.deleteTuplesByID(Arrays.asList(id1, id2));
+        dataWriter.updateTuple(new Tuple(tableSchema, new StringField("three updated")), id3);
+        dataWriter.close();
+        
+        Assert.assertNull(relationManager.getTupleByID(tableName, id1));
+        Assert.assertNull(relationManager.getTupleByID(tableName, id2));
+        Assert.assertEquals("three updated", 
+                relationManager.getTupleByID(tableName, id3).getField("content").getValue().toString());
+        
+        relationManager.deleteTable(tableName);
+    }
+    
+    /*
+     * Test that a table exported as a snapshot is imported with the same schema, properties and tuples,
+     *   and that a corrupted snapshot is rejected without creating the table.
+     */
+    @Test
+    public void test28() throws Exception {
+        String tableName = "relation_manager_test_table_snapshot";
+        String tableDirectory = "./index/test_table_snapshot";
+        String importedTableName = "relation_manager_test_table_snapshot_imported";
+        String importedTableDirectory = "./index/test_table_snapshot_imported";
+        Schema tableSchema = new Schema(
+                new Attribute("city", AttributeType.STRING), new Attribute("description", AttributeType.TEXT));
+        
+        relationManager.deleteTable(tableName);
+        relationManager.deleteTable(importedTableName);
+        TableProperties tableProperties = new TableProperties();
+        tableProperties.setNumShards(2);
+        relationManager.createTable(tableName, tableDirectory, tableSchema, 
+                LuceneAnalyzerConstants.standardAnalyzerString(), tableProperties);
+        
+        DataWriter dataWriter = relationManager.getTableDataWriter(tableName);
+        dataWriter.open();
+        IDField deletedID = dataWriter.insertTuple(new Tuple(tableSchema, 
+                new StringField("irvine"), new TextField("university of california")));
+        for (int i = 0; i < 20; i++) {
+            dataWriter.insertTuple(new Tuple(tableSchema, 
+                    new StringField("city " + i), new TextField("description of city " + i)));
+        }
+        dataWriter.deleteTupleByID(deletedID);
+        dataWriter.close();
+        
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        relationManager.exportTable(tableName, snapshot);
+        relationManager.importTable(importedTableName, importedTableDirectory, 
+                new ByteArrayInputStream(snapshot.toByteArray()));
+        
+        Assert.assertEquals(relationManager.getTableSchema(tableName), relationManager.getTableSchema(importedTableName));
+        Assert.assertEquals(2, relationManager.getTableProperties(importedTableName).getNumShards());
+        Assert.assertEquals(20, relationManager.getTableStatistics(importedTableName).getDocumentCount());
+        
+        List<Tuple> originalTuples = readAllWithPayload(
+                relationManager.getTableDataReader(tableName, new MatchAllDocsQuery()));
+        List<Tuple> importedTuples = readAllWithPayload(
+                relationManager.getTableDataReader(importedTableName, new MatchAllDocsQuery()));
+        Assert.assertTrue(TestUtils.equals(originalTuples, importedTuples));
+        Assert.assertEquals(
+                originalTuples.stream().map(tuple -> tuple.getField(SchemaConstants._ID)).collect(Collectors.toSet()),
+                importedTuples.stream().map(tuple -> tuple.getField(SchemaConstants._ID)).collect(Collectors.toSet()));
+        Assert.assertNull(relationManager.getTupleByID(importedTableName, deletedID));
+        
+        // the imported segments are searchable
+        Query cityQuery = new TermQuery(new Term("city", "city 7"));
+        List<Tuple> importedCityTuples = readAllWithPayload(relationManager.getTableDataReader(importedTableName, cityQuery));
+        Assert.assertEquals(1, importedCityTuples.size());
+        IDField cityID = (IDField) importedCityTuples.get(0).getField(SchemaConstants._ID);
+        Assert.assertEquals("description of city 7", 
+                relationManager.getTupleByID(tableName, cityID).getField("description").getValue().toString());
+        
+        relationManager.deleteTable(importedTableName);
+        
+        // flip one byte in the data of the snapshot
+        byte[] corruptedSnapshot = snapshot.toByteArray();
+        corruptedSnapshot[corruptedSnapshot.length / 2] ^= 0x01;
+        try {
+            relationManager.importTable(importedTableName, importedTableDirectory, 
+                    new ByteArrayInputStream(corruptedSnapshot));
+            Assert.fail("importing a corrupted snapshot should throw a StorageException");
+        } catch (StorageException e) {
+        }
+        Assert.assertFalse(relationManager.checkTableExistence(importedTableName));
+        
+        relationManager.deleteTable(tableName);
+    }
+    
+    private static List<Tuple> readAllWithPayload(DataReader dataReader) throws Exception {
+        dataReader.setPayloadAdded(true);
+        dataReader.open();
+        List<Tuple> results = new ArrayList<>();
+        Tuple tuple;
+        while ((tuple = dataReader.getNextTuple()) != null) {
+            results.add(tuple);
+        }
+        dataReader.close();
+        return results;
+    }
+    
+    /*
+     * Test that the writers of a round-robin table continue the round robin of the previous writers,
+     *   so the tuples inserted by writers of one tuple each are spread over all the shards.
+     */
+    @Test
+    public void test29() throws Exception {
+        String tableName = "relation_manager_test_table_round_robin";
+        String tableDirectory = "./index/test_table_round_robin";
+        Schema tableSchema = new Schema(new Attribute("content", AttributeType.STRING));
+        
+        TableProperties tableProperties = new TableProperties();
+        tableProperties.setNumShards(3);
+        tableProperties.setPartitionType(TableProperties.ROUND_ROBIN_PARTITION);
+        
+        relationManager.deleteTable(tableName);
+        relationManager.createTable(
+                tableName, tableDirectory, tableSchema, LuceneAnalyzerConstants.standardAnalyzerString(), tableProperties);
+        
+        for (int i = 0; i < 3; i++) {
+            DataWriter dataWriter = relationManager.getTableDataWriter(tableName);
+            dataWriter.open();
+            dataWriter.insertTuple(new Tuple(tableSchema, new StringField("test " + i)));
+            dataWriter.close();
+        }
+        
+        DataStore dataStore = relationManager.getTableDataStore(tableName);
+        for (String shardDirectory : dataStore.getShardDirectories()) {
+            try (IndexReader shardReader = DirectoryReader.open(LuceneDirectoryConstants.getLuceneDirectory(
+                    dataStore.getTableProperties().getDirectoryType(), shardDirectory))) {
+                Assert.assertEquals(1, shardReader.numDocs());
+            }
+        }
+        
+        relationManager.deleteTable(tableName);
+    }
+    
+    /*
+     * Test that a table with too many modifications is analyzed again in the background
+     *   after the writer is closed.
+     */
+    @Test
+    public void test30() throws Exception {
+        String tableName = "relation_manager_test_table_background_analyze";
+        String tableDirectory = "./index/test_table_background_analyze";
+        Schema tableSchema = new Schema(new Attribute("content", AttributeType.STRING));
+        
+        relationManager.deleteTable(tableName);
+        relationManager.createTable(
+                tableName, tableDirectory, tableSchema, LuceneAnalyzerConstants.standardAnalyzerString());
+        
+        DataWriter dataWriter = relationManager.getTableDataWriter(tableName);
+        dataWriter.open();
+        int numTuples = RelationManager.ANALYZE_THRESHOLD_BASE * 2;
+        for (int i = 0; i < numTuples; i++) {
+            dataWriter.insertTuple(new Tuple(tableSchema, new StringField("test " + i)));
+        }
+        dataWriter.close();
+        
+        // the analysis resets the modification count
+        long deadline = System.currentTimeMillis() + 10000;
+        while (relationManager.getTableStatistics(tableName).getModificationCount() != 0 
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        TableStatistics tableStatistics = relationManager.getTableStatistics(tableName);
+        Assert.assertEquals(0, tableStatistics.getModificationCount());
+        Assert.assertEquals(numTuples, tableStatistics.getDocumentCount());
+        Assert.assertEquals(numTuples, tableStatistics.getAttributeStatistics("content").getDistinctCount());
+        
+        relationManager.deleteTable(tableName);
+    }
 }
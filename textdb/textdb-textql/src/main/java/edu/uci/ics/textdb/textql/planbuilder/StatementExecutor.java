@@ -0,0 +1,217 @@
+package edu.uci.ics.textdb.textql.planbuilder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.uci.ics.textdb.api.dataflow.IOperator;
+import edu.uci.ics.textdb.api.exception.DataFlowException;
+import edu.uci.ics.textdb.api.exception.TextDBException;
+import edu.uci.ics.textdb.api.tuple.Tuple;
+import edu.uci.ics.textdb.exp.common.PredicateBase;
+import edu.uci.ics.textdb.exp.materializedview.MaterializedView;
+import edu.uci.ics.textdb.exp.materializedview.MaterializedViewStoreConstants;
+import edu.uci.ics.textdb.exp.source.scan.ScanBasedSourceOperator;
+import edu.uci.ics.textdb.exp.source.scan.ScanSourcePredicate;
+import edu.uci.ics.textdb.storage.RelationManager;
+import edu.uci.ics.textdb.textql.languageparser.ParseException;
+import edu.uci.ics.textdb.textql.languageparser.TextQLParser;
+import edu.uci.ics.textdb.textql.planbuilder.beans.PassThroughPredicate;
+import edu.uci.ics.textdb.textql.statements.CreateViewStatement;
+import edu.uci.ics.textdb.textql.statements.SelectStatement;
+import edu.uci.ics.textdb.textql.statements.Statement;
+
+/**
+ * StatementExecutor executes TextQL statements.
+ * 
+ * A "SELECT ..." statement reads its "FROM" table (or view) and returns the results.
+ * A "CREATE VIEW ..." statement defines a view that can be used in the "FROM" clause of later statements
+ *   executed by the same executor.
+ * A "CREATE MATERIALIZED VIEW ..." statement also creates a MaterializedView: the view's results are stored
+ *   in a table with the same name as the view, which is kept up to date when the tables the view reads
+ *   are written, and the view is saved so that it's registered again after a restart
+ *   (see MaterializedViewStore). Later statements read the view's table.
+ * 
+ * The plan of a statement is the chain of the operators of the statement and of the (non materialized) views
+ *   in its "FROM" clause, on top of the table at the end of the chain of views.
+ * LIMIT and OFFSET are only supported in the outermost "SELECT ..." statement, because the results
+ *   of a view are computed one tuple at a time.
+ */
+public class StatementExecutor {
+    
+    private final String viewIndexDirectory;
+    
+    /**
+     * The views created by the executed statements, by the ID of the view.
+     */
+    private final Map<String, CreateViewStatement> views = new HashMap<>();
+    
+    /**
+     * Create a { @code StatementExecutor } that stores the tables of materialized views
+     * in the default directory.
+     */
+    public StatementExecutor() {
+        this(MaterializedViewStoreConstants.VIEW_INDEX_DIR);
+    }
+    
+    /**
+     * Create a { @code StatementExecutor } that stores the table of each materialized view
+     * in a sub-directory of the given directory.
+     * @param viewIndexDirectory The directory of the tables of materialized views.
+     */
+    public StatementExecutor(String viewIndexDirectory) {
+        this.viewIndexDirectory = viewIndexDirectory;
+    }
+    
+    /**
+     * Parse and execute all the statements of a TextQL program, in order.
+     * @param program The TextQL program.
+     * @return The results of the last statement.
+     * @throws ParseException If the program is not valid TextQL.
+     * @throws TextDBException If a statement fails.
+     */
+    public List<Tuple> executeProgram(String program) throws ParseException, TextDBException {
+        List<Statement> statements = new TextQLParser(
+                new ByteArrayInputStream(program.getBytes(StandardCharsets.UTF_8))).mainStatementList(null);
+        List<Tuple> results = Collections.emptyList();
+        for (Statement statement : statements) {
+            results = execute(statement);
+        }
+        return results;
+    }
+    
+    /**
+     * Execute a statement.
+     * @param statement The statement to be executed.
+     * @return The results of a { @code SelectStatement }, an empty list for a { @code CreateViewStatement }.
+     * @throws TextDBException If the statement fails.
+     */
+    public List<Tuple> execute(Statement statement) throws TextDBException {
+        if (statement instanceof CreateViewStatement) {
+            createView((CreateViewStatement) statement);
+            return Collections.emptyList();
+        }
+        if (statement instanceof SelectStatement) {
+            return executeSelect((SelectStatement) statement);
+        }
+        throw new DataFlowException("Statement " + statement.getId() + " is not supported.");
+    }
+    
+    /**
+     * Define the view of a { @code CreateViewStatement }, and materialize it if it's a materialized view.
+     * @param createViewStatement The statement that creates the view.
+     * @throws TextDBException If the view already exists, or its plan can't be built.
+     */
+    private void createView(CreateViewStatement createViewStatement) throws TextDBException {
+        String viewName = createViewStatement.getId();
+        if (views.containsKey(viewName) || RelationManager.getRelationManager().checkTableExistence(viewName)) {
+            throw new DataFlowException("View " + viewName + " already exists.");
+        }
+        if (createViewStatement.isMaterialized()) {
+            SelectStatement viewStatement = getViewSelectStatement(createViewStatement);
+            List<PredicateBase> viewOperatorPredicates = new ArrayList<>();
+            List<String> baseTableNames = new ArrayList<>();
+            buildPlan(viewStatement, viewOperatorPredicates, baseTableNames);
+            new MaterializedView(viewName, Paths.get(viewIndexDirectory, viewName).toString(),
+                    baseTableNames, viewOperatorPredicates).materialize();
+        }
+        views.put(viewName, createViewStatement);
+    }
+    
+    /**
+     * Run the plan of a { @code SelectStatement } and collect its results.
+     * @param selectStatement The statement to be executed.
+     * @return The results of the statement, after OFFSET and LIMIT are applied.
+     * @throws TextDBException If the plan can't be built or fails.
+     */
+    private List<Tuple> executeSelect(SelectStatement selectStatement) throws TextDBException {
+        List<PredicateBase> operatorPredicates = new ArrayList<>();
+        List<String> baseTableNames = new ArrayList<>();
+        buildPlan(selectStatement, operatorPredicates, baseTableNames);
+        
+        int offset = selectStatement.getOffsetClause() == null ? 0 : selectStatement.getOffsetClause();
+        int limit = selectStatement.getLimitClause() == null ? Integer.MAX_VALUE : selectStatement.getLimitClause();
+        List<Tuple> results = new ArrayList<>();
+        int skipped = 0;
+        for (String baseTableName : baseTableNames) {
+            IOperator plan = MaterializedView.buildOperatorChain(
+                    new ScanBasedSourceOperator(new ScanSourcePredicate(baseTableName)), operatorPredicates);
+            plan.open();
+            try {
+                Tuple tuple;
+                while (results.size() < limit && (tuple = plan.getNextTuple()) != null) {
+                    if (skipped < offset) {
+                        skipped++;
+                    } else {
+                        results.add(tuple);
+                    }
+                }
+            } finally {
+                plan.close();
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * Build the operators of a statement and record the tables it reads.
+     * The "FROM" clause is resolved through the (non materialized) views created by this executor,
+     *   their operators come before the operators of the statement.
+     * @param selectStatement The statement whose plan is built.
+     * @param operatorPredicates The list the operator predicates are appended to, in the order they're applied.
+     * @param baseTableNames The list the names of the tables read by the plan are appended to.
+     * @throws TextDBException If a view in the "FROM" clause can't be used, or a table doesn't exist.
+     */
+    private void buildPlan(SelectStatement selectStatement, List<PredicateBase> operatorPredicates,
+            List<String> baseTableNames) throws TextDBException {
+        String fromClause = selectStatement.getFromClause();
+        CreateViewStatement fromView = views.get(fromClause);
+        if (fromView != null && ! fromView.isMaterialized()) {
+            buildPlan(getViewSelectStatement(fromView), operatorPredicates, baseTableNames);
+        } else {
+            // a table, or a materialized view, whose results are read from its table
+            if (! RelationManager.getRelationManager().checkTableExistence(fromClause)) {
+                throw new DataFlowException("Table or view " + fromClause + " doesn't exist.");
+            }
+            baseTableNames.add(fromClause);
+        }
+        
+        if (selectStatement.getExtractPredicate() != null) {
+            operatorPredicates.add(selectStatement.getExtractPredicate()
+                    .generateOperatorBean(selectStatement.getId() + "_e"));
+        }
+        if (selectStatement.getProjectPredicate() != null) {
+            PredicateBase projectionPredicate = selectStatement.getProjectPredicate()
+                    .generateOperatorBean(selectStatement.getId() + "_p");
+            // "SELECT *" doesn't need an operator
+            if (! (projectionPredicate instanceof PassThroughPredicate)) {
+                operatorPredicates.add(projectionPredicate);
+            }
+        }
+    }
+    
+    /**
+     * Get the sub-statement of a view, which has to be a { @code SelectStatement } without LIMIT and OFFSET.
+     * @param createViewStatement The statement that creates the view.
+     * @return The sub-statement of the view.
+     * @throws TextDBException If the sub-statement is not supported in a view.
+     */
+    private static SelectStatement getViewSelectStatement(CreateViewStatement createViewStatement)
+            throws TextDBException {
+        if (! (createViewStatement.getSubStatement() instanceof SelectStatement)) {
+            throw new DataFlowException("View " + createViewStatement.getId() + " must be a SELECT statement.");
+        }
+        SelectStatement viewStatement = (SelectStatement) createViewStatement.getSubStatement();
+        if (viewStatement.getLimitClause() != null || viewStatement.getOffsetClause() != null) {
+            throw new DataFlowException("LIMIT and OFFSET are not supported in view " 
+                    + createViewStatement.getId() + ".");
+        }
+        return viewStatement;
+    }
+    
+}
@@ -8,11 +8,17 @@ import org.apache.commons.lang3.builder.EqualsBuilder;
 
 import edu.uci.ics.textdb.exp.common.PredicateBase;
 import edu.uci.ics.textdb.exp.plangen.OperatorLink;
+import edu.uci.ics.textdb.exp.source.scan.ScanSourcePredicate;
 import edu.uci.ics.textdb.textql.planbuilder.beans.PassThroughPredicate;
 
 /**
  * Object representation of a "CREATE VIEW ..." statement.
  * 
+ * A "CREATE MATERIALIZED VIEW ..." statement creates a materialized view, whose results are
+ * stored in a table with the same name as the view (see MaterializedView in textdb-exp).
+ * The view and its table are created when the statement is executed by the { @code StatementExecutor }.
+ * References to a materialized view read the table instead of expanding the sub-statement.
+ * 
  * @author Flavio Bayer
  *
  */
@@ -25,6 +31,11 @@ public class CreateViewStatement extends Statement {
      * object).
      */
     private Statement subStatement;
+    
+    /**
+     * Whether the view is materialized, as in "CREATE MATERIALIZED VIEW v AS ...".
+     */
+    private boolean materialized;
       
     /**
      * Create a { @code CreateViewStatement } with the parameters set to { @code null }
@@ -39,8 +50,19 @@ public class CreateViewStatement extends Statement {
      * @param subStatement The subStatement of this statement.
      */
     public CreateViewStatement(String id, Statement subStatement) {
+        this(id, subStatement, false);
+    }
+    
+    /**
+     * Create a { @code CreateViewStatement } with the given parameters.
+     * @param id The ID of this statement.
+     * @param subStatement The subStatement of this statement.
+     * @param materialized Whether the view is materialized.
+     */
+    public CreateViewStatement(String id, Statement subStatement, boolean materialized) {
         super(id);
         this.subStatement = subStatement;
+        this.materialized = materialized;
     }
     
     
@@ -60,6 +82,22 @@ public class CreateViewStatement extends Statement {
         this.subStatement = subStatement;
     }
     
+    /**
+     * Get whether the view is materialized.
+     * @return True if the view is materialized.
+     */
+    public boolean isMaterialized() {
+        return materialized;
+    }
+    
+    /**
+     * Set whether the view is materialized.
+     * @param materialized The new value.
+     */
+    public void setMaterialized(boolean materialized) {
+        this.materialized = materialized;
+    }
+    
     @Override
     public String getInputNodeID(){
         return getId();
@@ -73,10 +111,16 @@ public class CreateViewStatement extends Statement {
     /**
      * Return a list of operators generated when this statement is converted to beans.
      * The { @code CreateViewStatement } generate a { @code PassThroughBean }.
+     * A materialized view generates a { @code ScanSourcePredicate } that reads the view's table instead.
      * @return The list of operator beans generated by this statement.
      */
     @Override
     public List<PredicateBase> getInternalOperatorBeans(){
+        if (materialized) {
+            ScanSourcePredicate viewTableScan = new ScanSourcePredicate(this.getId());
+            viewTableScan.setID(this.getId());
+            return Arrays.asList(viewTableScan);
+        }
         return Arrays.asList(new PassThroughPredicate(this.getId()));
     }
     
@@ -94,10 +138,14 @@ public class CreateViewStatement extends Statement {
      * RReturn a list of IDs of operators required by this statement (the dependencies of this Statement)
      * when converted to beans.
      * The { @code CreateViewStatement } has only its subStatement as required view.
+     * A materialized view reads its results from its table, it has no required view.
      * @return A list with the IDs of required Statements
      */
     @Override
     public List<String> getInputViews(){
+        if (materialized) {
+            return Collections.emptyList();
+        }
         return Arrays.asList(subStatement.getId());
     }
     
@@ -110,6 +158,7 @@ public class CreateViewStatement extends Statement {
         return new EqualsBuilder()
                     .appendSuper(super.equals(otherCreateViewStatement))
                     .append(subStatement, otherCreateViewStatement.subStatement)
+                    .append(materialized, otherCreateViewStatement.materialized)
                     .isEquals();
     }
     
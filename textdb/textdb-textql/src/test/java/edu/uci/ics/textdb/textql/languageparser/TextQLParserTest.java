@@ -660,6 +660,13 @@ public class TextQLParserTest {
         String createViewStatement04 = " CREATE VIEW v3 AS CREATE VIEW v4 AS SELECT * FROM a ";
         assertException(()->(new TextQLParser(string2InputStream(createViewStatement04))).createViewStatement(), ParseException.class);
         
+        String createViewStatement07 = " CREATE MATERIALIZED VIEW v0 AS SELECT * FROM a ";
+        ProjectPredicate createViewStatementSelectP07 = new ProjectAllFieldsPredicate();
+        Statement createViewStatementSelect07 = new SelectStatement("_sid0", createViewStatementSelectP07, null, "a", null, null);
+        Statement createViewStatementParameters07 = new CreateViewStatement("v0", createViewStatementSelect07, true);
+        Assert.assertEquals((new TextQLParser(string2InputStream(createViewStatement07))).createViewStatement(), createViewStatementParameters07);
+        Assert.assertNotEquals((new TextQLParser(string2InputStream(createViewStatement07))).createViewStatement(), createViewStatementParameters00);
+        
         String createViewStatement05 = " CREATE VIEW v0 AS ";
         assertException(()->(new TextQLParser(string2InputStream(createViewStatement05))).createViewStatement(), ParseException.class);
         
@@ -0,0 +1,142 @@
+package edu.uci.ics.textdb.textql.planbuilder;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.uci.ics.textdb.api.constants.TestConstants;
+import edu.uci.ics.textdb.api.exception.TextDBException;
+import edu.uci.ics.textdb.api.schema.Schema;
+import edu.uci.ics.textdb.api.tuple.Tuple;
+import edu.uci.ics.textdb.api.utils.Utils;
+import edu.uci.ics.textdb.exp.materializedview.MaterializedView;
+import edu.uci.ics.textdb.exp.materializedview.MaterializedViewStore;
+import edu.uci.ics.textdb.storage.DataWriter;
+import edu.uci.ics.textdb.storage.ITableWriteListener;
+import edu.uci.ics.textdb.storage.RelationManager;
+import edu.uci.ics.textdb.storage.constants.LuceneAnalyzerConstants;
+
+/**
+ * This class contains end to end test cases for the StatementExecutor:
+ * TextQL programs that create materialized views, and read them after the base table is written.
+ */
+public class StatementExecutorTest {
+    
+    private static final String PEOPLE_TABLE = "statementexecutortestpeople";
+    private static final String ANGRY_VIEW = "statementexecutortestangry";
+    private static final String TEST_TABLES_DIRECTORY = "../index/test_tables/";
+    
+    // the sample people whose description contains "angry"
+    private static final int NUM_ANGRY_PEOPLE = 4;
+    
+    private StatementExecutor statementExecutor;
+    
+    @Before
+    public void setUp() throws Exception {
+        RelationManager relationManager = RelationManager.getRelationManager();
+        relationManager.deleteTable(PEOPLE_TABLE);
+        relationManager.createTable(PEOPLE_TABLE, TEST_TABLES_DIRECTORY + PEOPLE_TABLE,
+                TestConstants.SCHEMA_PEOPLE, LuceneAnalyzerConstants.standardAnalyzerString());
+        insertPeopleTuples();
+        statementExecutor = new StatementExecutor(TEST_TABLES_DIRECTORY);
+    }
+    
+    @After
+    public void cleanUp() throws Exception {
+        MaterializedView angryView = MaterializedViewStore.getInstance().getView(ANGRY_VIEW);
+        if (angryView != null) {
+            angryView.drop();
+        }
+        RelationManager.getRelationManager().deleteTable(ANGRY_VIEW);
+        RelationManager.getRelationManager().deleteTable(PEOPLE_TABLE);
+    }
+    
+    private static void insertPeopleTuples() throws TextDBException {
+        DataWriter peopleDataWriter = RelationManager.getRelationManager().getTableDataWriter(PEOPLE_TABLE);
+        peopleDataWriter.open();
+        for (Tuple tuple : TestConstants.getSamplePeopleTuples()) {
+            peopleDataWriter.insertTuple(tuple);
+        }
+        peopleDataWriter.close();
+    }
+    
+    private void createAngryView() throws Exception {
+        statementExecutor.executeProgram(
+                "CREATE VIEW angrypeople AS SELECT KEYWORDMATCH(description, \"angry\") FROM " + PEOPLE_TABLE + ";"
+                + "CREATE MATERIALIZED VIEW " + ANGRY_VIEW + " AS SELECT description FROM angrypeople;");
+    }
+    
+    /**
+     * Creating a materialized view should store its results in a table, with the plan
+     * of the view and of the views it reads, and record the base table it depends on.
+     */
+    @Test
+    public void testCreateMaterializedView() throws Exception {
+        createAngryView();
+        
+        RelationManager relationManager = RelationManager.getRelationManager();
+        Assert.assertTrue(relationManager.checkTableExistence(ANGRY_VIEW));
+        Assert.assertEquals(Utils.getSchemaWithID(new Schema(TestConstants.DESCRIPTION_ATTR)),
+                relationManager.getTableSchema(ANGRY_VIEW));
+        
+        List<Tuple> results = statementExecutor.executeProgram("SELECT * FROM " + ANGRY_VIEW + ";");
+        Assert.assertEquals(NUM_ANGRY_PEOPLE, results.size());
+        
+        MaterializedView storedView = MaterializedViewStore.getInstance().getView(ANGRY_VIEW);
+        Assert.assertNotNull(storedView);
+        Assert.assertEquals(1, storedView.getBaseTableNames().size());
+        Assert.assertEquals(PEOPLE_TABLE, storedView.getBaseTableNames().get(0));
+    }
+    
+    /**
+     * Appending tuples to the base table should append their results to the materialized view.
+     */
+    @Test
+    public void testAppendToBaseTable() throws Exception {
+        createAngryView();
+        
+        insertPeopleTuples();
+        
+        List<Tuple> results = statementExecutor.executeProgram("SELECT * FROM " + ANGRY_VIEW + ";");
+        Assert.assertEquals(NUM_ANGRY_PEOPLE * 2, results.size());
+    }
+    
+    /**
+     * LIMIT and OFFSET should be applied to the results of the outermost statement.
+     */
+    @Test
+    public void testLimitAndOffset() throws Exception {
+        createAngryView();
+        
+        List<Tuple> results = statementExecutor.executeProgram(
+                "SELECT * FROM " + ANGRY_VIEW + " LIMIT 2 OFFSET 3;");
+        Assert.assertEquals(NUM_ANGRY_PEOPLE - 3, results.size());
+    }
+    
+    /**
+     * A saved view should be maintained again after it's restored, as it is when the system restarts.
+     */
+    @Test
+    public void testRestoreViews() throws Exception {
+        createAngryView();
+        
+        // the listeners are lost when the system restarts
+        RelationManager relationManager = RelationManager.getRelationManager();
+        for (ITableWriteListener listener : relationManager.getTableWriteListeners(PEOPLE_TABLE)) {
+            relationManager.removeTableWriteListener(PEOPLE_TABLE, listener);
+        }
+        insertPeopleTuples();
+        
+        MaterializedViewStore.getInstance().restoreViews();
+        Assert.assertEquals(NUM_ANGRY_PEOPLE * 2, 
+                statementExecutor.executeProgram("SELECT * FROM " + ANGRY_VIEW + ";").size());
+        
+        insertPeopleTuples();
+        Assert.assertEquals(NUM_ANGRY_PEOPLE * 3, 
+                statementExecutor.executeProgram("SELECT * FROM " + ANGRY_VIEW + ";").size());
+    }
+    
+}
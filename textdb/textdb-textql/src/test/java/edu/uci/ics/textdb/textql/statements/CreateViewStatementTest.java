@@ -9,6 +9,7 @@ import org.junit.Test;
 
 import edu.uci.ics.textdb.api.constants.DataConstants.KeywordMatchingType;
 import edu.uci.ics.textdb.exp.common.PredicateBase;
+import edu.uci.ics.textdb.exp.source.scan.ScanSourcePredicate;
 import edu.uci.ics.textdb.textql.statements.CreateViewStatement;
 import edu.uci.ics.textdb.textql.statements.SelectStatement;
 import edu.uci.ics.textdb.textql.statements.Statement;
@@ -166,4 +167,22 @@ public class CreateViewStatementTest {
         Assert.assertEquals(createViewStatement.getInputViews(), dependencies);
         StatementTestUtils.assertGeneratedBeans(createViewStatement, expectedGeneratedBeans);
     }
+
+    /**
+     * Test the correctness of the generated beans by a materialized CreateViewStatement.
+     * A materialized view reads its table, so it should generate a ScanSourcePredicate
+     * on the table with the name of the view, and it should have no dependencies.
+     */
+    @Test
+    public void testCreateViewStatementBeansBuilder02() {
+        Statement subStatement = new SelectStatement("id", null, null, "from", null, null);
+        CreateViewStatement createViewStatement = new CreateViewStatement("idx", subStatement, true);
+        Assert.assertTrue(createViewStatement.isMaterialized());
+
+        List<PredicateBase> expectedGeneratedBeans = Arrays.asList(new ScanSourcePredicate("idx"));
+        List<String> dependencies = Collections.emptyList();
+
+        Assert.assertEquals(createViewStatement.getInputViews(), dependencies);
+        StatementTestUtils.assertGeneratedBeans(createViewStatement, expectedGeneratedBeans);
+    }
 }
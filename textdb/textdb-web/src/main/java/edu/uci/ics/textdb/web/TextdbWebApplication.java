@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.github.dirkraft.dropwizard.fileassets.FileAssetsBundle;
 
+import edu.uci.ics.textdb.exp.materializedview.MaterializedViewStore;
 import edu.uci.ics.textdb.perftest.sample.SampleExtraction;
 import edu.uci.ics.textdb.perftest.twitter.TwitterSample;
 import edu.uci.ics.textdb.web.healthcheck.SampleHealthCheck;
@@ -34,6 +35,9 @@ public class TextdbWebApplication extends Application<TextdbWebConfiguration> {
 
     @Override
     public void run(TextdbWebConfiguration textdbWebConfiguration, Environment environment) throws Exception {
+        // registers the materialized views again, so that they are maintained after a restart
+        MaterializedViewStore.getInstance().restoreViews();
+
         // serve backend at /api
         environment.jersey().setUrlPattern("/api/*");
         